@@ -0,0 +1,17 @@
+package net.sharksystem.hub.benchmarks;
+
+/**
+ * Runs hub benchmarks. Arguments are passed to JMH, e.g.
+ * <ul>
+ *     <li><code>HubPDUBenchmarks -prof gc</code> - PDU encoding / decoding incl. allocation per operation</li>
+ *     <li><code>HubStatusReplyBenchmarks</code> - status reply with growing number of peers</li>
+ *     <li><code>ConnectorDispatchBenchmarks</code> - handing received PDUs to connector</li>
+ *     <li><code>DataSessionRoundTripBenchmarks -p dataSession=framed</code> - data session over a hub in memory (legacy only with small payloads)</li>
+ * </ul>
+ * No argument runs all benchmarks. Try <code>-h</code> for all JMH options.
+ */
+public class BenchmarkRunner {
+    public static void main(String[] args) throws Exception {
+        org.openjdk.jmh.Main.main(args);
+    }
+}
@@ -0,0 +1,39 @@
+package net.sharksystem.hub.benchmarks;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+
+/**
+ * Helper for all benchmarks.
+ */
+class BenchmarkSupport {
+    private static PrintStream originalOut = null;
+
+    /**
+     * Hub classes log each step to System.out. Printing would dominate most measurements - drop it.
+     */
+    static synchronized void muteLog() {
+        if(originalOut != null) return;
+        originalOut = System.out;
+        System.setOut(new PrintStream(new OutputStream() {
+            @Override
+            public void write(int b) { }
+
+            @Override
+            public void write(byte[] b, int off, int len) { }
+        }));
+    }
+
+    /**
+     * @return stream to the console - even if log is muted
+     */
+    static synchronized PrintStream console() {
+        return originalOut != null ? originalOut : System.out;
+    }
+
+    static synchronized void unmuteLog() {
+        if(originalOut == null) return;
+        System.setOut(originalOut);
+        originalOut = null;
+    }
+}
@@ -0,0 +1,78 @@
+package net.sharksystem.hub.benchmarks;
+
+import net.sharksystem.hub.Connector;
+import net.sharksystem.hub.protocol.*;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of handing a received PDU to its connector method - without the work the connector does with it.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ConnectorDispatchBenchmarks {
+    @Param({"REGISTER", "CONNECT_PEER_RQ", "HUB_STATUS_RQ", "HUB_STATUS_RPLY", "SILENT_RQ", "CHANNEL_CLEAR",
+            "STREAM_FRAME_DATA"})
+    public String pduType;
+
+    private HubPDU pdu;
+    private CountingConnector connector;
+
+    @Setup
+    public void setup() {
+        BenchmarkSupport.muteLog();
+        this.pdu = HubPDUBenchmarks.createPDU(this.pduType);
+        this.connector = new CountingConnector();
+    }
+
+    @TearDown
+    public void tearDown() {
+        BenchmarkSupport.unmuteLog();
+    }
+
+    @Benchmark
+    public int dispatch() {
+        this.connector.notifyPDUReceived(this.pdu);
+        ConnectorThread.dispatchPDU(this.connector, this.pdu);
+        return this.connector.calls;
+    }
+
+    /**
+     * Connector that only counts calls.
+     */
+    private static class CountingConnector implements Connector {
+        int calls = 0;
+
+        @Override public void silentRQ(HubPDUSilentRQ pdu) { this.calls++; }
+        @Override public void silentRPLY(HubPDUSilentRPLY pdu) { this.calls++; }
+        @Override public void channelClear(HubPDUChannelClear pdu) { this.calls++; }
+        @Override public void register(HubPDURegister pdu) { this.calls++; }
+        @Override public void connectPeerRQ(HubPDUConnectPeerRQ pdu) { this.calls++; }
+        @Override public void hubStatusRQ(HubPDUHubStatusRQ pdu) { this.calls++; }
+        @Override public void hubStatusRPLY(HubPDUHubStatusRPLY pdu) { this.calls++; }
+        @Override public void hubStatusDeltaRQ(HubPDUHubStatusDeltaRQ pdu) { this.calls++; }
+        @Override public void hubStatusDeltaRPLY(HubPDUHubStatusDeltaRPLY pdu) { this.calls++; }
+        @Override public void hubStatusSubscribe(HubPDUHubStatusSubscribe pdu) { this.calls++; }
+        @Override public void streamFrame(HubPDUStreamFrame pdu) { this.calls++; }
+        @Override public void framedDataSessions(HubPDUFramedDataSessions pdu) { this.calls++; }
+        @Override public void wireFormat(HubPDUWireFormat pdu) { this.calls++; }
+        @Override public void dataPortTokens(HubPDUDataPortTokens pdu) { this.calls++; }
+        @Override public void connectorSessionEnded(boolean unregister) { }
+        @Override public void connectorSessionStarted(ConnectorSession connectorSession) { }
+        @Override public CharSequence getPeerID() { return "Alice"; }
+        @Override public boolean isHubSide() { return true; }
+        @Override public void unregister(HubPDUUnregister hubPDU) { this.calls++; }
+        @Override public void setTimeOutInMillis(int milliseconds) { }
+        @Override public void openNewTCPConnectionRequest(HubPDUConnectPeerNewTCPSocketRQ hubPDU) { this.calls++; }
+        @Override public void notifyPDUReceived(HubPDU hubPDU) { }
+
+        public String toString() {
+            return "CountingConnector";
+        }
+    }
+}
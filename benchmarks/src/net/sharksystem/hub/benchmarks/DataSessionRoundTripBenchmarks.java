@@ -0,0 +1,174 @@
+package net.sharksystem.hub.benchmarks;
+
+import net.sharksystem.hub.ASAPHubException;
+import net.sharksystem.hub.hubside.HubSingleEntitySharedChannel;
+import net.sharksystem.hub.hubside.SharedChannelConnectorHubSideImpl;
+import net.sharksystem.hub.peerside.HubConnectorDescription;
+import net.sharksystem.hub.peerside.NewConnectionListener;
+import net.sharksystem.hub.peerside.SharedChannelConnectorPeerSide;
+import net.sharksystem.hub.protocol.ConnectorThread;
+import net.sharksystem.streams.StreamPair;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Full data session over a hub in memory: connect request, silence, clear, both peers exchange a payload and
+ * close, sync and both connectors return to connector protocol. Each invocation is one session. Peer side and
+ * hub side connectors are linked by pipes in memory - no sockets, numbers show connector costs only.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, batchSize = 1)
+@Measurement(iterations = 10, batchSize = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DataSessionRoundTripBenchmarks {
+    private static final int TIMEOUT_IN_MILLIS = 1000;
+    private static final int REGISTRATION_TIMEOUT_IN_MILLIS = 10000;
+    private static final int SESSION_TIMEOUT_IN_SECONDS = 30;
+    // legacy sessions end after a fixed time out no matter what is still to be relayed
+    private static final int LEGACY_MAX_PAYLOAD_SIZE = 64 * 1024;
+
+    /** legacy: silence / time out based data sessions */
+    @Param({"legacy", "framed", "multiplexed"})
+    public String dataSession;
+
+    @Param({"1024", "1048576"})
+    public int payloadSize;
+
+    private HubSingleEntitySharedChannel hub;
+    private SharedChannelConnectorPeerSide alice;
+    private SharedChannelConnectorPeerSide bob;
+    private byte[] payload;
+    private volatile CountDownLatch sessionsDone;
+    private volatile IOException sessionFailure;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        if("legacy".equals(this.dataSession) && this.payloadSize > LEGACY_MAX_PAYLOAD_SIZE) {
+            throw new IllegalStateException("legacy data session ends after " + TIMEOUT_IN_MILLIS
+                    + " ms - payload of " + this.payloadSize + " bytes cannot be relayed in time, use -p payloadSize=1024");
+        }
+        BenchmarkSupport.muteLog();
+        this.payload = new byte[this.payloadSize];
+        for(int i = 0; i < this.payloadSize; i++) this.payload[i] = (byte) i;
+
+        this.hub = new HubSingleEntitySharedChannel();
+        this.alice = this.createPeer("Alice");
+        this.bob = this.createPeer("Bob");
+        this.awaitRegistration("Alice");
+        this.awaitRegistration("Bob");
+    }
+
+    private SharedChannelConnectorPeerSide createPeer(CharSequence peerID) throws Exception {
+        InMemoryPipe toHub = new InMemoryPipe();
+        InMemoryPipe toPeer = new InMemoryPipe();
+
+        SharedChannelConnectorHubSideImpl hubSide = new SharedChannelConnectorHubSideImpl(
+                toHub.getInputStream(), toPeer.getOutputStream(), this.hub);
+        hubSide.setThreadFactory(this.hub.getThreadFactory());
+        new ConnectorThread(hubSide, hubSide.getPDUReader(), this.hub.getThreadFactory()).start();
+
+        SharedChannelConnectorPeerSide peer = new InMemoryConnectorPeerSide(toPeer, toHub);
+        peer.setTimeOutInMillis(TIMEOUT_IN_MILLIS);
+        peer.setFramedDataSessions("framed".equals(this.dataSession));
+        peer.setMultiplexedDataSessions("multiplexed".equals(this.dataSession));
+        peer.addListener(new PayloadExchange());
+        peer.connectHub(peerID);
+        return peer;
+    }
+
+    private void awaitRegistration(CharSequence peerID) throws InterruptedException {
+        long until = System.currentTimeMillis() + REGISTRATION_TIMEOUT_IN_MILLIS;
+        while(!this.hub.isRegistered(peerID)) {
+            if(System.currentTimeMillis() > until) throw new IllegalStateException(peerID + " not registered");
+            Thread.sleep(10);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        this.alice.disconnectHub();
+        this.bob.disconnectHub();
+        BenchmarkSupport.unmuteLog();
+    }
+
+    @Setup(Level.Invocation)
+    public void prepareSession() {
+        this.sessionsDone = new CountDownLatch(2);
+        this.sessionFailure = null;
+    }
+
+    @Benchmark
+    public void dataSession() throws Exception {
+        this.alice.connectPeer("Bob");
+        if(!this.sessionsDone.await(SESSION_TIMEOUT_IN_SECONDS, TimeUnit.SECONDS)) {
+            throw new IllegalStateException("data session did not end in time");
+        }
+        if(this.sessionFailure != null) throw this.sessionFailure;
+    }
+
+    /**
+     * Peer side of a connector that is linked to its hub side by pipes.
+     */
+    private static class InMemoryConnectorPeerSide extends SharedChannelConnectorPeerSide {
+        private final InMemoryPipe fromHub;
+        private final InMemoryPipe toHub;
+
+        InMemoryConnectorPeerSide(InMemoryPipe fromHub, InMemoryPipe toHub) throws ASAPHubException {
+            super(fromHub.getInputStream(), toHub.getOutputStream());
+            this.fromHub = fromHub;
+            this.toHub = toHub;
+        }
+
+        @Override
+        public boolean isSame(HubConnectorDescription hcd) {
+            return false;
+        }
+
+        @Override
+        protected void shutdown() {
+            super.shutdown();
+            this.fromHub.close();
+            this.toHub.close();
+        }
+    }
+
+    /**
+     * Each side writes the payload, reads the payload from the other side and closes.
+     */
+    private class PayloadExchange implements NewConnectionListener {
+        @Override
+        public void notifyPeerConnected(CharSequence targetPeerID, StreamPair streamPair) {
+            new Thread(() -> {
+                try {
+                    Thread writer = new Thread(() -> {
+                        try {
+                            OutputStream os = streamPair.getOutputStream();
+                            os.write(DataSessionRoundTripBenchmarks.this.payload);
+                            os.flush();
+                        } catch (IOException e) {
+                            DataSessionRoundTripBenchmarks.this.sessionFailure = e;
+                        }
+                    });
+                    writer.start();
+                    byte[] received = new byte[DataSessionRoundTripBenchmarks.this.payloadSize];
+                    new DataInputStream(streamPair.getInputStream()).readFully(received);
+                    writer.join();
+                    // legacy session cannot be half closed - it ends after time out, other side could still read
+                    if(!"legacy".equals(DataSessionRoundTripBenchmarks.this.dataSession)) streamPair.close();
+                } catch (IOException e) {
+                    DataSessionRoundTripBenchmarks.this.sessionFailure = e;
+                } catch (InterruptedException e) {
+                    // done
+                }
+                DataSessionRoundTripBenchmarks.this.sessionsDone.countDown();
+            }).start();
+        }
+    }
+}
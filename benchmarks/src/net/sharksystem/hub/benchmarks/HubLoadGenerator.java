@@ -0,0 +1,456 @@
+package net.sharksystem.hub.benchmarks;
+
+import net.sharksystem.hub.hubside.ASAPTCPHub;
+import net.sharksystem.hub.metrics.HubMetrics;
+import net.sharksystem.hub.peerside.NewConnectionListener;
+import net.sharksystem.hub.peerside.SharedChannelConnectorPeerSide;
+import net.sharksystem.hub.peerside.SharedTCPChannelConnectorPeerSide;
+import net.sharksystem.streams.StreamPair;
+import net.sharksystem.utils.Commandline;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Load generator: a number of simulated peers connect to a hub and keep it busy with a mix of status
+ * requests and encounters (connect request and data exchange) for a while. Reports latency percentiles,
+ * encounters per second, thread count and heap usage.
+ * <br/><br/>
+ * Each peer takes part in at most one encounter at a time. Each peer has at most one status request on its way and
+ * waits a status interval after a reply before it asks again - status requests cannot crowd out encounters. Only
+ * answered status requests are counted. A hub is started in this process unless -host is given.
+ * Note: thread count and heap then include simulated peers. Each simulated peer keeps a socket open - raise open file
+ * limit (ulimit -n) for thousands of peers.
+ */
+public class HubLoadGenerator {
+    private static final String USAGE = "optional parameters: -peers [number] -seconds [duration] "
+            + "-host [hub host - no local hub] -port [portnumber] -multichannel -framed -multiplexed -enveloped "
+            + "-workers [number] -maxEncounters [concurrent encounters] -payload [bytes] -statusShare [percent] "
+            + "-statusInterval [ms per peer] -rampUpThreads [number] -eventLoops [number] -virtualThreads";
+
+    private static final int ENCOUNTER_TIMEOUT_IN_MILLIS = 30000;
+    private static final int STATUS_INTERVAL_IN_MILLIS = 10000;
+
+    private int numberPeers = 1000;
+    private int seconds = 60;
+    private String host = null;
+    private int port = 6910;
+    private boolean multichannel = false;
+    private boolean framed = false;
+    private boolean multiplexed = false;
+    private boolean enveloped = false;
+    private int workers = 16;
+    private int maxEncounters = 100;
+    private int payloadSize = 4096;
+    private int statusShare = 20;
+    private int statusIntervalInMillis = 1000;
+    private int rampUpThreads = 32;
+    private int eventLoops = 0;
+    private boolean virtualThreads = false;
+
+    private final PrintStream console;
+    private ASAPTCPHub hub = null;
+    private final List<SharedChannelConnectorPeerSide> peers = new ArrayList<>();
+    private byte[] payload;
+
+    private final LatencyRecorder registerLatency = new LatencyRecorder("register");
+    private final LatencyRecorder connectLatency = new LatencyRecorder("connection setup");
+    private final LatencyRecorder encounterLatency = new LatencyRecorder("encounter");
+
+    /** peer id -> encounter this peer takes part in */
+    private final Map<CharSequence, Encounter> busyPeers = new ConcurrentHashMap<>();
+    /** peer id -> when this peer can send its next status request - {@link #STATUS_PENDING} while waiting for reply */
+    private final Map<CharSequence, Long> nextStatusRequest = new ConcurrentHashMap<>();
+    private static final long STATUS_PENDING = Long.MAX_VALUE;
+    private Semaphore encounterPermits;
+    private final ExecutorService sessionExecutor = Executors.newCachedThreadPool();
+
+    private final AtomicInteger registerFailures = new AtomicInteger();
+    private final AtomicLong statusRequests = new AtomicLong();
+    private final AtomicLong statusReplies = new AtomicLong();
+    private final AtomicLong statusFailures = new AtomicLong();
+    private final AtomicLong encounterFailures = new AtomicLong();
+    private final AtomicLong encounterTimeouts = new AtomicLong();
+
+    private final ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+    private final MemoryMXBean memoryMXBean = ManagementFactory.getMemoryMXBean();
+    private volatile long peakHeapUsed = 0;
+
+    HubLoadGenerator(PrintStream console) {
+        this.console = console;
+    }
+
+    public static void main(String[] args) throws Exception {
+        HashMap<String, String> argumentMap = Commandline.parametersToMap(args, false, USAGE);
+
+        BenchmarkSupport.muteLog(); // hub and peers log each step
+        HubLoadGenerator loadGenerator = new HubLoadGenerator(BenchmarkSupport.console());
+        if(argumentMap != null) {
+            if(argumentMap.containsKey("-help") || argumentMap.containsKey("-?")) {
+                loadGenerator.console.println(USAGE);
+                System.exit(0);
+            }
+            loadGenerator.parseArguments(argumentMap);
+        }
+
+        loadGenerator.run();
+        System.exit(0);
+    }
+
+    private void parseArguments(Map<String, String> argumentMap) {
+        this.numberPeers = intArgument(argumentMap, "-peers", this.numberPeers);
+        this.seconds = intArgument(argumentMap, "-seconds", this.seconds);
+        this.host = argumentMap.get("-host");
+        this.port = intArgument(argumentMap, "-port", this.port);
+        this.multichannel = argumentMap.containsKey("-multichannel");
+        this.framed = argumentMap.containsKey("-framed");
+        this.multiplexed = argumentMap.containsKey("-multiplexed");
+        this.enveloped = argumentMap.containsKey("-enveloped");
+        this.workers = intArgument(argumentMap, "-workers", this.workers);
+        this.maxEncounters = intArgument(argumentMap, "-maxEncounters", this.maxEncounters);
+        this.payloadSize = intArgument(argumentMap, "-payload", this.payloadSize);
+        this.statusShare = intArgument(argumentMap, "-statusShare", this.statusShare);
+        this.statusIntervalInMillis = intArgument(argumentMap, "-statusInterval", this.statusIntervalInMillis);
+        this.rampUpThreads = intArgument(argumentMap, "-rampUpThreads", this.rampUpThreads);
+        this.eventLoops = intArgument(argumentMap, "-eventLoops", this.eventLoops);
+        this.virtualThreads = argumentMap.containsKey("-virtualThreads");
+    }
+
+    private static int intArgument(Map<String, String> argumentMap, String name, int defaultValue) {
+        String value = argumentMap.get(name);
+        if(value == null) return defaultValue;
+        try {
+            return Integer.parseInt(value);
+        } catch (RuntimeException re) {
+            throw new IllegalArgumentException(name + " must be a numeric: " + value);
+        }
+    }
+
+    void run() throws Exception {
+        this.payload = new byte[this.payloadSize];
+        new Random(42).nextBytes(this.payload);
+        this.encounterPermits = new Semaphore(this.maxEncounters);
+
+        this.console.println("load: " + this.numberPeers + " peers, " + this.seconds + " s, "
+                + (this.multichannel ? "multichannel" : "shared channel")
+                + (this.framed ? ", framed" : "") + (this.multiplexed ? ", multiplexed" : "")
+                + (this.enveloped ? ", enveloped" : "")
+                + ", payload " + this.payloadSize + " bytes, status share " + this.statusShare + " %"
+                + ", status interval " + this.statusIntervalInMillis + " ms");
+        this.console.println("threads before start: " + this.threadMXBean.getThreadCount());
+
+        if(this.host == null) {
+            this.hub = ASAPTCPHub.startTCPHubThread(this.port, this.multichannel, -1,
+                    this.eventLoops, this.virtualThreads);
+            this.hub.setMaxIdleConnectionInSeconds(Math.max(this.seconds * 2, 60));
+            Thread.sleep(200);
+        }
+
+        ScheduledExecutorService sampler = Executors.newSingleThreadScheduledExecutor();
+        sampler.scheduleAtFixedRate(this::sample, 0, 100, TimeUnit.MILLISECONDS);
+        sampler.scheduleAtFixedRate(this::removeTimedOutEncounters, 1, 1, TimeUnit.SECONDS);
+
+        this.rampUp();
+        this.console.println("threads after ramp up: " + this.threadMXBean.getThreadCount()
+                + ", heap used: " + inMegaBytes(this.memoryMXBean.getHeapMemoryUsage().getUsed()));
+
+        long encountersBefore = this.encounterLatency.count();
+        long loadStart = System.nanoTime();
+        this.generateLoad();
+        double loadSeconds = (System.nanoTime() - loadStart) / 1000000000.0;
+        long encounters = this.encounterLatency.count() - encountersBefore;
+        long statusReplies = this.statusReplies.get();
+
+        this.console.println("------------------------------ results ------------------------------");
+        this.console.println(this.registerLatency.report() + ", failed: " + this.registerFailures.get());
+        this.console.println(this.connectLatency.report());
+        this.console.println(this.encounterLatency.report() + ", failed: " + this.encounterFailures.get()
+                + ", timed out: " + this.encounterTimeouts.get());
+        this.console.println(String.format("encounters per second: %.1f", encounters / loadSeconds));
+        this.console.println(String.format("status replies per second: %.1f, requests: %d, failed: %d",
+                statusReplies / loadSeconds, this.statusRequests.get(), this.statusFailures.get()));
+        this.console.println("threads: " + this.threadMXBean.getThreadCount()
+                + ", peak: " + this.threadMXBean.getPeakThreadCount());
+        this.console.println("heap used peak: " + inMegaBytes(this.peakHeapUsed));
+        if(this.hub != null) {
+            this.console.println("------------------------------ hub metrics ---------------------------");
+            this.console.print(HubMetrics.getHubMetrics().getText());
+        }
+
+        sampler.shutdownNow();
+        this.shutdown();
+    }
+
+    private void rampUp() throws InterruptedException {
+        ExecutorService rampUpExecutor = Executors.newFixedThreadPool(this.rampUpThreads);
+        String hubHost = this.host == null ? "localhost" : this.host;
+        long start = System.nanoTime();
+
+        for(int i = 0; i < this.numberPeers; i++) {
+            final String peerID = peerID(i);
+            rampUpExecutor.execute(() -> {
+                long registerStart = System.nanoTime();
+                try {
+                    SharedChannelConnectorPeerSide peer = (SharedChannelConnectorPeerSide)
+                            SharedTCPChannelConnectorPeerSide.createTCPHubConnector(
+                                    hubHost, this.port, this.multichannel);
+                    peer.setFramedDataSessions(this.framed);
+                    peer.setMultiplexedDataSessions(this.multiplexed);
+                    peer.setEnvelopedPDUs(this.enveloped);
+                    peer.addListener(new EncounterListener(peerID));
+                    peer.connectHub(peerID);
+                    this.registerLatency.record(System.nanoTime() - registerStart);
+                    synchronized (this.peers) {
+                        this.peers.add(peer);
+                    }
+                } catch (Exception e) {
+                    this.registerFailures.incrementAndGet();
+                }
+            });
+        }
+        rampUpExecutor.shutdown();
+        rampUpExecutor.awaitTermination(1, TimeUnit.HOURS);
+
+        if(this.hub != null) {
+            // register PDUs are sent - wait until hub has processed them
+            long deadline = System.currentTimeMillis() + ENCOUNTER_TIMEOUT_IN_MILLIS;
+            while(this.hub.getRegisteredPeers().size() < this.peers.size()
+                    && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            this.console.println(this.hub.getRegisteredPeers().size() + " peers registered after "
+                    + (System.nanoTime() - start) / 1000000 + " ms");
+        } else {
+            this.console.println(this.peers.size() + " peers sent register after "
+                    + (System.nanoTime() - start) / 1000000 + " ms");
+        }
+    }
+
+    private void generateLoad() throws InterruptedException {
+        long end = System.currentTimeMillis() + this.seconds * 1000L;
+        List<Thread> workerThreads = new ArrayList<>();
+        for(int i = 0; i < this.workers; i++) {
+            Thread worker = new Thread(() -> this.work(end));
+            workerThreads.add(worker);
+            worker.start();
+        }
+
+        long nextStatus = System.currentTimeMillis() + STATUS_INTERVAL_IN_MILLIS;
+        while(System.currentTimeMillis() < end) {
+            Thread.sleep(100);
+            if(System.currentTimeMillis() >= nextStatus) {
+                nextStatus += STATUS_INTERVAL_IN_MILLIS;
+                this.console.println("encounters: " + this.encounterLatency.count()
+                        + ", busy peers: " + this.busyPeers.size()
+                        + ", threads: " + this.threadMXBean.getThreadCount()
+                        + ", heap used: " + inMegaBytes(this.memoryMXBean.getHeapMemoryUsage().getUsed()));
+            }
+        }
+
+        for(Thread worker : workerThreads) worker.join();
+    }
+
+    private void work(long end) {
+        Random random = new Random();
+        List<SharedChannelConnectorPeerSide> peers;
+        synchronized (this.peers) {
+            peers = new ArrayList<>(this.peers);
+        }
+        if(peers.size() < 2) return;
+
+        while(System.currentTimeMillis() < end) {
+            SharedChannelConnectorPeerSide peer = peers.get(random.nextInt(peers.size()));
+            // peer not due yet - take this round for an encounter
+            if(random.nextInt(100) < this.statusShare && this.requestStatus(peer)) continue;
+
+            try {
+                if(!this.encounterPermits.tryAcquire(100, TimeUnit.MILLISECONDS)) continue;
+            } catch (InterruptedException e) {
+                return;
+            }
+
+            SharedChannelConnectorPeerSide otherPeer;
+            do {
+                otherPeer = peers.get(random.nextInt(peers.size()));
+            } while(otherPeer == peer);
+
+            Encounter encounter = new Encounter(peer.getPeerID(), otherPeer.getPeerID());
+            if(!this.reserve(encounter)) {
+                this.encounterPermits.release();
+                continue;
+            }
+
+            try {
+                peer.connectPeer(otherPeer.getPeerID());
+            } catch (IOException e) {
+                if(this.release(encounter)) this.encounterFailures.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Send status request if peer has no request on its way and waited its status interval since last reply.
+     * @return true if request was sent
+     */
+    private boolean requestStatus(SharedChannelConnectorPeerSide peer) {
+        CharSequence peerID = peer.getPeerID();
+        Long next = this.nextStatusRequest.get(peerID);
+        if(next != null && (next > System.currentTimeMillis()
+                || !this.nextStatusRequest.replace(peerID, next, STATUS_PENDING))) return false;
+        if(next == null && this.nextStatusRequest.putIfAbsent(peerID, STATUS_PENDING) != null) return false;
+
+        this.statusRequests.incrementAndGet();
+        peer.syncHubInformationAsync().whenComplete((reply, throwable) -> {
+            if(throwable == null) this.statusReplies.incrementAndGet();
+            else this.statusFailures.incrementAndGet();
+            this.nextStatusRequest.put(peerID, System.currentTimeMillis() + this.statusIntervalInMillis);
+        });
+        return true;
+    }
+
+    /**
+     * @return true if both peers were idle and are now busy with this encounter
+     */
+    private boolean reserve(Encounter encounter) {
+        if(this.busyPeers.putIfAbsent(encounter.initiator, encounter) != null) return false;
+        if(this.busyPeers.putIfAbsent(encounter.target, encounter) != null) {
+            this.busyPeers.remove(encounter.initiator, encounter);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return true if called first time for this encounter
+     */
+    private boolean release(Encounter encounter) {
+        if(!encounter.finished.compareAndSet(false, true)) return false;
+        this.busyPeers.remove(encounter.initiator, encounter);
+        this.busyPeers.remove(encounter.target, encounter);
+        this.encounterPermits.release();
+        return true;
+    }
+
+    private void removeTimedOutEncounters() {
+        long now = System.nanoTime();
+        for(Encounter encounter : this.busyPeers.values()) {
+            if(now - encounter.started > ENCOUNTER_TIMEOUT_IN_MILLIS * 1000000L && this.release(encounter)) {
+                this.encounterTimeouts.incrementAndGet();
+            }
+        }
+    }
+
+    private void sample() {
+        long heapUsed = this.memoryMXBean.getHeapMemoryUsage().getUsed();
+        if(heapUsed > this.peakHeapUsed) this.peakHeapUsed = heapUsed;
+    }
+
+    private void shutdown() {
+        this.sessionExecutor.shutdownNow();
+        synchronized (this.peers) {
+            for(SharedChannelConnectorPeerSide peer : this.peers) {
+                try {
+                    peer.disconnectHub();
+                } catch (Exception e) {
+                    // ignore
+                }
+            }
+        }
+        if(this.hub != null) this.hub.kill();
+    }
+
+    private static String peerID(int index) {
+        return "peer_" + index;
+    }
+
+    private static String inMegaBytes(long bytes) {
+        return (bytes / (1024 * 1024)) + " MB";
+    }
+
+    private static class Encounter {
+        final CharSequence initiator;
+        final CharSequence target;
+        final long started = System.nanoTime();
+        final AtomicInteger sidesDone = new AtomicInteger();
+        final AtomicBoolean failed = new AtomicBoolean();
+        final AtomicBoolean finished = new AtomicBoolean();
+
+        Encounter(CharSequence initiator, CharSequence target) {
+            this.initiator = initiator;
+            this.target = target;
+        }
+    }
+
+    /**
+     * Both sides write payload, read payload from other side and close. Encounter is found by local peer id - a peer
+     * is in one encounter at a time.
+     */
+    private class EncounterListener implements NewConnectionListener {
+        private final CharSequence peerID;
+
+        EncounterListener(CharSequence peerID) {
+            this.peerID = peerID;
+        }
+
+        @Override
+        public void notifyPeerConnected(CharSequence targetPeerID, StreamPair streamPair) {
+            long connected = System.nanoTime();
+            Encounter encounter = HubLoadGenerator.this.busyPeers.get(this.peerID);
+            if(encounter != null && encounter.initiator.equals(this.peerID)) {
+                HubLoadGenerator.this.connectLatency.record(connected - encounter.started);
+            }
+
+            try {
+                HubLoadGenerator.this.sessionExecutor.execute(() -> {
+                    boolean success = this.exchange(streamPair);
+                    if(encounter == null) return; // timed out already
+
+                    if(!success) encounter.failed.set(true);
+                    if(encounter.sidesDone.incrementAndGet() == 2 && HubLoadGenerator.this.release(encounter)) {
+                        if(encounter.failed.get()) {
+                            HubLoadGenerator.this.encounterFailures.incrementAndGet();
+                        } else {
+                            HubLoadGenerator.this.encounterLatency.record(System.nanoTime() - encounter.started);
+                        }
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                // shutting down
+            }
+        }
+
+        private boolean exchange(StreamPair streamPair) {
+            Future<?> writing = HubLoadGenerator.this.sessionExecutor.submit(() -> {
+                OutputStream os = streamPair.getOutputStream();
+                os.write(HubLoadGenerator.this.payload);
+                os.flush();
+                return null;
+            });
+
+            try {
+                byte[] received = new byte[HubLoadGenerator.this.payloadSize];
+                new DataInputStream(streamPair.getInputStream()).readFully(received);
+                writing.get();
+                return true;
+            } catch (IOException | ExecutionException | InterruptedException e) {
+                return false;
+            } finally {
+                streamPair.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package net.sharksystem.hub.benchmarks;
+
+import net.sharksystem.asap.ASAPException;
+import net.sharksystem.hub.protocol.*;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encode and decode each PDU type. Run with -prof gc to see allocation per operation.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class HubPDUBenchmarks {
+    @Param({"REGISTER", "UNREGISTER", "CONNECT_PEER_RQ", "NEW_TCP_SOCKET_RQ", "HUB_STATUS_RQ", "HUB_STATUS_RPLY",
+            "HUB_STATUS_DELTA_RQ", "HUB_STATUS_DELTA_RPLY", "HUB_STATUS_SUBSCRIBE", "SILENT_RQ", "SILENT_RPLY",
+            "CHANNEL_CLEAR", "STREAM_FRAME_DATA", "FRAMED_DATA_SESSIONS"})
+    public String pduType;
+
+    private HubPDU pdu;
+    private byte[] serializedPDU;
+    private ByteArrayOutputStream os;
+
+    static HubPDU createPDU(String pduType) {
+        Set<CharSequence> peers = new HashSet<>();
+        peers.add("Bob");
+        peers.add("Clara");
+        peers.add("David");
+
+        switch (pduType) {
+            case "REGISTER": return new HubPDURegister("Alice", true);
+            case "UNREGISTER": return new HubPDUUnregister("Alice");
+            case "CONNECT_PEER_RQ": return new HubPDUConnectPeerRQ("Bob");
+            case "NEW_TCP_SOCKET_RQ": return new HubPDUConnectPeerNewTCPSocketRQ("Bob", 7001);
+            case "HUB_STATUS_RQ": return new HubPDUHubStatusRQ();
+            case "HUB_STATUS_RPLY": return new HubPDUHubStatusRPLY(peers);
+            case "HUB_STATUS_DELTA_RQ": return new HubPDUHubStatusDeltaRQ(42);
+            case "HUB_STATUS_DELTA_RPLY": return new HubPDUHubStatusDeltaRPLY(43, false, peers, new HashSet<>());
+            case "HUB_STATUS_SUBSCRIBE": return new HubPDUHubStatusSubscribe(true, 42);
+            case "SILENT_RQ": return new HubPDUSilentRQ(1000);
+            case "SILENT_RPLY": return new HubPDUSilentRPLY(1000);
+            case "CHANNEL_CLEAR":
+                return new HubPDUChannelClear("Alice", "Bob", 1000, new byte[] {1, 2, 3, 4, 5, 6, 7, 8});
+            case "STREAM_FRAME_DATA": return HubPDUStreamFrame.data(2, new byte[1024]);
+            case "FRAMED_DATA_SESSIONS": return new HubPDUFramedDataSessions(true);
+            default: throw new IllegalArgumentException("unknown pdu type: " + pduType);
+        }
+    }
+
+    @Setup
+    public void setup() throws IOException {
+        this.pdu = createPDU(this.pduType);
+        this.os = new ByteArrayOutputStream();
+        this.pdu.sendPDU(this.os);
+        this.serializedPDU = this.os.toByteArray();
+    }
+
+    @Benchmark
+    public int encode() throws IOException {
+        this.os.reset();
+        this.pdu.sendPDU(this.os);
+        return this.os.size();
+    }
+
+    @Benchmark
+    public HubPDU decode() throws IOException, ASAPException {
+        return HubPDU.readPDU(new ByteArrayInputStream(this.serializedPDU));
+    }
+}
@@ -0,0 +1,54 @@
+package net.sharksystem.hub.benchmarks;
+
+import net.sharksystem.asap.ASAPException;
+import net.sharksystem.hub.protocol.HubPDU;
+import net.sharksystem.hub.protocol.HubPDUHubStatusRPLY;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hub status reply is the only PDU that grows with the hub - it lists all registered peers.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class HubStatusReplyBenchmarks {
+    @Param({"10", "1000", "100000"})
+    public int numberPeers;
+
+    private HubPDUHubStatusRPLY pdu;
+    private byte[] serializedPDU;
+    private ByteArrayOutputStream os;
+
+    @Setup
+    public void setup() throws IOException {
+        Set<CharSequence> peers = new HashSet<>();
+        for(int i = 0; i < this.numberPeers; i++) peers.add("peer_" + i);
+
+        this.pdu = new HubPDUHubStatusRPLY(peers);
+        this.os = new ByteArrayOutputStream();
+        this.pdu.sendPDU(this.os);
+        this.serializedPDU = this.os.toByteArray();
+    }
+
+    @Benchmark
+    public int encode() throws IOException {
+        this.os.reset();
+        this.pdu.sendPDU(this.os);
+        return this.os.size();
+    }
+
+    @Benchmark
+    public HubPDU decode() throws IOException, ASAPException {
+        return HubPDU.readPDU(new ByteArrayInputStream(this.serializedPDU));
+    }
+}
@@ -0,0 +1,145 @@
+package net.sharksystem.hub.benchmarks;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Byte pipe in memory - a bounded ring buffer. Unlike PipedInputStream it does not care which threads read and
+ * write: connectors write from short lived threads, and a piped stream breaks as soon as its last writer is gone.
+ * Closing output ends input after all bytes are read. Closing input fails writers.
+ */
+class InMemoryPipe {
+    private static final int DEFAULT_CAPACITY = 64 * 1024;
+
+    private final byte[] buffer;
+    private int readPosition = 0; // guarded by this
+    private int size = 0; // guarded by this
+    private boolean outputClosed = false; // guarded by this
+    private boolean inputClosed = false; // guarded by this
+
+    private final InputStream inputStream = new PipeInputStream();
+    private final OutputStream outputStream = new PipeOutputStream();
+
+    InMemoryPipe() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    InMemoryPipe(int capacity) {
+        this.buffer = new byte[capacity];
+    }
+
+    InputStream getInputStream() {
+        return this.inputStream;
+    }
+
+    OutputStream getOutputStream() {
+        return this.outputStream;
+    }
+
+    private synchronized int read(byte[] b, int off, int len) throws IOException {
+        if(len == 0) return 0;
+        while(this.size == 0) {
+            if(this.inputClosed) throw new IOException("pipe closed");
+            if(this.outputClosed) return -1;
+            this.await();
+        }
+        if(this.inputClosed) throw new IOException("pipe closed");
+
+        int number = Math.min(len, this.size);
+        int first = Math.min(number, this.buffer.length - this.readPosition);
+        System.arraycopy(this.buffer, this.readPosition, b, off, first);
+        System.arraycopy(this.buffer, 0, b, off + first, number - first);
+        this.readPosition = (this.readPosition + number) % this.buffer.length;
+        this.size -= number;
+        this.notifyAll();
+        return number;
+    }
+
+    private synchronized void write(byte[] b, int off, int len) throws IOException {
+        while(len > 0) {
+            while(this.size == this.buffer.length && !this.inputClosed && !this.outputClosed) this.await();
+            if(this.inputClosed || this.outputClosed) throw new IOException("pipe closed");
+
+            int writePosition = (this.readPosition + this.size) % this.buffer.length;
+            int number = Math.min(len, Math.min(this.buffer.length - this.size,
+                    this.buffer.length - writePosition));
+            System.arraycopy(b, off, this.buffer, writePosition, number);
+            this.size += number;
+            off += number;
+            len -= number;
+            this.notifyAll();
+        }
+    }
+
+    /**
+     * Close both ends - readers and writers fail.
+     */
+    synchronized void close() {
+        this.inputClosed = true;
+        this.outputClosed = true;
+        this.notifyAll();
+    }
+
+    private synchronized void closeInput() {
+        this.inputClosed = true;
+        this.notifyAll();
+    }
+
+    private synchronized void closeOutput() {
+        this.outputClosed = true;
+        this.notifyAll();
+    }
+
+    // called with lock on this
+    private void await() throws IOException {
+        try {
+            this.wait();
+        } catch (InterruptedException e) {
+            throw new IOException("interrupted while waiting on pipe");
+        }
+    }
+
+    private class PipeInputStream extends InputStream {
+        @Override
+        public int read() throws IOException {
+            byte[] oneByte = new byte[1];
+            int read = this.read(oneByte, 0, 1);
+            return read < 0 ? -1 : oneByte[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            return InMemoryPipe.this.read(b, off, len);
+        }
+
+        @Override
+        public int available() {
+            synchronized (InMemoryPipe.this) {
+                return InMemoryPipe.this.size;
+            }
+        }
+
+        @Override
+        public void close() {
+            InMemoryPipe.this.closeInput();
+        }
+    }
+
+    private class PipeOutputStream extends OutputStream {
+        @Override
+        public void write(int b) throws IOException {
+            this.write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            InMemoryPipe.this.write(b, off, len);
+        }
+
+        @Override
+        public void close() {
+            InMemoryPipe.this.closeOutput();
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package net.sharksystem.hub.benchmarks;
+
+import java.util.Arrays;
+
+/**
+ * Collects latencies (in nanoseconds) and reports percentiles.
+ */
+class LatencyRecorder {
+    private final String name;
+    private long[] values = new long[1024];
+    private int size = 0;
+
+    LatencyRecorder(String name) {
+        this.name = name;
+    }
+
+    synchronized void record(long nanos) {
+        if(this.size == this.values.length) {
+            this.values = Arrays.copyOf(this.values, this.size * 2);
+        }
+        this.values[this.size++] = nanos;
+    }
+
+    synchronized int count() {
+        return this.size;
+    }
+
+    /**
+     * @return e.g. "connect (1200): p50 3.1 ms, p90 5.0 ms, p99 12.7 ms, max 40.2 ms"
+     */
+    synchronized String report() {
+        if(this.size == 0) return this.name + " (0): no values";
+
+        long[] sorted = Arrays.copyOf(this.values, this.size);
+        Arrays.sort(sorted);
+
+        StringBuilder sb = new StringBuilder();
+        sb.append(this.name).append(" (").append(this.size).append("): ");
+        sb.append("p50 ").append(inMillis(percentile(sorted, 50))).append(", ");
+        sb.append("p90 ").append(inMillis(percentile(sorted, 90))).append(", ");
+        sb.append("p99 ").append(inMillis(percentile(sorted, 99))).append(", ");
+        sb.append("p99.9 ").append(inMillis(percentile(sorted, 99.9))).append(", ");
+        sb.append("max ").append(inMillis(sorted[sorted.length - 1]));
+        return sb.toString();
+    }
+
+    static long percentile(long[] sorted, double percentile) {
+        int index = (int) Math.ceil(percentile / 100 * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+    }
+
+    private static String inMillis(long nanos) {
+        return String.format("%.1f ms", nanos / 1000000.0);
+    }
+}
@@ -80,6 +80,49 @@ public interface Connector {
      */
     void hubStatusRPLY(HubPDUHubStatusRPLY pdu);
 
+    /**
+     * Send from peer to hub and asks for changes of registered peers since a registry version
+     * @param pdu
+     */
+    void hubStatusDeltaRQ(HubPDUHubStatusDeltaRQ pdu);
+
+    /**
+     * Send from hub to peer. Contains registry version and added / removed peers since version peer asked for.
+     * @param pdu
+     */
+    void hubStatusDeltaRPLY(HubPDUHubStatusDeltaRPLY pdu);
+
+    /**
+     * Send from peer to hub. Peer (un-)subscribes for changes of registered peers. Hub sends hub status delta
+     * replies on its own if subscribed.
+     * @param pdu
+     */
+    void hubStatusSubscribe(HubPDUHubStatusSubscribe pdu);
+
+    /**
+     * Send in both directions. Frame of a multiplexed data session on the shared channel.
+     * @param pdu
+     */
+    void streamFrame(HubPDUStreamFrame pdu);
+
+    /**
+     * Send from peer to hub. Data sessions on the shared channel are framed and end with an explicit end of data.
+     * @param pdu
+     */
+    void framedDataSessions(HubPDUFramedDataSessions pdu);
+
+    /**
+     * Send from peer to hub to ask for a wire format and from hub to peer to confirm it.
+     * @param pdu
+     */
+    void wireFormat(HubPDUWireFormat pdu);
+
+    /**
+     * Send from peer to hub. Peer side can connect to the data port of the hub and present a token.
+     * @param pdu
+     */
+    void dataPortTokens(HubPDUDataPortTokens pdu);
+
     /**
      * Called from connector engine - connection is closed
      * @param unregister
@@ -87,10 +130,10 @@ public interface Connector {
     void connectorSessionEnded(boolean unregister);
 
     /**
-     * called when the connector thread was created.
-     * @param connectorThread
+     * called when the connector session was started.
+     * @param connectorSession
      */
-    void connectorSessionStarted(ConnectorThread connectorThread);
+    void connectorSessionStarted(ConnectorSession connectorSession);
 
     CharSequence getPeerID();
 
@@ -1,25 +1,37 @@
 package net.sharksystem.hub;
 
 import net.sharksystem.hub.peerside.HubConnectorStatusListener;
+import net.sharksystem.hub.protocol.ConnectorSession;
+import net.sharksystem.hub.protocol.ConnectorSessionFactory;
 import net.sharksystem.hub.protocol.ConnectorThread;
 import net.sharksystem.hub.protocol.HubPDU;
+import net.sharksystem.hub.protocol.HubPDUReader;
+import net.sharksystem.hub.protocol.HubPDUWriter;
+import net.sharksystem.hub.utils.HubThreads;
 import net.sharksystem.utils.Log;
 
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
-import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadFactory;
 
 /**
  * Root class of all connector implementations.
  */
 public abstract class ConnectorImpl implements Connector {
-    private ConnectorThread connectorThread = null;
+    private ConnectorSession connectorSession = null;
+    private ConnectorSessionFactory connectorSessionFactory = null;
+    private ThreadFactory threadFactory = HubThreads.platformThreadFactory();
 
     private final InputStream is;
     private final OutputStream os;
+    private final HubPDUWriter pduWriter;
+    private final HubPDUReader pduReader;
 
     private Set<HubConnectorStatusListener> statusListener = new HashSet<>();
     private int timeoutInMillis = DEFAULT_TIMEOUT_IN_MILLIS;
@@ -38,9 +50,12 @@ public abstract class ConnectorImpl implements Connector {
         }
     }
 
-    protected void notifyListenerSynced(boolean changed) {
+    /**
+     * @param polled answer to a status request - pushed by hub otherwise
+     */
+    protected void notifyListenerSynced(boolean changed, boolean polled) {
         for(HubConnectorStatusListener listener : this.statusListener) {
-            listener.notifySynced(this, changed);
+            listener.notifySynced(this, changed, polled);
         }
     }
 
@@ -57,6 +72,8 @@ public abstract class ConnectorImpl implements Connector {
         this.os = os;
 
         if(this.is == null || this.os == null) throw new ASAPHubException("streams must not be null");
+        this.pduWriter = new HubPDUWriter(this.os);
+        this.pduReader = new HubPDUReader(this.is);
     }
 
     public OutputStream getOutputStream() {
@@ -66,13 +83,61 @@ public abstract class ConnectorImpl implements Connector {
         return this.is;
     }
 
+    /**
+     * @return writer that sends PDUs with a single write on this connector's output stream
+     */
+    protected HubPDUWriter getPDUWriter() {
+        return this.pduWriter;
+    }
+
+    /**
+     * @return reader of PDUs from this connector's input stream - pass it to connector sessions
+     */
+    public HubPDUReader getPDUReader() {
+        return this.pduReader;
+    }
+
     protected void pduNotHandled(HubPDU pdu) {
         Log.writeLog(this, "pdu is not handled in this implementation: " + pdu);
     }
 
-    public void connectorSessionStarted(ConnectorThread connectorThread) {
-        Log.writeLog(this, "connector thread running");
-        this.connectorThread = connectorThread;
+    /**
+     * Define how connector sessions are created when this connector (re-)starts its connector protocol.
+     * A connector thread is created by default.
+     * @param connectorSessionFactory
+     */
+    public void setConnectorSessionFactory(ConnectorSessionFactory connectorSessionFactory) {
+        this.connectorSessionFactory = connectorSessionFactory;
+    }
+
+    protected ConnectorSession createConnectorSession() {
+        if(this.connectorSessionFactory != null) {
+            return this.connectorSessionFactory.createConnectorSession(this, this.pduReader);
+        }
+
+        return new ConnectorThread(this, this.pduReader, this.threadFactory);
+    }
+
+    /**
+     * Set factory for any thread this connector starts: connector threads, alarm clocks, synchronization after
+     * data sessions etc. Platform threads are default.
+     * @param threadFactory
+     */
+    public void setThreadFactory(ThreadFactory threadFactory) {
+        this.threadFactory = threadFactory;
+    }
+
+    public ThreadFactory getThreadFactory() {
+        return this.threadFactory;
+    }
+
+    protected void startThread(Runnable runnable) {
+        this.threadFactory.newThread(runnable).start();
+    }
+
+    public void connectorSessionStarted(ConnectorSession connectorSession) {
+        Log.writeLog(this, "connector session running");
+        this.connectorSession = connectorSession;
         this.resumedConnectorProtocol();
         this.notifyListenerConnectedAndOpen();
     }
@@ -80,8 +145,8 @@ public abstract class ConnectorImpl implements Connector {
     protected abstract void resumedConnectorProtocol();
 
     public void connectorSessionEnded(boolean noRecovery) {
-        Log.writeLog(this, this.toString(), "connector thread ended");
-        this.connectorThread = null;
+        Log.writeLog(this, this.toString(), "connector session ended");
+        this.connectorSession = null;
 
         if(noRecovery) this.connectionLost();
     }
@@ -91,52 +156,53 @@ public abstract class ConnectorImpl implements Connector {
      */
     abstract protected void connectionLost();
 
-    protected ConnectorThread getConnectorThread() throws ASAPHubException {
-        if(this.connectorThread == null) throw new ASAPHubException("no connector thread");
-        return this.connectorThread;
+    protected ConnectorSession getConnectorSession() throws ASAPHubException {
+        if(this.connectorSession == null) throw new ASAPHubException("no connector session");
+        return this.connectorSession;
     }
 
     public abstract CharSequence getPeerID();
 
-    Set<Byte> blockedCommands = new HashSet<>();
-    List<Thread> blockedThreads = new ArrayList<>();
+    private final PDUWaiters pduWaiters = new PDUWaiters();
+    private final Map<Byte, CompletableFuture<HubPDU>> preparedWaits = new HashMap<>(); // guarded by itself
 
     public void notifyPDUReceived(HubPDU hubPDU) {
-//        Log.writeLog(this, "remove block: " + hubPDU.getCommand() + " | " + this.blockedCommands);
-        this.blockedCommands.remove(hubPDU.getCommand());
-//        Log.writeLog(this, "removed block: " + this.blockedCommands);
-
+        this.pduWaiters.received(hubPDU);
+    }
 
-        for(Thread blockedThread : this.blockedThreads) {
-            blockedThread.interrupt();
-        }
+    /**
+     * @param pduCommand e.g. {@link HubPDU#HUB_STATUS_REPLY} - a hub status delta reply completes it as well
+     * @return completes with next received PDU of this type - or a TimeoutException after connector time out.
+     * It completes on the thread that received the PDU - callbacks must not block.
+     */
+    public CompletableFuture<HubPDU> awaitPDU(byte pduCommand) {
+        return this.pduWaiters.expect(pduCommand, this.timeoutInMillis);
     }
 
     public void prepareBlockUntilReceived(byte pduCommand) {
-//        Log.writeLog(this, "prepare block: " + pduCommand);
-        this.blockedCommands.add(pduCommand);
-//        Log.writeLog(this, "added block: " + this.blockedCommands);
+        synchronized (this.preparedWaits) {
+            CompletableFuture<HubPDU> prepared = this.preparedWaits.get(pduCommand);
+            if(prepared == null || prepared.isDone()) this.preparedWaits.put(pduCommand, this.awaitPDU(pduCommand));
+        }
     }
 
+    /**
+     * Block until a PDU of this type is received or connector time out is over. Returns immediately if no such PDU
+     * is expected, see {@link #prepareBlockUntilReceived(byte)}.
+     */
     public void blockUntilReceived(byte pduCommand) {
-        Log.writeLog(this, "block: " + pduCommand);
-        for(;;) {
-            if (this.blockedCommands.contains(pduCommand)) {
-                // block
-                try {
-                    this.blockedThreads.add(Thread.currentThread());
-                    Log.writeLog(this, "wait: " + pduCommand);
-                    Thread.sleep(this.timeoutInMillis);
-                    Log.writeLog(this, "leave after timeout: " + pduCommand);
-                    return;
-                } catch (InterruptedException e) {
-                    // woke up - do it again
-                    Log.writeLog(this, "woke up from blocking " + pduCommand);
-                }
-            } else {
-                Log.writeLog(this, "leave: " + pduCommand);
-                return; // leave
-            }
+        CompletableFuture<HubPDU> prepared;
+        synchronized (this.preparedWaits) {
+            prepared = this.preparedWaits.get(pduCommand);
+        }
+        if(prepared == null) return;
+
+        try {
+            prepared.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            Log.writeLog(this, "leave after timeout: " + pduCommand);
         }
     }
 
@@ -0,0 +1,234 @@
+package net.sharksystem.hub;
+
+import net.sharksystem.asap.ASAPException;
+import net.sharksystem.asap.utils.ASAPSerialization;
+import net.sharksystem.streams.StreamPair;
+import net.sharksystem.streams.StreamPairListenerManager;
+import net.sharksystem.utils.Log;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Stream pair of a framed data session on the shared channel - or on a data connection that is used again for
+ * later encounters. Data are sent in chunks, each prefixed with its length. An empty chunk marks the end of data
+ * of one side.
+ * <br/><br/>
+ * Closing this stream pair (or its output stream) sends the end mark and reads (and drops) data from the other side
+ * until its end mark arrived. Both sides have read everything the other side has written at that point - channel is
+ * in sync and can go back to connector protocol right away.
+ */
+public class FramedDataSessionStreamPair extends StreamPairListenerManager implements StreamPair {
+    private static final int MAX_CHUNK_SIZE = 64 * 1024;
+
+    /**
+     * Owns the channel - gets it back when both sides sent their end of data.
+     */
+    public interface Owner {
+        /**
+         * This side closed the session - owner calls {@link #drain()} on a thread of its own.
+         */
+        void framedDataSessionClosing(FramedDataSessionStreamPair streamPair);
+
+        /**
+         * Both sides sent their end of data - channel is in sync.
+         */
+        void framedDataSessionEnded(FramedDataSessionStreamPair streamPair);
+    }
+
+    private final Owner owner;
+    private final InputStream channelIS;
+    private final OutputStream channelOS;
+    private final CharSequence sessionID;
+
+    private final InputStream inputStream = new FramedInputStream();
+    private final OutputStream outputStream = new FramedOutputStream();
+
+    private final Object readLock = new Object();
+    private int remainingInChunk = 0; // guarded by read lock
+    private boolean endReceived = false; // guarded by read lock
+    private boolean inputClosed = false;
+
+    private boolean endSent = false; // guarded by channel output stream
+    private boolean ended = false; // guarded by this
+
+    public FramedDataSessionStreamPair(Owner owner,
+                                InputStream channelIS, OutputStream channelOS, CharSequence sessionID) {
+        this.owner = owner;
+        this.channelIS = channelIS;
+        this.channelOS = channelOS;
+        this.sessionID = sessionID;
+    }
+
+    /**
+     * @return number of bytes read - -1 if other side sent its end mark
+     */
+    private int readChunk(byte[] b, int off, int len) throws IOException {
+        synchronized (this.readLock) {
+            if(this.endReceived) return -1;
+
+            if(this.remainingInChunk == 0) {
+                try {
+                    this.remainingInChunk = ASAPSerialization.readIntegerParameter(this.channelIS);
+                } catch (ASAPException e) {
+                    throw new IOException(e.getLocalizedMessage());
+                }
+                if(this.remainingInChunk < 0) throw new IOException("malformed chunk: " + this.remainingInChunk);
+                if(this.remainingInChunk == 0) {
+                    this.endReceived = true;
+                    return -1;
+                }
+            }
+
+            int read = this.channelIS.read(b, off, Math.min(len, this.remainingInChunk));
+            if(read < 0) throw new IOException("channel closed during data session");
+            this.remainingInChunk -= read;
+            return read;
+        }
+    }
+
+    private void writeChunk(byte[] b, int off, int len) throws IOException {
+        synchronized (this.channelOS) {
+            if(this.endSent) throw new IOException("data session closed");
+            ASAPSerialization.writeIntegerParameter(len, this.channelOS);
+            this.channelOS.write(b, off, len);
+        }
+    }
+
+    /**
+     * Send end mark - if not already done.
+     * @return true if called first time
+     */
+    private boolean sendEnd() {
+        synchronized (this.channelOS) {
+            if(this.endSent) return false;
+            this.endSent = true;
+            try {
+                ASAPSerialization.writeIntegerParameter(0, this.channelOS);
+            } catch (IOException e) {
+                Log.writeLog(this, this.toString(), "cannot send end of data: " + e.getLocalizedMessage());
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Read remaining data from other side until its end mark. Runs after this side sent its end mark.
+     * @return false if channel broke before end mark - it is out of sync
+     */
+    public boolean drain() {
+        byte[] buffer = new byte[MAX_CHUNK_SIZE];
+        try {
+            while(this.readChunk(buffer, 0, buffer.length) >= 0);
+        } catch (IOException e) {
+            Log.writeLog(this, this.toString(), "channel broken while draining data session: "
+                    + e.getLocalizedMessage());
+            return false; // shared channel: connector will run into its sync time out
+        }
+
+        synchronized (this) {
+            if(this.ended) return true;
+            this.ended = true;
+        }
+        this.notifyAllListenerClosed(this, String.valueOf(this.sessionID));
+        this.owner.framedDataSessionEnded(this);
+        return true;
+    }
+
+    @Override
+    public InputStream getInputStream() {
+        return this.inputStream;
+    }
+
+    @Override
+    public OutputStream getOutputStream() {
+        return this.outputStream;
+    }
+
+    /**
+     * End data session. Other side is told and remaining data are dropped.
+     */
+    @Override
+    public void close() {
+        this.inputClosed = true;
+        if(this.sendEnd()) {
+            this.owner.framedDataSessionClosing(this);
+        }
+    }
+
+    @Override
+    public CharSequence getSessionID() {
+        return this.sessionID;
+    }
+
+    @Override
+    public CharSequence getEndpointAddress() {
+        return null;
+    }
+
+    public String toString() {
+        return "framed data session " + this.sessionID;
+    }
+
+    private class FramedInputStream extends InputStream {
+        @Override
+        public int read() throws IOException {
+            byte[] oneByte = new byte[1];
+            int read;
+            do {
+                read = this.read(oneByte, 0, 1);
+            } while(read == 0);
+            return read < 0 ? -1 : oneByte[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if(FramedDataSessionStreamPair.this.inputClosed) throw new IOException("data session closed");
+            if(len == 0) return 0;
+            return FramedDataSessionStreamPair.this.readChunk(b, off, len);
+        }
+
+        @Override
+        public int available() throws IOException {
+            synchronized (FramedDataSessionStreamPair.this.readLock) {
+                if(FramedDataSessionStreamPair.this.endReceived) return 0;
+                return Math.min(FramedDataSessionStreamPair.this.remainingInChunk,
+                        FramedDataSessionStreamPair.this.channelIS.available());
+            }
+        }
+
+        @Override
+        public void close() {
+            // nobody reads any longer - other side cannot be heard: end session
+            FramedDataSessionStreamPair.this.close();
+        }
+    }
+
+    private class FramedOutputStream extends OutputStream {
+        @Override
+        public void write(int b) throws IOException {
+            this.write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while(len > 0) {
+                int chunkSize = Math.min(len, MAX_CHUNK_SIZE);
+                FramedDataSessionStreamPair.this.writeChunk(b, off, chunkSize);
+                off += chunkSize;
+                len -= chunkSize;
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            FramedDataSessionStreamPair.this.channelOS.flush();
+        }
+
+        @Override
+        public void close() {
+            FramedDataSessionStreamPair.this.close();
+        }
+    }
+}
@@ -0,0 +1,320 @@
+package net.sharksystem.hub;
+
+import net.sharksystem.hub.protocol.HubPDUStreamFrame;
+import net.sharksystem.streams.StreamPair;
+import net.sharksystem.streams.StreamPairListenerManager;
+import net.sharksystem.utils.Log;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+
+/**
+ * Stream pair of a multiplexed data session. Bytes are sent as data frames over the shared channel of its
+ * connector. Received data frames are buffered until read by application.
+ * <br/><br/>
+ * Flow control: Sender never sends more bytes than receiver granted - buffer cannot grow beyond initial window.
+ * Receiver grants more when application consumed at least half of it. A slow reader slows down its sender only -
+ * other streams on the same channel are not affected.
+ * <br/><br/>
+ * Closing output stream ends sending direction (a close frame is sent). Received close frame ends input stream
+ * after buffered bytes are read. Stream pair is gone when both directions are closed and no received byte is left
+ * unread - a relay linked to this pair must not be stopped before it passed on what it got.
+ */
+class MultiplexedStreamPair extends StreamPairListenerManager implements StreamPair {
+    private final SharedChannelConnectorImpl connector;
+    private final int streamID;
+    private final CharSequence sessionID;
+    private final CharSequence endpointAddress;
+
+    private final Deque<byte[]> received = new ArrayDeque<>(); // guarded by this
+    private int receivedOffset = 0; // read position in first array
+    private int bufferedBytes = 0;
+    private int consumedNotGranted = 0;
+    private boolean remoteClosed = false;
+    private boolean inputClosed = false;
+    private boolean ended = false;
+
+    private int sendWindow = HubPDUStreamFrame.INITIAL_WINDOW; // guarded by this
+    private boolean outputClosed = false;
+
+    private final InputStream inputStream = new MultiplexedInputStream();
+    private final OutputStream outputStream = new MultiplexedOutputStream();
+
+    MultiplexedStreamPair(SharedChannelConnectorImpl connector, int streamID,
+                          CharSequence sessionID, CharSequence endpointAddress) {
+        this.connector = connector;
+        this.streamID = streamID;
+        this.sessionID = sessionID;
+        this.endpointAddress = endpointAddress;
+    }
+
+    int getStreamID() {
+        return this.streamID;
+    }
+
+    /////////////////////////////////////////////////////////////////////////////////////////////////////////
+    //                                  frames - called by connector                                       //
+    /////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * @return false if other side sent more than granted - protocol violation
+     */
+    boolean dataReceived(byte[] data) {
+        synchronized (this) {
+            if(this.remoteClosed) return true; // too late - ignore
+            if(this.bufferedBytes + data.length > HubPDUStreamFrame.INITIAL_WINDOW) return false;
+
+            if(!this.inputClosed) {
+                this.received.add(data);
+                this.bufferedBytes += data.length;
+                this.notifyAll();
+                return true;
+            }
+
+            // nobody reads any longer - take it as read
+            this.consumed(data.length);
+        }
+        // called by connector thread - it must not wait for shared channel, it is needed to read from it
+        int increment = this.takeIncrement();
+        if(increment > 0) this.connector.startThread(() -> this.grant(increment));
+        return true;
+    }
+
+    synchronized void windowReceived(int windowIncrement) {
+        this.sendWindow += windowIncrement;
+        this.notifyAll();
+    }
+
+    void closeReceived() {
+        synchronized (this) {
+            this.remoteClosed = true;
+            this.notifyAll();
+        }
+        this.removeIfDone();
+    }
+
+    /**
+     * Channel is gone - nothing can be sent or received any longer.
+     */
+    void channelClosed() {
+        synchronized (this) {
+            this.remoteClosed = true;
+            this.outputClosed = true;
+            this.notifyAll();
+            if(this.ended) return;
+            this.ended = true;
+        }
+        this.notifyAllListenerClosed(this, String.valueOf(this.sessionID));
+    }
+
+    /////////////////////////////////////////////////////////////////////////////////////////////////////////
+    //                                          internals                                                  //
+    /////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    // called with lock on this - grant is sent after lock is released, see takeIncrement
+    private void consumed(int number) {
+        this.consumedNotGranted += number;
+    }
+
+    /**
+     * @return window increment to be granted - 0 if not enough was consumed yet
+     */
+    private synchronized int takeIncrement() {
+        if(this.remoteClosed) return 0;
+        if(this.consumedNotGranted < HubPDUStreamFrame.INITIAL_WINDOW / 2) return 0;
+
+        int increment = this.consumedNotGranted;
+        this.consumedNotGranted = 0;
+        return increment;
+    }
+
+    // do not hold lock on this while waiting for shared channel
+    private void grant(int increment) {
+        if(increment == 0) return;
+        try {
+            this.connector.sendStreamFrame(HubPDUStreamFrame.window(this.streamID, increment));
+        } catch (IOException e) {
+            Log.writeLog(this, this.toString(), "cannot send window frame: " + e.getLocalizedMessage());
+        }
+    }
+
+    private void closeOutput() {
+        synchronized (this) {
+            if(this.outputClosed) return;
+            this.outputClosed = true;
+            this.notifyAll();
+        }
+        try {
+            this.connector.sendStreamFrame(HubPDUStreamFrame.close(this.streamID));
+        } catch (IOException e) {
+            Log.writeLog(this, this.toString(), "cannot send close frame: " + e.getLocalizedMessage());
+        }
+        this.removeIfDone();
+    }
+
+    private void closeInput() {
+        synchronized (this) {
+            if(this.inputClosed) return;
+            this.inputClosed = true;
+            // other side can send what it has - drop it
+            int dropped = this.bufferedBytes;
+            this.received.clear();
+            this.bufferedBytes = 0;
+            this.receivedOffset = 0;
+            this.consumed(dropped);
+            this.notifyAll();
+        }
+        this.grant(this.takeIncrement());
+        this.removeIfDone();
+    }
+
+    private synchronized int available() {
+        return this.bufferedBytes;
+    }
+
+    private void removeIfDone() {
+        synchronized (this) {
+            if(this.ended || !this.outputClosed || !this.remoteClosed) return;
+            if(!this.inputClosed && this.bufferedBytes > 0) return; // application still reads
+            this.ended = true;
+        }
+        this.connector.multiplexedStreamEnded(this);
+        this.notifyAllListenerClosed(this, String.valueOf(this.sessionID));
+    }
+
+    /////////////////////////////////////////////////////////////////////////////////////////////////////////
+    //                                           stream pair                                               //
+    /////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    @Override
+    public InputStream getInputStream() {
+        return this.inputStream;
+    }
+
+    @Override
+    public OutputStream getOutputStream() {
+        return this.outputStream;
+    }
+
+    @Override
+    public void close() {
+        this.closeInput();
+        this.closeOutput();
+    }
+
+    @Override
+    public CharSequence getSessionID() {
+        return this.sessionID;
+    }
+
+    @Override
+    public CharSequence getEndpointAddress() {
+        return this.endpointAddress;
+    }
+
+    public String toString() {
+        return "stream #" + this.streamID + " (" + this.sessionID + ")";
+    }
+
+    private class MultiplexedInputStream extends InputStream {
+        @Override
+        public int read() throws IOException {
+            byte[] oneByte = new byte[1];
+            int read = this.read(oneByte, 0, 1);
+            return read < 0 ? -1 : oneByte[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if(len == 0) return 0;
+            MultiplexedStreamPair pair = MultiplexedStreamPair.this;
+            int read = this.readBuffered(b, off, len);
+            if(read > 0) pair.grant(pair.takeIncrement());
+            // last byte read - pair could be done now
+            if(read < 0 || pair.available() == 0) pair.removeIfDone();
+            return read;
+        }
+
+        private int readBuffered(byte[] b, int off, int len) throws IOException {
+            MultiplexedStreamPair pair = MultiplexedStreamPair.this;
+            synchronized (pair) {
+                while(pair.bufferedBytes == 0) {
+                    if(pair.inputClosed) throw new IOException("stream closed");
+                    if(pair.remoteClosed) return -1;
+                    try {
+                        pair.wait();
+                    } catch (InterruptedException e) {
+                        throw new IOException("interrupted while waiting for data");
+                    }
+                }
+
+                int read = 0;
+                while(read < len && !pair.received.isEmpty()) {
+                    byte[] first = pair.received.peek();
+                    int number = Math.min(len - read, first.length - pair.receivedOffset);
+                    System.arraycopy(first, pair.receivedOffset, b, off + read, number);
+                    read += number;
+                    pair.receivedOffset += number;
+                    if(pair.receivedOffset == first.length) {
+                        pair.received.poll();
+                        pair.receivedOffset = 0;
+                    }
+                }
+                pair.bufferedBytes -= read;
+                pair.consumed(read);
+                return read;
+            }
+        }
+
+        @Override
+        public int available() {
+            return MultiplexedStreamPair.this.available();
+        }
+
+        @Override
+        public void close() {
+            MultiplexedStreamPair.this.closeInput();
+        }
+    }
+
+    private class MultiplexedOutputStream extends OutputStream {
+        @Override
+        public void write(int b) throws IOException {
+            this.write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            MultiplexedStreamPair pair = MultiplexedStreamPair.this;
+            while(len > 0) {
+                int number;
+                synchronized (pair) {
+                    while(pair.sendWindow == 0 && !pair.outputClosed) {
+                        try {
+                            pair.wait();
+                        } catch (InterruptedException e) {
+                            throw new IOException("interrupted while waiting for window");
+                        }
+                    }
+                    if(pair.outputClosed) throw new IOException("stream closed");
+                    number = Math.min(len, Math.min(pair.sendWindow, HubPDUStreamFrame.MAX_DATA_LENGTH));
+                    pair.sendWindow -= number;
+                }
+                // do not hold this lock while waiting for shared channel
+                pair.connector.sendStreamFrame(
+                        HubPDUStreamFrame.data(pair.streamID, Arrays.copyOfRange(b, off, off + number)));
+                off += number;
+                len -= number;
+            }
+        }
+
+        @Override
+        public void close() {
+            MultiplexedStreamPair.this.closeOutput();
+        }
+    }
+}
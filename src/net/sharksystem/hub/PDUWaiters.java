@@ -0,0 +1,70 @@
+package net.sharksystem.hub;
+
+import net.sharksystem.hub.protocol.HubPDU;
+import net.sharksystem.hub.utils.HashedWheelTimer;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Waiters for PDUs of a type. A received PDU completes exactly the waiters for its type - nobody else is woken up.
+ * Each waiter has a time out. Waiters are removed when they complete - by PDU, time out or cancellation.
+ * <br/><br/>
+ * Waiters are completed on the thread that received the PDU. Callbacks must not block.
+ */
+class PDUWaiters {
+    private final Map<Byte, List<CompletableFuture<HubPDU>>> waiters = new HashMap<>(); // guarded by this
+    private volatile int numberWaiters = 0;
+
+    /**
+     * @return completes with next PDU of this type - or a TimeoutException
+     */
+    CompletableFuture<HubPDU> expect(byte pduCommand, long timeoutInMillis) {
+        CompletableFuture<HubPDU> waiter = new CompletableFuture<>();
+        synchronized(this) {
+            this.waiters.computeIfAbsent(pduCommand, command -> new ArrayList<>()).add(waiter);
+            this.numberWaiters++;
+        }
+
+        HashedWheelTimer.Timeout timeout = HashedWheelTimer.getHubTimer().schedule(timeoutInMillis,
+                () -> waiter.completeExceptionally(new TimeoutException("no pdu received: " + pduCommand)));
+        waiter.whenComplete((pdu, e) -> {
+            timeout.cancel();
+            this.remove(pduCommand, waiter);
+        });
+        return waiter;
+    }
+
+    void received(HubPDU hubPDU) {
+        if(this.numberWaiters == 0) return; // most PDUs - nobody waits
+
+        this.complete(hubPDU.getCommand(), hubPDU);
+        // a delta reply answers a status request as well
+        if(hubPDU.getCommand() == HubPDU.HUB_STATUS_DELTA_REPLY) this.complete(HubPDU.HUB_STATUS_REPLY, hubPDU);
+    }
+
+    synchronized int size() {
+        return this.numberWaiters;
+    }
+
+    private void complete(byte pduCommand, HubPDU hubPDU) {
+        List<CompletableFuture<HubPDU>> completed;
+        synchronized(this) {
+            completed = this.waiters.remove(pduCommand);
+            if(completed == null) return;
+            this.numberWaiters -= completed.size();
+        }
+        for(CompletableFuture<HubPDU> waiter : completed) waiter.complete(hubPDU);
+    }
+
+    private synchronized void remove(byte pduCommand, CompletableFuture<HubPDU> waiter) {
+        List<CompletableFuture<HubPDU>> pending = this.waiters.get(pduCommand);
+        if(pending == null || !pending.remove(waiter)) return; // completed by pdu
+        this.numberWaiters--;
+        if(pending.isEmpty()) this.waiters.remove(pduCommand);
+    }
+}
@@ -0,0 +1,119 @@
+package net.sharksystem.hub;
+
+import net.sharksystem.asap.utils.PeerIDHelper;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Peer id as key of hub registries. Peer ids arrive as any kind of CharSequence - String and StringBuilder with
+ * same characters are not equal in a hash map. A PeerId is immutable and compares by its characters, like
+ * {@link PeerIDHelper#sameID(CharSequence, CharSequence)}. Hash code is computed once.
+ * <br/><br/>
+ * Peer ids are interned: there is one PeerId object per id as long as it is used anywhere. Ids are decoded once
+ * from PDUs - a lookup is a hash map access without any conversion. Ids that are not used any longer are
+ * garbage collected.
+ * <br/><br/>
+ * A PeerId is a CharSequence - it can be passed wherever a peer id is expected.
+ */
+public final class PeerId implements CharSequence, Comparable<PeerId> {
+    private static final ConcurrentMap<String, InternedPeerId> interned = new ConcurrentHashMap<>();
+    private static final ReferenceQueue<PeerId> collected = new ReferenceQueue<>();
+
+    private static final class InternedPeerId extends WeakReference<PeerId> {
+        private final String id;
+
+        InternedPeerId(PeerId peerId) {
+            super(peerId, collected);
+            this.id = peerId.id;
+        }
+    }
+
+    private final String id;
+    private final int hash;
+
+    private PeerId(String id) {
+        this.id = id;
+        this.hash = id.hashCode();
+    }
+
+    /**
+     * @param peerID any peer id
+     * @return interned peer id - peerID itself if it already is one. Null if peerID is null
+     */
+    public static PeerId of(CharSequence peerID) {
+        if(peerID == null) return null;
+        if(peerID instanceof PeerId) return (PeerId) peerID;
+
+        expungeCollected();
+        String id = peerID.toString();
+        for(;;) {
+            InternedPeerId ref = interned.get(id);
+            PeerId peerId = ref != null ? ref.get() : null;
+            if(peerId != null) return peerId;
+
+            peerId = new PeerId(id);
+            InternedPeerId newRef = new InternedPeerId(peerId);
+            if(ref == null ? interned.putIfAbsent(id, newRef) == null : interned.replace(id, ref, newRef)) {
+                return peerId;
+            }
+            // another thread was faster - take its peer id
+        }
+    }
+
+    private static void expungeCollected() {
+        InternedPeerId ref;
+        while((ref = (InternedPeerId) collected.poll()) != null) interned.remove(ref.id, ref);
+    }
+
+    /**
+     * @return number of interned peer ids - including those which are about to be collected
+     */
+    static int internedSize() {
+        expungeCollected();
+        return interned.size();
+    }
+
+    @Override
+    public int length() {
+        return this.id.length();
+    }
+
+    @Override
+    public char charAt(int index) {
+        return this.id.charAt(index);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return this.id.subSequence(start, end);
+    }
+
+    @Override
+    public int compareTo(PeerId other) {
+        return this.id.compareTo(other.id);
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if(this == other) return true;
+        if(!(other instanceof PeerId)) return false;
+        PeerId otherPeerId = (PeerId) other;
+        return this.hash == otherPeerId.hash && this.id.equals(otherPeerId.id);
+    }
+
+    @Override
+    public int hashCode() {
+        return this.hash;
+    }
+
+    /**
+     * @return canonical form - the id as String
+     */
+    @Override
+    public String toString() {
+        return this.id;
+    }
+}
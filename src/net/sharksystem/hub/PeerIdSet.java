@@ -0,0 +1,56 @@
+package net.sharksystem.hub;
+
+import java.util.AbstractSet;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+
+/**
+ * Set of peer ids. Elements are kept as {@link PeerId} - any CharSequence can be added, looked up or removed.
+ * contains("Alice") and contains(new StringBuilder("Alice")) give same answer.
+ */
+public class PeerIdSet extends AbstractSet<CharSequence> {
+    private final Set<PeerId> peerIds;
+
+    public PeerIdSet() {
+        this.peerIds = new HashSet<>();
+    }
+
+    public PeerIdSet(Collection<? extends CharSequence> peerIDs) {
+        this.peerIds = new HashSet<>(Math.max((int) (peerIDs.size() / .75f) + 1, 16));
+        this.addAll(peerIDs);
+    }
+
+    @Override
+    public boolean add(CharSequence peerID) {
+        return this.peerIds.add(PeerId.of(peerID));
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return o instanceof CharSequence && this.peerIds.contains(PeerId.of((CharSequence) o));
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        return o instanceof CharSequence && this.peerIds.remove(PeerId.of((CharSequence) o));
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Iterator<CharSequence> iterator() {
+        // elements are PeerIds - read only view of them as CharSequences
+        return (Iterator<CharSequence>) (Iterator<? extends CharSequence>) this.peerIds.iterator();
+    }
+
+    @Override
+    public int size() {
+        return this.peerIds.size();
+    }
+
+    @Override
+    public void clear() {
+        this.peerIds.clear();
+    }
+}
@@ -5,20 +5,26 @@ import net.sharksystem.streams.StreamPair;
 import net.sharksystem.streams.StreamPairWrapper;
 import net.sharksystem.streams.WrappedStreamPairListener;
 import net.sharksystem.asap.utils.Helper;
+import net.sharksystem.hub.metrics.HubMetrics;
 import net.sharksystem.hub.protocol.*;
-import net.sharksystem.utils.AlarmClock;
+import net.sharksystem.hub.utils.HashedWheelTimer;
+import net.sharksystem.hub.utils.HubLog;
 import net.sharksystem.utils.AlarmClockListener;
-import net.sharksystem.utils.Log;
 
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Root class for all connector implementation (hub and peer side) using a shared channel.
  */
 public abstract class SharedChannelConnectorImpl extends ConnectorImpl
-        implements AlarmClockListener, WrappedStreamPairListener {
+        implements AlarmClockListener, WrappedStreamPairListener, FramedDataSessionStreamPair.Owner {
 
     public SharedChannelConnectorImpl(InputStream is, OutputStream os) throws ASAPHubException {
         super(is, os);
@@ -46,49 +52,59 @@ public abstract class SharedChannelConnectorImpl extends ConnectorImpl
     public static final int ALARM_CLOCK_DATA_SESSION = 2;
     public static final int ALARM_CLOCK_SYNC_TIMEOUT_SESSION = 3;
 
-    AlarmClock askedForSilenceClock = null;
-    AlarmClock inSilenceClock = null;
-    AlarmClock dataSessionClock = null;
-    AlarmClock syncTimeOutClock = null;
+    // deadlines are kept in a hub-wide timer wheel - no thread per alarm clock
+    HashedWheelTimer.Timeout askedForSilenceClock = null;
+    HashedWheelTimer.Timeout inSilenceClock = null;
+    HashedWheelTimer.Timeout dataSessionClock = null;
+    HashedWheelTimer.Timeout syncTimeOutClock = null;
+
+    private HashedWheelTimer.Timeout setAlarmClock(long duration, int key) {
+        return HashedWheelTimer.getHubTimer().schedule(duration, key, this);
+    }
 
     private void stopAlarmClocks() {
         if(this.askedForSilenceClock != null) {
-            this.askedForSilenceClock.kill();
+            this.askedForSilenceClock.cancel();
             this.askedForSilenceClock = null;
         }
         if(this.inSilenceClock != null) {
-            this.inSilenceClock.kill();
+            this.inSilenceClock.cancel();
             this.inSilenceClock = null;
         }
         if(this.dataSessionClock != null) {
-            this.dataSessionClock.kill();
+            this.dataSessionClock.cancel();
             this.dataSessionClock = null;
         }
         if(this.syncTimeOutClock != null) {
-            this.syncTimeOutClock.kill();
+            this.syncTimeOutClock.cancel();
             this.syncTimeOutClock = null;
         }
     }
 
     // alarm clock rings
     public void alarmClockRinging(int yourKey) {
-        Log.writeLog(this, this.toString(), "alarm clock is ringing...");
+        HubLog.debug(this, this, "alarm clock is ringing...");
+        if(this.isHubSide()) HubMetrics.getHubMetrics().timeout(yourKey);
+
         switch (yourKey) {
             case ALARM_CLOCK_ASK_SILENCE:
-                Log.writeLog(this, this.toString(), "... ended: asked for silence");
+                HubLog.debug(this, this, "... ended: asked for silence");
                 this.askedForSilenceClock = null;
                 break;
 
             case ALARM_CLOCK_CHANNEL_SILENCE:
-                Log.writeLog(this, this.toString(), "... ended: channel silence");
+                HubLog.debug(this, this, "... ended: channel silence");
                 this.inSilenceClock = null;
                 this.silenceEnded();
                 break;
 
             case ALARM_CLOCK_DATA_SESSION:
-                Log.writeLog(this, this.toString(), "... ended: data session");
+                HubLog.debug(this, this, "... ended: data session");
                 this.dataSessionClock = null;
-                if(this.wrappedDataSessionStreamPair != null) {
+                if(this.wrappedDataSessionStreamPair instanceof FramedDataSessionStreamPair) {
+                    // tell other side - no need to wait for its time out
+                    this.wrappedDataSessionStreamPair.close();
+                } else if(this.wrappedDataSessionStreamPair != null) {
                     // this cannot be null...
                     this.wrappedDataSessionStreamPair.close();
                     //this.wrappedDataSessionStreamPair = null; do not null it! it is done in sync
@@ -97,14 +113,14 @@ public abstract class SharedChannelConnectorImpl extends ConnectorImpl
                 break;
 
             case ALARM_CLOCK_SYNC_TIMEOUT_SESSION:
-                Log.writeLog(this, this.toString(), "... ended: synchronization time out");
+                HubLog.debug(this, this, "... ended: synchronization time out");
                 this.syncTimeOutClock = null;
-                Log.writeLog(this, this.toString(), "could not manage to get in sync with other side");
+                HubLog.debug(this, this, "could not manage to get in sync with other side");
                 this.fatalError();
                 //this.dataSessionEnded();
                 break;
 
-            default: Log.writeLogErr(this, this.toString(), "unknown alarm clock was ringing: " + yourKey);
+            default: HubLog.error(this, this, "unknown alarm clock was ringing: ", yourKey);
         }
     }
 
@@ -132,35 +148,46 @@ public abstract class SharedChannelConnectorImpl extends ConnectorImpl
 
     private boolean statusSynchronizing = false;
 
+    // metrics - hub side only
+    private long askedForSilenceAt = 0;
+    private long syncStartedAt = 0;
+
     protected abstract void dataSessionStarted(CharSequence targetPeerID, StreamPair streamPair);
 
     public final void askForSilence(long waitDuration) throws IOException, ASAPHubException {
         if(!this.statusHubConnectorProtocol()) throw new ASAPHubException("wrong status, cannot send silence RQ");
-        if(askedForSilenceClock != null) this.askedForSilenceClock.kill(); // kill..
-        this.askedForSilenceClock = new AlarmClock(waitDuration, ALARM_CLOCK_ASK_SILENCE, this); // ..and reset
-        (new HubPDUSilentRQ(waitDuration)).sendPDU(this.getOutputStream());
-        this.askedForSilenceClock.start();
+        if(askedForSilenceClock != null) this.askedForSilenceClock.cancel(); // kill..
+        this.askedForSilenceClock = this.setAlarmClock(waitDuration, ALARM_CLOCK_ASK_SILENCE); // ..and reset
+        this.askedForSilenceAt = System.nanoTime();
+        // other threads check status before they write - with stream lock taken by writer
+        this.getPDUWriter().write(new HubPDUSilentRQ(waitDuration));
     }
 
     public final void enterSilence(long waitDuration) throws ASAPHubException, IOException {
         if(!this.statusHubConnectorProtocol() && !this.statusAskedForSilence())
             throw new ASAPHubException("cannot enter silence mode - not in connector mode or asked for silence");
 
-        if(askedForSilenceClock != null) this.askedForSilenceClock.kill(); // kill - we in silence now
+        if(askedForSilenceClock != null) {
+            // kill - we in silence now
+            if(this.askedForSilenceClock.cancel() && this.isHubSide()) {
+                HubMetrics.getHubMetrics().silenceHandshake(System.nanoTime() - this.askedForSilenceAt);
+            }
+        }
 
         if(this.inSilenceClock != null) {
-            this.inSilenceClock.kill(); // kill - we in silence now
-            Log.writeLog(this, this.toString(), "already in silence mode - rewind clock");
+            this.inSilenceClock.cancel(); // kill - we in silence now
+            HubLog.debug(this, this, "already in silence mode - rewind clock");
         }
 
-        this.inSilenceClock = new AlarmClock(waitDuration, ALARM_CLOCK_CHANNEL_SILENCE, this);
-        this.inSilenceClock.start();
+        this.inSilenceClock = this.setAlarmClock(waitDuration, ALARM_CLOCK_CHANNEL_SILENCE);
 
         // thread waiting for data connection?
         if(this.threadWaitingForDataConnection != null) {
-            Log.writeLog(this, this.toString(), "wake thread that waits for data connection");
-            this.threadWaitingForDataConnection.interrupt();
-            this.threadWaitingForDataConnection = null;
+            HubLog.debug(this, this, "wake thread that waits for data connection");
+            // no interrupt - it would close a socket channel that thread could still be writing on
+            synchronized (this.silenceLock) {
+                this.silenceLock.notifyAll();
+            }
             // and give this thread a chance to wake up
             try {
                 Thread.sleep(1);
@@ -175,36 +202,41 @@ public abstract class SharedChannelConnectorImpl extends ConnectorImpl
 
     private void enterDataSession(ConnectionRequest connectionRequest, int timeout) {
         if(!this.statusInSilence()) {
-            Log.writeLogErr(this, this.toString(), "cannot enter data session - not in silence mode");
+            HubLog.error(this, this, "cannot enter data session - not in silence mode");
             return;
         }
 
         String sessionID = this.getID() + ":" + this.sessionCounter++;
 
-        Log.writeLog(this, this.toString(), "start new data session: " + sessionID);
-        this.wrappedDataSessionStreamPair = new StreamPairWrapper(
-                this.getInputStream(), this.getOutputStream(), this, sessionID);
+        HubLog.debug(this, this, "start new data session: ", sessionID);
+        if(this.framedDataSessions) {
+            this.wrappedDataSessionStreamPair = new FramedDataSessionStreamPair(
+                    this, this.getInputStream(), this.getOutputStream(), sessionID);
+        } else {
+            this.wrappedDataSessionStreamPair = new StreamPairWrapper(
+                    this.getInputStream(), this.getOutputStream(), this, sessionID);
+        }
 
-        // kill connector thread
+        // kill connector session
         try {
-            ConnectorThread connectorThread = this.getConnectorThread();
-            connectorThread.kill();
+            ConnectorSession connectorSession = this.getConnectorSession();
+            connectorSession.kill();
         } catch (ASAPHubException e) {
-            // no connector thread - should not happen but wouldn't be bad - we kill it anyway
+            // no connector session - should not happen but wouldn't be bad - we kill it anyway
         }
 
         // kill all other alarm clocks
         this.stopAlarmClocks();
 
-        Log.writeLog(this, this.toString(), "set data session timeout (ms): "
-                + this.getTimeOutDataConnection());
+        if(HubLog.isDebugEnabled()) {
+            HubLog.debug(this, this, "set data session timeout (ms): " + this.getTimeOutDataConnection());
+        }
 
         // set alarm clock
-        this.dataSessionClock = new AlarmClock(this.getTimeOutDataConnection(), ALARM_CLOCK_DATA_SESSION, this);
-        this.dataSessionClock.start();
+        this.dataSessionClock = this.setAlarmClock(this.getTimeOutDataConnection(), ALARM_CLOCK_DATA_SESSION);
 
-        // tell sub classes
-        this.dataSessionStarted(connectionRequest.targetPeerID, this.wrappedDataSessionStreamPair);
+        // tell sub classes - hub always asks target side for a data session: source is the other peer
+        this.dataSessionStarted(connectionRequest.sourcePeerID, this.wrappedDataSessionStreamPair);
     }
 
     private byte[] syncSequence;
@@ -212,13 +244,13 @@ public abstract class SharedChannelConnectorImpl extends ConnectorImpl
     public void channelClear(HubPDUChannelClear pdu) {
         // received clean channel pdu - launch data session
         if(!this.statusInSilence()) {
-            Log.writeLogErr(this, this.toString(), "received clear pdu but not silenced");
+            HubLog.error(this, this, "received clear pdu but not silenced");
         }
 
         // remember sync sequence
         this.syncSequence = pdu.syncSequence;
         /*
-        Log.writeLog(this, this.toString(), "synch sequence: ");
+        HubLog.debug(this, this, "synch sequence: ");
         ASAPSerialization.printByteArray(this.syncSequence);
          */
 
@@ -245,12 +277,12 @@ public abstract class SharedChannelConnectorImpl extends ConnectorImpl
         // create a sync sequence
         this.syncSequence = Helper.long2byteArray(System.currentTimeMillis());
         /*
-        Log.writeLog(this, this.toString(), "sync sequence: ");
+        HubLog.debug(this, this, "sync sequence: ");
         ASAPSerialization.printByteArray(this.syncSequence);
          */
 
         HubPDUChannelClear channelClear = new HubPDUChannelClear(sourcePeerID, targetPeerID, timeout, syncSequence);
-        channelClear.sendPDU(this.getOutputStream());
+        this.getPDUWriter().write(channelClear);
     }
 
     /*
@@ -280,26 +312,27 @@ public abstract class SharedChannelConnectorImpl extends ConnectorImpl
      */
     private void enterSyncAfterDataSession() {
         if(!this.statusInDataSession()) {
-            Log.writeLogErr(this, this.toString(), "cannot enter sync after data session - not in data session mode");
+            HubLog.error(this, this, "cannot enter sync after data session - not in data session mode");
             return;
         }
 
-        Log.writeLog(this, this.toString(), "enter sync status after data session");
+        HubLog.debug(this, this, "enter sync status after data session");
 
         this.stopAlarmClocks();
         this.statusSynchronizing = true;
+        this.syncStartedAt = System.nanoTime();
         this.wrappedDataSessionStreamPair = null; // nullify it - sign: we are no longer in data session
 
-        Log.writeLog(this, this.toString(), "wait a moment to ensure both ends stopped reading");
+        HubLog.debug(this, this, "wait a moment to ensure both ends stopped reading");
         try {
             Thread.sleep(this.getTimeOutSilenceChannel());
         } catch (InterruptedException e) {
             // ignore
         }
-        Log.writeLog(this, this.toString(), "hope that both ends stopped reading - start cleaning up stream");
+        HubLog.debug(this, this, "hope that both ends stopped reading - start cleaning up stream");
 
         if(this.syncSequence == null) {
-            Log.writeLogErr(this, this.toString(), "internal error, no sync sequence defined");
+            HubLog.error(this, this, "internal error, no sync sequence defined");
             // go ahead and hope for the best
             this.syncedAfterDataSession();
             return;
@@ -308,7 +341,7 @@ public abstract class SharedChannelConnectorImpl extends ConnectorImpl
         // send synchronization sequence
         OutputStream os = this.getOutputStream();
         try {
-            Log.writeLog(this, this.toString(), "write sync sequence");
+            HubLog.debug(this, this, "write sync sequence");
             //os.write(this.syncSequence);
 
             // write sync sequence - which is bytes from 0 .. number. two times
@@ -317,20 +350,25 @@ public abstract class SharedChannelConnectorImpl extends ConnectorImpl
                     os.write(i);
                 }
         } catch (IOException e) {
-            Log.writeLogErr(this, this.toString(), "fatal: output stream closed");
+            HubLog.error(this, this, "fatal: output stream closed");
             this.fatalError();
             return;
         }
 
-        Log.writeLog(this, this.toString(), "start sync reader");
-        (new SyncAfterDataSessionThread(this.toString())).start();
+        // other side might have reached its data session time out later - give it that time and a bit more
+        this.syncTimeOutClock = this.setAlarmClock(
+                2L * (this.getTimeOutDataConnection() + this.getTimeOutSilenceChannel()),
+                ALARM_CLOCK_SYNC_TIMEOUT_SESSION);
+
+        HubLog.debug(this, this, "start sync reader");
+        this.startThread(new SyncAfterDataSessionReader(this.toString()));
     }
 
     private int numberOfSyncBytes = 20;
 
-    private class SyncAfterDataSessionThread extends Thread {
+    private class SyncAfterDataSessionReader implements Runnable {
         private final String id;
-        SyncAfterDataSessionThread(String id) { this.id = id; }
+        SyncAfterDataSessionReader(String id) { this.id = id; }
         public void run() {
             try {
                 // sync with stream
@@ -351,25 +389,86 @@ public abstract class SharedChannelConnectorImpl extends ConnectorImpl
                 SharedChannelConnectorImpl.this.fatalError();
                 return;
             }
-            Log.writeLog(this, this.id, "in sync again");
+            HubLog.debug(this, this.id, "in sync again");
             SharedChannelConnectorImpl.this.syncedAfterDataSession();
         }
     }
 
     private void syncedAfterDataSession() {
-        Log.writeLog(this, this.toString(), "synchronized status after data session");
+        HubLog.debug(this, this, "synchronized status after data session");
 
         // synchronized again
+        if(this.syncTimeOutClock != null) {
+            this.syncTimeOutClock.cancel();
+            this.syncTimeOutClock = null;
+        }
         this.statusSynchronizing = false;
 
+        if(this.isHubSide() && this.syncStartedAt != 0) {
+            HubMetrics.getHubMetrics().syncAfterDataSession(System.nanoTime() - this.syncStartedAt);
+        }
+        this.syncStartedAt = 0;
+
         this.actionWhenBackFromDataSession();
     }
 
     protected abstract void actionWhenBackFromDataSession();
 
+    /////////////////////////////////////////////////////////////////////////////////////////////////////////
+    //                                        framed data sessions                                         //
+    /////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    private boolean framedDataSessions = false;
+
+    public boolean framedDataSessions() {
+        return this.framedDataSessions;
+    }
+
+    protected void setFramedDataSessions(boolean framedDataSessions) {
+        this.framedDataSessions = framedDataSessions;
+    }
+
+    @Override
+    public void framedDataSessions(HubPDUFramedDataSessions pdu) {
+        HubLog.debug(this, this, "other side asks for framed data sessions: ", pdu.framed);
+        this.framedDataSessions = pdu.framed;
+    }
+
+    /**
+     * This side closed framed data session - read what is left from other side.
+     */
+    @Override
+    public void framedDataSessionClosing(FramedDataSessionStreamPair streamPair) {
+        if(streamPair != this.wrappedDataSessionStreamPair) return;
+        HubLog.debug(this, this, "data session closed - wait for end of data from other side");
+
+        this.stopAlarmClocks();
+        this.syncStartedAt = System.nanoTime();
+        // other side might not have noticed yet - give it time to close as well
+        this.syncTimeOutClock = this.setAlarmClock(
+                2L * (this.getTimeOutDataConnection() + this.getTimeOutSilenceChannel()),
+                ALARM_CLOCK_SYNC_TIMEOUT_SESSION);
+
+        this.startThread(streamPair::drain);
+    }
+
+    /**
+     * Both sides sent their end of data - channel is in sync.
+     */
+    @Override
+    public void framedDataSessionEnded(FramedDataSessionStreamPair streamPair) {
+        if(streamPair != this.wrappedDataSessionStreamPair) return;
+        HubLog.debug(this, this, "framed data session ended");
+
+        this.wrappedDataSessionStreamPair = null;
+        this.syncedAfterDataSession();
+    }
+
     @Override
     public void notifyClosed(StreamPair closedStreamPair, String key) {
-        Log.writeLog(this, this.toString(), "stream closed (" + key +  ")  - wait for time out to stay synced");
+        if(HubLog.isDebugEnabled()) {
+            HubLog.debug(this, this, "stream closed (" + key +  ")  - wait for time out to stay synced");
+        }
     }
 
     @Override
@@ -379,7 +478,7 @@ public abstract class SharedChannelConnectorImpl extends ConnectorImpl
 
     // TODO - take care of this ugly situation - connection broken to other side of this connector - shut all down
     private void fatalError() {
-        Log.writeLogErr(this, this.toString(), "fatal: close streams (maybe already closed) and shutdown");
+        HubLog.error(this, this, "fatal: close streams (maybe already closed) and shutdown");
         try {
             InputStream inputStream = this.getInputStream();
             if(inputStream != null) inputStream.close();
@@ -393,6 +492,8 @@ public abstract class SharedChannelConnectorImpl extends ConnectorImpl
             // ignore
         }
 
+        this.closeMultiplexedStreams();
+
         // tell others
         this.shutdown();
     }
@@ -403,7 +504,7 @@ public abstract class SharedChannelConnectorImpl extends ConnectorImpl
     //                                       reaction on interface requests                                    //
     /////////////////////////////////////////////////////////////////////////////////////////////////////////////
 
-    private StreamPairWrapper wrappedDataSessionStreamPair = null;
+    private StreamPair wrappedDataSessionStreamPair = null;
     private int sessionCounter = 0;
 
     public StreamPair initDataSession(CharSequence sourcePeerID, CharSequence targetPeerID, int timeout)
@@ -414,27 +515,33 @@ public abstract class SharedChannelConnectorImpl extends ConnectorImpl
                 timeout);
     }
 
-    private Thread threadWaitingForDataConnection = null;
+    private volatile Thread threadWaitingForDataConnection = null;
+    private final Object silenceLock = new Object();
 
     synchronized protected StreamPair initDataSession(ConnectionRequest connectionRequest, int timeout)
             throws ASAPHubException, IOException {
 
-        Log.writeLog(this, this.toString(), "try to init data session over shared channel..");
+        if(this.multiplexedDataSessions) {
+            // no need to silence the channel
+            return this.openMultiplexedStream(connectionRequest);
+        }
+
+        HubLog.debug(this, this, "try to init data session over shared channel..");
         if(!this.statusInSilence()) {
-            Log.writeLog(this, this.toString(), "not in silence mode");
+            HubLog.debug(this, this, "not in silence mode");
             if(this.threadWaitingForDataConnection == null) {
-                Log.writeLog(this, this.toString(), "no other thread waiting - ask for silence and wait");
+                HubLog.debug(this, this, "no other thread waiting - ask for silence and wait");
                 this.threadWaitingForDataConnection = Thread.currentThread();
-                this.askForSilence(timeout);
                 try {
-                    Thread.sleep(timeout);
-                } catch (InterruptedException e) {
-
+                    this.askForSilence(timeout);
+                    this.waitForSilence(timeout);
+                } finally {
+                    this.threadWaitingForDataConnection = null;
                 }
             } else {
                 throw new ASAPHubException("other thread waiting for data connection");
             }
-            Log.writeLog(this, this.toString(), "waiting over");
+            HubLog.debug(this, this, "waiting over");
             if(connectionRequest.until < System.currentTimeMillis()) {
                 throw new ASAPHubException("timed out - will not create data connection");
             }
@@ -444,12 +551,12 @@ public abstract class SharedChannelConnectorImpl extends ConnectorImpl
             }
         }
 
-        Log.writeLog(this, this.toString(), ".. we are in silence mode ..");
+        HubLog.debug(this, this, ".. we are in silence mode ..");
         // send clear message to the other side (peer)
-        Log.writeLog(this, this.toString(), "send channel clear PDU: ");
+        HubLog.debug(this, this, "send channel clear PDU: ");
         // clear channel
         this.clearChannel(connectionRequest.sourcePeerID, connectionRequest.targetPeerID, timeout);
-        Log.writeLog(this, this.toString(), ".. cleared channel - launch data session");
+        HubLog.debug(this, this, ".. cleared channel - launch data session");
 
         // launch data session and wait
         this.enterDataSession(connectionRequest, timeout);
@@ -457,6 +564,123 @@ public abstract class SharedChannelConnectorImpl extends ConnectorImpl
         return this.wrappedDataSessionStreamPair;
     }
 
+    private void waitForSilence(long timeout) {
+        long until = System.currentTimeMillis() + timeout;
+        synchronized (this.silenceLock) {
+            long remaining;
+            while(!this.statusInSilence() && (remaining = until - System.currentTimeMillis()) > 0) {
+                try {
+                    this.silenceLock.wait(remaining);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /////////////////////////////////////////////////////////////////////////////////////////////////////////
+    //                                     multiplexed data sessions                                       //
+    /////////////////////////////////////////////////////////////////////////////////////////////////////////
+    /*
+    Multiplexed data sessions do not need a silent channel. Data are sent in stream frames - next to connector PDUs.
+    Any number of data sessions can run at the same time. The connector protocol keeps running.
+    Streams opened on hub side have even ids, streams opened on peer side odd ids.
+     */
+
+    private boolean multiplexedDataSessions = false;
+    private final Map<Integer, MultiplexedStreamPair> multiplexedStreams = new ConcurrentHashMap<>();
+    private final AtomicInteger nextStreamID = new AtomicInteger(0);
+
+    public boolean multiplexedDataSessions() {
+        return this.multiplexedDataSessions;
+    }
+
+    protected void setMultiplexedDataSessions(boolean multiplexedDataSessions) {
+        this.multiplexedDataSessions = multiplexedDataSessions;
+    }
+
+    /**
+     * @return number of multiplexed data sessions currently open on this channel
+     */
+    public int getNumberOfMultiplexedStreams() {
+        return this.multiplexedStreams.size();
+    }
+
+    private StreamPair openMultiplexedStream(ConnectionRequest connectionRequest) throws IOException {
+        int streamID = 2 * this.nextStreamID.incrementAndGet() + (this.isHubSide() ? 0 : 1);
+        MultiplexedStreamPair streamPair = new MultiplexedStreamPair(this, streamID,
+                this.getID() + ":" + streamID, connectionRequest.sourcePeerID);
+        this.multiplexedStreams.put(streamID, streamPair);
+
+        HubLog.debug(this, this, "open multiplexed data session: ", streamPair);
+        this.sendStreamFrame(HubPDUStreamFrame.open(
+                streamID, connectionRequest.sourcePeerID, connectionRequest.targetPeerID));
+
+        return streamPair;
+    }
+
+    void sendStreamFrame(HubPDUStreamFrame frame) throws IOException {
+        this.getPDUWriter().write(frame);
+    }
+
+    void multiplexedStreamEnded(MultiplexedStreamPair streamPair) {
+        if(this.multiplexedStreams.remove(streamPair.getStreamID()) != null) {
+            HubLog.debug(this, this, "multiplexed data session ended: ", streamPair);
+        }
+    }
+
+    private void closeMultiplexedStreams() {
+        List<MultiplexedStreamPair> streamPairs = new ArrayList<>(this.multiplexedStreams.values());
+        this.multiplexedStreams.clear();
+        for(MultiplexedStreamPair streamPair : streamPairs) streamPair.channelClosed();
+    }
+
+    @Override
+    public void connectorSessionEnded(boolean noRecovery) {
+        if(noRecovery) this.closeMultiplexedStreams();
+        super.connectorSessionEnded(noRecovery);
+    }
+
+    @Override
+    public void streamFrame(HubPDUStreamFrame pdu) {
+        if(pdu.kind == HubPDUStreamFrame.ENABLE) {
+            HubLog.debug(this, this, "other side can handle multiplexed data sessions");
+            this.multiplexedDataSessions = true;
+            return;
+        }
+
+        if(pdu.kind == HubPDUStreamFrame.OPEN) {
+            MultiplexedStreamPair streamPair = new MultiplexedStreamPair(this, pdu.streamID,
+                    this.getID() + ":" + pdu.streamID, pdu.sourcePeerID);
+            this.multiplexedStreams.put(pdu.streamID, streamPair);
+            HubLog.debug(this, this, "multiplexed data session opened by other side: ", streamPair);
+            // data arrive with this thread - handle new session with another one. Opener is the other peer
+            this.startThread(() -> this.dataSessionStarted(pdu.sourcePeerID, streamPair));
+            return;
+        }
+
+        MultiplexedStreamPair streamPair = this.multiplexedStreams.get(pdu.streamID);
+        if(streamPair == null) {
+            HubLog.debug(this, this, "frame for unknown stream - ignored: ", pdu);
+            return;
+        }
+
+        switch (pdu.kind) {
+            case HubPDUStreamFrame.DATA:
+                if(!streamPair.dataReceived(pdu.data)) {
+                    HubLog.error(this, this, "other side ignored window - close ", streamPair);
+                    streamPair.close();
+                }
+                break;
+            case HubPDUStreamFrame.WINDOW:
+                streamPair.windowReceived(pdu.windowIncrement);
+                break;
+            case HubPDUStreamFrame.CLOSE:
+                streamPair.closeReceived();
+                break;
+        }
+    }
+
     /////////////////////////////////////////////////////////////////////////////////////////////////////////
     //                                           send PDUs                                                 //
     /////////////////////////////////////////////////////////////////////////////////////////////////////////
@@ -474,9 +698,9 @@ public abstract class SharedChannelConnectorImpl extends ConnectorImpl
         try {
             this.enterSilence(pdu.waitDuration);
             // tell other side
-            (new HubPDUSilentRPLY(pdu.waitDuration)).sendPDU(this.getOutputStream());
+            this.getPDUWriter().write(new HubPDUSilentRPLY(pdu.waitDuration));
         } catch (IOException | ASAPHubException e) {
-            Log.writeLogErr(this, this.toString(), "asking for silence failed: " + e.getLocalizedMessage());
+            HubLog.error(this, this, "asking for silence failed: ", e.getLocalizedMessage());
         }
     }
 
@@ -485,7 +709,7 @@ public abstract class SharedChannelConnectorImpl extends ConnectorImpl
         try {
             this.enterSilence(pdu.waitDuration);
         } catch (IOException | ASAPHubException e) {
-            Log.writeLogErr(this, this.toString(), "entering silence status failed: " + e.getLocalizedMessage());
+            HubLog.error(this, this, "entering silence status failed: ", e.getLocalizedMessage());
         }
     }
 
@@ -1,18 +1,28 @@
 package net.sharksystem.hub.hubside;
 
 import net.sharksystem.asap.ASAPException;
-import net.sharksystem.hub.Connector;
+import net.sharksystem.hub.PeerId;
+import net.sharksystem.hub.PeerIdSet;
+import net.sharksystem.hub.metrics.HubMetricsTextEndpoint;
 import net.sharksystem.hub.protocol.ConnectorThread;
 import net.sharksystem.utils.Commandline;
 import net.sharksystem.utils.Log;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.net.UnknownHostException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class ASAPTCPHub extends HubSingleEntitySharedChannel implements Runnable {
     public static final int DEFAULT_MAX_IDLE_CONNECTION_IN_SECONDS = 60;
@@ -20,14 +30,18 @@ public class ASAPTCPHub extends HubSingleEntitySharedChannel implements Runnable
     private int maxIdleInMillis = DEFAULT_MAX_IDLE_CONNECTION_IN_SECONDS * 1000;
 
     private final int port;
+    private final ServerSocketChannel serverSocketChannel;
     private final ServerSocket serverSocket;
-    private int minPort = 0;
-    private int maxPort = 0;
-    private int nextPort = 0;
+    private volatile DataPortPool dataPortPool = new DataPortPool();
+    private volatile DataConnectionListener dataConnectionListener = null;
 
     private boolean killed = false;
     private StatusPrinter statusPrinter;
 
+    private int numberOfEventLoops = 0; // thread per connector
+    private NIOHubEventLoop[] eventLoops = null;
+    private ExecutorService connectorSessionExecutor = null;
+
     public ASAPTCPHub() throws IOException {
         this(DEFAULT_PORT);
     }
@@ -38,48 +52,79 @@ public class ASAPTCPHub extends HubSingleEntitySharedChannel implements Runnable
 
     public ASAPTCPHub(int port, boolean newConnection) throws IOException {
         this.port = port;
-        this.nextPort = port+1;
-        this.serverSocket = new ServerSocket(this.port);
+        this.serverSocketChannel = ServerSocketChannel.open();
+        this.serverSocketChannel.bind(new InetSocketAddress(this.port));
+        this.serverSocket = this.serverSocketChannel.socket();
         this.newConnection = newConnection;
     }
 
+    /**
+     * Hub launches a thread for each connector by default. Each thread blocks while reading PDUs. This hub
+     * can serve connectors with non-blocking I/O instead: A fixed number of event loops read from any connector
+     * channel. PDUs are handled by worker threads which only exist while there is something to do.
+     * Idle connectors do not occupy any thread.
+     *
+     * @param numberOfEventLoops number of event loop threads. 0 (default): thread per connector
+     */
+    public void setNumberOfEventLoops(int numberOfEventLoops) throws ASAPException {
+        if(numberOfEventLoops < 0) throw new ASAPException("number of event loops must not be negative");
+        if(this.eventLoops != null) throw new ASAPException("hub already running - cannot change I/O mode");
+        this.numberOfEventLoops = numberOfEventLoops;
+    }
+
     public void setPortRange(int minPort, int maxPort) throws ASAPException {
         if(minPort < -1 || maxPort < -1 || maxPort <= minPort) {
             throw new ASAPException("port number must be > 0 and max > min");
         }
 
-        this.minPort = minPort;
-        this.maxPort = maxPort;
-
-        this.nextPort = this.minPort;
+        DataPortPool previous = this.dataPortPool;
+        this.dataPortPool = new DataPortPool(minPort, maxPort, DataPortPool.DEFAULT_MAX_IDLE_SOCKETS);
+        this.dataPortPool.prebind(DataPortPool.DEFAULT_MAX_IDLE_SOCKETS);
+        previous.close();
     }
 
     public void setMaxIdleConnectionInSeconds(int maxIdleInSeconds) {
         this.maxIdleInMillis = maxIdleInSeconds * 1000;
     }
 
-    synchronized ServerSocket getServerSocket() throws IOException {
-        if(this.minPort == 0 || this.maxPort == 0) {
-            return new ServerSocket(0);
-        }
+    /**
+     * @return listening sockets for data connections in multi channel mode
+     */
+    DataPortPool getDataPortPool() {
+        return this.dataPortPool;
+    }
 
-        int port = this.nextPort++;
-        // try
-        while(port <= this.maxPort) {
-            try {
-                ServerSocket srv = new ServerSocket(port);
-                return srv;
-            } catch (IOException ioe) {
-                // port already in use
-            }
-            port = this.nextPort++;
-        }
-        this.nextPort = this.minPort; // rewind for next round
-        throw new IOException("all ports are in use");
+    /**
+     * Multi channel mode: Peers open data connections to this port and present a token - no port is opened per
+     * encounter. Only peers that announced it at registration are asked for a token - others still get a port
+     * per encounter. Sessions on data port connections are framed and relayed with a thread per direction -
+     * connections on ports per encounter can be spliced instead.
+     *
+     * @param dataPort 0: any free port
+     * @return data port
+     */
+    public int setDataPort(int dataPort) throws IOException {
+        if(this.dataConnectionListener != null) throw new IOException("data port already set");
+        DataConnectionListener listener = new DataConnectionListener(dataPort, this.getThreadFactory());
+        listener.start();
+        this.dataConnectionListener = listener;
+        return listener.getPort();
+    }
+
+    /**
+     * @return single listener of data connections - null: a port is opened per encounter
+     */
+    DataConnectionListener getDataConnectionListener() {
+        return this.dataConnectionListener;
     }
 
     @Override
     public void run() {
+        if(this.numberOfEventLoops > 0) {
+            this.runNonBlocking();
+            return;
+        }
+
         Log.writeLog(this, "started on port: " + this.port);
         while(!killed) {
             Socket newConnection = null;
@@ -95,17 +140,10 @@ public class ASAPTCPHub extends HubSingleEntitySharedChannel implements Runnable
             Log.writeLog(this, "new TCP connection - launch hub connector session");
 
             try {
-                Connector hubConnectorSession;
-                if(this.newConnection) {
-                    hubConnectorSession =
-                            new MultipleTCPChannelsConnectorHubSideImpl(
-                                    newConnection.getInputStream(), newConnection.getOutputStream(), this);
-                } else {
-                    // another connector has connected
-                    hubConnectorSession = new SharedChannelConnectorHubSideImpl(
-                            newConnection.getInputStream(), newConnection.getOutputStream(), this);
-                }
-                (new ConnectorThread(hubConnectorSession, newConnection.getInputStream())).start();
+                SharedChannelConnectorHubSideImpl hubConnectorSession = this.createHubConnector(
+                        newConnection.getInputStream(), newConnection.getOutputStream());
+                (new ConnectorThread(hubConnectorSession, hubConnectorSession.getPDUReader(),
+                        this.getThreadFactory())).start();
             } catch (IOException | ASAPException e) {
                 // gone
                 Log.writeLog(this, "hub connector session ended: " + e.getLocalizedMessage());
@@ -113,13 +151,89 @@ public class ASAPTCPHub extends HubSingleEntitySharedChannel implements Runnable
         }
     }
 
-    Map<CharSequence, Set<CharSequence>> connectionRequests = new HashMap<>();
+    private SharedChannelConnectorHubSideImpl createHubConnector(InputStream is, OutputStream os)
+            throws ASAPException {
+
+        SharedChannelConnectorHubSideImpl hubConnector;
+        if(this.newConnection) {
+            hubConnector = new MultipleTCPChannelsConnectorHubSideImpl(is, os, this);
+        } else {
+            // another connector has connected
+            hubConnector = new SharedChannelConnectorHubSideImpl(is, os, this);
+        }
+
+        hubConnector.setThreadFactory(this.getThreadFactory());
+        return hubConnector;
+    }
+
+    private void runNonBlocking() {
+        Log.writeLog(this, "started on port: " + this.port + " | event loops: " + this.numberOfEventLoops);
+        this.connectorSessionExecutor = Executors.newCachedThreadPool(this.getThreadFactory());
+        this.eventLoops = new NIOHubEventLoop[this.numberOfEventLoops];
+        try {
+            for (int i = 0; i < this.eventLoops.length; i++) {
+                this.eventLoops[i] = new NIOHubEventLoop();
+                // event loops never block - platform threads
+                new Thread(this.eventLoops[i]).start();
+            }
+        } catch (IOException e) {
+            Log.writeLog(this, "cannot open selector - fatal, give up: " + e.getLocalizedMessage());
+            this.killEventLoops();
+            return;
+        }
+
+        int nextEventLoop = 0;
+        while(!killed) {
+            SocketChannel newChannel = null;
+            try {
+                newChannel = this.serverSocketChannel.accept();
+            }
+            catch(IOException ioe) {
+                Log.writeLog(this, "exception when going to accept TCP connections - fatal, give up: "
+                        + ioe.getLocalizedMessage());
+                this.killEventLoops();
+                return;
+            }
+
+            Log.writeLog(this, "new TCP connection - attach hub connector session to event loop");
+
+            try {
+                NIOConnectorSession session = new NIOConnectorSession(newChannel,
+                        this.eventLoops[nextEventLoop], this.connectorSessionExecutor);
+                nextEventLoop = (nextEventLoop + 1) % this.eventLoops.length;
+
+                SharedChannelConnectorHubSideImpl hubConnectorSession = this.createHubConnector(
+                        session.getInputStream(), session.getOutputStream());
+                hubConnectorSession.setConnectorSessionFactory(session);
+                session.createConnectorSession(hubConnectorSession, hubConnectorSession.getPDUReader()).start();
+            } catch (IOException | ASAPException e) {
+                // gone
+                Log.writeLog(this, "hub connector session ended: " + e.getLocalizedMessage());
+                try {
+                    newChannel.close();
+                } catch (IOException ex) {
+                    // ignore
+                }
+            }
+        }
+    }
+
+    private void killEventLoops() {
+        if(this.eventLoops != null) {
+            for(NIOHubEventLoop eventLoop : this.eventLoops) {
+                if(eventLoop != null) eventLoop.kill();
+            }
+        }
+        if(this.connectorSessionExecutor != null) this.connectorSessionExecutor.shutdown();
+    }
+
+    Map<PeerId, Set<CharSequence>> connectionRequests = new HashMap<>();
 
     private String connectionRequestsToString() {
         StringBuilder sb = new StringBuilder();
         sb.append("connection requests: ");
 
-        Set<CharSequence> peerIDs = this.connectionRequests.keySet();
+        Set<PeerId> peerIDs = this.connectionRequests.keySet();
         if(peerIDs == null || peerIDs.isEmpty()) {
             sb.append("empty");
         } else {
@@ -144,10 +258,10 @@ public class ASAPTCPHub extends HubSingleEntitySharedChannel implements Runnable
      */
     private void rememberConnectionRequest(CharSequence peerA, CharSequence peerB) {
         synchronized (this.connectionRequests) {
-            Set<CharSequence> otherPeers = this.connectionRequests.get(peerA);
+            Set<CharSequence> otherPeers = this.connectionRequests.get(PeerId.of(peerA));
             if (otherPeers == null) {
-                otherPeers = new HashSet<>();
-                this.connectionRequests.put(peerA, otherPeers);
+                otherPeers = new PeerIdSet();
+                this.connectionRequests.put(PeerId.of(peerA), otherPeers);
             }
 
             otherPeers.add(peerB);
@@ -159,7 +273,9 @@ public class ASAPTCPHub extends HubSingleEntitySharedChannel implements Runnable
     /////////////////////////////////////////////////////////////////////////////////////////////////////////
 
     public static void main(String[] args) throws IOException {
-        String usageString = "optional parameters: -port [portnumber] -maxIdleSeconds [seconds]";
+        String usageString =
+                "optional parameters: -port [portnumber] -maxIdleSeconds [seconds] -eventLoops [number] -virtualThreads "
+                + "-metricsPort [portnumber] -metricsBindAddress [address] -dataPort [portnumber]";
 
         // now get real parameters
         HashMap<String, String> argumentMap = Commandline.parametersToMap(args,
@@ -167,6 +283,11 @@ public class ASAPTCPHub extends HubSingleEntitySharedChannel implements Runnable
 
         int port = DEFAULT_PORT;
         int maxIdleInSeconds = -1;
+        int numberOfEventLoops = 0;
+        boolean virtualThreads = false;
+        int metricsPort = -1;
+        InetAddress metricsBindAddress = InetAddress.getLoopbackAddress();
+        int dataPort = -1;
 
         if(argumentMap != null) {
             Set<String> keys = argumentMap.keySet();
@@ -196,20 +317,108 @@ public class ASAPTCPHub extends HubSingleEntitySharedChannel implements Runnable
                     System.exit(0);
                 }
             }
+
+            // non-blocking I/O?
+            String eventLoopsString = argumentMap.get("-eventLoops");
+            if(eventLoopsString != null) {
+                try {
+                    numberOfEventLoops = Integer.parseInt(eventLoopsString);
+                } catch (RuntimeException re) {
+                    System.err.println("eventLoops must be a numeric: " + eventLoopsString);
+                    System.exit(0);
+                }
+            }
+
+            virtualThreads = keys.contains("-virtualThreads");
+
+            // metrics as text
+            String metricsPortString = argumentMap.get("-metricsPort");
+            if(metricsPortString != null) {
+                try {
+                    metricsPort = Integer.parseInt(metricsPortString);
+                } catch (RuntimeException re) {
+                    System.err.println("metricsPort must be a numeric: " + metricsPortString);
+                    System.exit(0);
+                }
+            }
+
+            // metrics are served on loopback unless told otherwise
+            String metricsBindAddressString = argumentMap.get("-metricsBindAddress");
+            if(metricsBindAddressString != null) {
+                try {
+                    metricsBindAddress = InetAddress.getByName(metricsBindAddressString);
+                } catch (UnknownHostException e) {
+                    System.err.println("metricsBindAddress is not a valid address: " + metricsBindAddressString);
+                    System.exit(0);
+                }
+            }
+
+            // single port for data connections
+            String dataPortString = argumentMap.get("-dataPort");
+            if(dataPortString != null) {
+                try {
+                    dataPort = Integer.parseInt(dataPortString);
+                } catch (RuntimeException re) {
+                    System.err.println("dataPort must be a numeric: " + dataPortString);
+                    System.exit(0);
+                }
+            }
+        }
+
+        if(metricsPort > 0) {
+            HubMetricsTextEndpoint.startTextEndpoint(metricsBindAddress, metricsPort);
         }
 
         // create TCPHub
-        ASAPTCPHub.startTCPHubThread(port, true, maxIdleInSeconds);
+        ASAPTCPHub.startTCPHubThread(port, true, maxIdleInSeconds, numberOfEventLoops, virtualThreads, dataPort);
     }
 
     public static ASAPTCPHub startTCPHubThread(int port, boolean multichannel, int maxIdleInSeconds)
             throws IOException {
 
+        return ASAPTCPHub.startTCPHubThread(port, multichannel, maxIdleInSeconds, 0);
+    }
+
+    public static ASAPTCPHub startTCPHubThread(int port, boolean multichannel, int maxIdleInSeconds,
+                                               int numberOfEventLoops) throws IOException {
+
+        return ASAPTCPHub.startTCPHubThread(port, multichannel, maxIdleInSeconds, numberOfEventLoops, false);
+    }
+
+    public static ASAPTCPHub startTCPHubThread(int port, boolean multichannel, int maxIdleInSeconds,
+                                               int numberOfEventLoops, boolean virtualThreads)
+            throws IOException {
+
+        return ASAPTCPHub.startTCPHubThread(port, multichannel, maxIdleInSeconds, numberOfEventLoops,
+                virtualThreads, -1);
+    }
+
+    /**
+     * @param dataPort single port for data connections - see {@link #setDataPort(int)}. -1: port per encounter
+     */
+    public static ASAPTCPHub startTCPHubThread(int port, boolean multichannel, int maxIdleInSeconds,
+                                               int numberOfEventLoops, boolean virtualThreads, int dataPort)
+            throws IOException {
+
         ASAPTCPHub tcpHub = new ASAPTCPHub(port, multichannel);
         if(maxIdleInSeconds > 0) {
             tcpHub.setMaxIdleConnectionInSeconds(maxIdleInSeconds);
         }
 
+        try {
+            tcpHub.setNumberOfEventLoops(numberOfEventLoops);
+        } catch (ASAPException e) {
+            throw new IOException(e.getLocalizedMessage());
+        }
+
+        if(virtualThreads && !tcpHub.useVirtualThreads()) {
+            System.out.println("virtual threads not supported by this runtime - use platform threads");
+        }
+
+        if(dataPort >= 0) {
+            System.out.println("data connections on port " + tcpHub.setDataPort(dataPort));
+        }
+
         System.out.println("start TCP hub on port " + tcpHub.port
                 + " with maxIdleInSeconds: " + tcpHub.maxIdleInMillis / 1000);
 
@@ -227,6 +436,10 @@ public class ASAPTCPHub extends HubSingleEntitySharedChannel implements Runnable
             Log.writeLog(this, "cannot close server socket: " + e.getLocalizedMessage());
         }
 
+        this.killEventLoops();
+        this.dataPortPool.close();
+        if(this.dataConnectionListener != null) this.dataConnectionListener.kill();
+
         if(this.statusPrinter != null) {
             this.statusPrinter.kill();
         }
@@ -3,7 +3,8 @@ package net.sharksystem.hub.hubside;
 import net.sf.T0rlib4j.controller.network.JavaTorRelay;
 import net.sf.T0rlib4j.controller.network.TorServerSocket;
 import net.sharksystem.asap.ASAPException;
-import net.sharksystem.hub.Connector;
+import net.sharksystem.hub.PeerId;
+import net.sharksystem.hub.PeerIdSet;
 import net.sharksystem.hub.protocol.ConnectorThread;
 import net.sharksystem.utils.Commandline;
 import net.sharksystem.utils.Log;
@@ -17,7 +18,6 @@ import java.net.Socket;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.CountDownLatch;
@@ -37,9 +37,7 @@ public class ASAPTORHub extends HubSingleEntitySharedChannel implements Runnable
 
     private final int port;
     private final ServerSocket serverSocket;
-    private int minPort = 0;
-    private int maxPort = 0;
-    private int nextPort = 0;
+    private volatile DataPortPool dataPortPool = new DataPortPool();
 
     private boolean killed = false;
     private StatusPrinter statusPrinter;
@@ -66,7 +64,6 @@ public class ASAPTORHub extends HubSingleEntitySharedChannel implements Runnable
         this.port = torServerSocket.getServicePort();
         this.serverSocket = torServerSocket.getServerSocket();
 
-        this.nextPort = port+1;
         this.newConnection = newConnection;
     }
 
@@ -75,34 +72,18 @@ public class ASAPTORHub extends HubSingleEntitySharedChannel implements Runnable
             throw new ASAPException("port number must be > 0 and max > min");
         }
 
-        this.minPort = minPort;
-        this.maxPort = maxPort;
-
-        this.nextPort = this.minPort;
+        DataPortPool previous = this.dataPortPool;
+        this.dataPortPool = new DataPortPool(minPort, maxPort, DataPortPool.DEFAULT_MAX_IDLE_SOCKETS);
+        this.dataPortPool.prebind(DataPortPool.DEFAULT_MAX_IDLE_SOCKETS);
+        previous.close();
     }
 
     public void setMaxIdleConnectionInSeconds(int maxIdleInSeconds) {
         this.maxIdleInMillis = maxIdleInSeconds * 1000;
     }
 
-    synchronized ServerSocket getServerSocket() throws IOException {
-        if(this.minPort == 0 || this.maxPort == 0) {
-            return new ServerSocket(0);
-        }
-
-        int port = this.nextPort++;
-        // try
-        while(port <= this.maxPort) {
-            try {
-                ServerSocket srv = new ServerSocket(port);
-                return srv;
-            } catch (IOException ioe) {
-                // port already in use
-            }
-            port = this.nextPort++;
-        }
-        this.nextPort = this.minPort; // rewind for next round
-        throw new IOException("all ports are in use");
+    DataPortPool getDataPortPool() {
+        return this.dataPortPool;
     }
 
     @Override
@@ -128,7 +109,7 @@ public class ASAPTORHub extends HubSingleEntitySharedChannel implements Runnable
                 System.out.println("Accepted Client at Address - " +  newConnection.getRemoteSocketAddress()
                                            + " on port " + newConnection.getLocalPort() + " at time " + dtf.format(now));
 
-                Connector hubConnectorSession;
+                SharedChannelConnectorHubSideImpl hubConnectorSession;
                 if(this.newConnection) {
                     hubConnectorSession =
                             new MultipleTORChannelsConnectorHubSideImpl(
@@ -138,7 +119,9 @@ public class ASAPTORHub extends HubSingleEntitySharedChannel implements Runnable
                     hubConnectorSession = new SharedChannelConnectorHubSideImpl(
                             newConnection.getInputStream(), newConnection.getOutputStream(), this);
                 }
-                (new ConnectorThread(hubConnectorSession, newConnection.getInputStream())).start();
+                hubConnectorSession.setThreadFactory(this.getThreadFactory());
+                (new ConnectorThread(hubConnectorSession, hubConnectorSession.getPDUReader(),
+                        this.getThreadFactory())).start();
             } catch (IOException | ASAPException e) {
                 // gone
                 Log.writeLog(this, "hub connector session ended: " + e.getLocalizedMessage() +"("+ e+")");
@@ -146,13 +129,13 @@ public class ASAPTORHub extends HubSingleEntitySharedChannel implements Runnable
         }
     }
 
-    Map<CharSequence, Set<CharSequence>> connectionRequests = new HashMap<>();
+    Map<PeerId, Set<CharSequence>> connectionRequests = new HashMap<>();
 
     private String connectionRequestsToString() {
         StringBuilder sb = new StringBuilder();
         sb.append("connection requests: ");
 
-        Set<CharSequence> peerIDs = this.connectionRequests.keySet();
+        Set<PeerId> peerIDs = this.connectionRequests.keySet();
         if(peerIDs == null || peerIDs.isEmpty()) {
             sb.append("empty");
         } else {
@@ -177,10 +160,10 @@ public class ASAPTORHub extends HubSingleEntitySharedChannel implements Runnable
      */
     private void rememberConnectionRequest(CharSequence peerA, CharSequence peerB) {
         synchronized (this.connectionRequests) {
-            Set<CharSequence> otherPeers = this.connectionRequests.get(peerA);
+            Set<CharSequence> otherPeers = this.connectionRequests.get(PeerId.of(peerA));
             if (otherPeers == null) {
-                otherPeers = new HashSet<>();
-                this.connectionRequests.put(peerA, otherPeers);
+                otherPeers = new PeerIdSet();
+                this.connectionRequests.put(PeerId.of(peerA), otherPeers);
             }
 
             otherPeers.add(peerB);
@@ -260,6 +243,8 @@ public class ASAPTORHub extends HubSingleEntitySharedChannel implements Runnable
             Log.writeLog(this, "cannot close server socket: " + e.getLocalizedMessage());
         }
 
+        this.dataPortPool.close();
+
         if(this.statusPrinter != null) {
             this.statusPrinter.kill();
         }
@@ -0,0 +1,169 @@
+package net.sharksystem.hub.hubside;
+
+import net.sharksystem.hub.PeerId;
+import net.sharksystem.hub.metrics.HubMetrics;
+import net.sharksystem.hub.protocol.ConnectionRequest;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Connection requests waiting for a target peer - one scheduler per hub connector. Requests are served earliest
+ * deadline first. Expired requests are dropped whenever the scheduler is used.
+ * <br/><br/>
+ * There is at most one pending request per source peer. A repeated request from a source only extends the deadline
+ * of the pending one. Extending a deadline never moves a request ahead - a peer asking again and again cannot
+ * push others back. Requests with same deadline are served in order of arrival.
+ * <br/><br/>
+ * Not thread safe - connector synchronizes access.
+ */
+class ConnectionRequestScheduler {
+    private final PriorityQueue<Entry> queue = new PriorityQueue<>();
+    private final Map<PeerId, Entry> pendingBySource = new HashMap<>();
+    private long nextSequence = 0;
+    private Entry lastPolled = null; // can be put back with its place in queue
+
+    private static class Entry implements Comparable<Entry> {
+        final ConnectionRequest connectionRequest;
+        final long sequence;
+        boolean stale = false; // replaced or withdrawn - left in queue
+
+        Entry(ConnectionRequest connectionRequest, long sequence) {
+            this.connectionRequest = connectionRequest;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public int compareTo(Entry other) {
+            int byDeadline = Long.compare(this.connectionRequest.until, other.connectionRequest.until);
+            return byDeadline != 0 ? byDeadline : Long.compare(this.sequence, other.sequence);
+        }
+    }
+
+    /**
+     * Queue request - or extend deadline of a pending request from same source.
+     * @return true if request was queued, false if a request from this source was already pending
+     */
+    boolean add(ConnectionRequest connectionRequest) {
+        this.dropExpired(System.currentTimeMillis());
+
+        PeerId source = connectionRequest.sourcePeerID;
+        Entry pending = this.pendingBySource.get(source);
+        if(pending != null) {
+            if(connectionRequest.until > pending.connectionRequest.until) {
+                // cannot change position in queue - replace entry, keep arrival order
+                pending.stale = true;
+                this.put(source, new Entry(connectionRequest, pending.sequence));
+            }
+            return false;
+        }
+
+        this.put(source, new Entry(connectionRequest, this.nextSequence++));
+        HubMetrics.getHubMetrics().connectionRequestsQueued(1);
+        return true;
+    }
+
+    /**
+     * @return request with earliest deadline that is not expired or null if there is none
+     */
+    ConnectionRequest poll() {
+        this.dropExpired(System.currentTimeMillis());
+        Entry entry = this.pollEntry();
+        this.lastPolled = entry;
+        if(entry == null) return null;
+
+        HubMetrics.getHubMetrics().connectionRequestsQueued(-1);
+        return entry.connectionRequest;
+    }
+
+    /**
+     * Put back last polled request - it cannot be served yet. It keeps its place among requests with same deadline.
+     * Any other request is added like a new one.
+     */
+    void requeue(ConnectionRequest connectionRequest) {
+        Entry polled = this.lastPolled;
+        this.lastPolled = null;
+        if(polled == null || polled.connectionRequest != connectionRequest) {
+            this.add(connectionRequest);
+            return;
+        }
+
+        PeerId source = connectionRequest.sourcePeerID;
+        Entry pending = this.pendingBySource.get(source);
+        if(pending != null) {
+            // same source asked again meanwhile - keep later deadline and earlier place
+            pending.stale = true;
+            if(pending.connectionRequest.until > connectionRequest.until) connectionRequest = pending.connectionRequest;
+            this.put(source, new Entry(connectionRequest, polled.sequence));
+            return;
+        }
+
+        this.put(source, new Entry(connectionRequest, polled.sequence));
+        HubMetrics.getHubMetrics().connectionRequestsQueued(1);
+    }
+
+    /**
+     * Withdraw pending request
+     * @return true if there was such a request
+     */
+    boolean remove(CharSequence sourcePeerID, CharSequence targetPeerID) {
+        Entry pending = this.pendingBySource.get(PeerId.of(sourcePeerID));
+        if(pending == null || !pending.connectionRequest.targetPeerID.equals(PeerId.of(targetPeerID))) {
+            return false;
+        }
+
+        pending.stale = true;
+        this.pendingBySource.remove(pending.connectionRequest.sourcePeerID);
+        HubMetrics.getHubMetrics().connectionRequestsQueued(-1);
+        return true;
+    }
+
+    boolean isEmpty() {
+        return this.pendingBySource.isEmpty();
+    }
+
+    int size() {
+        return this.pendingBySource.size();
+    }
+
+    void clear() {
+        HubMetrics.getHubMetrics().connectionRequestsQueued(-this.pendingBySource.size());
+        this.pendingBySource.clear();
+        this.queue.clear();
+        this.lastPolled = null;
+    }
+
+    private void put(PeerId source, Entry entry) {
+        this.pendingBySource.put(source, entry);
+        this.queue.add(entry);
+    }
+
+    private Entry pollEntry() {
+        Entry entry;
+        do {
+            entry = this.queue.poll();
+        } while(entry != null && entry.stale);
+
+        if(entry != null) this.pendingBySource.remove(entry.connectionRequest.sourcePeerID);
+        return entry;
+    }
+
+    private void dropExpired(long now) {
+        int dropped = 0;
+        for(;;) {
+            Entry head = this.queue.peek();
+            if(head == null) break;
+            if(head.stale) {
+                this.queue.poll();
+                continue;
+            }
+            if(head.connectionRequest.until >= now) break;
+
+            this.queue.poll();
+            this.pendingBySource.remove(head.connectionRequest.sourcePeerID);
+            dropped++;
+        }
+        if(dropped > 0) HubMetrics.getHubMetrics().connectionRequestsQueued(-dropped);
+    }
+}
@@ -0,0 +1,401 @@
+package net.sharksystem.hub.hubside;
+
+import net.sharksystem.hub.FramedDataSessionStreamPair;
+import net.sharksystem.hub.utils.HashedWheelTimer;
+import net.sharksystem.streams.StreamPair;
+import net.sharksystem.utils.Log;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.security.SecureRandom;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Single listening socket for data connections in multi channel mode - instead of a socket per encounter. Hub asks
+ * a peer to connect with a random token. Peer writes this token (8 bytes) right after connecting. Connection is
+ * paired with the waiting encounter by token.
+ * <br/><br/>
+ * Data sessions on those connections are framed (see {@link FramedDataSessionStreamPair}). A connection waits for
+ * the token of a later encounter after a clean end of session - peers keep it as a warm connection. Hub has to see
+ * the end of a session, so framed sessions are not spliced (see SpliceRelay): they are relayed by a stream link
+ * with a thread per direction. Each encounter takes another thread to hand over its connection and one to drain
+ * the other side after a session was closed.
+ * <br/><br/>
+ * Waiting encounters and connections without token do not occupy a thread - a single selector reads tokens.
+ * An encounter is dropped if no connection arrives in time. Connections with an unknown or late token are closed.
+ * There are limits of connections without token - in total and from one address. The oldest one is closed if
+ * another one arrives.
+ */
+class DataConnectionListener implements Runnable {
+    // peers keep warm connections before they need them - longer than their max idle time
+    static final int TOKEN_TIMEOUT_IN_MILLIS = 30000;
+    static final int DEFAULT_MAX_UNPAIRED_CONNECTIONS = 256;
+    // a peer keeps a few warm connections - some peers can share an address
+    static final int DEFAULT_MAX_UNPAIRED_PER_ADDRESS = 16;
+    private static final int TOKEN_SIZE = 8;
+
+    private final ServerSocketChannel serverChannel;
+    private final ServerSocket serverSocket;
+    private final Selector selector;
+    private final int maxUnpairedConnections;
+    private final int maxUnpairedPerAddress;
+    private final ThreadFactory threadFactory;
+    private final ConcurrentMap<Long, Encounter> waiting = new ConcurrentHashMap<>();
+    private final SecureRandom random = new SecureRandom();
+    private volatile boolean killed = false;
+
+    private static class Encounter {
+        final NewConnectionCreatorListener listener;
+        final CharSequence sourcePeerID;
+        final CharSequence targetPeerID;
+        final int timeOutDataConnection;
+        volatile HashedWheelTimer.Timeout timeout;
+
+        Encounter(NewConnectionCreatorListener listener, CharSequence sourcePeerID, CharSequence targetPeerID,
+                  int timeOutDataConnection) {
+            this.listener = listener;
+            this.sourcePeerID = sourcePeerID;
+            this.targetPeerID = targetPeerID;
+            this.timeOutDataConnection = timeOutDataConnection;
+        }
+    }
+
+    // connection waits for its token - only used by selector thread
+    private static class Unpaired {
+        final SocketChannel channel;
+        final InetAddress address;
+        final ByteBuffer token = ByteBuffer.allocate(TOKEN_SIZE);
+        final long acceptedAt;
+        boolean done = false;
+
+        Unpaired(SocketChannel channel, InetAddress address, long acceptedAt) {
+            this.channel = channel;
+            this.address = address;
+            this.acceptedAt = acceptedAt;
+        }
+    }
+
+    // oldest first - only used by selector thread
+    private final ArrayDeque<Unpaired> unpaired = new ArrayDeque<>();
+    private final Map<InetAddress, Integer> unpairedPerAddress = new HashMap<>(); // only used by selector thread
+    private final Queue<SocketChannel> givenBack = new ConcurrentLinkedQueue<>();
+
+    /**
+     * @param port data port - 0: any free port
+     */
+    DataConnectionListener(int port, ThreadFactory threadFactory) throws IOException {
+        this(port, threadFactory, DEFAULT_MAX_UNPAIRED_CONNECTIONS, DEFAULT_MAX_UNPAIRED_PER_ADDRESS);
+    }
+
+    DataConnectionListener(int port, ThreadFactory threadFactory, int maxUnpairedConnections,
+                           int maxUnpairedPerAddress) throws IOException {
+        ServerSocketChannel channel = ServerSocketChannel.open();
+        Selector selector = null;
+        try {
+            // channel: tokens of all connections are read by a single selector
+            channel.bind(new InetSocketAddress(port));
+            channel.configureBlocking(false);
+            selector = Selector.open();
+            channel.register(selector, SelectionKey.OP_ACCEPT);
+        } catch (IOException e) {
+            if(selector != null) selector.close();
+            channel.close();
+            throw e;
+        }
+        this.serverChannel = channel;
+        this.serverSocket = channel.socket();
+        this.selector = selector;
+        this.threadFactory = threadFactory;
+        this.maxUnpairedConnections = maxUnpairedConnections;
+        this.maxUnpairedPerAddress = maxUnpairedPerAddress;
+    }
+
+    int getPort() {
+        return this.serverSocket.getLocalPort();
+    }
+
+    void start() {
+        this.threadFactory.newThread(this).start();
+    }
+
+    /**
+     * Wait for a data connection of an encounter.
+     * @param listener called when connection arrived
+     * @param timeOutConnectionRequest encounter is dropped if there is no connection after this time
+     * @return token peer has to present
+     */
+    long expect(NewConnectionCreatorListener listener, CharSequence sourcePeerID, CharSequence targetPeerID,
+                int timeOutConnectionRequest, int timeOutDataConnection) {
+
+        Encounter encounter = new Encounter(listener, sourcePeerID, targetPeerID, timeOutDataConnection);
+        long token;
+        do {
+            token = this.random.nextLong();
+        } while(token == 0 || this.waiting.putIfAbsent(token, encounter) != null);
+
+        long expiredToken = token;
+        encounter.timeout = HashedWheelTimer.getHubTimer().schedule(timeOutConnectionRequest, () -> {
+            if(this.waiting.remove(expiredToken, encounter)) {
+                Log.writeLog(this, "no data connection in time (" + sourcePeerID + " --> " + targetPeerID + ")");
+            }
+        });
+        return token;
+    }
+
+    int waitingEncounters() {
+        return this.waiting.size();
+    }
+
+    @Override
+    public void run() {
+        Log.writeLog(this, "data connections on port: " + this.getPort());
+        try {
+            while(!this.killed) {
+                this.selector.select(this.nextTokenTimeout());
+                if(this.killed) break;
+
+                SocketChannel inSync;
+                while((inSync = this.givenBack.poll()) != null) this.waitForToken(inSync);
+
+                List<Unpaired> withToken = new ArrayList<>();
+                Iterator<SelectionKey> keyIter = this.selector.selectedKeys().iterator();
+                while(keyIter.hasNext()) {
+                    SelectionKey key = keyIter.next();
+                    keyIter.remove();
+                    if(!key.isValid()) continue;
+                    if(key.isAcceptable()) this.accept();
+                    else if(key.isReadable()) this.readToken(key, withToken);
+                }
+                this.dropUnpaired(System.currentTimeMillis());
+
+                if(!withToken.isEmpty()) {
+                    // keys are cancelled - deregister before channels go back to blocking mode
+                    this.selector.selectNow();
+                    for(Unpaired connection : withToken) this.pair(connection);
+                }
+            }
+        } catch (IOException e) {
+            if(!this.killed) Log.writeLog(this, "cannot accept data connections - give up: "
+                    + e.getLocalizedMessage());
+        } finally {
+            for(Unpaired connection : this.unpaired) if(!connection.done) close(connection.channel);
+            this.unpaired.clear();
+            SocketChannel inSync;
+            while((inSync = this.givenBack.poll()) != null) close(inSync);
+            try {
+                this.selector.close();
+            } catch (IOException e) {
+                // ignore
+            }
+        }
+    }
+
+    private long nextTokenTimeout() {
+        Unpaired oldest = this.unpaired.peek();
+        if(oldest == null) return 0; // no time out - wait for connections
+        return Math.max(1, oldest.acceptedAt + TOKEN_TIMEOUT_IN_MILLIS - System.currentTimeMillis());
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel;
+        while((channel = this.serverChannel.accept()) != null) this.waitForToken(channel);
+    }
+
+    // a warm connection presents its token with next encounter
+    private void waitForToken(SocketChannel channel) {
+        InetAddress address = channel.socket().getInetAddress();
+        if(address == null) {
+            close(channel); // not connected any longer
+            return;
+        }
+
+        if(this.unpairedPerAddress.getOrDefault(address, 0) >= this.maxUnpairedPerAddress) {
+            for(Unpaired oldest : this.unpaired) {
+                if(!oldest.done && oldest.address.equals(address)) {
+                    Log.writeLog(this, "too many connections without token from " + address
+                            + " - close oldest one");
+                    this.drop(oldest);
+                    break;
+                }
+            }
+        }
+
+        // done ones behind a waiting one are only removed when they get to the head
+        if(this.unpaired.size() >= this.maxUnpairedConnections) this.unpaired.removeIf(u -> u.done);
+        if(this.unpaired.size() >= this.maxUnpairedConnections) {
+            Log.writeLog(this, "too many connections without token - close oldest one");
+            this.drop(this.unpaired.poll());
+        }
+
+        Unpaired connection = new Unpaired(channel, address, System.currentTimeMillis());
+        try {
+            channel.configureBlocking(false);
+            channel.register(this.selector, SelectionKey.OP_READ, connection);
+        } catch (IOException e) {
+            Log.writeLog(this, "cannot wait for token: " + e.getLocalizedMessage());
+            close(channel);
+            return;
+        }
+        this.unpaired.add(connection);
+        this.unpairedPerAddress.merge(address, 1, Integer::sum);
+    }
+
+    // connection does not wait for its token any longer
+    private void done(Unpaired connection) {
+        connection.done = true;
+        this.unpairedPerAddress.computeIfPresent(connection.address,
+                (address, number) -> number > 1 ? number - 1 : null);
+    }
+
+    private void drop(Unpaired connection) {
+        this.done(connection);
+        close(connection.channel);
+    }
+
+    private void readToken(SelectionKey key, List<Unpaired> withToken) {
+        Unpaired connection = (Unpaired) key.attachment();
+        try {
+            if(connection.channel.read(connection.token) < 0) {
+                Log.writeLog(this, "data connection closed before token");
+                this.drop(connection);
+                return;
+            }
+        } catch (IOException e) {
+            Log.writeLog(this, "no token on data connection: " + e.getLocalizedMessage());
+            this.drop(connection);
+            return;
+        }
+
+        if(!connection.token.hasRemaining()) {
+            key.cancel();
+            this.done(connection);
+            withToken.add(connection);
+        }
+    }
+
+    // close connections without token in time and forget those that are done
+    private void dropUnpaired(long now) {
+        Unpaired oldest;
+        while((oldest = this.unpaired.peek()) != null) {
+            if(!oldest.done) {
+                if(now - oldest.acceptedAt < TOKEN_TIMEOUT_IN_MILLIS) break;
+                Log.writeLog(this, "no token on data connection in time - close it");
+                this.drop(oldest);
+            }
+            this.unpaired.poll();
+        }
+    }
+
+    private void pair(Unpaired connection) {
+        connection.token.flip();
+        long token = connection.token.getLong();
+        Encounter encounter = this.waiting.remove(token);
+        if(encounter == null) {
+            Log.writeLog(this, "unknown or expired token on data connection - close it");
+            close(connection.channel);
+            return;
+        }
+        encounter.timeout.cancel();
+
+        SocketChannel channel = connection.channel;
+        Socket newSocket = channel.socket();
+        Log.writeLog(this, "new connection initiated from peer side ("
+                + encounter.sourcePeerID + " --> " + encounter.targetPeerID + ")");
+        try {
+            channel.configureBlocking(true);
+            StreamPair streamPair = new FramedDataSessionStreamPair(
+                    new GiveBackOnCleanEnd(channel, encounter.timeOutDataConnection),
+                    newSocket.getInputStream(), newSocket.getOutputStream(),
+                    encounter.sourcePeerID + ":" + newSocket.getLocalPort());
+            // listener can take its time - not on selector thread
+            this.threadFactory.newThread(() -> encounter.listener.newConnectionCreated(
+                    encounter.sourcePeerID, encounter.targetPeerID, streamPair, encounter.timeOutDataConnection))
+                    .start();
+        } catch (IOException e) {
+            Log.writeLog(this, "cannot use new connection: " + e.getLocalizedMessage());
+            close(channel);
+        }
+    }
+
+    /**
+     * Connection is in sync after a clean end of session - wait for token of next encounter.
+     */
+    void giveBack(SocketChannel channel) {
+        if(this.killed) {
+            close(channel);
+            return;
+        }
+        Log.writeLog(this, "data connection in sync - wait for next token");
+        this.givenBack.add(channel);
+        this.selector.wakeup();
+    }
+
+    private class GiveBackOnCleanEnd implements FramedDataSessionStreamPair.Owner {
+        private final SocketChannel channel;
+        private final int drainTimeOutInMillis;
+
+        GiveBackOnCleanEnd(SocketChannel channel, int drainTimeOutInMillis) {
+            this.channel = channel;
+            this.drainTimeOutInMillis = drainTimeOutInMillis;
+        }
+
+        @Override
+        public void framedDataSessionClosing(FramedDataSessionStreamPair streamPair) {
+            DataConnectionListener.this.threadFactory.newThread(() -> {
+                try {
+                    this.channel.socket().setSoTimeout(this.drainTimeOutInMillis);
+                } catch (IOException e) {
+                    // drain fails as well
+                }
+                if(!streamPair.drain()) close(this.channel);
+            }).start();
+        }
+
+        @Override
+        public void framedDataSessionEnded(FramedDataSessionStreamPair streamPair) {
+            try {
+                this.channel.socket().setSoTimeout(0);
+            } catch (IOException e) {
+                close(this.channel);
+                return;
+            }
+            DataConnectionListener.this.giveBack(this.channel);
+        }
+    }
+
+    void kill() {
+        this.killed = true;
+        try {
+            this.serverChannel.close();
+        } catch (IOException e) {
+            Log.writeLog(this, "cannot close data server socket: " + e.getLocalizedMessage());
+        }
+        this.selector.wakeup();
+    }
+
+    private static void close(SocketChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // ignore
+        }
+    }
+}
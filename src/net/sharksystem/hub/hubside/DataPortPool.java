@@ -0,0 +1,192 @@
+package net.sharksystem.hub.hubside;
+
+import net.sharksystem.utils.Log;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.BitSet;
+
+/**
+ * Listening sockets for data connections - one per encounter in multi channel mode. A socket accepts one data
+ * connection. It is given back afterwards and leased again for another encounter - still bound, no bind call.
+ * A few idle sockets are kept, more are closed. Idle sockets still listen - connection attempts queued while
+ * idle are dropped when the socket is leased again.
+ * <br/><br/>
+ * With a port range: A bitmap remembers ports which are in use by this hub. Free ports are probed round robin.
+ * Ports which failed to bind (used by another process) are skipped until no free port is left - then all of them
+ * are probed again. Without a port range: sockets are bound to an ephemeral port.
+ * <br/><br/>
+ * Sockets are bound with a channel - accepted data connections can be relayed without a stream link.
+ * @see SpliceRelay
+ */
+class DataPortPool {
+    static final int DEFAULT_MAX_IDLE_SOCKETS = 8;
+
+    private final int minPort; // 0: ephemeral ports
+    private final int maxPort;
+    private final int maxIdleSockets;
+
+    private final BitSet inUse = new BitSet(); // bit i: minPort + i is bound by this hub
+    private final BitSet foreign = new BitSet(); // bit i: minPort + i failed to bind
+    private int nextPort = 0; // offset to minPort
+    private final ArrayDeque<ServerSocket> idle = new ArrayDeque<>();
+    private boolean closed = false;
+
+    DataPortPool() {
+        this(0, 0, DEFAULT_MAX_IDLE_SOCKETS);
+    }
+
+    DataPortPool(int minPort, int maxPort, int maxIdleSockets) {
+        this.minPort = minPort;
+        this.maxPort = maxPort;
+        this.maxIdleSockets = maxIdleSockets;
+    }
+
+    private boolean portRange() {
+        return this.minPort > 0 && this.maxPort > 0;
+    }
+
+    /**
+     * Bind idle sockets in advance - first encounters need no bind call either.
+     * @return number of idle sockets
+     */
+    synchronized int prebind(int number) {
+        number = Math.min(number, this.maxIdleSockets);
+        while(!this.closed && this.idle.size() < number) {
+            try {
+                this.idle.push(this.bind());
+            } catch (IOException e) {
+                break; // no more ports
+            }
+        }
+        return this.idle.size();
+    }
+
+    /**
+     * @return listening socket - must be given back with {@link #release(ServerSocket)} or
+     * {@link #discard(ServerSocket)}
+     * @throws IOException no port left
+     */
+    synchronized ServerSocket lease() throws IOException {
+        if(this.closed) throw new IOException("data port pool closed");
+        ServerSocket srv;
+        while((srv = this.idle.poll()) != null) {
+            // strays reached it while idle - must not be taken for the data connection of this encounter
+            if(this.dropPendingConnections(srv)) return srv;
+            this.discard(srv);
+        }
+        return this.bind();
+    }
+
+    /**
+     * Socket has accepted its data connection and can be leased again. Connection attempts which are queued in the
+     * meantime are dropped - nobody waits for them.
+     */
+    void release(ServerSocket srv) {
+        if(srv.isClosed() || !this.dropPendingConnections(srv)) {
+            this.discard(srv);
+            return;
+        }
+
+        synchronized(this) {
+            if(!this.closed && this.idle.size() < this.maxIdleSockets) {
+                this.idle.push(srv);
+                return;
+            }
+        }
+        this.discard(srv);
+    }
+
+    /**
+     * Close socket - e.g. after a time out. A late connection attempt must not reach another encounter.
+     */
+    void discard(ServerSocket srv) {
+        int port = srv.getLocalPort();
+        try {
+            srv.close();
+        } catch (IOException e) {
+            Log.writeLog(this, "problems closing server socket: " + e.getLocalizedMessage());
+        }
+
+        if(this.portRange() && port >= this.minPort && port <= this.maxPort) {
+            synchronized(this) {
+                this.inUse.clear(port - this.minPort);
+            }
+        }
+    }
+
+    synchronized int idleSockets() {
+        return this.idle.size();
+    }
+
+    synchronized void close() {
+        this.closed = true;
+        while(!this.idle.isEmpty()) this.discard(this.idle.poll());
+    }
+
+    // synchronized by caller
+    private ServerSocket bind() throws IOException {
+        if(!this.portRange()) return openServerSocket(0);
+
+        int range = this.maxPort - this.minPort + 1;
+        for(int round = 0; round < 2; round++) {
+            for(int probed = 0; probed < range; probed++) {
+                int offset = this.nextFreeOffset(range);
+                if(offset < 0) break;
+                this.nextPort = (offset + 1) % range;
+                try {
+                    ServerSocket srv = openServerSocket(this.minPort + offset);
+                    this.inUse.set(offset);
+                    return srv;
+                } catch (IOException ioe) {
+                    // port used by someone else - skip it for a while
+                    this.foreign.set(offset);
+                }
+            }
+            // other processes might have released their ports
+            this.foreign.clear();
+        }
+        throw new IOException("all ports are in use");
+    }
+
+    private int nextFreeOffset(int range) {
+        int offset = this.nextClearOffset(this.nextPort);
+        if(offset >= range) offset = this.nextClearOffset(0);
+        return offset < range ? offset : -1;
+    }
+
+    private int nextClearOffset(int from) {
+        int offset = this.inUse.nextClearBit(from);
+        while(this.foreign.get(offset)) offset = this.inUse.nextClearBit(offset + 1);
+        return offset;
+    }
+
+    private boolean dropPendingConnections(ServerSocket srv) {
+        ServerSocketChannel channel = srv.getChannel();
+        if(channel == null) return false;
+        try {
+            channel.configureBlocking(false);
+            SocketChannel late;
+            while((late = channel.accept()) != null) late.close();
+            channel.configureBlocking(true);
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private static ServerSocket openServerSocket(int port) throws IOException {
+        ServerSocketChannel channel = ServerSocketChannel.open();
+        try {
+            channel.bind(new InetSocketAddress(port));
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        return channel.socket();
+    }
+}
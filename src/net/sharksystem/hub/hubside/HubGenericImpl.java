@@ -3,12 +3,12 @@ package net.sharksystem.hub.hubside;
 import net.sharksystem.asap.ASAPPeer;
 import net.sharksystem.hub.ASAPHubException;
 import net.sharksystem.hub.Connector;
+import net.sharksystem.hub.metrics.HubMetrics;
+import net.sharksystem.hub.utils.HubLog;
 import net.sharksystem.streams.StreamPair;
 import net.sharksystem.streams.StreamPairLink;
-import net.sharksystem.utils.Log;
 
 import java.io.IOException;
-import java.util.*;
 
 public abstract class HubGenericImpl implements Hub, HubInternal {
     /**
@@ -23,8 +23,10 @@ public abstract class HubGenericImpl implements Hub, HubInternal {
     @Override
     public void connectionRequest(CharSequence sourcePeerID, CharSequence targetPeerID,
                           int timeout) throws ASAPHubException, IOException {
-        Log.writeLog(this, "received connection request ("
-                + sourcePeerID + " -> " + targetPeerID + ")");
+        if(HubLog.isDebugEnabled()) {
+            HubLog.debug(this, null, "received connection request (" + sourcePeerID + " -> " + targetPeerID + ")");
+        }
+        HubMetrics.getHubMetrics().connectionRequestReceived();
 
         // request comes from hub connector - relay this request to the other side
         this.sendConnectionRequest(sourcePeerID, targetPeerID, timeout);
@@ -78,30 +80,17 @@ public abstract class HubGenericImpl implements Hub, HubInternal {
     public void startDataSession(CharSequence sourcePeerID, CharSequence targetPeerID,
                                  StreamPair connection, int timeout) throws ASAPHubException, IOException {
         // remember this request
-        this.dataSessionRequestList.add(
-                new DataSessionRequest(sourcePeerID, targetPeerID, connection, timeout));
+        this.dataSessionRequests.add(
+                new PendingDataSessions.DataSessionRequest(sourcePeerID, targetPeerID, connection, timeout));
 
-        Log.writeLog(this, "start data session " + sourcePeerID + " -> " + targetPeerID);
+        if(HubLog.isDebugEnabled()) {
+            HubLog.debug(this, null, "start data session " + sourcePeerID + " -> " + targetPeerID);
+        }
         this.createDataConnection(sourcePeerID, targetPeerID, timeout);
     }
 
-    private List<DataSessionRequest> dataSessionRequestList = new ArrayList<>();
-    private class DataSessionRequest {
-        private final long until;
-        private final CharSequence sourcePeerID;
-        private final CharSequence targetPeerID;
-        private final StreamPair connection;
-        private final int timeout;
-
-        DataSessionRequest(CharSequence sourcePeerID, CharSequence targetPeerID,
-                           StreamPair connection, int timeout) {
-            this.sourcePeerID = sourcePeerID;
-            this.targetPeerID = targetPeerID;
-            this.connection = connection;
-            this.until = System.currentTimeMillis() + timeout;
-            this.timeout = timeout;
-        }
-    }
+    /** pending data session requests - matched by (source, target), reaped when timed out */
+    private final PendingDataSessions dataSessionRequests = new PendingDataSessions();
 
     /**
      * Create a connection to this peer. Call connectionCreated on this object if done.
@@ -113,49 +102,55 @@ public abstract class HubGenericImpl implements Hub, HubInternal {
             throws ASAPHubException, IOException;
 
     void connectionCreated(CharSequence sourcePeerID, CharSequence targetPeerID, StreamPair connection) {
-        Log.writeLog(this, "connection created called");
-        DataSessionRequest dataSessionRequest = null;
-        List<DataSessionRequest> addAgain = new ArrayList<>();
-        do {
-            dataSessionRequest = this.dataSessionRequestList.remove(0);
-            if(dataSessionRequest.until >= System.currentTimeMillis()) {
-                // still valid
-                if(!sourcePeerID.toString().equalsIgnoreCase(dataSessionRequest.sourcePeerID.toString())
-                    || !targetPeerID.toString().equalsIgnoreCase(dataSessionRequest.targetPeerID.toString())) {
-                    // does not match
-                    Log.writeLog(this, "data session request does not fit");
-                    addAgain.add(dataSessionRequest);
-                    dataSessionRequest = null;
-                }
-            }
-        } while(dataSessionRequest == null && !this.dataSessionRequestList.isEmpty());
-
-        // put back in list
-        for(DataSessionRequest r : addAgain) { this.dataSessionRequestList.add(r); }
+        HubLog.debug(this, null, "connection created called");
+        PendingDataSessions.DataSessionRequest dataSessionRequest =
+                this.dataSessionRequests.take(sourcePeerID, targetPeerID);
 
         if(dataSessionRequest != null) {
             // found match
-            Log.writeLog(this, "found fitting data session in list");
+            HubLog.debug(this, null, "found fitting data session in list");
+            RelayMetering relayMetering = new RelayMetering();
+            if(SpliceRelay.canSplice(dataSessionRequest.connection, connection)) {
+                try {
+                    // tell peers e2e is established
+                    HubLog.debug(this, null, "send ready byte to each peer");
+                    dataSessionRequest.connection.getOutputStream().write(Connector.readyByte);
+                    connection.getOutputStream().write(Connector.readyByte);
+
+                    HubLog.debug(this, null, "relay data session on socket channels");
+                    SpliceRelay.getSpliceRelay().link(
+                            (SocketChannelStreamPair) dataSessionRequest.connection, sourcePeerID,
+                            (SocketChannelStreamPair) connection, targetPeerID, relayMetering);
+                } catch (IOException e) {
+                    HubLog.error(this, null, "while creating splice relay: ", e.getLocalizedMessage());
+                    relayMetering.ended();
+                    dataSessionRequest.connection.close();
+                    connection.close();
+                }
+                return;
+            }
+
             try {
-                Log.writeLog(this, "create data link");
+                HubLog.debug(this, null, "create data link");
                 StreamPairLink dataLink =
                         new StreamPairLink(
-                                dataSessionRequest.connection,
-                                sourcePeerID, connection,
+                                relayMetering.meter(dataSessionRequest.connection),
+                                sourcePeerID, relayMetering.meter(connection),
                                 targetPeerID, false);
 
                 // tell peers e2e is established
-                Log.writeLog(this, "send ready byte to each peer");
+                HubLog.debug(this, null, "send ready byte to each peer");
                 dataSessionRequest.connection.getOutputStream().write(Connector.readyByte);
                 connection.getOutputStream().write(Connector.readyByte);
 
                 // now go
                 dataLink.start();
             } catch (IOException e) {
-                Log.writeLogErr(this, "while creating stream pair link: " + e.getLocalizedMessage());
+                HubLog.error(this, null, "while creating stream pair link: ", e.getLocalizedMessage());
+                relayMetering.ended();
             }
         } else {
-            Log.writeLog(this, "no fitting data session in list");
+            HubLog.debug(this, null, "no fitting data session in list");
         }
     }
 
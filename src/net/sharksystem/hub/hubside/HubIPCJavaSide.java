@@ -1,6 +1,8 @@
 package net.sharksystem.hub.hubside;
 
 import net.sharksystem.hub.ASAPHubException;
+import net.sharksystem.hub.PeerId;
+import net.sharksystem.hub.PeerIdSet;
 import net.sharksystem.streams.StreamPair;
 import net.sharksystem.streams.StreamPairImpl;
 import net.sharksystem.hub.hubside.lora_ipc.*;
@@ -10,13 +12,14 @@ import java.net.Socket;
 import java.net.SocketException;
 import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class HubIPCJavaSide extends HubGenericImpl {
     // see documentation of those abstract methods in HubGenericImpl, example implementation e.g. in HubSingleEntity
     private final String delimiter = "|";
     private final InputStream inputStream;
     private final OutputStream outputStream;
-    private Map<CharSequence, ConnectorInternal> connectorInternalMap;
+    private Map<PeerId, ConnectorInternal> connectorInternalMap;
     private RegisteredPeersModel registeredPeersResponse;
     private final int messagePort;
     private final String host;
@@ -31,7 +34,7 @@ public class HubIPCJavaSide extends HubGenericImpl {
         this.socket = new Socket(host, port);
         this.outputStream = new DataOutputStream(socket.getOutputStream());
         this.inputStream = socket.getInputStream();
-        this.connectorInternalMap = new HashMap<>();
+        this.connectorInternalMap = new ConcurrentHashMap<>();
         this.host = host;
         this.messagePort = messagePort;
     }
@@ -70,20 +73,20 @@ public class HubIPCJavaSide extends HubGenericImpl {
 
     @Override
     public void createDataConnection(CharSequence sourcePeerID, CharSequence targetPeerID, int timeout) throws ASAPHubException, IOException {
-        ConnectorInternal connectorInternal = this.connectorInternalMap.get(targetPeerID);
+        ConnectorInternal connectorInternal = this.connectorInternalMap.get(PeerId.of(targetPeerID));
         StreamPair streamPair = connectorInternal.initDataSession(sourcePeerID, targetPeerID, timeout);
         this.connectionCreated(sourcePeerID, targetPeerID, streamPair);
     }
 
     @Override
     public void notifyConnectionEnded(CharSequence sourcePeerID, CharSequence targetPeerID, StreamPair connection) throws ASAPHubException {
-        this.connectorInternalMap.get(targetPeerID).notifyConnectionEnded(sourcePeerID, targetPeerID, connection);
+        this.connectorInternalMap.get(PeerId.of(targetPeerID)).notifyConnectionEnded(sourcePeerID, targetPeerID, connection);
     }
 
     @Override
     public void register(CharSequence peerId, ConnectorInternal hubConnectorSession) {
         this.sendRegistrationMessage(peerId, true);
-        this.connectorInternalMap.put(peerId, hubConnectorSession);
+        this.connectorInternalMap.put(PeerId.of(peerId), hubConnectorSession);
     }
 
     @Override
@@ -94,7 +97,33 @@ public class HubIPCJavaSide extends HubGenericImpl {
     @Override
     public void unregister(CharSequence peerId) {
         this.sendRegistrationMessage(peerId, false);
-        this.connectorInternalMap.remove(peerId);
+        this.connectorInternalMap.remove(PeerId.of(peerId));
+    }
+
+    @Override
+    public void unregister(CharSequence peerId, ConnectorInternal hubConnectorSession) {
+        if(this.connectorInternalMap.get(PeerId.of(peerId)) == hubConnectorSession) this.unregister(peerId);
+    }
+
+    @Override
+    public long getRegistryVersion() {
+        // registry is kept on python side
+        return -1;
+    }
+
+    @Override
+    public void addRegistryListener(RegistryListener listener) {
+        // registry is kept on python side - changes are not noticed here
+    }
+
+    @Override
+    public void removeRegistryListener(RegistryListener listener) {
+    }
+
+    @Override
+    public RegisteredPeersDelta getRegisteredPeersDelta(long knownVersion) {
+        // no versions - always complete
+        return new RegisteredPeersDelta(-1, true, this.getRegisteredPeers(), null);
     }
 
     /**
@@ -105,7 +134,7 @@ public class HubIPCJavaSide extends HubGenericImpl {
      */
     private void sendRegistrationMessage(CharSequence peerId, boolean register) {
         try {
-            this.sendIPCMessage(new RegistrationModel((String) peerId, register));
+            this.sendIPCMessage(new RegistrationModel(peerId.toString(), register));
         } catch (IOException ioException) {
             ioException.printStackTrace();
         }
@@ -129,7 +158,7 @@ public class HubIPCJavaSide extends HubGenericImpl {
             attempts++;
         }
         registeredPeers = this.registeredPeersResponse;
-        Set<CharSequence> peers = new HashSet<>();
+        Set<CharSequence> peers = new PeerIdSet();
         if (null != registeredPeers.getRegisteredPeers()) {
             peers.addAll(registeredPeers.getRegisteredPeers());
         }
@@ -138,12 +167,7 @@ public class HubIPCJavaSide extends HubGenericImpl {
 
     @Override
     public boolean isRegistered(CharSequence peerID) {
-        for (CharSequence peer : this.getRegisteredPeers()) {
-            if (peer.equals(peerID)) {
-                return true;
-            }
-        }
-        return false;
+        return this.getRegisteredPeers().contains(peerID);
     }
 
     /**
@@ -184,7 +208,8 @@ public class HubIPCJavaSide extends HubGenericImpl {
      * @param connectRequest ConnectRequestModel which contains the data
      */
     private void processIncomingDisconnectRequest(DisconnectRequestModel connectRequest) throws ASAPHubException, IOException {
-        ConnectorInternal connectorInternal = this.connectorInternalMap.get(connectRequest.getTargetPeerID());
+        ConnectorInternal connectorInternal =
+                this.connectorInternalMap.get(PeerId.of(connectRequest.getTargetPeerID()));
         CharSequence sourcePeerId = connectRequest.getSourcePeerID();
         CharSequence targetPeerId = connectRequest.getTargetPeerID();
 
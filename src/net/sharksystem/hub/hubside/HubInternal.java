@@ -20,12 +20,40 @@ public interface HubInternal extends ConnectionEstablisher {
      */
     void unregister(CharSequence peerId);
 
+    /**
+     * unregister a peer if it is still registered with this connector. A peer could have re-connected with
+     * another connector in the meantime.
+     * @param peerId alias for peer connection
+     * @param hubConnectorSession connector that is about to go
+     */
+    void unregister(CharSequence peerId, ConnectorInternal hubConnectorSession);
+
     /**
      * get all registered peers in hub
      * @return Set<CharSequence> with all registered peers
      */
     Set<CharSequence> getRegisteredPeers();
 
+    /**
+     * @return version of peer registry - it changes with each (un-)registration. Negative: hub does not
+     * keep track of versions.
+     */
+    long getRegistryVersion();
+
+    /**
+     * @param knownVersion registry version a peer has seen last - negative: unknown
+     * @return changes since known version - or all registered peers if changes are not (longer) known
+     */
+    RegisteredPeersDelta getRegisteredPeersDelta(long knownVersion);
+
+    /**
+     * Listener is told whenever peers join or leave.
+     * @param listener
+     */
+    void addRegistryListener(RegistryListener listener);
+
+    void removeRegistryListener(RegistryListener listener);
+
     /**
      * Ask of a peer with id is already registered with this hub.
      * @param peerID
@@ -1,57 +1,193 @@
 package net.sharksystem.hub.hubside;
 
 import net.sharksystem.hub.ASAPHubException;
+import net.sharksystem.hub.PeerId;
+import net.sharksystem.hub.PeerIdSet;
+import net.sharksystem.hub.metrics.HubMetrics;
 import net.sharksystem.streams.StreamPair;
 import net.sharksystem.utils.Log;
 
 import java.io.IOException;
-import java.util.HashMap;
+import java.util.ArrayDeque;
+import java.util.Deque;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 public abstract class HubSingleEntity extends HubGenericImpl {
     ///////////////////////////////////////////////////////////////////////////////////////////////////////
     //                                           Hub - internal                                          //
     ///////////////////////////////////////////////////////////////////////////////////////////////////////
-    private Map<CharSequence, ConnectorInternal> hubSessions = new HashMap<>();
+    /*
+    Registry is read far more often than changed: each status request and each connection request looks up peers.
+    Reads are lock-free. Changes are short and serialized by a lock - membership, version and change log must
+    not get out of step. Set of registered peers is handed out as immutable snapshot which is only rebuilt after
+    a change. Version is increased with each membership change. Recent changes are kept - peers can ask
+    for changes since a version instead of the complete list.
+     */
+    private static final int MAX_REGISTRY_CHANGES = 1024;
+
+    private final Map<PeerId, ConnectorInternal> hubSessions = new ConcurrentHashMap<>();
+    private final Object registryLock = new Object();
+    private volatile long registryVersion = 0;
+    private final Deque<RegistryChange> registryChanges = new ArrayDeque<>(); // guarded by registryLock
+    private volatile RegisteredPeersDelta completeRegistry = new RegisteredPeersDelta(0, true, null, null);
+    private final Set<RegistryListener> registryListeners = ConcurrentHashMap.newKeySet();
+
+    private static class RegistryChange {
+        private final long version;
+        private final PeerId peerID;
+        private final boolean added;
+
+        RegistryChange(long version, PeerId peerID, boolean added) {
+            this.version = version;
+            this.peerID = peerID;
+            this.added = added;
+        }
+    }
+
+    // call with registry lock
+    private void registryChanged(PeerId peerID, boolean added) {
+        if(added) HubMetrics.getHubMetrics().peerRegistered();
+        else HubMetrics.getHubMetrics().peerUnregistered();
+
+        this.registryVersion++;
+        this.registryChanges.addLast(new RegistryChange(this.registryVersion, peerID, added));
+        if(this.registryChanges.size() > MAX_REGISTRY_CHANGES) this.registryChanges.removeFirst();
+    }
+
+    // call without registry lock
+    private void notifyRegistryListeners() {
+        long version = this.registryVersion;
+        for(RegistryListener listener : this.registryListeners) {
+            listener.registryChanged(version);
+        }
+    }
+
+    @Override
+    public void addRegistryListener(RegistryListener listener) {
+        this.registryListeners.add(listener);
+    }
+
+    @Override
+    public void removeRegistryListener(RegistryListener listener) {
+        this.registryListeners.remove(listener);
+    }
 
     @Override
     public boolean isRegistered(CharSequence peerID) {
-        return this.hubSessions.keySet().contains(peerID);
+        return peerID != null && this.hubSessions.containsKey(PeerId.of(peerID));
     }
 
+    /**
+     * @return immutable snapshot of registered peers - it is not changed by later (un-)registrations.
+     */
     @Override
     public Set<CharSequence> getRegisteredPeers() {
-        return this.hubSessions.keySet();
+        return this.getCompleteRegistry().addedPeers;
+    }
+
+    private RegisteredPeersDelta getCompleteRegistry() {
+        RegisteredPeersDelta complete = this.completeRegistry;
+        if(complete.version == this.registryVersion) return complete;
+
+        synchronized (this.registryLock) {
+            if(this.completeRegistry.version != this.registryVersion) {
+                this.completeRegistry = new RegisteredPeersDelta(this.registryVersion, true,
+                        new PeerIdSet(this.hubSessions.keySet()), null);
+            }
+            return this.completeRegistry;
+        }
+    }
+
+    @Override
+    public long getRegistryVersion() {
+        return this.registryVersion;
+    }
+
+    @Override
+    public RegisteredPeersDelta getRegisteredPeersDelta(long knownVersion) {
+        synchronized (this.registryLock) {
+            long oldestVersion = this.registryChanges.isEmpty() ?
+                    this.registryVersion + 1 : this.registryChanges.getFirst().version;
+
+            if(knownVersion < 0 || knownVersion > this.registryVersion || knownVersion + 1 < oldestVersion) {
+                // unknown or forgotten version
+                return this.getCompleteRegistry();
+            }
+
+            Set<CharSequence> added = new PeerIdSet();
+            Set<CharSequence> removed = new PeerIdSet();
+            for(RegistryChange change : this.registryChanges) {
+                if(change.version <= knownVersion) continue;
+                if(change.added) {
+                    removed.remove(change.peerID);
+                    added.add(change.peerID);
+                } else {
+                    added.remove(change.peerID);
+                    removed.add(change.peerID);
+                }
+            }
+            return new RegisteredPeersDelta(this.registryVersion, false, added, removed);
+        }
     }
 
     @Override
     public void register(CharSequence peerID, ConnectorInternal hubConnectorSession) {
-        this.hubSessions.put(peerID, hubConnectorSession);
-        Log.writeLog(this, "peer registered - now: " + this.hubSessions.values());
+        this.register(peerID, hubConnectorSession, false);
     }
 
     @Override
     public void register(CharSequence peerID, ConnectorInternal hubConnectorSession, boolean canCreateTCPConnections) {
-        this.hubSessions.put(peerID, hubConnectorSession);
-        Log.writeLog(this, "peer registered - now: " + this.hubSessions.values());
+        if(peerID == null || hubConnectorSession == null) {
+            Log.writeLogErr(this, "cannot register peer without id or connector");
+            return;
+        }
+        PeerId peerId = PeerId.of(peerID);
+        boolean changed;
+        synchronized (this.registryLock) {
+            // a re-connected peer replaces its old connector - no membership change
+            changed = this.hubSessions.put(peerId, hubConnectorSession) == null;
+            if(changed) this.registryChanged(peerId, true);
+        }
+        Log.writeLog(this, "peer registered: " + peerID + " - now: " + this.hubSessions.size() + " peers");
+        if(changed) this.notifyRegistryListeners();
     }
 
     @Override
     public void unregister(CharSequence peerID) {
-        this.hubSessions.remove(peerID);
-        Log.writeLog(this, "peer unregistered - now: " + this.hubSessions.values());
+        if(peerID == null) return;
+        PeerId peerId = PeerId.of(peerID);
+        boolean changed;
+        synchronized (this.registryLock) {
+            changed = this.hubSessions.remove(peerId) != null;
+            if(changed) this.registryChanged(peerId, false);
+        }
+        Log.writeLog(this, "peer unregistered: " + peerID + " - now: " + this.hubSessions.size() + " peers");
+        if(changed) this.notifyRegistryListeners();
     }
 
+    @Override
+    public void unregister(CharSequence peerID, ConnectorInternal hubConnectorSession) {
+        // peer could have re-connected meanwhile - do not remove its new connector
+        if(peerID == null) return;
+        PeerId peerId = PeerId.of(peerID);
+        synchronized (this.registryLock) {
+            if(!this.hubSessions.remove(peerId, hubConnectorSession)) return;
+            this.registryChanged(peerId, false);
+        }
+        Log.writeLog(this, "peer unregistered: " + peerID + " - now: " + this.hubSessions.size() + " peers");
+        this.notifyRegistryListeners();
+    }
 
     /*
     protected ConnectorInternal getConnectorInternal(CharSequence peerID) {
-        return this.hubSessions.get(peerID);
+        return this.hubSessions.get(PeerId.of(peerID));
     }
      */
 
     protected ConnectorInternal getConnector(CharSequence peerID) throws ASAPHubException {
-        ConnectorInternal connector = this.hubSessions.get(peerID);
+        ConnectorInternal connector = peerID != null ? this.hubSessions.get(PeerId.of(peerID)) : null;
         if(connector == null) throw new ASAPHubException("not connector for " + peerID);
         return connector;
     }
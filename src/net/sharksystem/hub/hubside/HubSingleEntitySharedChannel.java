@@ -1,16 +1,45 @@
 package net.sharksystem.hub.hubside;
 
+import net.sharksystem.asap.ASAPException;
 import net.sharksystem.hub.ASAPHubException;
+import net.sharksystem.hub.utils.HubThreads;
 import net.sharksystem.streams.IdleStreamPairCloser;
 import net.sharksystem.streams.StreamPair;
 import net.sharksystem.utils.Log;
 
 import java.io.IOException;
+import java.util.concurrent.ThreadFactory;
 
 /**
  * Implements hub as a single entity to which connectors can connect.
  */
 public class HubSingleEntitySharedChannel extends HubSingleEntity implements NewConnectionCreatorListener {
+    private ThreadFactory threadFactory = HubThreads.platformThreadFactory();
+
+    /**
+     * Connector sessions, their timers and helper threads are created with this factory. Platform threads
+     * are used by default.
+     * @param threadFactory
+     */
+    public void setThreadFactory(ThreadFactory threadFactory) throws ASAPException {
+        if(threadFactory == null) throw new ASAPException("thread factory must not be null");
+        this.threadFactory = threadFactory;
+    }
+
+    public ThreadFactory getThreadFactory() {
+        return this.threadFactory;
+    }
+
+    /**
+     * Run connector sessions on virtual threads. A blocked connector thread costs hardly anything in that case.
+     * Platform threads are used if runtime does not offer virtual threads.
+     * @return true if virtual threads are used
+     */
+    public boolean useVirtualThreads() {
+        this.threadFactory = HubThreads.virtualThreadFactory();
+        return HubThreads.virtualThreadsSupported();
+    }
+
     /**
      * Method is called on the hub by a connector and asks for connection to another peer via its connector. In a
      * decentralized system like this - look for a registered connector and relay the request. source and target
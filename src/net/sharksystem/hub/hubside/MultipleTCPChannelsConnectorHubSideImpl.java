@@ -30,19 +30,32 @@ public class MultipleTCPChannelsConnectorHubSideImpl extends SharedChannelConnec
     private boolean createNewConnectionWithMyPeer(NewConnectionCreatorListener listener,
                               CharSequence sourcePeerID, CharSequence targetPeerID,
                               int timeOutConnectionRequest, int timeOutDataConnection) throws IOException {
-        ServerSocket srvSocket = this.getServerSocket();
-        int localPort = srvSocket.getLocalPort();
-        (new NewConnectionCreator(srvSocket, listener,
-                sourcePeerID, targetPeerID, timeOutConnectionRequest, timeOutDataConnection)).start();
-
-        // tell peer side connector to connect to server socket
-        HubPDUConnectPeerNewTCPSocketRQ newConnectionRQ = new HubPDUConnectPeerNewTCPSocketRQ(
-                targetPeerID, localPort);
+        ASAPTCPHub tcpHub = this.getTCPHub();
+        HubPDUConnectPeerNewTCPSocketRQ newConnectionRQ;
+        int localPort;
+        DataConnectionListener dataConnectionListener = tcpHub.getDataConnectionListener();
+        if(dataConnectionListener != null && this.peerSideDataPortTokens()) {
+            // single data port - peer presents token
+            long token = dataConnectionListener.expect(listener, sourcePeerID, targetPeerID,
+                    timeOutConnectionRequest, timeOutDataConnection);
+            localPort = dataConnectionListener.getPort();
+            newConnectionRQ = new HubPDUConnectPeerNewTCPSocketRQ(targetPeerID, localPort, token);
+        } else {
+            DataPortPool dataPortPool = tcpHub.getDataPortPool();
+            ServerSocket srvSocket = dataPortPool.lease();
+            localPort = srvSocket.getLocalPort();
+            (new NewConnectionCreator(srvSocket, dataPortPool, listener,
+                    sourcePeerID, targetPeerID, timeOutConnectionRequest, timeOutDataConnection,
+                    this.getThreadFactory())).start();
+
+            // tell peer side connector to connect to server socket
+            newConnectionRQ = new HubPDUConnectPeerNewTCPSocketRQ(targetPeerID, localPort);
+        }
 
         Log.writeLog(this, this.toString(),"ask my peer to connect to targetPeerID = " + targetPeerID
                 + " with port: " + localPort);
 
-        newConnectionRQ.sendPDU(this.getOutputStream());
+        this.sendPDU(newConnectionRQ);
 
         return true;
     }
@@ -73,20 +86,14 @@ public class MultipleTCPChannelsConnectorHubSideImpl extends SharedChannelConnec
                 timeOutConnectionRequest, timeOutDataConnection);
     }
 
-    private ServerSocket getServerSocket() throws IOException {
+    private ASAPTCPHub getTCPHub() throws IOException {
         HubInternal hub = this.getHub();
         // now it gets messy - needs to be cleaned up sometimes
         if(!(hub instanceof ASAPTCPHub)) {
             throw new IOException("need TCPHub to work - FATAL");
         }
 
-        ASAPTCPHub tcpHub = (ASAPTCPHub) hub;
-        ServerSocket srvSocket = null;
-        try {
-            return tcpHub.getServerSocket();
-        } catch (IOException e) {
-            throw new IOException("failed to get a new server socket");
-        }
+        return (ASAPTCPHub) hub;
     }
 
     // called as result of a new connection request - peer has created a new data connection
@@ -30,10 +30,12 @@ public class MultipleTORChannelsConnectorHubSideImpl extends SharedChannelConnec
     private boolean createNewConnectionWithMyPeer(NewConnectionCreatorListener listener,
                               CharSequence sourcePeerID, CharSequence targetPeerID,
                               int timeOutConnectionRequest, int timeOutDataConnection) throws IOException {
-        ServerSocket srvSocket = this.getServerSocket();
+        DataPortPool dataPortPool = this.getDataPortPool();
+        ServerSocket srvSocket = dataPortPool.lease();
         int localPort = srvSocket.getLocalPort();
-        (new NewConnectionCreator(srvSocket, listener,
-                sourcePeerID, targetPeerID, 30000, timeOutDataConnection)).start();
+        (new NewConnectionCreator(srvSocket, dataPortPool, listener,
+                sourcePeerID, targetPeerID, 30000, timeOutDataConnection,
+                this.getThreadFactory())).start();
 
         // tell peer side connector to connect to server socket
         HubPDUConnectPeerNewTCPSocketRQ newConnectionRQ = new HubPDUConnectPeerNewTCPSocketRQ(
@@ -42,7 +44,7 @@ public class MultipleTORChannelsConnectorHubSideImpl extends SharedChannelConnec
         Log.writeLog(this, this.toString(),"ask my peer to connect to targetPeerID = " + targetPeerID
                 + " with port: " + localPort);
 
-        newConnectionRQ.sendPDU(this.getOutputStream());
+        this.sendPDU(newConnectionRQ);
 
         return true;
     }
@@ -73,20 +75,14 @@ public class MultipleTORChannelsConnectorHubSideImpl extends SharedChannelConnec
                 timeOutConnectionRequest, timeOutDataConnection);
     }
 
-    private ServerSocket getServerSocket() throws IOException {
+    private DataPortPool getDataPortPool() throws IOException {
         HubInternal hub = this.getHub();
         // now it gets messy - needs to be cleaned up sometimes
         if(!(hub instanceof ASAPTORHub)) {
             throw new IOException("need TORHub to work - FATAL");
         }
 
-        ASAPTORHub tcpHub = (ASAPTORHub) hub;
-        ServerSocket srvSocket = null;
-        try {
-            return tcpHub.getServerSocket();
-        } catch (IOException e) {
-            throw new IOException("failed to get a new server socket");
-        }
+        return ((ASAPTORHub) hub).getDataPortPool();
     }
 
     // called as result of a new connection request - peer has created a new data connection
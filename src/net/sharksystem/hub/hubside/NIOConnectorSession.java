@@ -0,0 +1,440 @@
+package net.sharksystem.hub.hubside;
+
+import net.sharksystem.asap.ASAPException;
+import net.sharksystem.hub.Connector;
+import net.sharksystem.hub.protocol.*;
+import net.sharksystem.utils.Log;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.Executor;
+
+/**
+ * Connector session on a non-blocking socket channel. There is no thread per session. An event loop fills a buffer
+ * whenever bytes arrive. PDUs are decoded from that buffer and handed over to the connector on a worker thread.
+ * <br/><br/>
+ * A shared channel is also used for data sessions. Connector kills its session in that case. This session stops
+ * decoding PDUs and offers remaining and following bytes by a (blocking) input stream. Connector re-starts this
+ * session (it is its own factory) when connector protocol resumes.
+ * <br/><br/>
+ * Read buffer grows while a PDU is incomplete. With enveloped PDUs, its size is known from its header - buffer is
+ * taken from a pool in the required size at once and given back when drained.
+ */
+class NIOConnectorSession implements ConnectorSession, ConnectorSessionFactory {
+    private static final int INITIAL_BUFFER_SIZE = ReadBufferPool.MIN_SIZE;
+    private static final int MAX_BUFFER_SIZE = ReadBufferPool.MAX_SIZE;
+    private static final int WAIT_WRITABLE_IN_MILLIS = 100;
+
+    private final SocketChannel channel;
+    private final NIOHubEventLoop eventLoop;
+    private final Executor executor;
+    private final InputStream is = new ChannelInputStream();
+    private final OutputStream os = new ChannelOutputStream();
+    private final Object writeLock = new Object();
+
+    private Connector connector = null;
+    private HubPDUReader pduReader = null;
+    private SelectionKey selectionKey = null;
+    private ByteBuffer readBuffer = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+    private int requiredCapacity = 0; // size of incomplete pdu in buffer - as far as known
+    private ByteBuffer decodeBuffer = ByteBuffer.allocate(0); // processing thread only: copy of unread bytes
+
+    // status - guarded by this
+    private boolean registered = false;
+    private boolean attached = false;
+    private boolean processing = false;
+    private boolean readingSuspended = false;
+    private boolean closed = false;
+    private int detachments = 0;
+
+    NIOConnectorSession(SocketChannel channel, NIOHubEventLoop eventLoop, Executor executor) throws IOException {
+        this.channel = channel;
+        this.eventLoop = eventLoop;
+        this.executor = executor;
+
+        this.channel.configureBlocking(false);
+        this.readBuffer.flip(); // read mode - nothing to read yet
+    }
+
+    SocketChannel getChannel() { return this.channel; }
+    InputStream getInputStream() { return this.is; }
+    OutputStream getOutputStream() { return this.os; }
+
+    /////////////////////////////////////////////////////////////////////////////////////////////////////////
+    //                                     connector session interface                                     //
+    /////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    @Override
+    public ConnectorSession createConnectorSession(Connector connector, HubPDUReader pduReader) {
+        // there is one session per channel - it is re-attached
+        this.connector = connector;
+        this.pduReader = pduReader;
+        return this;
+    }
+
+    @Override
+    public void start() {
+        boolean register, process;
+        synchronized (this) {
+            if(this.closed) {
+                Log.writeLog(this, this.toString(), "channel already closed - cannot start session");
+                return;
+            }
+            this.attached = true;
+            register = !this.registered;
+            this.registered = true;
+            process = !this.processing;
+            this.processing = true;
+        }
+
+        if(register) this.eventLoop.register(this);
+
+        this.executor.execute(() -> {
+            this.connector.connectorSessionStarted(this);
+            Log.writeLog(this, this.toString(), "connector session attached to event loop");
+            if(process) this.processPDUs();
+        });
+    }
+
+    @Override
+    public void kill() {
+        synchronized (this) {
+            if(!this.attached) return;
+            this.attached = false;
+            this.requiredCapacity = 0;
+            this.detachments++;
+        }
+
+        Log.writeLog(this, this.toString(), "connector session detached - channel is used as stream");
+        this.connector.connectorSessionEnded(false);
+    }
+
+    /////////////////////////////////////////////////////////////////////////////////////////////////////////
+    //                                      decode and dispatch PDUs                                       //
+    /////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Decode and dispatch PDUs as long as they are available and session is attached. Runs on a worker thread.
+     * There is at most one thread processing a session at a time - PDUs are handled in order.
+     * <br/><br/>
+     * PDUs are decoded from a copy of unread bytes without holding the lock - the event loop is not stalled by a
+     * large PDU. Bytes that arrived since last attempt are appended to that copy. An incomplete PDU is not decoded
+     * again before enough bytes arrived to complete it - it is not parsed again and again with each chunk.
+     */
+    private void processPDUs() {
+        int detachments = -1;
+        for(;;) {
+            boolean decode;
+            synchronized (this) {
+                if(!this.attached) {
+                    this.processing = false;
+                    this.releaseDecodeBuffer();
+                    return;
+                }
+
+                if(detachments != this.detachments) {
+                    // bytes might have been read as stream in the meantime - copy is stale
+                    this.decodeBuffer.position(this.decodeBuffer.limit());
+                    detachments = this.detachments;
+                }
+
+                decode = this.readBuffer.hasRemaining() && this.readBuffer.remaining() >= this.requiredCapacity;
+                if(decode) this.copyUnreadBytes();
+            }
+
+            HubPDU hubPDU = null;
+            int requiredCapacity = 0;
+            boolean malformed = false;
+            int decodeStart = this.decodeBuffer.position();
+            if(decode) {
+                try {
+                    hubPDU = this.pduReader.decode(this.decodeBuffer);
+                    // pdu size (at least) is known after a failed attempt - buffer can grow to that size at once
+                    if(hubPDU == null) requiredCapacity = this.pduReader.frameSize(this.decodeBuffer);
+                } catch (IOException | ASAPException e) {
+                    Log.writeLogErr(this, this.toString(), "malformed pdu - close channel: "
+                            + e.getLocalizedMessage());
+                    malformed = true;
+                }
+            }
+
+            synchronized (this) {
+                // detached while decoding: bytes belong to a data session
+                if(detachments != this.detachments) continue;
+
+                this.readBuffer.position(this.readBuffer.position() + this.decodeBuffer.position() - decodeStart);
+                if(decode) this.requiredCapacity = requiredCapacity;
+                if(malformed) this.closeChannel();
+
+                if(hubPDU == null && !this.closed && (this.readBuffer.limit() == MAX_BUFFER_SIZE
+                        || this.requiredCapacity > MAX_BUFFER_SIZE)) {
+                    Log.writeLogErr(this, this.toString(), "pdu exceeds buffer - close channel");
+                    this.closeChannel();
+                }
+
+                if(hubPDU == null) {
+                    this.processing = false;
+                    if(!this.closed) {
+                        // give memory back - there are a lot of idle sessions
+                        if(!this.decodeBuffer.hasRemaining()) this.releaseDecodeBuffer();
+                        this.resumeReading();
+                        return; // wait for more bytes
+                    }
+                    // connection lost
+                    this.attached = false;
+                }
+            }
+
+            if(hubPDU == null) {
+                Log.writeLog(this, this.toString(), "connection lost - no recovery expected");
+                this.connector.connectorSessionEnded(true);
+                return;
+            }
+
+            try {
+                this.connector.notifyPDUReceived(hubPDU);
+                ConnectorThread.dispatchPDU(this.connector, hubPDU);
+            }
+            catch(RuntimeException e) {
+                Log.writeLogErr(this, this.toString(), "connector failed to handle pdu: "
+                        + e.getLocalizedMessage());
+            }
+        }
+    }
+
+    private synchronized void scheduleProcessing() {
+        if(!this.attached || this.processing) return;
+        this.processing = true;
+        this.executor.execute(this::processPDUs);
+    }
+
+    /////////////////////////////////////////////////////////////////////////////////////////////////////////
+    //                                   called from event loop thread                                     //
+    /////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    void registered(SelectionKey selectionKey) {
+        this.selectionKey = selectionKey;
+    }
+
+    void channelReadable() {
+        synchronized (this) {
+            this.readBuffer.compact(); // write mode
+            if(this.requiredCapacity > this.readBuffer.capacity() && this.requiredCapacity <= MAX_BUFFER_SIZE) {
+                // size of next pdu is known - make room for all of it at once
+                this.growReadBuffer(this.requiredCapacity);
+            }
+            else if(!this.readBuffer.hasRemaining()) {
+                if(this.readBuffer.capacity() < MAX_BUFFER_SIZE) {
+                    this.growReadBuffer(this.readBuffer.capacity() * 2);
+                } else {
+                    // nobody consumes - stop reading for a while
+                    this.readBuffer.flip();
+                    this.readingSuspended = true;
+                    this.selectionKey.interestOps(this.selectionKey.interestOps() & ~SelectionKey.OP_READ);
+                    this.scheduleProcessing();
+                    return;
+                }
+            }
+
+            int read;
+            try {
+                read = this.channel.read(this.readBuffer);
+            } catch (IOException e) {
+                read = -1;
+            }
+            this.readBuffer.flip(); // read mode
+
+            if(read < 0) this.closeChannel();
+            this.notifyAll(); // stream readers
+        }
+
+        this.scheduleProcessing();
+    }
+
+    void channelWritable() {
+        synchronized (this.writeLock) {
+            this.selectionKey.interestOps(this.selectionKey.interestOps() & ~SelectionKey.OP_WRITE);
+            this.writeLock.notifyAll();
+        }
+    }
+
+    void channelClosed() {
+        synchronized (this) {
+            this.closeChannel();
+            this.notifyAll();
+        }
+        this.scheduleProcessing();
+    }
+
+    /////////////////////////////////////////////////////////////////////////////////////////////////////////
+    //                                            helper                                                   //
+    /////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    // call with lock on this - buffer in write mode
+    private void growReadBuffer(int capacity) {
+        ByteBuffer newBuffer = this.eventLoop.getReadBufferPool().acquire(capacity);
+        this.readBuffer.flip();
+        newBuffer.put(this.readBuffer);
+        this.eventLoop.getReadBufferPool().release(this.readBuffer);
+        this.readBuffer = newBuffer;
+    }
+
+    // call with lock on this - copy holds unread bytes from position of read buffer on. Append bytes that arrived since.
+    private void copyUnreadBytes() {
+        int copied = this.decodeBuffer.remaining();
+        int missing = this.readBuffer.remaining() - copied;
+        if(missing <= 0) return;
+
+        this.decodeBuffer.compact(); // write mode
+        if(this.decodeBuffer.remaining() < missing) {
+            ByteBuffer newBuffer = this.eventLoop.getReadBufferPool().acquire(copied + missing);
+            this.decodeBuffer.flip();
+            newBuffer.put(this.decodeBuffer);
+            this.eventLoop.getReadBufferPool().release(this.decodeBuffer);
+            this.decodeBuffer = newBuffer;
+        }
+
+        ByteBuffer newBytes = this.readBuffer.duplicate();
+        newBytes.position(this.readBuffer.position() + copied);
+        this.decodeBuffer.put(newBytes);
+        this.decodeBuffer.flip(); // read mode
+    }
+
+    // processing thread only
+    private void releaseDecodeBuffer() {
+        this.eventLoop.getReadBufferPool().release(this.decodeBuffer);
+        this.decodeBuffer = ByteBuffer.allocate(0);
+    }
+
+    // call with lock on this
+    private void resumeReading() {
+
+        if(!this.readBuffer.hasRemaining() && this.readBuffer.capacity() > INITIAL_BUFFER_SIZE) {
+            // give memory back - there are a lot of idle sessions
+            this.eventLoop.getReadBufferPool().release(this.readBuffer);
+            this.readBuffer = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+            this.readBuffer.flip();
+        }
+
+        if(!this.readingSuspended) return;
+        this.readingSuspended = false;
+        this.eventLoop.execute(() -> {
+            if(this.selectionKey != null && this.selectionKey.isValid()) {
+                this.selectionKey.interestOps(this.selectionKey.interestOps() | SelectionKey.OP_READ);
+            }
+        });
+    }
+
+    // call with lock on this
+    private void closeChannel() {
+        if(this.closed) return;
+        this.closed = true;
+        try {
+            this.channel.close();
+        } catch (IOException e) {
+            // ignore
+        }
+    }
+
+    private void waitUntilWritable() throws IOException {
+        this.eventLoop.execute(() -> {
+            if(this.selectionKey != null && this.selectionKey.isValid()) {
+                this.selectionKey.interestOps(this.selectionKey.interestOps() | SelectionKey.OP_WRITE);
+            }
+        });
+
+        try {
+            this.writeLock.wait(WAIT_WRITABLE_IN_MILLIS);
+        } catch (InterruptedException e) {
+            throw new InterruptedIOException("interrupted while waiting for channel");
+        }
+    }
+
+    public String toString() {
+        return this.connector != null ? this.connector.toString() : "nio session";
+    }
+
+    /////////////////////////////////////////////////////////////////////////////////////////////////////////
+    //                                         stream interface                                            //
+    /////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    private class ChannelInputStream extends InputStream {
+        @Override
+        public int read() throws IOException {
+            synchronized (NIOConnectorSession.this) {
+                if(!this.waitForBytes()) return -1;
+                int b = NIOConnectorSession.this.readBuffer.get() & 0xFF;
+                NIOConnectorSession.this.resumeReading();
+                return b;
+            }
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if(len == 0) return 0;
+            synchronized (NIOConnectorSession.this) {
+                if(!this.waitForBytes()) return -1;
+                ByteBuffer buffer = NIOConnectorSession.this.readBuffer;
+                int number = Math.min(len, buffer.remaining());
+                buffer.get(b, off, number);
+                NIOConnectorSession.this.resumeReading();
+                return number;
+            }
+        }
+
+        @Override
+        public int available() {
+            synchronized (NIOConnectorSession.this) {
+                return NIOConnectorSession.this.readBuffer.remaining();
+            }
+        }
+
+        @Override
+        public void close() {
+            NIOConnectorSession.this.channelClosed();
+        }
+
+        // call with lock on session; false: end of stream
+        private boolean waitForBytes() throws InterruptedIOException {
+            while(!NIOConnectorSession.this.readBuffer.hasRemaining()) {
+                if(NIOConnectorSession.this.closed) return false;
+                try {
+                    NIOConnectorSession.this.wait();
+                } catch (InterruptedException e) {
+                    throw new InterruptedIOException("interrupted while waiting for data");
+                }
+            }
+            return true;
+        }
+    }
+
+    private class ChannelOutputStream extends OutputStream {
+        @Override
+        public void write(int b) throws IOException {
+            this.write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            ByteBuffer src = ByteBuffer.wrap(b, off, len);
+            synchronized (NIOConnectorSession.this.writeLock) {
+                while(src.hasRemaining()) {
+                    if(NIOConnectorSession.this.channel.write(src) == 0) {
+                        // socket buffer full
+                        NIOConnectorSession.this.waitUntilWritable();
+                    }
+                }
+            }
+        }
+
+        @Override
+        public void close() {
+            NIOConnectorSession.this.channelClosed();
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package net.sharksystem.hub.hubside;
+
+import net.sharksystem.utils.Log;
+
+import java.io.IOException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Event loop that serves a (large) number of non-blocking connector channels with a single thread. It only moves
+ * bytes between channels and connector sessions. PDUs are decoded and handled by connector sessions on other threads
+ * - connectors can block and must not stall the loop.
+ *
+ * @see NIOConnectorSession
+ */
+class NIOHubEventLoop implements Runnable {
+    private final Selector selector;
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private final ReadBufferPool readBufferPool = new ReadBufferPool();
+    private volatile boolean killed = false;
+
+    NIOHubEventLoop() throws IOException {
+        this.selector = Selector.open();
+    }
+
+    ReadBufferPool getReadBufferPool() {
+        return this.readBufferPool;
+    }
+
+    /**
+     * Run task on event loop thread. Interest operations are changed this way.
+     * @param task
+     */
+    void execute(Runnable task) {
+        this.tasks.add(task);
+        this.selector.wakeup();
+    }
+
+    void register(NIOConnectorSession session) {
+        this.execute(() -> {
+            try {
+                SocketChannel channel = session.getChannel();
+                session.registered(channel.register(this.selector, SelectionKey.OP_READ, session));
+            } catch (ClosedChannelException e) {
+                Log.writeLog(this, "channel closed before registration: " + e.getLocalizedMessage());
+                session.channelClosed();
+            }
+        });
+    }
+
+    void kill() {
+        this.killed = true;
+        this.selector.wakeup();
+    }
+
+    @Override
+    public void run() {
+        Log.writeLog(this, "event loop started");
+        try {
+            while(!this.killed) {
+                this.selector.select();
+
+                Runnable task;
+                while((task = this.tasks.poll()) != null) task.run();
+
+                Iterator<SelectionKey> keyIter = this.selector.selectedKeys().iterator();
+                while(keyIter.hasNext()) {
+                    SelectionKey key = keyIter.next();
+                    keyIter.remove();
+                    NIOConnectorSession session = (NIOConnectorSession) key.attachment();
+
+                    if(key.isValid() && key.isReadable()) session.channelReadable();
+                    if(key.isValid() && key.isWritable()) session.channelWritable();
+                }
+            }
+        } catch (IOException e) {
+            Log.writeLogErr(this, "event loop failed - give up: " + e.getLocalizedMessage());
+        } finally {
+            for(SelectionKey key : this.selector.keys()) {
+                ((NIOConnectorSession) key.attachment()).channelClosed();
+            }
+            try {
+                this.selector.close();
+            } catch (IOException e) {
+                // ignore
+            }
+            Log.writeLog(this, "event loop ended");
+        }
+    }
+}
@@ -1,26 +1,33 @@
 package net.sharksystem.hub.hubside;
 
-import net.sharksystem.streams.StreamPairImpl;
-import net.sharksystem.utils.AlarmClock;
+import net.sharksystem.hub.utils.HashedWheelTimer;
 import net.sharksystem.utils.AlarmClockListener;
 import net.sharksystem.utils.Log;
 
 import java.io.IOException;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.util.concurrent.ThreadFactory;
 
-class NewConnectionCreator extends Thread implements AlarmClockListener {
+class NewConnectionCreator implements Runnable, AlarmClockListener {
     private final ServerSocket srv;
+    private final DataPortPool dataPortPool;
+    private final ThreadFactory threadFactory;
     private final NewConnectionCreatorListener listener;
     private final int timeOutConnectionRequest;
     private final int timeOutDataConnection;
     private final CharSequence sourcePeerID;
     private final CharSequence targetPeerID;
 
-    NewConnectionCreator(ServerSocket srv, NewConnectionCreatorListener listener,
+    /**
+     * @param srv leased from data port pool - given back after accept, discarded on time out
+     */
+    NewConnectionCreator(ServerSocket srv, DataPortPool dataPortPool, NewConnectionCreatorListener listener,
                          CharSequence sourcePeerID, CharSequence targetPeerID,
-                         int timeOutConnectionRequest, int timeOutDataConnection) {
+                         int timeOutConnectionRequest, int timeOutDataConnection, ThreadFactory threadFactory) {
         this.srv = srv;
+        this.dataPortPool = dataPortPool;
+        this.threadFactory = threadFactory;
         this.listener = listener;
         this.sourcePeerID = sourcePeerID;
         this.targetPeerID = targetPeerID;
@@ -28,37 +35,50 @@ class NewConnectionCreator extends Thread implements AlarmClockListener {
         this.timeOutDataConnection = timeOutDataConnection;
     }
 
+    void start() {
+        this.threadFactory.newThread(this).start();
+    }
+
     public void run() {
+        // set alarm
+        Log.writeLog(this, "start server socket / timeout (ms): " + this.timeOutConnectionRequest);
+        HashedWheelTimer.Timeout timeout =
+                HashedWheelTimer.getHubTimer().schedule(this.timeOutConnectionRequest, 0, this);
+        Socket newSocket;
+        try {
+            newSocket = this.srv.accept();
+        } catch (IOException e) {
+            // maybe time out killed server socket.
+            Log.writeLog(this, "accept failed: " + e.getLocalizedMessage());
+            if(timeout.cancel()) this.dataPortPool.discard(this.srv);
+            return;
+        }
+
+        // time out closes socket if it could not be cancelled - do not lease it again
+        if(timeout.cancel()) this.dataPortPool.release(this.srv);
+
         try {
-            // set alarm
-            Log.writeLog(this, "start server socket / timeout (ms): " + this.timeOutConnectionRequest);
-            AlarmClock alarmClock = new AlarmClock(this.timeOutConnectionRequest, this);
-            alarmClock.start();
-            Socket newSocket = this.srv.accept();
-            alarmClock.kill();
-            this.srv.close();
             Log.writeLog(this, "new connection initiated from peer side ("
                     + this.sourcePeerID + " --> " + this.targetPeerID + ")");
             Log.writeLog(this, "call listener: " + listener.getClass().getSimpleName());
 
             this.listener.newConnectionCreated(this.sourcePeerID, this.targetPeerID,
-                    StreamPairImpl.getStreamPairWithSessionID(newSocket.getInputStream(), newSocket.getOutputStream(),
-                            this.sourcePeerID + ":" + newSocket.getLocalPort()),
+                    SocketChannelStreamPair.getStreamPair(newSocket, this.sourcePeerID + ":" + newSocket.getLocalPort()),
                     this.timeOutDataConnection);
 
         } catch (IOException e) {
-            // maybe time out killed server socket.
-            Log.writeLog(this, "accept failed: " + e.getLocalizedMessage());
+            Log.writeLog(this, "cannot use new connection: " + e.getLocalizedMessage());
+            try {
+                newSocket.close();
+            } catch (IOException ex) {
+                // ignore
+            }
         }
     }
 
     @Override
     public void alarmClockRinging(int i) {
         Log.writeLog(this, "timeout - close server port");
-        try {
-            if(this.srv != null) this.srv.close();
-        } catch (IOException e) {
-            Log.writeLog(this, "problems closing server socket: " + e.getLocalizedMessage());
-        }
+        this.dataPortPool.discard(this.srv);
     }
 }
@@ -0,0 +1,151 @@
+package net.sharksystem.hub.hubside;
+
+import net.sharksystem.hub.PeerId;
+import net.sharksystem.hub.metrics.HubMetrics;
+import net.sharksystem.hub.utils.HashedWheelTimer;
+import net.sharksystem.hub.utils.HubLog;
+import net.sharksystem.streams.StreamPair;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Data session requests waiting for a connection to their target peer - one instance per hub. Requests are kept
+ * by (source, target) - oldest first. Adding and matching are O(1) and lock only the entry of this pair. Connector
+ * threads of different pairs do not wait for each other.
+ * <br/><br/>
+ * Each request is removed when it times out - a matching connection that never comes leaves nothing behind.
+ * A request is either matched or reaped, never both. Its connection is not closed when it is reaped - the
+ * connector that created it has its own time out.
+ */
+class PendingDataSessions {
+    private final ConcurrentMap<Key, Deque<DataSessionRequest>> requests = new ConcurrentHashMap<>();
+    private final HashedWheelTimer timer;
+
+    static class DataSessionRequest {
+        final long until;
+        final CharSequence sourcePeerID;
+        final CharSequence targetPeerID;
+        final StreamPair connection;
+        final int timeout;
+
+        private final AtomicBoolean done = new AtomicBoolean(false); // matched or reaped
+        private volatile HashedWheelTimer.Timeout reaper = null;
+
+        DataSessionRequest(CharSequence sourcePeerID, CharSequence targetPeerID,
+                           StreamPair connection, int timeout) {
+            this.sourcePeerID = sourcePeerID;
+            this.targetPeerID = targetPeerID;
+            this.connection = connection;
+            this.until = System.currentTimeMillis() + timeout;
+            this.timeout = timeout;
+        }
+
+        private boolean finish() {
+            return this.done.compareAndSet(false, true);
+        }
+    }
+
+    PendingDataSessions() {
+        this(HashedWheelTimer.getHubTimer());
+    }
+
+    PendingDataSessions(HashedWheelTimer timer) {
+        this.timer = timer;
+    }
+
+    private static final class Key {
+        private final PeerId sourcePeerID;
+        private final PeerId targetPeerID;
+        private final int hash;
+
+        Key(CharSequence sourcePeerID, CharSequence targetPeerID) {
+            this.sourcePeerID = PeerId.of(sourcePeerID);
+            this.targetPeerID = PeerId.of(targetPeerID);
+            this.hash = 31 * this.sourcePeerID.hashCode() + this.targetPeerID.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if(this == o) return true;
+            if(!(o instanceof Key)) return false;
+            Key other = (Key) o;
+            return this.sourcePeerID.equals(other.sourcePeerID) && this.targetPeerID.equals(other.targetPeerID);
+        }
+
+        @Override
+        public int hashCode() {
+            return this.hash;
+        }
+    }
+
+    void add(DataSessionRequest request) {
+        Key key = new Key(request.sourcePeerID, request.targetPeerID);
+        this.requests.compute(key, (k, pending) -> {
+            if(pending == null) pending = new ArrayDeque<>();
+            pending.add(request);
+            return pending;
+        });
+        HubMetrics.getHubMetrics().dataSessionRequestsPending(1);
+
+        // matched before reaper is set - reaper finds it done
+        request.reaper = this.timer.schedule(Math.max(0, request.timeout), () -> this.reap(key, request));
+    }
+
+    /**
+     * @return oldest request from source to target that is not timed out - or null
+     */
+    DataSessionRequest take(CharSequence sourcePeerID, CharSequence targetPeerID) {
+        Key key = new Key(sourcePeerID, targetPeerID);
+        long now = System.currentTimeMillis();
+        for(;;) {
+            DataSessionRequest request = this.poll(key);
+            if(request == null) return null;
+
+            // timed out requests are left to their reaper
+            if(request.until >= now && request.finish()) {
+                HashedWheelTimer.Timeout reaper = request.reaper;
+                if(reaper != null) reaper.cancel();
+                HubMetrics.getHubMetrics().dataSessionRequestsPending(-1);
+                return request;
+            }
+        }
+    }
+
+    /**
+     * @return number of pending requests - including those that timed out but are not yet reaped. Not exact while
+     * requests are added or taken.
+     */
+    int size() {
+        int size = 0;
+        for(Deque<DataSessionRequest> pending : this.requests.values()) size += pending.size();
+        return size;
+    }
+
+    private DataSessionRequest poll(Key key) {
+        // entry of this pair is locked while computing - remove it together with its last request
+        DataSessionRequest[] head = new DataSessionRequest[1];
+        this.requests.computeIfPresent(key, (k, pending) -> {
+            head[0] = pending.poll();
+            return pending.isEmpty() ? null : pending;
+        });
+        return head[0];
+    }
+
+    private void reap(Key key, DataSessionRequest request) {
+        if(!request.finish()) return; // matched
+
+        this.requests.computeIfPresent(key, (k, pending) -> {
+            pending.remove(request);
+            return pending.isEmpty() ? null : pending;
+        });
+        HubMetrics.getHubMetrics().dataSessionRequestsPending(-1);
+        if(HubLog.isDebugEnabled()) {
+            HubLog.debug(this, null, "data session request timed out: "
+                    + request.sourcePeerID + " -> " + request.targetPeerID);
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package net.sharksystem.hub.hubside;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+
+/**
+ * Read buffers of sessions on an event loop. Most sessions are idle and keep a small buffer. A session borrows
+ * a larger one while it receives a large PDU and gives it back when the PDU is decoded. Buffers have a power of two
+ * size. A few buffers of each size are kept - there is no allocation as long as not too many sessions receive large
+ * PDUs at the same time.
+ */
+class ReadBufferPool {
+    static final int MIN_SIZE = 256;
+    static final int MAX_SIZE = 1024 * 1024;
+    private static final int MAX_POOLED_PER_SIZE = 16;
+
+    private final ArrayDeque<ByteBuffer>[] pooled;
+
+    @SuppressWarnings("unchecked")
+    ReadBufferPool() {
+        this.pooled = (ArrayDeque<ByteBuffer>[]) new ArrayDeque<?>[sizeClass(MAX_SIZE) + 1];
+        for(int i = 0; i < this.pooled.length; i++) this.pooled[i] = new ArrayDeque<>();
+    }
+
+    /**
+     * @return empty buffer (write mode) of at least capacity - at most {@link #MAX_SIZE}
+     */
+    ByteBuffer acquire(int capacity) {
+        int sizeClass = sizeClass(Math.min(Math.max(capacity, MIN_SIZE), MAX_SIZE));
+        ByteBuffer buffer;
+        synchronized (this.pooled[sizeClass]) {
+            buffer = this.pooled[sizeClass].poll();
+        }
+        if(buffer == null) return ByteBuffer.allocate(MIN_SIZE << sizeClass);
+        buffer.clear();
+        return buffer;
+    }
+
+    /**
+     * Give buffer back - caller must not use it any longer.
+     */
+    void release(ByteBuffer buffer) {
+        int capacity = buffer.capacity();
+        if(capacity < MIN_SIZE || Integer.bitCount(capacity) != 1) return; // not one of ours
+        int sizeClass = sizeClass(capacity);
+        if(sizeClass >= this.pooled.length) return;
+        synchronized (this.pooled[sizeClass]) {
+            if(this.pooled[sizeClass].size() < MAX_POOLED_PER_SIZE) this.pooled[sizeClass].push(buffer);
+        }
+    }
+
+    private static int sizeClass(int capacity) {
+        // smallest power of two >= capacity, relative to MIN_SIZE
+        int bits = 32 - Integer.numberOfLeadingZeros(capacity - 1);
+        return Math.max(0, bits - Integer.numberOfTrailingZeros(MIN_SIZE));
+    }
+}
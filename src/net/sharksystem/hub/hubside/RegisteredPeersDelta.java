@@ -0,0 +1,42 @@
+package net.sharksystem.hub.hubside;
+
+import net.sharksystem.hub.PeerIdSet;
+import net.sharksystem.hub.protocol.HubPDUHubStatusDeltaRPLY;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Set;
+
+/**
+ * Changes of registered peers since a registry version - or all registered peers if complete.
+ */
+public class RegisteredPeersDelta {
+    public final long version;
+    public final boolean complete;
+    public final Set<CharSequence> addedPeers;
+    public final Set<CharSequence> removedPeers;
+    private byte[] serializedPDU = null;
+
+    public RegisteredPeersDelta(long version, boolean complete,
+                                Set<CharSequence> addedPeers, Set<CharSequence> removedPeers) {
+        this.version = version;
+        this.complete = complete;
+        this.addedPeers = Collections.unmodifiableSet(addedPeers != null ? addedPeers : new PeerIdSet());
+        this.removedPeers = Collections.unmodifiableSet(removedPeers != null ? removedPeers : new PeerIdSet());
+    }
+
+    /**
+     * @return this delta as serialized hub status delta reply. It is produced once - hubs keep complete
+     * deltas until their registry changes and send the same bytes to any peer asking.
+     */
+    public synchronized byte[] getSerializedPDU() throws IOException {
+        if(this.serializedPDU == null) {
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            new HubPDUHubStatusDeltaRPLY(this.version, this.complete, this.addedPeers, this.removedPeers)
+                    .sendPDU(baos);
+            this.serializedPDU = baos.toByteArray();
+        }
+        return this.serializedPDU;
+    }
+}
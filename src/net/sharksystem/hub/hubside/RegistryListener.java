@@ -0,0 +1,12 @@
+package net.sharksystem.hub.hubside;
+
+/**
+ * Is told about changes of registered peers on a hub.
+ */
+public interface RegistryListener {
+    /**
+     * Peers joined or left. Called by the thread that changed the registry - do not block.
+     * @param version registry version after this change
+     */
+    void registryChanged(long version);
+}
@@ -0,0 +1,136 @@
+package net.sharksystem.hub.hubside;
+
+import net.sharksystem.hub.metrics.HubMetrics;
+import net.sharksystem.streams.StreamPair;
+import net.sharksystem.streams.StreamPairListener;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures one data session relayed by the hub: duration and bytes in both directions. Session ends when both
+ * directions reached end of stream or a stream pair is closed - whatever comes first.
+ */
+class RelayMetering {
+    private final long started = System.nanoTime();
+    private final AtomicLong bytes = new AtomicLong();
+    private final AtomicInteger directionsDone = new AtomicInteger();
+    private final AtomicBoolean ended = new AtomicBoolean();
+
+    RelayMetering() {
+        HubMetrics.getHubMetrics().dataSessionStarted();
+    }
+
+    void bytesRelayed(long number) {
+        this.bytes.addAndGet(number);
+    }
+
+    void ended() {
+        if(this.ended.compareAndSet(false, true)) {
+            HubMetrics.getHubMetrics().dataSessionEnded(System.nanoTime() - this.started, this.bytes.get());
+        }
+    }
+
+    private void directionDone() {
+        if(this.directionsDone.incrementAndGet() == 2) this.ended();
+    }
+
+    /**
+     * @return stream pair counting bytes read from it - relay reads each byte exactly once
+     */
+    StreamPair meter(StreamPair streamPair) throws IOException {
+        return new MeteredStreamPair(streamPair);
+    }
+
+    private class MeteredStreamPair implements StreamPair, StreamPairListener {
+        private final StreamPair streamPair;
+        private final InputStream inputStream;
+
+        MeteredStreamPair(StreamPair streamPair) throws IOException {
+            this.streamPair = streamPair;
+            this.inputStream = new MeteredInputStream(streamPair.getInputStream());
+            streamPair.addListener(this);
+        }
+
+        @Override
+        public InputStream getInputStream() {
+            return this.inputStream;
+        }
+
+        @Override
+        public OutputStream getOutputStream() throws IOException {
+            return this.streamPair.getOutputStream();
+        }
+
+        @Override
+        public void close() {
+            this.streamPair.close();
+            RelayMetering.this.ended();
+        }
+
+        @Override
+        public void addListener(StreamPairListener listener) {
+            this.streamPair.addListener(listener);
+        }
+
+        @Override
+        public CharSequence getSessionID() {
+            return this.streamPair.getSessionID();
+        }
+
+        @Override
+        public CharSequence getEndpointAddress() {
+            return this.streamPair.getEndpointAddress();
+        }
+
+        @Override
+        public void notifyClosed(StreamPair closedStreamPair, String key) {
+            RelayMetering.this.ended();
+        }
+
+        public String toString() {
+            return this.streamPair.toString();
+        }
+    }
+
+    private class MeteredInputStream extends FilterInputStream {
+        private boolean done = false;
+
+        MeteredInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if(b < 0) this.done();
+            else RelayMetering.this.bytesRelayed(1);
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = super.read(b, off, len);
+            if(read < 0) this.done();
+            else RelayMetering.this.bytesRelayed(read);
+            return read;
+        }
+
+        @Override
+        public void close() throws IOException {
+            this.done();
+            super.close();
+        }
+
+        private synchronized void done() {
+            if(this.done) return;
+            this.done = true;
+            RelayMetering.this.directionDone();
+        }
+    }
+}
@@ -8,21 +8,20 @@ import net.sharksystem.asap.ASAPException;
 import net.sharksystem.asap.utils.PeerIDHelper;
 import net.sharksystem.hub.*;
 import net.sharksystem.hub.protocol.*;
+import net.sharksystem.hub.utils.HashedWheelTimer;
+import net.sharksystem.hub.utils.HubLog;
 import net.sharksystem.utils.AlarmClockListener;
-import net.sharksystem.utils.Log;
 
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.util.ArrayList;
-import java.util.HashSet;
-import java.util.List;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public class SharedChannelConnectorHubSideImpl extends SharedChannelConnectorImpl
-        implements ConnectorInternal, AlarmClockListener, WrappedStreamPairListener {
+        implements ConnectorInternal, AlarmClockListener, WrappedStreamPairListener, RegistryListener {
 
-    private String peerID = null; // represented and connected peer
+    private PeerId peerID = null; // represented and connected peer
     private final HubInternal hub;
 
     /////////////////////////////////////// getter
@@ -49,8 +48,8 @@ public class SharedChannelConnectorHubSideImpl extends SharedChannelConnectorImp
         // read hello pdu
         try {
             HubPDURegister hubPDURegister = (HubPDURegister) HubPDU.readPDU(this.getInputStream());
-            this.peerID = hubPDURegister.peerID.toString();
-            Log.writeLog(this, this.toString(), "new connector: " + this.getPeerID());
+            this.peerID = hubPDURegister.peerID;
+            HubLog.info(this, this, "new connector: ", this.getPeerID());
             this.sendHubStatusRPLY();
         } catch (IOException e) {
             throw new ASAPHubException(e);
@@ -91,14 +90,16 @@ public class SharedChannelConnectorHubSideImpl extends SharedChannelConnectorImp
     public void connectionRequest(CharSequence sourcePeerID, CharSequence targetPeerID,
                                   int timeout) throws ASAPHubException, IOException {
 
-        Log.writeLog(this, this.toString(), "connection request: " + sourcePeerID + " --> " + targetPeerID);
+        if(HubLog.isDebugEnabled()) {
+            HubLog.debug(this, this, "connection request: " + sourcePeerID + " --> " + targetPeerID);
+        }
         if(localCall(sourcePeerID, targetPeerID)) {
-            Log.writeLog(this, this.toString(), "local call");
+            HubLog.debug(this, this, "local call");
             // relay to hub
             this.connectionRequest(targetPeerID);
         } else {
             // remember call
-            this.externalConnectionRequestList.add(
+            this.queueConnectionRequest(
                     new ConnectionRequest(
                             sourcePeerID, targetPeerID,System.currentTimeMillis() + timeout,
                             this.canEstablishTCPConnections()));
@@ -111,7 +112,17 @@ public class SharedChannelConnectorHubSideImpl extends SharedChannelConnectorImp
         this.hub.connectionRequest(this.getPeerID(), targetPeerID, this.getTimeOutConnectionRequest());
     }
 
-    private List<ConnectionRequest> externalConnectionRequestList = new ArrayList<>();
+    private final ConnectionRequestScheduler connectionRequests = new ConnectionRequestScheduler();
+
+    private synchronized void queueConnectionRequest(ConnectionRequest connectionRequest) {
+        if(!this.connectionRequests.add(connectionRequest)) {
+            HubLog.debug(this, this, "connection request from this source already pending: ", connectionRequest);
+        }
+    }
+
+    private synchronized void discardConnectionRequests() {
+        this.connectionRequests.clear();
+    }
 
     /////////////////////////////////////////////////////////////////////////////////////////////////////////////
     //                                       reaction on status changes                                        //
@@ -128,7 +139,7 @@ public class SharedChannelConnectorHubSideImpl extends SharedChannelConnectorImp
 
     @Override
     protected void silenceEnded() {
-
+        this.scheduleHubStatusPush();
     }
 
     @Override
@@ -143,65 +154,59 @@ public class SharedChannelConnectorHubSideImpl extends SharedChannelConnectorImp
                     streamPair,
                     timeout);
         } catch (ASAPHubException e) {
-            Log.writeLogErr(this, this.toString(), "cannot start data session with hub: "
-                    + e.getLocalizedMessage());
+            HubLog.error(this, this, "cannot start data session with hub: ", e.getLocalizedMessage());
         } catch (IOException e) {
-            Log.writeLogErr(this, this.toString(), "cannot start data session with hub"
-                    + e.getLocalizedMessage());
+            HubLog.error(this, this, "cannot start data session with hub", e.getLocalizedMessage());
         }
          */
     }
 
     @Override
     protected void resumedConnectorProtocol() {
-
+        // changes during data session
+        this.scheduleHubStatusPush();
     }
 
     protected void connectionLost() {
-        this.getHub().unregister(this.getPeerID());
+        this.discardConnectionRequests();
+        this.hub.removeRegistryListener(this);
+        this.getHub().unregister(this.getPeerID(), this);
     }
 
     @Override
     protected void shutdown() {
-        this.hub.unregister(this.getPeerID());
+        this.discardConnectionRequests();
+        this.hub.removeRegistryListener(this);
+        this.hub.unregister(this.getPeerID(), this);
     }
 
     synchronized private boolean handleExternalConnectionRequestList() throws ASAPHubException, IOException {
         // lets see if we can start another connection
-        Log.writeLog(this, this.toString(), "#entries connection request list: "
-                + this.externalConnectionRequestList.size());
-
-        if(this.externalConnectionRequestList.isEmpty()) return false; // empty  nothing to do
-
-        // remove outdated requests
-        ConnectionRequest connectionRequest = null;
-        while(connectionRequest == null && !this.externalConnectionRequestList.isEmpty()) {
-            connectionRequest = this.externalConnectionRequestList.remove(0);
-            if(connectionRequest.until < System.currentTimeMillis()) {
-                Log.writeLog(this, this.toString(), "discard connection request - timed out");
-                connectionRequest = null;
-            }
+        if(HubLog.isDebugEnabled()) {
+            HubLog.debug(this, this, "#pending connection requests: " + this.connectionRequests.size());
         }
 
-        if(connectionRequest == null) return false; // list empty
+        // earliest deadline first - timed out requests are dropped
+        ConnectionRequest connectionRequest = this.connectionRequests.poll();
+        if(connectionRequest == null) return false; // nothing to do
 
         if(this.canEstablishTCPConnections() && connectionRequest.newConnection) {
             try {
                 return this.initDataSessionOnNewConnection(connectionRequest,
                         this.getTimeOutConnectionRequest(), this.getTimeOutDataConnection());
             } catch (RuntimeException e) {
-                Log.writeLog(this, "not yet implemented? Go ahead and try shared channel: "
-                        + e.getLocalizedMessage());
+                HubLog.debug(this, null, "not yet implemented? Go ahead and try shared channel: ",
+                        e.getLocalizedMessage());
 
             }
         }
-        Log.writeLog(this, this.toString(), "setup data connection on shared channel");
-        if (this.statusInSilence()) {
-            Log.writeLog(this, this.toString(), "in silence mode - ok");
+        HubLog.debug(this, this, "setup data connection on shared channel");
+        if (this.statusInSilence() || this.multiplexedDataSessions()) {
+            HubLog.debug(this, this, "in silence mode - ok");
             // we are in the right status - take the oldest request
 
             // handle connection request
-            Log.writeLog(this, this.toString(), "launch data session by request: " + connectionRequest);
+            HubLog.debug(this, this, "launch data session by request: ", connectionRequest);
 
             // init data session - this can fail if we are not in silence mode - that's ok, though
             StreamPair streamPair = null;
@@ -209,23 +214,25 @@ public class SharedChannelConnectorHubSideImpl extends SharedChannelConnectorImp
                 streamPair = this.initDataSession(connectionRequest, this.getTimeOutDataConnection());
             }
             catch(ASAPHubException e) {
-                Log.writeLog(this, this.toString(), "cannot init data session yet - we can wait");
+                HubLog.debug(this, this, "cannot init data session yet - we can wait");
                 return false;
             }
 
             // tell hub
-            Log.writeLog(this, this.toString(), "tell hub about newly created data session: " + connectionRequest);
+            HubLog.debug(this, this, "tell hub about newly created data session: ", connectionRequest);
             this.hub.startDataSession(this.getPeerID(), connectionRequest.sourcePeerID,
                     streamPair, this.getTimeOutDataConnection());
         } else {
-            Log.writeLog(this, this.toString(), "not in silence mode - ask for silence");
+            HubLog.debug(this, this, "not in silence mode - ask for silence");
             // not in silence - should we asked for silence
             if (this.statusHubConnectorProtocol()) { // we are in protocol status - change it
-                // put request back
-                this.externalConnectionRequestList.add(connectionRequest);
+                // put request back - it keeps its place
+                this.connectionRequests.requeue(connectionRequest);
                 this.askForSilence(this.getTimeOutSilenceChannel());
             } else {
-                Log.writeLog(this, this.toString(), "cannot ask for silence .. not in connector mode");
+                // data session still running - handled when back in connector mode
+                HubLog.debug(this, this, "cannot ask for silence .. not in connector mode");
+                this.connectionRequests.requeue(connectionRequest);
             }
         }
         return true;
@@ -239,14 +246,16 @@ public class SharedChannelConnectorHubSideImpl extends SharedChannelConnectorImp
 
     protected void actionWhenBackFromDataSession() {
         try {
-            if(this.handleExternalConnectionRequestList()) return; // there are pending request
-            // relaunch Connector thread
+            this.handleExternalConnectionRequestList();
         } catch (ASAPHubException | IOException e) {
             e.printStackTrace();
         }
 
-        // no pending requests - relaunch connector thread
-        (new ConnectorThread(this, this.getInputStream())).start();
+        // next data session already running - it has no connector session
+        if(this.statusInDataSession()) return;
+
+        // relaunch connector session - a pending request could have asked for silence, reply comes with it
+        this.createConnectorSession().start();
     }
 
     /**
@@ -278,19 +287,12 @@ public class SharedChannelConnectorHubSideImpl extends SharedChannelConnectorImp
      */
     @Override
     public void disconnect(CharSequence sourcePeerID, CharSequence targetPeerID) throws ASAPHubException {
-        Log.writeLog(this, "disconnect called");
-        ConnectionRequest removeRequest = null;
-        for(ConnectionRequest request : this.externalConnectionRequestList) {
-            if( PeerIDHelper.sameID(sourcePeerID, request.sourcePeerID)
-                && PeerIDHelper.sameID(targetPeerID, request.targetPeerID)) {
-
-                Log.writeLog(this, this.toString(), "found connection request");
-                removeRequest = request;
-                break;
+        HubLog.debug(this, null, "disconnect called");
+        synchronized (this) {
+            if(this.connectionRequests.remove(sourcePeerID, targetPeerID)) {
+                HubLog.debug(this, this, "withdrawn connection request");
             }
         }
-
-        if(removeRequest != null) this.externalConnectionRequestList.remove(removeRequest);
     }
 
     /**
@@ -306,16 +308,16 @@ public class SharedChannelConnectorHubSideImpl extends SharedChannelConnectorImp
     public void startDataSession(CharSequence sourcePeerID, CharSequence targetPeerID,
                                  StreamPair stream2Hub, int timeout) throws ASAPHubException, IOException {
 
-        Log.writeLog(this, this.toString(), "asked to start data session");
+        HubLog.debug(this, this, "asked to start data session");
         if(this.localCall(sourcePeerID, targetPeerID))
             throw new ASAPHubException("a connection started notification cannot come from local peer");
 
         StreamPair stream2Peer = this.initDataSession(sourcePeerID, targetPeerID, timeout);
-        Log.writeLog(this, this.toString(), "got connection to peer side");
+        HubLog.debug(this, this, "got connection to peer side");
 
         // link stream pair from hub with stream pair to peer
         new StreamPairLink(stream2Peer, sourcePeerID, stream2Hub, targetPeerID);
-        Log.writeLog(this, this.toString(), "created and started stream pair link");
+        HubLog.debug(this, this, "created and started stream pair link");
     }
 
     /**
@@ -330,7 +332,7 @@ public class SharedChannelConnectorHubSideImpl extends SharedChannelConnectorImp
     public void notifyConnectionEnded(CharSequence sourcePeerID, CharSequence targetPeerID, StreamPair connection)
             throws ASAPHubException {
 
-        Log.writeLog(this, this.toString(), "connection ended .. nothing to do here (?)");
+        HubLog.debug(this, this, "connection ended .. nothing to do here (?)");
 
     }
 
@@ -339,19 +341,71 @@ public class SharedChannelConnectorHubSideImpl extends SharedChannelConnectorImp
     /////////////////////////////////////////////////////////////////////////////////////////////////////////
 
     private void sendHubStatusRPLY() throws IOException {
-        Set<CharSequence> allPeers = this.hub.getRegisteredPeers();
         // sort out calling peer
-        //Log.writeLog(this, "assemble registered peer list for " + this.peerID);
-        Set<CharSequence> peersWithoutCaller = new HashSet();
-        for (CharSequence peerName : allPeers) {
-//            Log.writeLog(this, peerName + " checked for peer list for " + this.peerID);
-            if (!peerName.toString().equalsIgnoreCase(this.peerID)) {
-                peersWithoutCaller.add(peerName);
+        Set<CharSequence> peersWithoutCaller = new PeerIdSet(this.hub.getRegisteredPeers());
+        peersWithoutCaller.remove(this.peerID);
+        HubPDU hubInfoPDU = new HubPDUHubStatusRPLY(peersWithoutCaller);
+        HubLog.debug(this, this, "send hub status to ", this.peerID);
+        this.sendPDU(hubInfoPDU);
+    }
+
+    /**
+     * Send PDU. Hub status can be pushed from other threads - PDUs must not be mixed up.
+     * @param hubPDU
+     * @throws IOException
+     */
+    protected void sendPDU(HubPDU hubPDU) throws IOException {
+        this.getPDUWriter().write(hubPDU);
+    }
+
+    /////////////////////////////////////////////////////////////////////////////////////////////////////////
+    //                                     hub status subscription                                         //
+    /////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    static final int HUB_STATUS_PUSH_DELAY_IN_MILLIS = 50;
+
+    private volatile boolean hubStatusSubscribed = false;
+    private long pushedRegistryVersion = HubPDUHubStatusDeltaRQ.UNKNOWN_VERSION; // guarded by output stream
+    private final AtomicBoolean hubStatusPushScheduled = new AtomicBoolean(false);
+
+    @Override
+    public void registryChanged(long version) {
+        this.scheduleHubStatusPush();
+    }
+
+    private void scheduleHubStatusPush() {
+        if(!this.hubStatusSubscribed) return;
+        // at most one pending push - changes within the delay are sent together (e.g. many peers join at once)
+        if(this.hubStatusPushScheduled.compareAndSet(false, true)) {
+            HashedWheelTimer.getHubTimer().schedule(HUB_STATUS_PUSH_DELAY_IN_MILLIS, () -> {
+                this.hubStatusPushScheduled.set(false);
+                this.pushHubStatus();
+            });
+        }
+    }
+
+    /**
+     * Send changes since last push - if there are any and channel is used by connector protocol. Otherwise,
+     * changes are kept and sent when connector protocol resumes.
+     */
+    private void pushHubStatus() {
+        OutputStream os = this.getOutputStream();
+        synchronized (os) {
+            if(!this.hubStatusSubscribed || !this.statusHubConnectorProtocol()) return;
+
+            RegisteredPeersDelta delta = this.hub.getRegisteredPeersDelta(this.pushedRegistryVersion);
+            if(!delta.complete && delta.version == this.pushedRegistryVersion) return; // nothing new
+
+            try {
+                this.getPDUWriter().writeSerialized(delta.getSerializedPDU());
+                this.pushedRegistryVersion = delta.version;
+                if(HubLog.isDebugEnabled()) {
+                    HubLog.debug(this, this, "pushed hub status (version " + delta.version + ")");
+                }
+            } catch (IOException e) {
+                HubLog.error(this, this, "cannot push hub status: ", e.getLocalizedMessage());
             }
         }
-        HubPDU hubInfoPDU = new HubPDUHubStatusRPLY(peersWithoutCaller);
-        Log.writeLog(this, this.toString(), "send hub status to " + this.peerID);
-        hubInfoPDU.sendPDU(this.getOutputStream());
     }
 
 
@@ -364,15 +418,14 @@ public class SharedChannelConnectorHubSideImpl extends SharedChannelConnectorImp
     @Override
     public void register(HubPDURegister pdu) {
         // received register pdu - tell hub
-        Log.writeLog(this, this.toString(),
-                "received register from peer side - tell hub (peer can create TCP = "
-                        + pdu.canCreateTCPConnections + ")");
-        this.peerID = pdu.peerID.toString();
+        HubLog.info(this, this, "received register from peer side - tell hub - peer can create TCP: ",
+                pdu.canCreateTCPConnections);
+        this.peerID = pdu.peerID;
         this.peerSideCanCreateTCPConnections = pdu.canCreateTCPConnections;
         try {
             this.sendHubStatusRPLY();
         } catch (IOException e) {
-            Log.writeLog(this, this.toString(), "failed to send hub status" + e.getLocalizedMessage());
+            HubLog.debug(this, this, "failed to send hub status", e.getLocalizedMessage());
         }
         this.hub.register(pdu.peerID, this, pdu.canCreateTCPConnections);
 
@@ -380,8 +433,8 @@ public class SharedChannelConnectorHubSideImpl extends SharedChannelConnectorImp
         // read hello pdu
         try {
             HubPDURegister hubPDURegister = (HubPDURegister) HubPDU.readPDU(this.getInputStream());
-            this.peerID = hubPDURegister.peerID.toString();
-            Log.writeLog(this, this.toString(), "new connector: " + this.getPeerID());
+            this.peerID = hubPDURegister.peerID;
+            HubLog.info(this, this, "new connector: ", this.getPeerID());
             this.sendHubStatusRPLY();
         } catch (IOException e) {
             throw new ASAPHubException(e);
@@ -394,8 +447,8 @@ public class SharedChannelConnectorHubSideImpl extends SharedChannelConnectorImp
 
     @Override
     public void unregister(HubPDUUnregister pdu) {
-        Log.writeLog(this, this.toString(), "received unregister from peer side - tell hub");
-        this.hub.unregister(pdu.peerID);
+        HubLog.debug(this, this, "received unregister from peer side - tell hub");
+        this.hub.unregister(pdu.peerID, this);
     }
 
     @Override
@@ -406,28 +459,27 @@ public class SharedChannelConnectorHubSideImpl extends SharedChannelConnectorImp
     @Override
     public void connectPeerRQ(HubPDUConnectPeerRQ pdu) {
         // received connection request from peer side - tell hub
-        Log.writeLog(this, this.toString(), "received connection RQ from peer side - tell hub");
+        HubLog.debug(this, this, "received connection RQ from peer side - tell hub");
         try {
             this.hub.connectionRequest(
                     this.peerID, pdu.peerID,
                     this.getTimeOutConnectionRequest());
 
         } catch (ASAPHubException | IOException e) {
-            Log.writeLogErr(this, this.toString(), "connection RQ failed with hub: " + e.getLocalizedMessage());
+            HubLog.error(this, this, "connection RQ failed with hub: ", e.getLocalizedMessage());
         }
     }
 
     @Override
     public void hubStatusRQ(HubPDUHubStatusRQ pdu) {
-        Set<CharSequence> peersWithoutThis = new HashSet<>();
-        peersWithoutThis.addAll(this.getHub().getRegisteredPeers());
+        Set<CharSequence> peersWithoutThis = new PeerIdSet(this.getHub().getRegisteredPeers());
         peersWithoutThis.remove(this.getPeerID());
 
         HubPDUHubStatusRPLY reply = new HubPDUHubStatusRPLY(peersWithoutThis);
         try {
-            reply.sendPDU(this.getOutputStream());
+            this.sendPDU(reply);
         } catch (IOException e) {
-            Log.writeLogErr(this, this.toString(), "cannot send hub status reply: " + e.getLocalizedMessage());
+            HubLog.error(this, this, "cannot send hub status reply: ", e.getLocalizedMessage());
         }
     }
 
@@ -436,6 +488,92 @@ public class SharedChannelConnectorHubSideImpl extends SharedChannelConnectorImp
         this.pduNotHandled(pdu);
     }
 
+    @Override
+    public void hubStatusDeltaRQ(HubPDUHubStatusDeltaRQ pdu) {
+        OutputStream os = this.getOutputStream();
+        synchronized (os) {
+            // take delta while holding stream - replies and pushes leave in version order
+            RegisteredPeersDelta delta = this.getHub().getRegisteredPeersDelta(pdu.knownVersion);
+            if(HubLog.isDebugEnabled()) {
+                HubLog.debug(this, this, "send hub status delta (version " + pdu.knownVersion
+                        + " -> " + delta.version + ", complete: " + delta.complete + ")");
+            }
+            try {
+                // complete lists are serialized once per registry version
+                this.getPDUWriter().writeSerialized(delta.getSerializedPDU());
+            } catch (IOException e) {
+                HubLog.error(this, this, "cannot send hub status delta reply: ", e.getLocalizedMessage());
+            }
+        }
+    }
+
+    @Override
+    public void hubStatusDeltaRPLY(HubPDUHubStatusDeltaRPLY pdu) {
+        this.pduNotHandled(pdu);
+    }
+
+    @Override
+    public void hubStatusSubscribe(HubPDUHubStatusSubscribe pdu) {
+        HubLog.debug(this, this, "peer side (un-)subscribed hub status: ", pdu.subscribe);
+        if(pdu.subscribe) {
+            synchronized (this.getOutputStream()) {
+                this.pushedRegistryVersion = pdu.knownVersion;
+                this.hubStatusSubscribed = true;
+            }
+            this.hub.addRegistryListener(this);
+            // bring peer up to date
+            this.pushHubStatus();
+        } else {
+            this.hubStatusSubscribed = false;
+            this.hub.removeRegistryListener(this);
+        }
+    }
+
+    private boolean peerSideDataPortTokens = false;
+
+    @Override
+    public void dataPortTokens(HubPDUDataPortTokens pdu) {
+        HubLog.info(this, this, "peer side can present tokens on data port: ", pdu.tokens);
+        this.peerSideDataPortTokens = pdu.tokens;
+    }
+
+    /**
+     * @return true if peer side announced it can connect to the hub data port and present a token
+     */
+    protected boolean peerSideDataPortTokens() {
+        return this.peerSideDataPortTokens;
+    }
+
+    private boolean wireFormatAnswered = false; // set by connector session only
+
+    @Override
+    public void wireFormat(HubPDUWireFormat pdu) {
+        boolean enveloped = pdu.version == HubPDUWireFormat.ENVELOPE;
+        if(this.wireFormatAnswered) {
+            // peer side confirms our answer - it sends in this format right after confirmation
+            HubLog.info(this, this, "peer side confirmed wire format: ", pdu.version);
+            this.getPDUReader().setEnveloped(enveloped);
+            return;
+        }
+
+        if(!enveloped && pdu.version != HubPDUWireFormat.LEGACY) {
+            HubLog.error(this, this, "peer side asks for unknown wire format: ", pdu.version);
+        }
+        HubLog.info(this, this, "peer side asks for wire format: ", pdu.version);
+        // nothing to confirm if we stay with legacy format
+        this.wireFormatAnswered = enveloped;
+
+        synchronized (this.getOutputStream()) {
+            // answer is last pdu in old format
+            try {
+                this.sendPDU(new HubPDUWireFormat(enveloped ? HubPDUWireFormat.ENVELOPE : HubPDUWireFormat.LEGACY));
+            } catch (IOException e) {
+                HubLog.error(this, this, "cannot answer wire format request: ", e.getLocalizedMessage());
+            }
+            this.getPDUWriter().setEnveloped(enveloped);
+        }
+    }
+
     public boolean hubSideCanEstablishTCPConnections() {
         return false;
     }
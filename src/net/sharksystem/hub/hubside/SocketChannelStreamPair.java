@@ -0,0 +1,84 @@
+package net.sharksystem.hub.hubside;
+
+import net.sharksystem.streams.StreamPair;
+import net.sharksystem.streams.StreamPairImpl;
+import net.sharksystem.streams.StreamPairListener;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.channels.SocketChannel;
+
+/**
+ * Stream pair on a TCP socket that keeps its socket channel. Hub can relay two of those with a splice relay
+ * instead of a stream link.
+ *
+ * @see SpliceRelay
+ */
+class SocketChannelStreamPair implements StreamPair {
+    private final StreamPair streamPair;
+    private final SocketChannel channel;
+
+    /**
+     * @param socket socket with channel
+     * @param sessionID
+     * @return stream pair that keeps socket channel - or a plain stream pair if there is no channel
+     * @throws IOException
+     */
+    static StreamPair getStreamPair(Socket socket, CharSequence sessionID) throws IOException {
+        StreamPair streamPair = StreamPairImpl.getStreamPairWithSessionID(
+                socket.getInputStream(), socket.getOutputStream(), sessionID);
+
+        if(socket.getChannel() == null) return streamPair;
+        return new SocketChannelStreamPair(streamPair, socket.getChannel());
+    }
+
+    private SocketChannelStreamPair(StreamPair streamPair, SocketChannel channel) {
+        this.streamPair = streamPair;
+        this.channel = channel;
+    }
+
+    SocketChannel getSocketChannel() {
+        return this.channel;
+    }
+
+    @Override
+    public InputStream getInputStream() throws IOException {
+        return this.streamPair.getInputStream();
+    }
+
+    @Override
+    public OutputStream getOutputStream() throws IOException {
+        return this.streamPair.getOutputStream();
+    }
+
+    @Override
+    public void close() {
+        this.streamPair.close();
+        try {
+            this.channel.close();
+        } catch (IOException e) {
+            // ignore
+        }
+    }
+
+    @Override
+    public void addListener(StreamPairListener listener) {
+        this.streamPair.addListener(listener);
+    }
+
+    @Override
+    public CharSequence getSessionID() {
+        return this.streamPair.getSessionID();
+    }
+
+    @Override
+    public CharSequence getEndpointAddress() {
+        return this.streamPair.getEndpointAddress();
+    }
+
+    public String toString() {
+        return this.streamPair.toString();
+    }
+}
@@ -0,0 +1,271 @@
+package net.sharksystem.hub.hubside;
+
+import net.sharksystem.utils.Log;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Relays data sessions between two TCP connections. A stream pair link copies each byte through heap arrays
+ * with a blocking thread per direction. This relay serves any number of links with a single selector thread.
+ * Bytes are moved with direct buffers from one socket channel to the other. Buffers are pooled -
+ * relaying causes no allocation after warm-up.
+ * <br/><br/>
+ * End of stream on one side is passed on by shutting down output on the other side. Link is closed when both
+ * directions are done or anything fails.
+ */
+class SpliceRelay implements Runnable {
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int MAX_POOLED_BUFFERS = 128;
+    private static final int MAX_ROUNDS_PER_EVENT = 16; // fairness - do not let a bulk transfer starve others
+
+    private static SpliceRelay spliceRelay = null;
+
+    /**
+     * @return relay shared by all hubs of this process - started with first call
+     * @throws IOException no selector available
+     */
+    static synchronized SpliceRelay getSpliceRelay() throws IOException {
+        if(spliceRelay == null) {
+            spliceRelay = new SpliceRelay();
+            Thread relayThread = new Thread(spliceRelay);
+            relayThread.setDaemon(true);
+            relayThread.start();
+        }
+        return spliceRelay;
+    }
+
+    /**
+     * @return true if both stream pairs can be relayed by this relay
+     */
+    static boolean canSplice(Object streamPairA, Object streamPairB) {
+        return streamPairA instanceof SocketChannelStreamPair && streamPairB instanceof SocketChannelStreamPair;
+    }
+
+    private final Selector selector;
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private final Queue<ByteBuffer> bufferPool = new ConcurrentLinkedQueue<>();
+
+    private SpliceRelay() throws IOException {
+        this.selector = Selector.open();
+    }
+
+    /**
+     * Relay both connections until both are closed. Streams of both pairs must not be used any longer.
+     */
+    void link(SocketChannelStreamPair streamPairA, CharSequence idA,
+              SocketChannelStreamPair streamPairB, CharSequence idB, RelayMetering relayMetering) throws IOException {
+
+        SocketChannel channelA = streamPairA.getSocketChannel();
+        SocketChannel channelB = streamPairB.getSocketChannel();
+        channelA.configureBlocking(false);
+        channelB.configureBlocking(false);
+
+        Link link = new Link(channelA, channelB, idA + " <-> " + idB, relayMetering);
+        this.tasks.add(link::register);
+        this.selector.wakeup();
+    }
+
+    @Override
+    public void run() {
+        Log.writeLog(this, "splice relay started");
+        try {
+            for(;;) {
+                this.selector.select();
+
+                Runnable task;
+                while((task = this.tasks.poll()) != null) task.run();
+
+                Iterator<SelectionKey> keyIter = this.selector.selectedKeys().iterator();
+                while(keyIter.hasNext()) {
+                    SelectionKey key = keyIter.next();
+                    keyIter.remove();
+                    ((Link) key.attachment()).ready(key);
+                }
+            }
+        } catch (IOException e) {
+            Log.writeLogErr(this, "splice relay failed - give up: " + e.getLocalizedMessage());
+        }
+    }
+
+    private ByteBuffer getBuffer() {
+        ByteBuffer buffer = this.bufferPool.poll();
+        if(buffer == null) return ByteBuffer.allocateDirect(BUFFER_SIZE);
+        buffer.clear();
+        return buffer;
+    }
+
+    private void returnBuffer(ByteBuffer buffer) {
+        if(this.bufferPool.size() < MAX_POOLED_BUFFERS) this.bufferPool.add(buffer);
+    }
+
+    int pooledBuffers() {
+        return this.bufferPool.size();
+    }
+
+    /////////////////////////////////////////////////////////////////////////////////////////////////////////
+    //                                   link - only used by relay thread                                  //
+    /////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    private class Direction {
+        private final SocketChannel from;
+        private final SocketChannel to;
+        private final RelayMetering relayMetering;
+        private ByteBuffer buffer = null; // read mode
+        private boolean waitForReadable = true;
+        private boolean waitForWritable = false;
+        private boolean done = false;
+
+        Direction(SocketChannel from, SocketChannel to, RelayMetering relayMetering) {
+            this.from = from;
+            this.to = to;
+            this.relayMetering = relayMetering;
+        }
+
+        /**
+         * Move bytes until source has nothing to offer, target cannot take more or source reached end of stream.
+         */
+        void pump() throws IOException {
+            if(this.done) return;
+            if(this.buffer == null) {
+                this.buffer = SpliceRelay.this.getBuffer();
+                this.buffer.flip();
+            }
+
+            for(int round = 0; round < MAX_ROUNDS_PER_EVENT; round++) {
+                if(this.buffer.hasRemaining()) {
+                    this.to.write(this.buffer);
+                    if(this.buffer.hasRemaining()) {
+                        // target is slow - stop reading until it can take more
+                        this.waitForReadable = false;
+                        this.waitForWritable = true;
+                        return;
+                    }
+                }
+
+                this.buffer.clear();
+                int read = this.from.read(this.buffer);
+                this.buffer.flip();
+
+                if(read < 0) {
+                    // pass end of stream
+                    this.to.shutdownOutput();
+                    this.done = true;
+                    this.waitForReadable = false;
+                    this.waitForWritable = false;
+                    SpliceRelay.this.returnBuffer(this.buffer);
+                    this.buffer = null;
+                    return;
+                }
+
+                if(read == 0) break;
+                this.relayMetering.bytesRelayed(read);
+            }
+
+            this.waitForReadable = !this.buffer.hasRemaining();
+            this.waitForWritable = this.buffer.hasRemaining();
+        }
+
+        void release() {
+            if(this.buffer != null) {
+                SpliceRelay.this.returnBuffer(this.buffer);
+                this.buffer = null;
+            }
+        }
+    }
+
+    private class Link {
+        private final SocketChannel channelA;
+        private final SocketChannel channelB;
+        private final String id;
+        private final RelayMetering relayMetering;
+        private final Direction a2b;
+        private final Direction b2a;
+        private SelectionKey keyA;
+        private SelectionKey keyB;
+        private boolean closed = false;
+
+        Link(SocketChannel channelA, SocketChannel channelB, String id, RelayMetering relayMetering) {
+            this.channelA = channelA;
+            this.channelB = channelB;
+            this.id = id;
+            this.relayMetering = relayMetering;
+            this.a2b = new Direction(channelA, channelB, relayMetering);
+            this.b2a = new Direction(channelB, channelA, relayMetering);
+        }
+
+        void register() {
+            try {
+                this.keyA = this.channelA.register(SpliceRelay.this.selector, SelectionKey.OP_READ, this);
+                this.keyB = this.channelB.register(SpliceRelay.this.selector, SelectionKey.OP_READ, this);
+                Log.writeLog(SpliceRelay.this, "relay data session: " + this.id);
+                // bytes could have arrived before registration
+                this.a2b.pump();
+                this.b2a.pump();
+                this.updateInterestOps();
+            } catch (IOException | CancelledKeyException e) {
+                this.close(e);
+            }
+        }
+
+        void ready(SelectionKey key) {
+            try {
+                // channel readable: move its bytes to the other side; channel writable: flush bytes waiting for it
+                if(key == this.keyA) {
+                    if(key.isReadable()) this.a2b.pump();
+                    if(key.isValid() && key.isWritable()) this.b2a.pump();
+                } else {
+                    if(key.isReadable()) this.b2a.pump();
+                    if(key.isValid() && key.isWritable()) this.a2b.pump();
+                }
+
+                if(this.a2b.done && this.b2a.done) {
+                    this.close(null);
+                } else {
+                    this.updateInterestOps();
+                }
+            } catch (IOException | CancelledKeyException e) {
+                this.close(e);
+            }
+        }
+
+        private void updateInterestOps() {
+            this.keyA.interestOps((this.a2b.waitForReadable ? SelectionKey.OP_READ : 0)
+                    | (this.b2a.waitForWritable ? SelectionKey.OP_WRITE : 0));
+            this.keyB.interestOps((this.b2a.waitForReadable ? SelectionKey.OP_READ : 0)
+                    | (this.a2b.waitForWritable ? SelectionKey.OP_WRITE : 0));
+        }
+
+        private void close(Exception e) {
+            if(this.closed) return;
+            this.closed = true;
+
+            if(e != null) {
+                Log.writeLog(SpliceRelay.this, "relay ended (" + this.id + "): " + e.getLocalizedMessage());
+            } else {
+                Log.writeLog(SpliceRelay.this, "relay ended (" + this.id + ")");
+            }
+
+            this.a2b.release();
+            this.b2a.release();
+            this.relayMetering.ended();
+            try {
+                this.channelA.close();
+            } catch (IOException ex) {
+                // ignore
+            }
+            try {
+                this.channelB.close();
+            } catch (IOException ex) {
+                // ignore
+            }
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package net.sharksystem.hub.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram with power of two buckets. Recording is a few atomic adds - cheap enough for hot paths.
+ * Percentiles are estimated: they are the upper bound of the bucket the percentile falls into - never more
+ * than twice the real value.
+ * <br/><br/>
+ * Values are recorded in a base unit (e.g. nanoseconds) and reported in a display unit (e.g. milliseconds).
+ */
+public class Histogram implements HistogramMBean {
+    private static final int NUMBER_BUCKETS = 64;
+
+    private final String name;
+    private final String unit;
+    private final double unitDivisor;
+
+    // bucket i holds values v with 2^(i-1) <= v < 2^i; bucket 0 holds 0 (and negative values)
+    private final AtomicLongArray buckets = new AtomicLongArray(NUMBER_BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * @param name e.g. dataSessionDuration
+     * @param unit display unit e.g. ms
+     * @param unitDivisor recorded value / unit divisor = value in display unit
+     */
+    public Histogram(String name, String unit, double unitDivisor) {
+        this.name = name;
+        this.unit = unit;
+        this.unitDivisor = unitDivisor;
+    }
+
+    public void record(long value) {
+        if(value < 0) value = 0;
+        this.buckets.incrementAndGet(bucket(value));
+        this.count.incrementAndGet();
+        this.sum.addAndGet(value);
+
+        long currentMax;
+        while(value > (currentMax = this.max.get())) {
+            if(this.max.compareAndSet(currentMax, value)) break;
+        }
+    }
+
+    static int bucket(long value) {
+        return value <= 0 ? 0 : Math.min(NUMBER_BUCKETS - 1, 64 - Long.numberOfLeadingZeros(value));
+    }
+
+    /**
+     * @param percentile 0 .. 100
+     * @return estimated value in base unit - 0 if nothing was recorded
+     */
+    long percentileInBaseUnit(double percentile) {
+        long total = this.count.get();
+        if(total == 0) return 0;
+
+        long rank = (long) Math.ceil(percentile / 100 * total);
+        if(rank < 1) rank = 1;
+
+        long seen = 0;
+        for(int i = 0; i < NUMBER_BUCKETS; i++) {
+            seen += this.buckets.get(i);
+            if(seen >= rank) {
+                long upperBound = i == 0 ? 0 : (i >= 63 ? Long.MAX_VALUE : (1L << i) - 1);
+                return Math.min(upperBound, this.max.get());
+            }
+        }
+        return this.max.get();
+    }
+
+    public String getName() {
+        return this.name;
+    }
+
+    @Override
+    public String getUnit() {
+        return this.unit;
+    }
+
+    @Override
+    public long getCount() {
+        return this.count.get();
+    }
+
+    @Override
+    public double getMean() {
+        long count = this.count.get();
+        return count == 0 ? 0 : this.sum.get() / this.unitDivisor / count;
+    }
+
+    @Override
+    public double getP50() {
+        return this.percentileInBaseUnit(50) / this.unitDivisor;
+    }
+
+    @Override
+    public double getP90() {
+        return this.percentileInBaseUnit(90) / this.unitDivisor;
+    }
+
+    @Override
+    public double getP99() {
+        return this.percentileInBaseUnit(99) / this.unitDivisor;
+    }
+
+    @Override
+    public double getMax() {
+        return this.max.get() / this.unitDivisor;
+    }
+
+    @Override
+    public double getSum() {
+        return this.sum.get() / this.unitDivisor;
+    }
+
+    public String toString() {
+        return String.format("%s (%d): mean %.2f %s, p50 %.2f, p90 %.2f, p99 %.2f, max %.2f",
+                this.name, this.getCount(), this.getMean(), this.unit,
+                this.getP50(), this.getP90(), this.getP99(), this.getMax());
+    }
+}
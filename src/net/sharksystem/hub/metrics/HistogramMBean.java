@@ -0,0 +1,15 @@
+package net.sharksystem.hub.metrics;
+
+/**
+ * JMX view of a histogram. Values are in display unit.
+ */
+public interface HistogramMBean {
+    String getUnit();
+    long getCount();
+    double getMean();
+    double getP50();
+    double getP90();
+    double getP99();
+    double getMax();
+    double getSum();
+}
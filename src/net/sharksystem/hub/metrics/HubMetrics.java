@@ -0,0 +1,245 @@
+package net.sharksystem.hub.metrics;
+
+import net.sharksystem.hub.SharedChannelConnectorImpl;
+import net.sharksystem.utils.Log;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Metrics of all hubs in this process. Hub and hub side connectors update them on their hot paths - each update is
+ * an atomic add. Metrics are registered as MBeans (domain net.sharksystem.hub) with first use and can be read
+ * as text, see {@link #getText()} and {@link HubMetricsTextEndpoint}.
+ * <br/><br/>
+ * Data sessions are counted where the hub relays them - any connector type. Durations are recorded in nanoseconds
+ * and reported in milliseconds.
+ */
+public class HubMetrics implements HubMetricsMBean {
+    public static final String JMX_DOMAIN = "net.sharksystem.hub";
+    private static final double NANOS_PER_MILLI = 1000000.0;
+
+    private static HubMetrics hubMetrics = null;
+
+    /**
+     * @return metrics shared by all hubs of this process - registered with platform MBean server with first call
+     */
+    public static synchronized HubMetrics getHubMetrics() {
+        if(hubMetrics == null) {
+            HubMetrics metrics = new HubMetrics();
+            // first access to platform MBean server takes a while - do not block a connector
+            Thread registration = new Thread(() -> metrics.registerMBeans(ManagementFactory.getPlatformMBeanServer()));
+            registration.setDaemon(true);
+            registration.start();
+            hubMetrics = metrics;
+        }
+        return hubMetrics;
+    }
+
+    private final AtomicLong registeredPeers = new AtomicLong();
+    private final AtomicLong activeDataSessions = new AtomicLong();
+    private final AtomicLong queuedConnectionRequests = new AtomicLong();
+    private final AtomicLong pendingDataSessionRequests = new AtomicLong();
+
+    private final AtomicLong connectionRequests = new AtomicLong();
+    private final AtomicLong dataSessions = new AtomicLong();
+    private final AtomicLong bytesRelayed = new AtomicLong();
+    private final AtomicLongArray timeouts = new AtomicLongArray(4); // index: alarm clock key
+
+    private final Histogram silenceHandshake = new Histogram("silenceHandshake", "ms", NANOS_PER_MILLI);
+    private final Histogram dataSessionDuration = new Histogram("dataSessionDuration", "ms", NANOS_PER_MILLI);
+    private final Histogram bytesPerDataSession = new Histogram("bytesPerDataSession", "bytes", 1);
+    private final Histogram syncAfterDataSession = new Histogram("syncAfterDataSession", "ms", NANOS_PER_MILLI);
+
+    HubMetrics() { }
+
+    private void registerMBeans(MBeanServer mBeanServer) {
+        try {
+            mBeanServer.registerMBean(this, new ObjectName(JMX_DOMAIN + ":type=HubMetrics"));
+            for(Histogram histogram : this.histograms()) {
+                mBeanServer.registerMBean(histogram,
+                        new ObjectName(JMX_DOMAIN + ":type=Histogram,name=" + histogram.getName()));
+            }
+        } catch (JMException e) {
+            Log.writeLogErr(this, "cannot register hub metrics with MBean server: " + e.getLocalizedMessage());
+        }
+    }
+
+    private Histogram[] histograms() {
+        return new Histogram[] {
+                this.silenceHandshake, this.dataSessionDuration, this.bytesPerDataSession, this.syncAfterDataSession};
+    }
+
+    /////////////////////////////////////////////////////////////////////////////////////////////////////////
+    //                                              updates                                                //
+    /////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    public void peerRegistered() {
+        this.registeredPeers.incrementAndGet();
+    }
+
+    public void peerUnregistered() {
+        this.registeredPeers.decrementAndGet();
+    }
+
+    public void connectionRequestReceived() {
+        this.connectionRequests.incrementAndGet();
+    }
+
+    /**
+     * @param delta number of connection requests added to (positive) or removed from (negative) a queue
+     */
+    public void connectionRequestsQueued(int delta) {
+        this.queuedConnectionRequests.addAndGet(delta);
+    }
+
+    /**
+     * @param delta number of data session requests waiting for (positive) or leaving (negative) the hub
+     */
+    public void dataSessionRequestsPending(int delta) {
+        this.pendingDataSessionRequests.addAndGet(delta);
+    }
+
+    public void silenceHandshake(long durationInNanos) {
+        this.silenceHandshake.record(durationInNanos);
+    }
+
+    public void dataSessionStarted() {
+        this.activeDataSessions.incrementAndGet();
+        this.dataSessions.incrementAndGet();
+    }
+
+    public void dataSessionEnded(long durationInNanos, long bytesRelayed) {
+        this.activeDataSessions.decrementAndGet();
+        this.dataSessionDuration.record(durationInNanos);
+        this.bytesPerDataSession.record(bytesRelayed);
+        this.bytesRelayed.addAndGet(bytesRelayed);
+    }
+
+    public void syncAfterDataSession(long durationInNanos) {
+        this.syncAfterDataSession.record(durationInNanos);
+    }
+
+    /**
+     * @param alarmClockKey e.g. {@link SharedChannelConnectorImpl#ALARM_CLOCK_DATA_SESSION}
+     */
+    public void timeout(int alarmClockKey) {
+        if(alarmClockKey >= 0 && alarmClockKey < this.timeouts.length()) {
+            this.timeouts.incrementAndGet(alarmClockKey);
+        }
+    }
+
+    /////////////////////////////////////////////////////////////////////////////////////////////////////////
+    //                                               read                                                  //
+    /////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    @Override
+    public long getRegisteredPeers() {
+        return this.registeredPeers.get();
+    }
+
+    @Override
+    public long getActiveDataSessions() {
+        return this.activeDataSessions.get();
+    }
+
+    @Override
+    public long getQueuedConnectionRequests() {
+        return this.queuedConnectionRequests.get();
+    }
+
+    @Override
+    public long getPendingDataSessionRequests() {
+        return this.pendingDataSessionRequests.get();
+    }
+
+    @Override
+    public long getConnectionRequests() {
+        return this.connectionRequests.get();
+    }
+
+    @Override
+    public long getDataSessions() {
+        return this.dataSessions.get();
+    }
+
+    @Override
+    public long getBytesRelayed() {
+        return this.bytesRelayed.get();
+    }
+
+    @Override
+    public long getTimeoutsAskSilence() {
+        return this.timeouts.get(SharedChannelConnectorImpl.ALARM_CLOCK_ASK_SILENCE);
+    }
+
+    @Override
+    public long getTimeoutsChannelSilence() {
+        return this.timeouts.get(SharedChannelConnectorImpl.ALARM_CLOCK_CHANNEL_SILENCE);
+    }
+
+    @Override
+    public long getTimeoutsDataSession() {
+        return this.timeouts.get(SharedChannelConnectorImpl.ALARM_CLOCK_DATA_SESSION);
+    }
+
+    @Override
+    public long getTimeoutsSyncAfterDataSession() {
+        return this.timeouts.get(SharedChannelConnectorImpl.ALARM_CLOCK_SYNC_TIMEOUT_SESSION);
+    }
+
+    public Histogram getSilenceHandshake() {
+        return this.silenceHandshake;
+    }
+
+    public Histogram getDataSessionDuration() {
+        return this.dataSessionDuration;
+    }
+
+    public Histogram getBytesPerDataSession() {
+        return this.bytesPerDataSession;
+    }
+
+    public Histogram getSyncAfterDataSession() {
+        return this.syncAfterDataSession;
+    }
+
+    @Override
+    public String getText() {
+        StringBuilder sb = new StringBuilder();
+        line(sb, "registered_peers", this.getRegisteredPeers());
+        line(sb, "active_data_sessions", this.getActiveDataSessions());
+        line(sb, "queued_connection_requests", this.getQueuedConnectionRequests());
+        line(sb, "pending_data_session_requests", this.getPendingDataSessionRequests());
+        line(sb, "connection_requests_total", this.getConnectionRequests());
+        line(sb, "data_sessions_total", this.getDataSessions());
+        line(sb, "bytes_relayed_total", this.getBytesRelayed());
+        line(sb, "timeouts_ask_silence_total", this.getTimeoutsAskSilence());
+        line(sb, "timeouts_channel_silence_total", this.getTimeoutsChannelSilence());
+        line(sb, "timeouts_data_session_total", this.getTimeoutsDataSession());
+        line(sb, "timeouts_sync_after_data_session_total", this.getTimeoutsSyncAfterDataSession());
+
+        for(Histogram histogram : this.histograms()) {
+            String name = histogram.getName() + "_" + histogram.getUnit();
+            line(sb, name + "_count", histogram.getCount());
+            line(sb, name + "_mean", histogram.getMean());
+            line(sb, name + "_p50", histogram.getP50());
+            line(sb, name + "_p90", histogram.getP90());
+            line(sb, name + "_p99", histogram.getP99());
+            line(sb, name + "_max", histogram.getMax());
+        }
+        return sb.toString();
+    }
+
+    private static void line(StringBuilder sb, String name, long value) {
+        sb.append("asaphub_").append(name).append(' ').append(value).append('\n');
+    }
+
+    private static void line(StringBuilder sb, String name, double value) {
+        sb.append("asaphub_").append(name).append(' ').append(String.format(Locale.ROOT, "%.3f", value)).append('\n');
+    }
+}
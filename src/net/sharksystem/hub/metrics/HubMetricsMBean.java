@@ -0,0 +1,26 @@
+package net.sharksystem.hub.metrics;
+
+/**
+ * JMX view of hub counters and gauges. Histograms are registered as MBeans of their own.
+ */
+public interface HubMetricsMBean {
+    /** gauges */
+    long getRegisteredPeers();
+    long getActiveDataSessions();
+    long getQueuedConnectionRequests();
+    long getPendingDataSessionRequests();
+
+    /** counters */
+    long getConnectionRequests();
+    long getDataSessions();
+    long getBytesRelayed();
+    long getTimeoutsAskSilence();
+    long getTimeoutsChannelSilence();
+    long getTimeoutsDataSession();
+    long getTimeoutsSyncAfterDataSession();
+
+    /**
+     * @return all metrics - one line each: name value
+     */
+    String getText();
+}
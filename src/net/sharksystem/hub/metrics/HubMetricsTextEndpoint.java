@@ -0,0 +1,100 @@
+package net.sharksystem.hub.metrics;
+
+import net.sharksystem.utils.Log;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Minimal HTTP endpoint: answers each request with hub metrics as plain text, e.g. curl http://hub:port/metrics.
+ * Requests are handled one after another by a single daemon thread - it is meant for a monitoring system
+ * polling every few seconds. It listens on loopback unless a bind address is given.
+ */
+public class HubMetricsTextEndpoint implements Runnable {
+    private static final int READ_TIMEOUT_IN_MILLIS = 1000;
+    private static final int MAX_REQUEST_HEADER_SIZE = 8 * 1024;
+    private static final int BACKLOG = 50;
+
+    private final ServerSocket serverSocket;
+    private final HubMetrics hubMetrics;
+    private volatile boolean killed = false;
+
+    public static HubMetricsTextEndpoint startTextEndpoint(int port) throws IOException {
+        return HubMetricsTextEndpoint.startTextEndpoint(InetAddress.getLoopbackAddress(), port);
+    }
+
+    /**
+     * @param bindAddress local address to listen on - metrics are readable by anybody who reaches it
+     */
+    public static HubMetricsTextEndpoint startTextEndpoint(InetAddress bindAddress, int port) throws IOException {
+        HubMetricsTextEndpoint endpoint =
+                new HubMetricsTextEndpoint(bindAddress, port, HubMetrics.getHubMetrics());
+        Thread thread = new Thread(endpoint);
+        thread.setDaemon(true);
+        thread.start();
+        return endpoint;
+    }
+
+    HubMetricsTextEndpoint(InetAddress bindAddress, int port, HubMetrics hubMetrics) throws IOException {
+        this.serverSocket = new ServerSocket(port, BACKLOG, bindAddress);
+        this.hubMetrics = hubMetrics;
+    }
+
+    public int getPort() {
+        return this.serverSocket.getLocalPort();
+    }
+
+    @Override
+    public void run() {
+        Log.writeLog(this, "metrics text endpoint on "
+                + this.serverSocket.getInetAddress().getHostAddress() + ":" + this.getPort());
+        while(!this.killed) {
+            try (Socket socket = this.serverSocket.accept()) {
+                socket.setSoTimeout(READ_TIMEOUT_IN_MILLIS);
+                this.skipRequestHeader(socket.getInputStream());
+
+                byte[] body = this.hubMetrics.getText().getBytes(StandardCharsets.UTF_8);
+                String header = "HTTP/1.0 200 OK\r\n"
+                        + "Content-Type: text/plain; charset=utf-8\r\n"
+                        + "Content-Length: " + body.length + "\r\n"
+                        + "Connection: close\r\n\r\n";
+
+                OutputStream os = socket.getOutputStream();
+                os.write(header.getBytes(StandardCharsets.US_ASCII));
+                os.write(body);
+                os.flush();
+            } catch (IOException e) {
+                if(!this.killed) {
+                    Log.writeLog(this, "metrics request failed: " + e.getLocalizedMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Read until empty line - any request gets the same answer.
+     */
+    private void skipRequestHeader(InputStream is) throws IOException {
+        int lastFour = 0;
+        for(int i = 0; i < MAX_REQUEST_HEADER_SIZE; i++) {
+            int b = is.read();
+            if(b < 0) return;
+            lastFour = (lastFour << 8) | b;
+            if(lastFour == 0x0D0A0D0A || (lastFour & 0xFFFF) == 0x0A0A) return;
+        }
+    }
+
+    public void kill() {
+        this.killed = true;
+        try {
+            this.serverSocket.close();
+        } catch (IOException e) {
+            // ignore
+        }
+    }
+}
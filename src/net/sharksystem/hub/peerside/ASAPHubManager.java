@@ -3,6 +3,7 @@ package net.sharksystem.hub.peerside;
 import net.sharksystem.asap.ASAPPeer;
 
 import java.util.Collection;
+import java.util.concurrent.CompletableFuture;
 
 public interface ASAPHubManager {
     int DEFAULT_WAIT_INTERVAL_IN_SECONDS = 600; // 10 minutes
@@ -30,6 +31,15 @@ public interface ASAPHubManager {
      */
     void connectASAPHubs(Collection<HubConnectorDescription> descriptions, ASAPPeer asapPeer, boolean killNotDescribed);
 
+    /**
+     * Connect a hub in background. Failed attempts are repeated with growing pauses. Lost connections are
+     * re-established the same way.
+     *
+     * @return completes with connector when connected - or exceptionally if hub cannot be reached. Completes with
+     * running connector if this hub is already connected.
+     */
+    CompletableFuture<HubConnector> connectASAPHub(HubConnectorDescription description, ASAPPeer asapPeer);
+
     /**
      * Hub manager is going to stop all active hub connector
      */
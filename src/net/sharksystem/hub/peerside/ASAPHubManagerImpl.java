@@ -5,24 +5,42 @@ import net.sharksystem.asap.ASAPException;
 import net.sharksystem.asap.ASAPPeer;
 import net.sharksystem.asap.EncounterConnectionType;
 import net.sharksystem.hub.Connector;
+import net.sharksystem.hub.utils.HashedWheelTimer;
+import net.sharksystem.hub.utils.HubThreads;
 import net.sharksystem.streams.StreamPair;
-import net.sharksystem.utils.AlarmClock;
 import net.sharksystem.utils.AlarmClockListener;
 import net.sharksystem.utils.Log;
 
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 public class ASAPHubManagerImpl implements ASAPHubManager, Runnable, NewConnectionListener, AlarmClockListener,
         HubConnectorStatusListener {
     private static final int FORCE_NEW_ROUND_KEY = 1;
+    public static final int MAX_PARALLEL_HUB_CONNECTS = 8;
+    public static final int DEFAULT_CONNECT_TIMEOUT_IN_MILLIS = 5000;
+    public static final int MAX_CONNECT_ATTEMPTS = 6;
+    static final int FIRST_RETRY_IN_MILLIS = 1000;
+    static final int MAX_RETRY_IN_MILLIS = 60000;
+    public static final int MIN_SYNC_INTERVAL_IN_SECONDS = 5;
+
     private final ASAPEncounterManager asapEncounterManager;
-    private final int waitIntervalInSeconds;
-    private List<HubConnector> hubConnectors = new ArrayList<>();
+    private final int waitIntervalInSeconds; // longest interval between two syncs with a hub
+    // read by manager thread while hubs come and go
+    private final List<HubConnector> hubConnectors = new CopyOnWriteArrayList<>();
     private int timeoutInMillis;
-    private Thread managerThread = null;
+    private volatile Thread managerThread = null; // guarded by hub connectors
+    private final Map<HubConnector, SyncSchedule> syncSchedules = new ConcurrentHashMap<>();
+    private volatile long sleepingUntil = Long.MIN_VALUE; // manager thread is not sleeping
     private int forceNewRoundWaitingPeriod = 2000; // some seconds - other connections can arrive..
-    private AlarmClock alarmClock;
+    private HashedWheelTimer.Timeout alarmClock;
 
     public static ASAPHubManager createASAPHubManager(
             ASAPEncounterManager asapEncounterManager,  int waitIntervalInSeconds) {
@@ -49,14 +67,19 @@ public class ASAPHubManagerImpl implements ASAPHubManager, Runnable, NewConnecti
         Log.writeLog(this, this.toString(), "added hub connector: " + hubConnector);
         synchronized(this.hubConnectors) {
             this.hubConnectors.add(hubConnector);
+            this.syncSchedules.put(hubConnector, new SyncSchedule(
+                    MIN_SYNC_INTERVAL_IN_SECONDS * 1000L, this.waitIntervalInSeconds * 1000L));
             hubConnector.addListener(this);
 
             if(this.managerThread == null) {
                 // re-launch
                 this.managerThreadStopped = false;
-                new Thread(this).start();
+                // set before start - hubs connected in parallel must not launch a thread each
+                this.managerThread = new Thread(this);
+                this.managerThread.start();
             } else {
-                // we have a running manager thread
+                // we have a running manager thread - keep it running
+                this.managerThreadStopped = false;
                 this.forceNewRound();
             }
         }
@@ -67,6 +90,7 @@ public class ASAPHubManagerImpl implements ASAPHubManager, Runnable, NewConnecti
         Log.writeLog(this, this.toString(), "remove hub connector: " + hubConnector);
         synchronized(this.hubConnectors) {
             this.hubConnectors.remove(hubConnector);
+            this.syncSchedules.remove(hubConnector);
             hubConnector.removeListener(this);
             if (this.hubConnectors.size() == 0) {
                 Log.writeLog(this, this.toString(), "no more connector - shut down hub manager thread");
@@ -86,11 +110,10 @@ public class ASAPHubManagerImpl implements ASAPHubManager, Runnable, NewConnecti
     private void forceNewRound() {
         if(this.alarmClock != null) {
             Log.writeLog(this, this.toString(), "kill old alarm");
-            this.alarmClock.kill();
+            this.alarmClock.cancel();
         }
         Log.writeLog(this, this.toString(), "set new alarm");
-        this.alarmClock = new AlarmClock(forceNewRoundWaitingPeriod, FORCE_NEW_ROUND_KEY, this);
-        this.alarmClock.start();
+        this.alarmClock = HashedWheelTimer.getHubTimer().schedule(forceNewRoundWaitingPeriod, FORCE_NEW_ROUND_KEY, this);
     }
 
     @Override
@@ -110,9 +133,11 @@ public class ASAPHubManagerImpl implements ASAPHubManager, Runnable, NewConnecti
     public void kill() {
         Log.writeLog(this, this.toString(), "kill manager thread - if available");
         this.managerThreadStopped = true;
-        if(this.managerThread != null)
+        Thread managerThread = this.managerThread;
+        if(managerThread != null) {
             Log.writeLog(this, this.toString(), "call interrupt in manager thread");
-            this.managerThread.interrupt();
+            managerThread.interrupt();
+        }
     }
 
     public void setTimeOutInMillis(int millis) {
@@ -123,44 +148,151 @@ public class ASAPHubManagerImpl implements ASAPHubManager, Runnable, NewConnecti
     //                                                 bulk import                                             //
     /////////////////////////////////////////////////////////////////////////////////////////////////////////////
 
-    public void connectASAPHubs(Collection<HubConnectorDescription> descriptions,
-                                ASAPPeer asapPeer, boolean killNotDescribed) {
-        // for each description
-        for(HubConnectorDescription hcd : descriptions) {
-            // already running?
-            boolean isRunning = false; // assume not
-            for(HubConnector runningHc : this.hubConnectors) {
-                if(runningHc.isSame(hcd)) {
-                    isRunning = true;
-                    break;
-                }
+    /**
+     * Hub connections are established by a few threads - they end when there is nothing to do. Pauses between
+     * attempts take no thread.
+     */
+    private final ThreadPoolExecutor hubConnectExecutor = createHubConnectExecutor();
+    private final List<HubBootstrap> bootstraps = new ArrayList<>(); // guarded by itself
+
+    private static ThreadPoolExecutor createHubConnectExecutor() {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(MAX_PARALLEL_HUB_CONNECTS, MAX_PARALLEL_HUB_CONNECTS,
+                30, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), HubThreads.platformThreadFactory());
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Connection to a described hub - from first attempt until it is given up or disconnected.
+     */
+    private class HubBootstrap {
+        final HubConnectorDescription description;
+        final ASAPPeer asapPeer;
+        final CompletableFuture<HubConnector> connected = new CompletableFuture<>();
+        int failedAttempts = 0; // attempts run one after another
+        volatile HubConnector hubConnector = null;
+        long connectedSince = 0;
+        volatile boolean cancelled = false;
+
+        HubBootstrap(HubConnectorDescription description, ASAPPeer asapPeer) {
+            this.description = description;
+            this.asapPeer = asapPeer;
+        }
+
+        void attempt() {
+            try {
+                ASAPHubManagerImpl.this.hubConnectExecutor.execute(this::connect);
+            } catch (RejectedExecutionException e) {
+                this.giveUp(new IOException("hub manager cannot connect hubs: " + e.getLocalizedMessage()));
             }
+        }
 
-            if(!isRunning) {
-                // launch it
-                new Thread(new Runnable() {
-                    @Override
-                    public void run() {
-                        Log.writeLog(ASAPHubManagerImpl.this,ASAPHubManagerImpl.this.toString(),
-                                "init new hub connector: " + hcd);
-                        try {
-                            HubConnector hubConnector = HubConnectorFactory.createHubConnector(hcd);
-                            // register on hub
-                            hubConnector.connectHub(asapPeer.getPeerID());
-                            ASAPHubManagerImpl.this.addHub(hubConnector);
-                            Log.writeLog(ASAPHubManagerImpl.this,ASAPHubManagerImpl.this.toString(),
-                                    "hub connector initialized: " + hcd);
-
-                        } catch (IOException | ASAPException e) {
-                            Log.writeLog(ASAPHubManagerImpl.this,ASAPHubManagerImpl.this.toString(),
-                                    "cannot create hub connector: " + e.getLocalizedMessage());
-                        }
-                    }
-                }).start();
-            } else {
-                Log.writeLog(this, this.toString(), "hub connector already running: " + hcd);
+        private void connect() {
+            if(this.cancelled) return;
+            Log.writeLog(ASAPHubManagerImpl.this, ASAPHubManagerImpl.this.toString(),
+                    "init new hub connector: " + this.description);
+            HubConnector hubConnector;
+            try {
+                hubConnector = HubConnectorFactory.createHubConnector(
+                        this.description, ASAPHubManagerImpl.this.getConnectTimeoutInMillis());
+            } catch (IOException | ASAPException e) {
+                this.failed(e);
+                return;
+            }
+
+            try {
+                // register on hub
+                hubConnector.connectHub(this.asapPeer.getPeerID());
+            } catch (IOException | ASAPException e) {
+                disconnectQuietly(hubConnector);
+                this.failed(e);
+                return;
             }
-        } // end each description for-loop
+
+            this.hubConnector = hubConnector;
+            this.connectedSince = System.currentTimeMillis();
+            ASAPHubManagerImpl.this.addHub(hubConnector);
+            Log.writeLog(ASAPHubManagerImpl.this, ASAPHubManagerImpl.this.toString(),
+                    "hub connector initialized: " + this.description);
+            this.connected.complete(hubConnector);
+
+            // disconnected in the meantime
+            if(this.cancelled) ASAPHubManagerImpl.this.disconnectASAPHubs(Collections.singletonList(hubConnector));
+        }
+
+        void lost() {
+            // a connection that was up for a while is not flapping - start over with short pauses
+            if(System.currentTimeMillis() - this.connectedSince > MAX_RETRY_IN_MILLIS) this.failedAttempts = 0;
+            this.hubConnector = null;
+            this.failed(new IOException("lost connection to hub"));
+        }
+
+        private void failed(Exception e) {
+            this.failedAttempts++;
+            Log.writeLog(ASAPHubManagerImpl.this, ASAPHubManagerImpl.this.toString(),
+                    "cannot connect hub (attempt " + this.failedAttempts + "): " + this.description
+                            + " | " + e.getLocalizedMessage());
+
+            if(this.cancelled || this.failedAttempts >= MAX_CONNECT_ATTEMPTS) {
+                this.giveUp(e);
+                return;
+            }
+
+            long pause = Math.min((long) FIRST_RETRY_IN_MILLIS << (this.failedAttempts - 1), MAX_RETRY_IN_MILLIS);
+            HashedWheelTimer.getHubTimer().schedule(pause, this::attempt);
+        }
+
+        private void giveUp(Exception e) {
+            synchronized(ASAPHubManagerImpl.this.bootstraps) {
+                ASAPHubManagerImpl.this.bootstraps.remove(this);
+            }
+            this.connected.completeExceptionally(e);
+        }
+
+        void cancel() {
+            this.cancelled = true;
+            synchronized(ASAPHubManagerImpl.this.bootstraps) {
+                ASAPHubManagerImpl.this.bootstraps.remove(this);
+            }
+            this.connected.cancel(false);
+        }
+    }
+
+    private int getConnectTimeoutInMillis() {
+        return this.timeoutInMillis > 0 ? this.timeoutInMillis : DEFAULT_CONNECT_TIMEOUT_IN_MILLIS;
+    }
+
+    private static void disconnectQuietly(HubConnector hubConnector) {
+        try {
+            hubConnector.disconnectHub();
+        } catch (IOException | ASAPException e) {
+            // was not connected anyway
+        }
+    }
+
+    @Override
+    public CompletableFuture<HubConnector> connectASAPHub(HubConnectorDescription description, ASAPPeer asapPeer) {
+        HubBootstrap bootstrap;
+        synchronized(this.bootstraps) {
+            for(HubBootstrap running : this.bootstraps) {
+                if(running.description.isSame(description)) return running.connected;
+            }
+            for(HubConnector runningHc : this.hubConnectors) {
+                if(runningHc.isSame(description)) return CompletableFuture.completedFuture(runningHc);
+            }
+
+            bootstrap = new HubBootstrap(description, asapPeer);
+            this.bootstraps.add(bootstrap);
+        }
+
+        bootstrap.attempt();
+        return bootstrap.connected;
+    }
+
+    public void connectASAPHubs(Collection<HubConnectorDescription> descriptions,
+                                ASAPPeer asapPeer, boolean killNotDescribed) {
+        // each hub in background - a slow or unreachable hub does not delay others
+        for(HubConnectorDescription hcd : descriptions) this.connectASAPHub(hcd, asapPeer);
 
         if(killNotDescribed) {
             ///////////////////// kill open connections which are not in the list
@@ -177,16 +309,50 @@ public class ASAPHubManagerImpl implements ASAPHubManager, Runnable, NewConnecti
                 if (!found) toBeKilled.add(runningHc);
             }
 
+            // and stop trying to reach them
+            for(HubBootstrap bootstrap : this.getBootstraps()) {
+                boolean found = false;
+                for (HubConnectorDescription hcd : descriptions) {
+                    if (bootstrap.description.isSame(hcd)) {
+                        found = true;
+                        break;
+                    }
+                }
+                if (!found) bootstrap.cancel();
+            }
+
             this.disconnectASAPHubs(toBeKilled);
         }
     }
 
+    private List<HubBootstrap> getBootstraps() {
+        synchronized(this.bootstraps) {
+            return new ArrayList<>(this.bootstraps);
+        }
+    }
+
+    /**
+     * Connection to hub is broken - remove it. Hub is connected again if it was connected by this manager.
+     */
+    private void hubLost(HubConnector hubConnector) {
+        this.removeHub(hubConnector);
+        for(HubBootstrap bootstrap : this.getBootstraps()) {
+            if(bootstrap.hubConnector == hubConnector && !bootstrap.cancelled) {
+                bootstrap.lost();
+                return;
+            }
+        }
+    }
+
     private void disconnectASAPHubs(Collection<HubConnector> toBeKilled) {
         for(HubConnector hcd : toBeKilled) {
-                // try to disconnect
-                new Thread(new Runnable() {
-                    @Override
-                    public void run() {
+            for(HubBootstrap bootstrap : this.getBootstraps()) {
+                if(bootstrap.hubConnector == hcd) bootstrap.cancel();
+            }
+
+            // try to disconnect
+            try {
+                this.hubConnectExecutor.execute(() -> {
                     try {
                         Log.writeLog(ASAPHubManagerImpl.this,ASAPHubManagerImpl.this.toString(),
                                 "disconnect hub connector: " + hcd);
@@ -196,8 +362,10 @@ public class ASAPHubManagerImpl implements ASAPHubManager, Runnable, NewConnecti
                         Log.writeLog(ASAPHubManagerImpl.this,ASAPHubManagerImpl.this.toString(),
                                 e.getLocalizedMessage());
                     }
-                }
-            }).start();
+                });
+            } catch (RejectedExecutionException e) {
+                Log.writeLog(this, this.toString(), "cannot disconnect hub: " + e.getLocalizedMessage());
+            }
         }
     }
 
@@ -205,47 +373,81 @@ public class ASAPHubManagerImpl implements ASAPHubManager, Runnable, NewConnecti
      * Disconnect all running hubs
      */
     public void disconnectASAPHubs() {
+        // stop connecting
+        for(HubBootstrap bootstrap : this.getBootstraps()) bootstrap.cancel();
+
         // clear hub connector list
-        Collection<HubConnector> toBeKilled = this.hubConnectors;
-        this.hubConnectors = new ArrayList<>();
+        Collection<HubConnector> toBeKilled = new ArrayList<>(this.hubConnectors);
+        this.hubConnectors.removeAll(toBeKilled);
         this.disconnectASAPHubs(toBeKilled);
     }
 
-    private boolean managerThreadStopped = false;
+    private volatile boolean managerThreadStopped = false;
+
+    /**
+     * @return false if manager thread is to stop - it is forgotten in that case, next hub launches a new one
+     */
+    private boolean keepRunning() {
+        synchronized(this.hubConnectors) {
+            if(!this.managerThreadStopped) return true;
+            if(this.managerThread == Thread.currentThread()) this.managerThread = null;
+            return false;
+        }
+    }
 
     @Override
     public void run() {
-        this.managerThread = Thread.currentThread();
+        synchronized(this.hubConnectors) {
+            this.managerThread = Thread.currentThread();
+        }
         Log.writeLog(this, this.toString(), "hub manager thread started");
 
-        while (!this.managerThreadStopped) {
+        while (this.keepRunning()) {
             Log.writeLog(this, this.toString(), "start a new round");
 
+            // each hub is synced on its own schedule
+            long now = System.currentTimeMillis();
+            long nextRound = now + this.waitIntervalInSeconds * 1000L;
             for(HubConnector hubConnector : this.hubConnectors) {
-                Log.writeLog(this, this.toString(), "check hub connection");
-                hubConnector.addStatusListener(this);
-                try {
-                    // trigger syncing
-                    hubConnector.syncHubInformation();
-                } catch (IOException e) {
-                    // io on this hub - removeHub it later and go ahead
-                    Log.writeLog(this, this.toString(), "problems with hub - remove it: " + e);
-                    e.printStackTrace();
-                    removeHub(hubConnector);
+                SyncSchedule syncSchedule = this.syncSchedules.get(hubConnector);
+                if(syncSchedule == null) continue; // just removed
+                if(syncSchedule.isDue(now)) {
+                    Log.writeLog(this, this.toString(), "check hub connection");
+                    if(hubConnector.isShutdown()) {
+                        Log.writeLog(this, this.toString(), "connection to hub closed - remove it: " + hubConnector);
+                        this.hubLost(hubConnector);
+                        continue;
+                    }
+                    hubConnector.addStatusListener(this);
+                    syncSchedule.syncStarted(now);
+                    try {
+                        // trigger syncing
+                        hubConnector.syncHubInformation();
+                    } catch (IOException e) {
+                        // io on this hub - removeHub it later and go ahead
+                        Log.writeLog(this, this.toString(), "problems with hub - remove it: " + e);
+                        this.hubLost(hubConnector);
+                        continue;
+                    }
                 }
+                nextRound = Math.min(nextRound, syncSchedule.getNextSync());
             }
 
+            long sleepingTime = nextRound - System.currentTimeMillis();
+            if(sleepingTime <= 0) continue;
             try {
-                long sleepingTime = this.waitIntervalInSeconds * 1000;
                 Log.writeLog(this, this.toString(), "wait before next round (in ms): " + sleepingTime);
+                this.sleepingUntil = nextRound;
                 Thread.sleep(sleepingTime);
             } catch (InterruptedException e) {
                 if(!this.managerThreadStopped) {
                     Log.writeLog(this, this.toString(), "interrupted - make next round earlier");
                 }
+            } finally {
+                this.sleepingUntil = Long.MIN_VALUE;
             }
-            Log.writeLog(this, this.toString(), "hub manager thread ended.");
         }
+        Log.writeLog(this, this.toString(), "hub manager thread ended.");
     }
 
 
@@ -256,14 +458,28 @@ public class ASAPHubManagerImpl implements ASAPHubManager, Runnable, NewConnecti
 
     @Override
     public void notifySynced(Connector connector, boolean changed) {
-        Log.writeLog(this, this.toString(), "synced (changed: " + changed + ")");
+        this.notifySynced(connector, changed, true);
+    }
+
+    @Override
+    public void notifySynced(Connector connector, boolean changed, boolean polled) {
+        Log.writeLog(this, this.toString(), "synced (changed: " + changed + " | polled: " + polled + ")");
+        SyncSchedule syncSchedule = this.syncSchedules.get(connector);
+        if(syncSchedule != null) {
+            // busy hub - sync earlier, quiet hub - later, subscribed connector - rarely
+            if(polled) syncSchedule.synced(changed, System.currentTimeMillis());
+            else syncSchedule.pushed(System.currentTimeMillis());
+            Thread managerThread = this.managerThread;
+            if(syncSchedule.getNextSync() < this.sleepingUntil && managerThread != null) managerThread.interrupt();
+        }
 //        Log.writeLog(this, this.toString(), ">>>>>>>>>>>>>>>>>>>TODO***TODO***TODO<<<<<<<<<<<<<<<<<<<<<");
         if(/*changed && */ connector instanceof HubConnector) { // maybe new message in ASAP peer... connect each round
             HubConnector hubConnector = (HubConnector) connector;
             try {
                 Collection<CharSequence> peerIDs = hubConnector.getPeerIDs();
                 Log.writeLog(this, this.toString(), "got peerIDs: " + peerIDs);
-                if (peerIDs != null && !peerIDs.isEmpty()) for (CharSequence peerID : peerIDs) {
+                if (peerIDs != null && !peerIDs.isEmpty()) for (CharSequence id : peerIDs) {
+                    String peerID = id.toString(); // encounter manager looks peers up by string
                     if (this.asapEncounterManager.shouldCreateConnectionToPeer(
                             peerID, EncounterConnectionType.ASAP_HUB)) {
                         hubConnector.connectPeer(peerID);
@@ -272,8 +488,7 @@ public class ASAPHubManagerImpl implements ASAPHubManager, Runnable, NewConnecti
             } catch (IOException e) {
                 // io on this hub - removeHub it later and go ahead
                 Log.writeLog(this, this.toString(), "problems with hub - remove it: " + e);
-                e.printStackTrace();
-                this.removeHub(hubConnector);
+                this.hubLost(hubConnector);
             }
         }
     }
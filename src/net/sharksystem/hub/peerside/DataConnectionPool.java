@@ -0,0 +1,199 @@
+package net.sharksystem.hub.peerside;
+
+import net.sharksystem.hub.FramedDataSessionStreamPair;
+import net.sharksystem.hub.utils.HashedWheelTimer;
+import net.sharksystem.utils.Log;
+
+import java.io.IOException;
+import java.net.Socket;
+import java.util.ArrayDeque;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Warm data connections to the data port of a hub. A connection is leased for an encounter - it is already
+ * connected and only waits for a token. Data sessions on it are framed. It is given back after a clean end of
+ * session and can be leased again.
+ * <br/><br/>
+ * Warm connections are only opened when encounters come in short order: one after a lease that found a warm
+ * connection, one after a lease that came within max idle time after the previous one - and only if no warm
+ * connection is left. Connections that are not leased within max idle time are closed and not replaced - the pool
+ * is empty as long as there are no encounters.
+ * <br/><br/>
+ * Max idle time must be shorter than the time the hub waits for a token on a new connection.
+ */
+class DataConnectionPool {
+    static final int DEFAULT_MAX_WARM_CONNECTIONS = 2;
+    static final int DEFAULT_MAX_IDLE_IN_MILLIS = 10000;
+
+    private final String hostName;
+    private final int maxWarmConnections;
+    private final int maxIdleInMillis;
+    private final ThreadFactory threadFactory;
+
+    private final ArrayDeque<WarmConnection> warm = new ArrayDeque<>(); // guarded by this
+    private int connecting = 0; // guarded by this
+    private boolean closed = false; // guarded by this
+    private long lastLease = 0; // guarded by this - 0: no lease yet
+
+    private static class WarmConnection {
+        final Socket socket;
+        final int port;
+        HashedWheelTimer.Timeout reaper;
+
+        WarmConnection(Socket socket, int port) {
+            this.socket = socket;
+            this.port = port;
+        }
+    }
+
+    DataConnectionPool(String hostName, ThreadFactory threadFactory) {
+        this(hostName, DEFAULT_MAX_WARM_CONNECTIONS, DEFAULT_MAX_IDLE_IN_MILLIS, threadFactory);
+    }
+
+    DataConnectionPool(String hostName, int maxWarmConnections, int maxIdleInMillis, ThreadFactory threadFactory) {
+        this.hostName = hostName;
+        this.maxWarmConnections = maxWarmConnections;
+        this.maxIdleInMillis = maxIdleInMillis;
+        this.threadFactory = threadFactory;
+    }
+
+    /**
+     * @return connection to hub data port - a warm one if there is one, a new one otherwise. A warm connection
+     * is opened for the next encounter if encounters come in short order and none is left.
+     */
+    Socket lease(int port) throws IOException {
+        WarmConnection leased = null;
+        boolean refill;
+        synchronized(this) {
+            while(leased == null && !this.warm.isEmpty()) {
+                WarmConnection candidate = this.warm.poll();
+                // hub data port might have changed, or a reaper is about to close it
+                if(candidate.port == port && candidate.reaper.cancel()) leased = candidate;
+                else close(candidate.socket);
+            }
+            long now = System.currentTimeMillis();
+            // nothing left for next encounter - connections given back after a session are leased first
+            refill = this.warm.isEmpty()
+                    && (leased != null || (this.lastLease > 0 && now - this.lastLease <= this.maxIdleInMillis));
+            this.lastLease = now;
+        }
+
+        if(refill) this.refill(port);
+        return leased != null ? leased.socket : new Socket(this.hostName, port);
+    }
+
+    /**
+     * @return framed data session on a leased connection - connection is given back after a clean end of session
+     * and closed otherwise
+     * @param drainTimeOutInMillis time other side has to end its data after this side closed the session
+     */
+    FramedDataSessionStreamPair framedDataSession(Socket socket, int port, CharSequence sessionID,
+                                                  int drainTimeOutInMillis) throws IOException {
+        return new FramedDataSessionStreamPair(new FramedDataSessionStreamPair.Owner() {
+            @Override
+            public void framedDataSessionClosing(FramedDataSessionStreamPair streamPair) {
+                DataConnectionPool.this.threadFactory.newThread(() -> {
+                    try {
+                        socket.setSoTimeout(drainTimeOutInMillis);
+                    } catch (IOException e) {
+                        // drain fails as well
+                    }
+                    if(!streamPair.drain()) close(socket);
+                }).start();
+            }
+
+            @Override
+            public void framedDataSessionEnded(FramedDataSessionStreamPair streamPair) {
+                DataConnectionPool.this.giveBack(socket, port);
+            }
+        }, socket.getInputStream(), socket.getOutputStream(), sessionID);
+    }
+
+    /**
+     * Connection is in sync after a clean end of session - it is kept if there is room for it.
+     */
+    void giveBack(Socket socket, int port) {
+        synchronized(this) {
+            if(!this.closed && !socket.isClosed() && this.warm.size() < this.maxWarmConnections) {
+                try {
+                    socket.setSoTimeout(0);
+                    this.addWarmConnection(socket, port);
+                    return;
+                } catch (IOException e) {
+                    // close it
+                }
+            }
+        }
+        close(socket);
+    }
+
+    synchronized int warmConnections() {
+        return this.warm.size();
+    }
+
+    /**
+     * Close warm connections - no more are opened. Lease still opens a connection.
+     */
+    void close() {
+        synchronized(this) {
+            this.closed = true;
+            while(!this.warm.isEmpty()) {
+                WarmConnection warmConnection = this.warm.poll();
+                warmConnection.reaper.cancel();
+                close(warmConnection.socket);
+            }
+        }
+    }
+
+    // open one warm connection if there is room
+    private void refill(int port) {
+        synchronized(this) {
+            if(this.closed || this.warm.size() + this.connecting >= this.maxWarmConnections) return;
+            this.connecting++;
+        }
+
+        this.threadFactory.newThread(() -> this.openWarmConnection(port)).start();
+    }
+
+    private void openWarmConnection(int port) {
+        Socket socket = null;
+        try {
+            socket = new Socket(this.hostName, port);
+        } catch (IOException e) {
+            Log.writeLog(this, "cannot open warm data connection: " + e.getLocalizedMessage());
+        }
+
+        synchronized(this) {
+            this.connecting--;
+            if(socket == null) return;
+            if(this.closed) {
+                close(socket);
+                return;
+            }
+            this.addWarmConnection(socket, port);
+        }
+    }
+
+    // synchronized by caller
+    private void addWarmConnection(Socket socket, int port) {
+        WarmConnection warmConnection = new WarmConnection(socket, port);
+        warmConnection.reaper = HashedWheelTimer.getHubTimer().schedule(this.maxIdleInMillis,
+                () -> this.reap(warmConnection));
+        this.warm.add(warmConnection);
+    }
+
+    private void reap(WarmConnection warmConnection) {
+        synchronized(this) {
+            if(!this.warm.remove(warmConnection)) return; // leased
+        }
+        close(warmConnection.socket);
+    }
+
+    private static void close(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // ignore
+        }
+    }
+}
@@ -3,9 +3,11 @@ package net.sharksystem.hub.peerside;
 import net.sharksystem.asap.ASAPException;
 import net.sharksystem.hub.ASAPHubException;
 import net.sharksystem.hub.hubside.Hub;
+import net.sharksystem.hub.protocol.HubPDU;
 
 import java.io.IOException;
 import java.util.Collection;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Hub connector is an interface that is used on peers' side to communicate with a hub. A protocol is required that
@@ -87,5 +89,19 @@ public interface HubConnector {
     void prepareBlockUntilReceived(byte pduCommand);
     void blockUntilReceived(byte hubStatusReply);
 
+    /**
+     * Wait for a PDU without blocking a thread.
+     * @param pduCommand e.g. {@link HubPDU#HUB_STATUS_REPLY}
+     * @return completes with next PDU of this type received from hub - or a TimeoutException after connector time out
+     */
+    CompletableFuture<HubPDU> awaitPDU(byte pduCommand);
+
+    /**
+     * Refresh hub information and get hub's reply.
+     * @return completes with hub status reply or hub status delta reply - or a TimeoutException
+     * @see #syncHubInformation()
+     */
+    CompletableFuture<HubPDU> syncHubInformationAsync();
+
     boolean isSame(HubConnectorDescription hcd);
 }
@@ -9,10 +9,18 @@ import java.io.IOException;
 
 public class HubConnectorFactory {
     public static HubConnector createHubConnector(HubConnectorDescription hcd) throws ASAPHubException, IOException {
+        return HubConnectorFactory.createHubConnector(hcd, 0);
+    }
+
+    /**
+     * @param connectTimeoutInMillis give up if hub cannot be reached in time - 0: no time out
+     */
+    public static HubConnector createHubConnector(HubConnectorDescription hcd, int connectTimeoutInMillis)
+            throws ASAPHubException, IOException {
         switch (hcd.getType()) {
             case HubConnectorDescription.TCP:
                 return SharedTCPChannelConnectorPeerSide.createTCPHubConnector(
-                        hcd.getHostName(), hcd.getPortNumber(), hcd.canMultiChannel());
+                        hcd.getHostName(), hcd.getPortNumber(), hcd.canMultiChannel(), connectTimeoutInMillis);
 
             default: throw new ASAPHubException("unknown hub connector protocol type: " + hcd.getType());
         }
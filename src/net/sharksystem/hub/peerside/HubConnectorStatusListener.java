@@ -14,4 +14,16 @@ public interface HubConnectorStatusListener {
      * @param changed peer list changed - or not
      */
     void notifySynced(Connector connector, boolean changed);
+
+    /**
+     * Got hub status - either as answer to a status request or pushed by hub to a subscribed connector.
+     * <br/><br/>
+     * Default implementation calls {@link #notifySynced(Connector, boolean)}.
+     * @param connector
+     * @param changed peer list changed - or not
+     * @param polled answer to a status request - pushed by hub otherwise
+     */
+    default void notifySynced(Connector connector, boolean changed, boolean polled) {
+        this.notifySynced(connector, changed);
+    }
 }
@@ -3,6 +3,8 @@ package net.sharksystem.hub.peerside;
 import net.sharksystem.SharkException;
 import net.sharksystem.streams.StreamPair;
 
+import java.util.concurrent.CompletableFuture;
+
 /**
  * Peer can establish a connected mediated by a hub. This listener interface is used whenever a new connection
  * was established.
@@ -14,4 +16,18 @@ public interface NewConnectionListener {
      * @param streamPair i/o streams and further information of the newly established communication
      */
     void notifyPeerConnected(CharSequence targetPeerID, StreamPair streamPair);
+
+    /**
+     * A new connection is about to be established. Hub links both peers and tells when it is done. Connection
+     * completes the moment hub tells - it fails if connection is lost before. Called before the connection
+     * can be used. Must not block.
+     * <br/><br/>
+     * Default implementation calls {@link #notifyPeerConnected(CharSequence, StreamPair)} when connection
+     * completes - on the thread that completes it, not the connector's thread.
+     * @param targetPeerID
+     * @param connection completes with i/o streams of the newly established communication
+     */
+    default void notifyPeerConnecting(CharSequence targetPeerID, CompletableFuture<StreamPair> connection) {
+        connection.thenAccept(streamPair -> this.notifyPeerConnected(targetPeerID, streamPair));
+    }
 }
@@ -5,14 +5,19 @@ import net.sharksystem.asap.utils.PeerIDHelper;
 import net.sharksystem.streams.StreamPair;
 import net.sharksystem.hub.*;
 import net.sharksystem.hub.protocol.*;
-import net.sharksystem.utils.Log;
+import net.sharksystem.hub.utils.HubLog;
 
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 
 public abstract class SharedChannelConnectorPeerSide extends SharedChannelConnectorImpl implements HubConnector {
     private List<NewConnectionListener> listener = new ArrayList<>();
@@ -20,6 +25,11 @@ public abstract class SharedChannelConnectorPeerSide extends SharedChannelConnec
     private CharSequence localPeerID;
     private boolean shutdown = false;
     private HubPDUUnregister pendingDisconnectPDU = null;
+    private boolean hubStatusDelta = false;
+    private long hubRegistryVersion = HubPDUHubStatusDeltaRQ.UNKNOWN_VERSION;
+    private boolean hubStatusSubscription = false;
+    private int pendingStatusRequests = 0; // guarded by this - delta replies without a request are pushes
+    private boolean envelopedPDUs = false;
 
     public SharedChannelConnectorPeerSide(InputStream is, OutputStream os) throws ASAPHubException {
         super(is, os);
@@ -45,7 +55,7 @@ public abstract class SharedChannelConnectorPeerSide extends SharedChannelConnec
 
     private boolean isConnected() {
         try {
-            this.getConnectorThread();
+            this.getConnectorSession();
             return(this.localPeerID != null);
         }
         catch (ASAPHubException e) {
@@ -56,7 +66,7 @@ public abstract class SharedChannelConnectorPeerSide extends SharedChannelConnec
     }
 
     protected void connectionLost() {
-        Log.writeLog(this, "lost connection to hub permanently - should do something?");
+        HubLog.info(this, null, "lost connection to hub permanently - should do something?");
     }
 
     ////////////////////////////////////////////////////////////////////////////////////////////////////
@@ -78,18 +88,41 @@ public abstract class SharedChannelConnectorPeerSide extends SharedChannelConnec
         // create hello pdu
         HubPDURegister hubPDURegister = new HubPDURegister(localPeerID, canCreateTCPConnections);
 
-        // introduce yourself to hub
-        hubPDURegister.sendPDU(this.getOutputStream());
+        // introduce yourself to hub - with options in same write
+        List<HubPDU> pdus = new ArrayList<>();
+        pdus.add(hubPDURegister);
+
+        if(this.hubStatusSubscription) {
+            pdus.add(new HubPDUHubStatusSubscribe(true, this.hubRegistryVersion));
+        }
+
+        if(this.multiplexedDataSessions()) {
+            pdus.add(HubPDUStreamFrame.enable());
+        }
+
+        if(this.framedDataSessions()) {
+            pdus.add(new HubPDUFramedDataSessions(true));
+        }
+
+        if(this.envelopedPDUs) {
+            // ask for envelopes - we keep writing legacy format until hub accepted
+            pdus.add(new HubPDUWireFormat(HubPDUWireFormat.ENVELOPE));
+        }
+
+        if(canCreateTCPConnections && this.dataPortTokens()) {
+            pdus.add(new HubPDUDataPortTokens(true));
+        }
+        this.getPDUWriter().write(pdus);
 
         // start management protocol
-        Log.writeLog(this, this.toString(), "start hub protocol engine");
+        HubLog.info(this, this, "start hub protocol engine");
         this.startConnectorSession();
     }
 
     private void startConnectorSession() {
-        ConnectorThread connectorThread = new ConnectorThread(this, this.getInputStream());
-        connectorThread.start();
-        this.connectorSessionStarted(connectorThread);
+        ConnectorSession connectorSession = this.createConnectorSession();
+        connectorSession.start();
+        this.connectorSessionStarted(connectorSession);
     }
 
     @Override
@@ -102,11 +135,11 @@ public abstract class SharedChannelConnectorPeerSide extends SharedChannelConnec
         if(this.sendPDU(hubPDUUnregister)) {
             // kill connector thread
             try {
-                this.getConnectorThread().kill();
+                this.getConnectorSession().kill();
                 pendingDisconnect = false;
             }
             catch(ASAPHubException e) {
-                Log.writeLog(this, this.toString(), "no connector thread running - cannot call disconnect");
+                HubLog.debug(this, this, "no connector session running - cannot call disconnect");
             }
         }
 
@@ -115,10 +148,111 @@ public abstract class SharedChannelConnectorPeerSide extends SharedChannelConnec
         }
     }
 
+    /**
+     * Ask hub only for changes of registered peers since last sync instead of the complete list. Only hubs of this
+     * version or later understand such a request - others would close the connection.
+     * @param hubStatusDelta
+     */
+    public void setHubStatusDelta(boolean hubStatusDelta) {
+        this.hubStatusDelta = hubStatusDelta;
+    }
+
+    /**
+     * Hub pushes changes of registered peers as they happen - no need to call syncHubInformation. Hub holds
+     * back changes while this connector is in a data session. Only hubs of this version or later understand
+     * a subscription - others would close the connection.
+     * @param subscribe
+     */
+    public void setHubStatusSubscription(boolean subscribe) {
+        this.hubStatusSubscription = subscribe;
+        if(this.isConnected()) {
+            this.sendPDU(new HubPDUHubStatusSubscribe(subscribe, this.hubRegistryVersion));
+        }
+    }
+
+    /**
+     * Hub sends data sessions as multiplexed streams over the shared channel. Several data sessions can run at the
+     * same time, no silence is required. Must be set before connecting. Only hubs of this version or
+     * later understand it - others would close the connection.
+     * @param multiplexed
+     */
+    @Override
+    public void setMultiplexedDataSessions(boolean multiplexed) {
+        super.setMultiplexedDataSessions(multiplexed);
+    }
+
+    /**
+     * Data sessions on the shared channel end with an explicit end of data instead of a time out - channel can be
+     * used again right after both sides closed their streams. Must be set before connecting. Only hubs of this
+     * version or later understand it - others would close the connection.
+     * @param framed
+     */
+    @Override
+    public void setFramedDataSessions(boolean framed) {
+        super.setFramedDataSessions(framed);
+    }
+
+    /**
+     * PDUs are exchanged in a length-prefixed envelope: both sides read PDUs completely before decoding them and
+     * skip PDUs they do not know. Must be set before connecting. Only hubs of this version or later understand
+     * it - others would close the connection.
+     * @param enveloped
+     */
+    public void setEnvelopedPDUs(boolean enveloped) {
+        this.envelopedPDUs = enveloped;
+    }
+
+    /**
+     * @return true if this side can connect to the data port of the hub and present a token
+     */
+    protected boolean dataPortTokens() {
+        return false;
+    }
+
     @Override
     public void syncHubInformation() throws IOException {
         // can fail ignore
-        this.sendPDU(new HubPDUHubStatusRQ());
+        this.sendWithHubStatusRQ(new ArrayList<>());
+    }
+
+    @Override
+    public CompletableFuture<HubPDU> syncHubInformationAsync() {
+        // delta reply completes it as well
+        CompletableFuture<HubPDU> reply = this.awaitPDU(HubPDU.HUB_STATUS_REPLY);
+        // can fail - request is sent again when connector protocol resumes
+        this.sendWithHubStatusRQ(new ArrayList<>());
+        return reply;
+    }
+
+    /**
+     * Send a status request followed by other PDUs - in a single write. Request is counted before its reply
+     * can arrive.
+     */
+    private boolean sendWithHubStatusRQ(List<HubPDU> pdus) {
+        pdus.add(0, this.createHubStatusRQ());
+        synchronized (this) {
+            this.pendingStatusRequests++;
+        }
+        if(this.sendPDUs(pdus)) return true;
+
+        synchronized (this) {
+            this.pendingStatusRequests--;
+        }
+        return false;
+    }
+
+    /**
+     * @return true if a status request was waiting for this reply
+     */
+    private synchronized boolean statusRequestAnswered() {
+        if(this.pendingStatusRequests == 0) return false;
+        this.pendingStatusRequests--;
+        return true;
+    }
+
+    private HubPDU createHubStatusRQ() {
+        if(this.hubStatusDelta) return new HubPDUHubStatusDeltaRQ(this.hubRegistryVersion);
+        return new HubPDUHubStatusRQ();
     }
 
     private List<HubPDUConnectPeerRQ> connectRQList = new ArrayList<>();
@@ -130,7 +264,7 @@ public abstract class SharedChannelConnectorPeerSide extends SharedChannelConnec
             synchronized (this) {
                 for(HubPDUConnectPeerRQ otherRQ : this.connectRQList) {
                     if(PeerIDHelper.sameID(peerID, otherRQ.peerID)) {
-                        Log.writeLog(this, this.toString(), "already existing connect request to " + peerID);
+                        HubLog.debug(this, this, "already existing connect request to ", peerID);
                         return;
                     }
                 }
@@ -140,34 +274,39 @@ public abstract class SharedChannelConnectorPeerSide extends SharedChannelConnec
     }
 
     private boolean sendPDU(HubPDU pdu)  {
+        return this.sendPDUs(Collections.singletonList(pdu));
+    }
+
+    /**
+     * Send PDUs with a single write
+     */
+    private boolean sendPDUs(List<HubPDU> pdus)  {
         if(!this.statusHubConnectorProtocol()) return false;
 
         try {
             this.checkConnected();
-            synchronized (this.getOutputStream()) {
-                pdu.sendPDU(this.getOutputStream());
-            }
+            this.getPDUWriter().write(pdus);
             return true;
         }
         catch(IOException ioe) {
-            Log.writeLog(this, this.toString(), "cannot send PDU: " + ioe.getLocalizedMessage());
+            HubLog.debug(this, this, "cannot send PDU: ", ioe.getLocalizedMessage());
             return false;
         }
     }
 
     protected void actionWhenBackFromDataSession() {
-        Log.writeLog(this, this.toString(), "back from data session");
+        HubLog.debug(this, this, "back from data session");
         if(this.pendingDisconnectPDU != null) {
-            Log.writeLog(this, this.toString(), "send pending disconnect pdu");
+            HubLog.debug(this, this, "send pending disconnect pdu");
             try {
-                this.pendingDisconnectPDU.sendPDU(this.getOutputStream());
+                this.getPDUWriter().write(this.pendingDisconnectPDU);
                 return;
             } catch (IOException e) {
-                Log.writeLog(this, this.toString(), "cannot send pending PDU: " + e.getLocalizedMessage());
+                HubLog.debug(this, this, "cannot send pending PDU: ", e.getLocalizedMessage());
             }
         }
 
-        Log.writeLog(this, this.toString(), "restart connector session thread");
+        HubLog.debug(this, this, "restart connector session thread");
         // relaunch Connector thread if no pending disconnect or failed to send pud (for whatever reason)
         this.startConnectorSession();
     }
@@ -190,6 +329,15 @@ public abstract class SharedChannelConnectorPeerSide extends SharedChannelConnec
         }
     }
 
+    /**
+     * PDUs carry interned peer ids. They never equal a String - applications get strings.
+     */
+    private static Set<CharSequence> asStrings(Collection<CharSequence> peerIDs) {
+        Set<CharSequence> strings = new HashSet<>();
+        for(CharSequence peerID : peerIDs) strings.add(peerID.toString());
+        return strings;
+    }
+
     /////////////////////////////////////////////////////////////////////////////////////////////////////////////
     //                                       reaction on received PDUs                                         //
     /////////////////////////////////////////////////////////////////////////////////////////////////////////////
@@ -216,15 +364,50 @@ public abstract class SharedChannelConnectorPeerSide extends SharedChannelConnec
 
     @Override
     public void hubStatusRPLY(HubPDUHubStatusRPLY pdu) {
-        Log.writeLog(this, this.toString(), pdu.toString());
+        HubLog.debug(this, this, "hub status reply: ", pdu);
 
+        // never pushed - count it anyway
+        this.statusRequestAnswered();
         Collection<CharSequence> previousIDs = this.peerIDs;
         synchronized (this) {
-            this.peerIDs = pdu.connectedPeers;
+            this.peerIDs = asStrings(pdu.connectedPeers);
         }
 
         // changes?
-        this.notifyListenerSynced(!net.sharksystem.utils.Utils.sameContent(previousIDs, this.peerIDs));
+        this.notifyListenerSynced(!net.sharksystem.utils.Utils.sameContent(previousIDs, this.peerIDs), true);
+    }
+
+    @Override
+    public void hubStatusDeltaRQ(HubPDUHubStatusDeltaRQ pdu) {
+        this.pduNotHandled(pdu);
+    }
+
+    @Override
+    public void hubStatusDeltaRPLY(HubPDUHubStatusDeltaRPLY pdu) {
+        HubLog.debug(this, this, "hub status delta reply: ", pdu);
+
+        boolean polled = this.statusRequestAnswered();
+        Collection<CharSequence> previousIDs = this.peerIDs;
+        synchronized (this) {
+            if(!pdu.complete && pdu.version < this.hubRegistryVersion) {
+                // a push overtook this reply - already known
+                return;
+            }
+            Set<CharSequence> knownPeers = new HashSet<>(this.peerIDs);
+            Set<CharSequence> peers = pdu.applyTo(knownPeers);
+            // reply contains this peer as well
+            peers.remove(this.localPeerID);
+            this.peerIDs = asStrings(peers);
+            this.hubRegistryVersion = pdu.version;
+        }
+
+        // changes?
+        this.notifyListenerSynced(!net.sharksystem.utils.Utils.sameContent(previousIDs, this.peerIDs), polled);
+    }
+
+    @Override
+    public void hubStatusSubscribe(HubPDUHubStatusSubscribe pdu) {
+        this.pduNotHandled(pdu);
     }
 
     @Override
@@ -232,6 +415,32 @@ public abstract class SharedChannelConnectorPeerSide extends SharedChannelConnec
         this.pduNotHandled(pdu);
     }
 
+    @Override
+    public void dataPortTokens(HubPDUDataPortTokens pdu) {
+        this.pduNotHandled(pdu);
+    }
+
+    @Override
+    public void wireFormat(HubPDUWireFormat pdu) {
+        // hub sends in accepted format right after this answer
+        HubLog.info(this, this, "hub accepted wire format: ", pdu.version);
+        boolean enveloped = pdu.version == HubPDUWireFormat.ENVELOPE;
+        this.getPDUReader().setEnveloped(enveloped);
+        if(!enveloped || !this.envelopedPDUs) return;
+
+        HubPDUWriter pduWriter = this.getPDUWriter();
+        synchronized (this.getOutputStream()) {
+            // confirm - last pdu in legacy format, hub reads envelopes right after it
+            try {
+                pduWriter.write(new HubPDUWireFormat(HubPDUWireFormat.ENVELOPE));
+            } catch (IOException e) {
+                HubLog.error(this, this, "cannot confirm wire format: ", e.getLocalizedMessage());
+                return;
+            }
+            pduWriter.setEnveloped(true);
+        }
+    }
+
     /////////////////////////////////////////////////////////////////////////////////////////////////////////////
     //                                       connector status changes                                          //
     /////////////////////////////////////////////////////////////////////////////////////////////////////////////
@@ -243,49 +452,62 @@ public abstract class SharedChannelConnectorPeerSide extends SharedChannelConnec
     protected void silenceEnded() { }
 
     @Override
-    protected void dataSessionStarted(CharSequence targetPeerID, StreamPair streamPair) {
-        Log.writeLog(this, this.toString(), "data session started to peer " + targetPeerID);
-
-        Log.writeLog(this, this.toString(), "wait for ready byte " + targetPeerID);
+    protected void dataSessionStarted(CharSequence peerID, StreamPair streamPair) {
+        CharSequence targetPeerID = peerID.toString(); // application compares with strings
+        HubLog.debug(this, this, "data session started - wait for ready byte, other peer: ", targetPeerID);
 
-        byte b = 0;
-        while(b != Connector.readyByte) {
-            Log.writeLog(this, this.toString(), "no ready byte yet");
-            try {
-                Thread.sleep(100);
-            } catch (InterruptedException e) {
-                // ignore
+        // tell listener right away - connection completes when hub linked both peers
+        CompletableFuture<StreamPair> connection = new CompletableFuture<>();
+        if(this.listener != null) {
+            for(NewConnectionListener l : this.listener) {
+                l.notifyPeerConnecting(targetPeerID, connection);
             }
+        }
+
+        // wait on a thread of its own - listeners run on it as well and cannot block this connector
+        this.startThread(() -> {
             try {
-                b = (byte) streamPair.getInputStream().read();
+                awaitReadyByte(streamPair.getInputStream());
+                HubLog.debug(this, this, "got ready byte from hub - data session can begin");
+                connection.complete(streamPair);
             } catch (IOException e) {
-                Log.writeLog(this, this.toString(), "connection gone before usage, other peer: "
-                        + targetPeerID);
-                return;
+                HubLog.debug(this, this, "connection gone before usage, other peer: ", targetPeerID);
+                connection.completeExceptionally(e);
             }
-        }
-        Log.writeLog(this, this.toString(), "got ready byte from hub - notify data session can begin");
+        });
+    }
 
-        // tell listener
-        if(this.listener != null) {
-            // make sure not to be blocked by application programmer
-            new Thread(new Runnable() {
-                @Override
-                public void run() {
-                    for(NewConnectionListener l : listener) {
-                        l.notifyPeerConnected(targetPeerID, streamPair);
-                    }
-                }
-            }).start();
+    /**
+     * Block until hub sends ready byte - returns the moment it arrives.
+     * @throws IOException connection closed before
+     */
+    static void awaitReadyByte(InputStream is) throws IOException {
+        for(;;) {
+            int b = is.read();
+            if(b < 0) throw new EOFException("connection closed before ready byte");
+            if((byte) b == Connector.readyByte) return;
         }
     }
 
     @Override
     protected void resumedConnectorProtocol() {
-        try {
-            this.syncHubInformation();
-        } catch (IOException e) {
-            Log.writeLogErr(this, this.toString(), "sync problems: " + e.getLocalizedMessage());
+        // sync and connect requests made during data session - in a single write
+        List<HubPDU> pdus = new ArrayList<>();
+        List<HubPDUConnectPeerRQ> pendingRQs;
+        synchronized (this) {
+            pendingRQs = new ArrayList<>(this.connectRQList);
+            this.connectRQList.clear();
+        }
+        for(HubPDUConnectPeerRQ connectRQ : pendingRQs) {
+            HubLog.debug(this, this, "send pending connect request to ", connectRQ.peerID);
+            pdus.add(connectRQ);
+        }
+
+        if(!this.sendWithHubStatusRQ(pdus)) {
+            HubLog.debug(this, this, "cannot sync - keep pending connect requests");
+            synchronized (this) {
+                this.connectRQList.addAll(pendingRQs);
+            }
         }
     }
 
@@ -5,12 +5,15 @@ import net.sharksystem.hub.ASAPHubException;
 import net.sharksystem.hub.protocol.ConnectionRequest;
 import net.sharksystem.hub.protocol.HubPDU;
 import net.sharksystem.hub.protocol.HubPDUConnectPeerNewTCPSocketRQ;
+import net.sharksystem.streams.StreamPair;
 import net.sharksystem.streams.StreamPairImpl;
 import net.sharksystem.utils.Log;
 
+import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.net.InetSocketAddress;
 import java.net.Socket;
 
 import static net.sharksystem.hub.peerside.HubConnectorDescription.TCP;
@@ -20,6 +23,8 @@ public class SharedTCPChannelConnectorPeerSide extends SharedChannelConnectorPee
     private final int port;
     private final boolean multiChannel;
     private Socket hubSocket;
+    private final DataConnectionPool dataConnectionPool;
+    private boolean dataPortTokens = false;
 
     public static HubConnector createTCPHubConnector(CharSequence hostName, int port)
             throws IOException, ASAPHubException {
@@ -35,6 +40,23 @@ public class SharedTCPChannelConnectorPeerSide extends SharedChannelConnectorPee
         return new SharedTCPChannelConnectorPeerSide(hubSocket, hostName, port, multiChannel);
     }
 
+    /**
+     * @param connectTimeoutInMillis give up if hub does not accept connection in time - 0: wait as long as OS does
+     */
+    public static HubConnector createTCPHubConnector(CharSequence hostName, int port, boolean multiChannel,
+                                                     int connectTimeoutInMillis)
+        throws IOException, ASAPHubException {
+        Socket hubSocket = new Socket();
+        try {
+            hubSocket.connect(new InetSocketAddress(hostName.toString(), port), connectTimeoutInMillis);
+        } catch (IOException e) {
+            hubSocket.close();
+            throw e;
+        }
+
+        return new SharedTCPChannelConnectorPeerSide(hubSocket, hostName, port, multiChannel);
+    }
+
     public SharedTCPChannelConnectorPeerSide(Socket hubSocket, CharSequence hostName, int port, boolean multiChannel)
             throws IOException, ASAPHubException {
         super(hubSocket.getInputStream(), hubSocket.getOutputStream());
@@ -45,6 +67,9 @@ public class SharedTCPChannelConnectorPeerSide extends SharedChannelConnectorPee
         this.hostName = hostName.toString();
         this.port = port;
         this.multiChannel = multiChannel;
+        // thread factory can be set later
+        this.dataConnectionPool = new DataConnectionPool(this.hostName,
+                runnable -> this.getThreadFactory().newThread(runnable));
     }
 
     // overwrite default
@@ -52,6 +77,21 @@ public class SharedTCPChannelConnectorPeerSide extends SharedChannelConnectorPee
         this.connectHub(localPeerID, this.multiChannel);
     }
 
+    /**
+     * Data connections go to the data port of the hub - if it has one - and present a token. Warm connections
+     * are kept for that port. Must be set before connecting. Only hubs of this version or later understand it -
+     * others would close the connection.
+     * @param tokens
+     */
+    public void setDataPortTokens(boolean tokens) {
+        this.dataPortTokens = tokens;
+    }
+
+    @Override
+    protected boolean dataPortTokens() {
+        return this.multiChannel && this.dataPortTokens;
+    }
+
     @Override
     public boolean isSame(HubConnectorDescription hcd) {
         if(hcd.getType() != TCP) {
@@ -87,15 +127,36 @@ public class SharedTCPChannelConnectorPeerSide extends SharedChannelConnectorPee
         Log.writeLog(this, this.toString(),"asked to open a new connection to " + pdu.peerID);
 
         try {
+            if(pdu.hasToken()) {
+                // single data port on hub side - take a warm connection and tell hub which encounter it belongs to
+                Socket dataSocket = this.dataConnectionPool.lease(pdu.getPort());
+                DataOutputStream dos = new DataOutputStream(dataSocket.getOutputStream());
+                dos.writeLong(pdu.getToken());
+                dos.flush();
+
+                // framed session - connection goes back to pool after a clean end
+                StreamPair streamPair = this.dataConnectionPool.framedDataSession(dataSocket, pdu.getPort(),
+                        this.getPeerID() + " --> " + pdu.peerID, this.getTimeOutDataConnection());
+                Log.writeLog(this, this.toString(), "connected to data port - wait for ready byte");
+                this.startThread(() -> this.dataSessionStarted(pdu.peerID, streamPair));
+                return;
+            }
             Socket newPeerSocket = new Socket(this.hostName, pdu.getPort());
             Log.writeLog(this, this.toString(), "connected - wait clearance message");
-            new Wait4Clear(pdu.peerID, newPeerSocket).start();
+            this.startThread(new Wait4Clear(pdu.peerID, newPeerSocket));
         } catch (IOException e) {
             Log.writeLog(this, this.toString(),"could not establish new TCP connection for new peer encounter");
         }
 
     }
-    private class Wait4Clear extends Thread {
+
+    @Override
+    protected void shutdown() {
+        super.shutdown();
+        this.dataConnectionPool.close();
+    }
+
+    private class Wait4Clear implements Runnable {
         private final InputStream is;
         private final CharSequence peerID;
         private final OutputStream os;
@@ -0,0 +1,75 @@
+package net.sharksystem.hub.peerside;
+
+import java.util.Random;
+
+/**
+ * When to sync with a hub next - one schedule per hub connector. Interval is halved whenever a sync found changes
+ * and doubled whenever it found none - a busy hub is asked often, a quiet one rarely. Interval stays within
+ * [min, max]. Each sync is scheduled up to 20 percent earlier or later than interval - peers with same interval
+ * do not ask their hub at same time.
+ * <br/><br/>
+ * Only answers to status requests adapt the interval. A hub that pushes its status makes asking unnecessary -
+ * schedule backs off to max interval.
+ */
+class SyncSchedule {
+    static final double JITTER = 0.2;
+
+    private final long minIntervalInMillis;
+    private final long maxIntervalInMillis;
+    private final Random random;
+    private long intervalInMillis; // guarded by this
+    private long nextSync = 0; // guarded by this - first sync is due right away
+
+    SyncSchedule(long minIntervalInMillis, long maxIntervalInMillis) {
+        this(minIntervalInMillis, maxIntervalInMillis, new Random());
+    }
+
+    SyncSchedule(long minIntervalInMillis, long maxIntervalInMillis, Random random) {
+        this.maxIntervalInMillis = Math.max(1, maxIntervalInMillis);
+        this.minIntervalInMillis = Math.max(1, Math.min(minIntervalInMillis, this.maxIntervalInMillis));
+        this.random = random;
+        // quick discovery first - backs off if nothing happens
+        this.intervalInMillis = this.minIntervalInMillis;
+    }
+
+    synchronized boolean isDue(long now) {
+        return now >= this.nextSync;
+    }
+
+    /**
+     * Sync request is sent. Next one is scheduled with current interval - in case no answer comes.
+     */
+    synchronized void syncStarted(long now) {
+        this.nextSync = now + this.jittered(this.intervalInMillis);
+    }
+
+    /**
+     * Hub answered - adapt interval and schedule next sync.
+     */
+    synchronized void synced(boolean changed, long now) {
+        this.intervalInMillis = changed
+                ? Math.max(this.minIntervalInMillis, this.intervalInMillis / 2)
+                : Math.min(this.maxIntervalInMillis, this.intervalInMillis * 2);
+        this.nextSync = now + this.jittered(this.intervalInMillis);
+    }
+
+    /**
+     * Hub pushed its status - ask it rarely. Every push postpones next sync.
+     */
+    synchronized void pushed(long now) {
+        this.intervalInMillis = this.maxIntervalInMillis;
+        this.nextSync = now + this.jittered(this.intervalInMillis);
+    }
+
+    synchronized long getNextSync() {
+        return this.nextSync;
+    }
+
+    synchronized long getIntervalInMillis() {
+        return this.intervalInMillis;
+    }
+
+    private long jittered(long interval) {
+        return Math.round(interval * (1 - JITTER + 2 * JITTER * this.random.nextDouble()));
+    }
+}
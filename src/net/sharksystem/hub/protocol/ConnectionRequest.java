@@ -1,16 +1,17 @@
 package net.sharksystem.hub.protocol;
 
 import net.sharksystem.asap.utils.DateTimeHelper;
+import net.sharksystem.hub.PeerId;
 
 public class ConnectionRequest {
-    public final CharSequence sourcePeerID;
-    public final CharSequence targetPeerID;
+    public final PeerId sourcePeerID;
+    public final PeerId targetPeerID;
     public final long until;
     public final boolean newConnection;
 
     public ConnectionRequest(CharSequence sourcePeerID, CharSequence targetPeerID, long until, boolean newConnection) {
-        this.sourcePeerID = sourcePeerID;
-        this.targetPeerID = targetPeerID;
+        this.sourcePeerID = PeerId.of(sourcePeerID);
+        this.targetPeerID = PeerId.of(targetPeerID);
         this.until = until;
         this.newConnection = newConnection;
     }
@@ -0,0 +1,18 @@
+package net.sharksystem.hub.protocol;
+
+/**
+ * A connector session reads connector PDUs from a channel and delegates them to a connector. It can be a
+ * thread of its own (ConnectorThread) or share an event loop with other sessions. A session is killed when
+ * a data session takes over the channel and started again (by its factory) when the connector protocol resumes.
+ */
+public interface ConnectorSession {
+    /**
+     * Start reading and dispatching PDUs
+     */
+    void start();
+
+    /**
+     * Stop reading PDUs - the channel is handed over to a data session or closed.
+     */
+    void kill();
+}
@@ -0,0 +1,16 @@
+package net.sharksystem.hub.protocol;
+
+import net.sharksystem.hub.Connector;
+
+
+/**
+ * Creates connector sessions. Connectors ask their factory whenever they resume the connector protocol,
+ * e.g. after a data session ended on a shared channel.
+ */
+public interface ConnectorSessionFactory {
+    /**
+     * @param connector
+     * @param pduReader reads PDUs from connector's input stream in negotiated wire format
+     */
+    ConnectorSession createConnectorSession(Connector connector, HubPDUReader pduReader);
+}
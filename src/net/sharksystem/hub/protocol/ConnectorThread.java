@@ -2,22 +2,46 @@ package net.sharksystem.hub.protocol;
 
 import net.sharksystem.asap.ASAPException;
 import net.sharksystem.hub.Connector;
-import net.sharksystem.utils.Log;
+import net.sharksystem.hub.utils.HubLog;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.concurrent.ThreadFactory;
 
 /**
  * Thread that reads and writes connector PDUs. Actual application logic is delegated to a connector implementation.
+ * <br/><br/>
+ * With a thread factory, this object is only the task - it runs on a thread created by the factory, which can be
+ * a platform or a virtual thread. Thread methods like join or isAlive describe the session only if it runs as
+ * thread of its own (no factory).
  */
-public class ConnectorThread extends Thread {
+public class ConnectorThread extends Thread implements ConnectorSession {
     private final Connector connector;
-    private final InputStream is;
+    private final HubPDUReader pduReader;
+    private final ThreadFactory threadFactory; // null: run as thread of its own
     private boolean again = true;
 
     public ConnectorThread(Connector connector, InputStream is) {
+        this(connector, is, null);
+    }
+
+    public ConnectorThread(Connector connector, InputStream is, ThreadFactory threadFactory) {
+        this(connector, new HubPDUReader(is), threadFactory);
+    }
+
+    /**
+     * @param pduReader connector's reader - it knows wire format negotiated on this connection
+     */
+    public ConnectorThread(Connector connector, HubPDUReader pduReader, ThreadFactory threadFactory) {
         this.connector = connector;
-        this.is = is;
+        this.pduReader = pduReader;
+        this.threadFactory = threadFactory;
+    }
+
+    @Override
+    public synchronized void start() {
+        if(this.threadFactory == null) super.start();
+        else this.threadFactory.newThread(this).start();
     }
 
     public void kill() {
@@ -32,65 +56,101 @@ public class ConnectorThread extends Thread {
 
         try {
             this.connector.connectorSessionStarted(this);
-            Log.writeLog(this, this.toString(),"connector engine started with "
-                            + this.connector.getClass().getSimpleName());
+            HubLog.info(this, this, "connector engine started with ", this.connector.getClass().getSimpleName());
 
             while (this.again) {
-                HubPDU hubPDU = HubPDU.readPDU(this.is);
+                HubPDU hubPDU = this.pduReader.read();
 
                 this.connector.notifyPDUReceived(hubPDU);
-
-                if (hubPDU instanceof HubPDUHubStatusRQ) {
-                    Log.writeLog(this, this.toString(), "read hub status RQ");
-                    this.connector.hubStatusRQ((HubPDUHubStatusRQ) hubPDU);
-                }
-                else if (hubPDU instanceof HubPDUHubStatusRPLY) {
-                    Log.writeLog(this, this.toString(), "read hub status RPLY");
-                    this.connector.hubStatusRPLY((HubPDUHubStatusRPLY) hubPDU);
-                }
-                else if (hubPDU instanceof HubPDUSilentRQ) {
-                    Log.writeLog(this, this.toString(), "read hub silent RQ");
-                    this.connector.silentRQ((HubPDUSilentRQ) hubPDU);
-                }
-                else if (hubPDU instanceof HubPDUSilentRPLY) {
-                    Log.writeLog(this, this.toString(), "read hub silent RPLY");
-                    this.connector.silentRPLY((HubPDUSilentRPLY) hubPDU);
-                }
-                else if (hubPDU instanceof HubPDUChannelClear) {
-                    Log.writeLog(this, this.toString(), "read hub channel clear");
-                    this.connector.channelClear((HubPDUChannelClear) hubPDU);
-                }
-                else if (hubPDU instanceof HubPDURegister) {
-                    Log.writeLog(this, this.toString(), "read hub register");
-                    this.connector.register((HubPDURegister) hubPDU);
-                }
-                else if (hubPDU instanceof HubPDUUnregister) {
-                    Log.writeLog(this, this.toString(), "read hub unregister");
-                    this.connector.unregister((HubPDUUnregister) hubPDU);
-                }
-                else if (hubPDU instanceof HubPDUConnectPeerRQ) {
-                    Log.writeLog(this, this.toString(), "read hub connect peer RQ");
-                    this.connector.connectPeerRQ((HubPDUConnectPeerRQ) hubPDU);
-                }
-                else if (hubPDU instanceof HubPDUConnectPeerNewTCPSocketRQ) {
-                    Log.writeLog(this, this.toString(), "read hub new TCP connection request");
-                    this.connector.openNewTCPConnectionRequest((HubPDUConnectPeerNewTCPSocketRQ) hubPDU);
-                } else {
-                    Log.writeLog(this, this.toString(), "got unknown / unsupported PDU type: "
-                        + hubPDU.getClass().getSimpleName());
-                }
+                ConnectorThread.dispatchPDU(this.connector, hubPDU);
             }
         } catch (IOException | ASAPException e) {
-            Log.writeLog(this, this.connector.toString(),"connection lost - no recovery expected");
+            HubLog.info(this, this.connector, "connection lost - no recovery expected");
             noRecovery = true; // connection lost
         } catch (ClassCastException e) {
-            Log.writeLog(this, this.connector.toString(),"wrong pdu class - crazy: " + e.getLocalizedMessage());
+            HubLog.error(this, this.connector, "wrong pdu class - crazy: ", e.getLocalizedMessage());
         } finally {
-            Log.writeLog(this, this.connector.toString(), "hub session ended");
+            HubLog.info(this, this.connector, "hub session ended");
             this.connector.connectorSessionEnded(noRecovery);
         }
     }
 
+    /**
+     * Delegate a received PDU to the connector method that handles it. Used by connector threads and
+     * connector sessions that share an event loop alike.
+     * @param connector
+     * @param hubPDU
+     */
+    public static void dispatchPDU(Connector connector, HubPDU hubPDU) {
+        if (hubPDU instanceof HubPDUHubStatusRQ) {
+            HubLog.debug(ConnectorThread.class, connector, "read hub status RQ");
+            connector.hubStatusRQ((HubPDUHubStatusRQ) hubPDU);
+        }
+        else if (hubPDU instanceof HubPDUHubStatusRPLY) {
+            HubLog.debug(ConnectorThread.class, connector, "read hub status RPLY");
+            connector.hubStatusRPLY((HubPDUHubStatusRPLY) hubPDU);
+        }
+        else if (hubPDU instanceof HubPDUHubStatusDeltaRQ) {
+            HubLog.debug(ConnectorThread.class, connector, "read hub status delta RQ");
+            connector.hubStatusDeltaRQ((HubPDUHubStatusDeltaRQ) hubPDU);
+        }
+        else if (hubPDU instanceof HubPDUHubStatusDeltaRPLY) {
+            HubLog.debug(ConnectorThread.class, connector, "read hub status delta RPLY");
+            connector.hubStatusDeltaRPLY((HubPDUHubStatusDeltaRPLY) hubPDU);
+        }
+        else if (hubPDU instanceof HubPDUHubStatusSubscribe) {
+            HubLog.debug(ConnectorThread.class, connector, "read hub status subscribe");
+            connector.hubStatusSubscribe((HubPDUHubStatusSubscribe) hubPDU);
+        }
+        else if (hubPDU instanceof HubPDUStreamFrame) {
+            // no log - there can be plenty of them
+            connector.streamFrame((HubPDUStreamFrame) hubPDU);
+        }
+        else if (hubPDU instanceof HubPDUFramedDataSessions) {
+            HubLog.debug(ConnectorThread.class, connector, "read framed data sessions");
+            connector.framedDataSessions((HubPDUFramedDataSessions) hubPDU);
+        }
+        else if (hubPDU instanceof HubPDUWireFormat) {
+            HubLog.debug(ConnectorThread.class, connector, "read wire format");
+            connector.wireFormat((HubPDUWireFormat) hubPDU);
+        }
+        else if (hubPDU instanceof HubPDUDataPortTokens) {
+            HubLog.debug(ConnectorThread.class, connector, "read data port tokens");
+            connector.dataPortTokens((HubPDUDataPortTokens) hubPDU);
+        }
+        else if (hubPDU instanceof HubPDUSilentRQ) {
+            HubLog.debug(ConnectorThread.class, connector, "read hub silent RQ");
+            connector.silentRQ((HubPDUSilentRQ) hubPDU);
+        }
+        else if (hubPDU instanceof HubPDUSilentRPLY) {
+            HubLog.debug(ConnectorThread.class, connector, "read hub silent RPLY");
+            connector.silentRPLY((HubPDUSilentRPLY) hubPDU);
+        }
+        else if (hubPDU instanceof HubPDUChannelClear) {
+            HubLog.debug(ConnectorThread.class, connector, "read hub channel clear");
+            connector.channelClear((HubPDUChannelClear) hubPDU);
+        }
+        else if (hubPDU instanceof HubPDURegister) {
+            HubLog.debug(ConnectorThread.class, connector, "read hub register");
+            connector.register((HubPDURegister) hubPDU);
+        }
+        else if (hubPDU instanceof HubPDUUnregister) {
+            HubLog.debug(ConnectorThread.class, connector, "read hub unregister");
+            connector.unregister((HubPDUUnregister) hubPDU);
+        }
+        else if (hubPDU instanceof HubPDUConnectPeerRQ) {
+            HubLog.debug(ConnectorThread.class, connector, "read hub connect peer RQ");
+            connector.connectPeerRQ((HubPDUConnectPeerRQ) hubPDU);
+        }
+        else if (hubPDU instanceof HubPDUConnectPeerNewTCPSocketRQ) {
+            HubLog.debug(ConnectorThread.class, connector, "read hub new TCP connection request");
+            connector.openNewTCPConnectionRequest((HubPDUConnectPeerNewTCPSocketRQ) hubPDU);
+        } else {
+            HubLog.debug(ConnectorThread.class, connector, "got unknown / unsupported PDU type: ",
+                    hubPDU.getClass().getSimpleName());
+        }
+    }
+
     public String toString() {
         return this.connector.toString();
     }
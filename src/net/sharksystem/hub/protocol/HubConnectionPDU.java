@@ -2,25 +2,26 @@ package net.sharksystem.hub.protocol;
 
 import net.sharksystem.asap.ASAPException;
 import net.sharksystem.asap.utils.ASAPSerialization;
+import net.sharksystem.hub.PeerId;
 
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 
 public abstract class HubConnectionPDU extends HubPDU {
-    public final CharSequence sourcePeerID;
-    public final CharSequence targetPeerID;
+    public final PeerId sourcePeerID;
+    public final PeerId targetPeerID;
 
     HubConnectionPDU(byte pduNumber, CharSequence sourcePeerID, CharSequence targetPeerID) {
         super(pduNumber);
-        this.sourcePeerID = sourcePeerID;
-        this.targetPeerID = targetPeerID;
+        this.sourcePeerID = PeerId.of(sourcePeerID);
+        this.targetPeerID = PeerId.of(targetPeerID);
     }
 
     public HubConnectionPDU(byte pduNumber, InputStream is) throws IOException, ASAPException {
         super(pduNumber);
-        this.sourcePeerID = ASAPSerialization.readCharSequenceParameter(is);
-        this.targetPeerID = ASAPSerialization.readCharSequenceParameter(is);
+        this.sourcePeerID = readPeerIDParameter(is);
+        this.targetPeerID = readPeerIDParameter(is);
     }
 
     protected void sendFromTo(OutputStream os) throws IOException {
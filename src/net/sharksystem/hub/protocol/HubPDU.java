@@ -2,10 +2,13 @@ package net.sharksystem.hub.protocol;
 
 import net.sharksystem.asap.ASAPException;
 import net.sharksystem.asap.utils.ASAPSerialization;
+import net.sharksystem.hub.PeerId;
+import net.sharksystem.hub.PeerIdSet;
 
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.Set;
 
 public abstract class HubPDU {
     public static final byte HUB_REGISTER = 0;
@@ -18,6 +21,14 @@ public abstract class HubPDU {
     static final byte SILENT_REPLY = 7;
     public static final byte CHANNEL_CLEAR = 8;
     static final byte HUB_UNREGISTER = 9;
+    static final byte HUB_STATUS_DELTA_REQUEST = 10;
+    public static final byte HUB_STATUS_DELTA_REPLY = 11;
+    static final byte HUB_STATUS_SUBSCRIBE = 12;
+    static final byte STREAM_FRAME = 13;
+    static final byte FRAMED_DATA_SESSIONS = 14;
+    public static final byte WIRE_FORMAT = 15;
+    static final byte OPEN_NEW_TCP_SOCKET_TOKEN_RQ = 16;
+    static final byte DATA_PORT_TOKENS = 17;
 
     private final byte pduNumber;
 
@@ -28,19 +39,38 @@ public abstract class HubPDU {
     public byte getCommand() { return this.pduNumber; }
 
     public static HubPDU readPDU(InputStream is) throws IOException, ASAPException {
+        if(!(is instanceof ReadFullyInputStream)) is = new ReadFullyInputStream(is);
         byte b = ASAPSerialization.readByte(is);
-        switch (b) {
+        HubPDU hubPDU = HubPDU.readPDU(b, is);
+        if(hubPDU == null) throw new IOException("unknown pdu type: " + b);
+        return hubPDU;
+    }
+
+    /**
+     * Read fields of a PDU whose type is already known.
+     * @return pdu or null if type is unknown
+     */
+    static HubPDU readPDU(byte type, InputStream is) throws IOException, ASAPException {
+        switch (type) {
             case HUB_REGISTER: return new HubPDURegister(is);
             case HUB_UNREGISTER: return new HubPDUUnregister(is);
             case CONNECT_PEER_REQUEST: return new HubPDUConnectPeerRQ(is);
             case HUB_STATUS_REQUEST: return new HubPDUHubStatusRQ(is);
             case HUB_STATUS_REPLY: return new HubPDUHubStatusRPLY(is);
-            case OPEN_NEW_TCP_SOCKET_RQ: return new HubPDUConnectPeerNewTCPSocketRQ(is);
+            case OPEN_NEW_TCP_SOCKET_RQ: return new HubPDUConnectPeerNewTCPSocketRQ(is, false);
+            case OPEN_NEW_TCP_SOCKET_TOKEN_RQ: return new HubPDUConnectPeerNewTCPSocketRQ(is, true);
             case SILENT_REQUEST: return new HubPDUSilentRQ(is);
             case SILENT_REPLY: return new HubPDUSilentRPLY(is);
             case CHANNEL_CLEAR: return new HubPDUChannelClear(is);
+            case HUB_STATUS_DELTA_REQUEST: return new HubPDUHubStatusDeltaRQ(is);
+            case HUB_STATUS_DELTA_REPLY: return new HubPDUHubStatusDeltaRPLY(is);
+            case HUB_STATUS_SUBSCRIBE: return new HubPDUHubStatusSubscribe(is);
+            case STREAM_FRAME: return new HubPDUStreamFrame(is);
+            case FRAMED_DATA_SESSIONS: return new HubPDUFramedDataSessions(is);
+            case WIRE_FORMAT: return new HubPDUWireFormat(is);
+            case DATA_PORT_TOKENS: return new HubPDUDataPortTokens(is);
 
-            default: throw new IOException("unknown pdu type: " + b);
+            default: return null;
         }
     }
 
@@ -51,6 +81,17 @@ public abstract class HubPDU {
 
     }
 
+    /**
+     * Peer ids are decoded once - into interned peer ids which are used as keys by hub and connectors.
+     */
+    static PeerId readPeerIDParameter(InputStream is) throws IOException, ASAPException {
+        return PeerId.of(ASAPSerialization.readCharSequenceParameter(is));
+    }
+
+    static Set<CharSequence> readPeerIDSetParameter(InputStream is) throws IOException, ASAPException {
+        return new PeerIdSet(ASAPSerialization.readCharSequenceSetParameter(is));
+    }
+
     public String toString() {
         return "HubPDU #" + this.pduNumber + " | " + this.getClass().getSimpleName();
     }
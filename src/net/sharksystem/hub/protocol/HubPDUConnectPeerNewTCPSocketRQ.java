@@ -2,25 +2,40 @@ package net.sharksystem.hub.protocol;
 
 import net.sharksystem.asap.ASAPException;
 import net.sharksystem.asap.utils.ASAPSerialization;
+import net.sharksystem.hub.PeerId;
 
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 
+/**
+ * Hub asks peer side to open a new TCP connection for a data session. Either to a port that was opened for this
+ * encounter - or to the data port of the hub. Peer side presents the token right after connecting in the latter case.
+ * Both variants are different pdu types - the first one is left as it was.
+ */
 public class HubPDUConnectPeerNewTCPSocketRQ extends HubPDU {
+    public static final long NO_TOKEN = 0;
+
     private final int port;
-    public CharSequence peerID;
+    private final long token;
+    public PeerId peerID;
 
     public HubPDUConnectPeerNewTCPSocketRQ(CharSequence peerID, int port) {
-        super(OPEN_NEW_TCP_SOCKET_RQ);
-        this.peerID = peerID;
+        this(peerID, port, NO_TOKEN);
+    }
+
+    public HubPDUConnectPeerNewTCPSocketRQ(CharSequence peerID, int port, long token) {
+        super(token == NO_TOKEN ? OPEN_NEW_TCP_SOCKET_RQ : OPEN_NEW_TCP_SOCKET_TOKEN_RQ);
+        this.peerID = PeerId.of(peerID);
         this.port = port;
+        this.token = token;
     }
 
-    public HubPDUConnectPeerNewTCPSocketRQ(InputStream is) throws IOException, ASAPException {
-        super(OPEN_NEW_TCP_SOCKET_RQ);
-        this.peerID = ASAPSerialization.readCharSequenceParameter(is);
+    public HubPDUConnectPeerNewTCPSocketRQ(InputStream is, boolean withToken) throws IOException, ASAPException {
+        super(withToken ? OPEN_NEW_TCP_SOCKET_TOKEN_RQ : OPEN_NEW_TCP_SOCKET_RQ);
+        this.peerID = readPeerIDParameter(is);
         this.port = ASAPSerialization.readIntegerParameter(is);
+        this.token = withToken ? ASAPSerialization.readLongParameter(is) : NO_TOKEN;
     }
 
     @Override
@@ -28,9 +43,16 @@ public class HubPDUConnectPeerNewTCPSocketRQ extends HubPDU {
         super.sendPDUNumber(os);
         ASAPSerialization.writeCharSequenceParameter(this.peerID, os);
         ASAPSerialization.writeIntegerParameter(this.port, os);
+        if(this.hasToken()) ASAPSerialization.writeLongParameter(this.token, os);
     }
 
     public int getPort() { return this.port;}
     public CharSequence getPeerID() { return this.peerID;}
 
+    /**
+     * @return token to present on hub data port - {@link #NO_TOKEN} if port was opened for this encounter
+     */
+    public long getToken() { return this.token;}
+    public boolean hasToken() { return this.token != NO_TOKEN;}
+
 }
@@ -2,22 +2,23 @@ package net.sharksystem.hub.protocol;
 
 import net.sharksystem.asap.ASAPException;
 import net.sharksystem.asap.utils.ASAPSerialization;
+import net.sharksystem.hub.PeerId;
 
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 
 public class HubPDUConnectPeerRQ extends HubPDU {
-    public CharSequence peerID;
+    public PeerId peerID;
 
     public HubPDUConnectPeerRQ(CharSequence peerID) {
         super(CONNECT_PEER_REQUEST);
-        this.peerID = peerID;
+        this.peerID = PeerId.of(peerID);
     }
 
     public HubPDUConnectPeerRQ(InputStream is) throws IOException, ASAPException {
         super(CONNECT_PEER_REQUEST);
-        this.peerID = ASAPSerialization.readCharSequenceParameter(is);
+        this.peerID = readPeerIDParameter(is);
     }
 
     @Override
@@ -0,0 +1,40 @@
+package net.sharksystem.hub.protocol;
+
+import net.sharksystem.asap.ASAPException;
+import net.sharksystem.asap.utils.ASAPSerialization;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Peer side tells hub - in the batch with its register pdu - that it can connect to the data port of the hub and
+ * present a token (see {@link HubPDUConnectPeerNewTCPSocketRQ}). Hub sends token requests only to peers that
+ * announced it. Other peers get a port of their own for each encounter.
+ * <br/><br/>
+ * Data sessions on those connections are framed like data sessions on the shared channel. Both sides keep the
+ * connection after a clean end of session: peer side presents the token of a later encounter on it.
+ */
+public class HubPDUDataPortTokens extends HubPDU {
+    public final boolean tokens;
+
+    public HubPDUDataPortTokens(boolean tokens) {
+        super(DATA_PORT_TOKENS);
+        this.tokens = tokens;
+    }
+
+    public HubPDUDataPortTokens(InputStream is) throws IOException, ASAPException {
+        super(DATA_PORT_TOKENS);
+        this.tokens = ASAPSerialization.readBooleanParameter(is);
+    }
+
+    @Override
+    public void sendPDU(OutputStream os) throws IOException {
+        super.sendPDUNumber(os);
+        ASAPSerialization.writeBooleanParameter(this.tokens, os);
+    }
+
+    public String toString() {
+        return super.toString() + " | tokens: " + this.tokens;
+    }
+}
@@ -0,0 +1,135 @@
+package net.sharksystem.hub.protocol;
+
+import net.sharksystem.asap.ASAPException;
+import net.sharksystem.hub.utils.HubLog;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Decodes PDUs incrementally from a byte buffer. Bytes arrive in arbitrary chunks on a non-blocking channel.
+ * A PDU is only taken from the buffer if it is complete. Otherwise, buffer remains unchanged and decoding
+ * is tried again when more bytes arrived.
+ * <br/><br/>
+ * Enveloped PDUs (see {@link HubPDUEnvelope}) are only decoded when their header says they are complete - there
+ * are no failing attempts on partial PDUs. PDUs of unknown type and bytes outside of PDUs are skipped.
+ */
+public class HubPDUDecoder {
+    /**
+     * Decode next PDU from buffer. Buffer is expected to be in read mode (bytes between position and limit).
+     * @param buffer
+     * @return next PDU or null if buffer does not contain a complete PDU yet.
+     * @throws IOException malformed PDU - stream cannot be synchronized again
+     * @throws ASAPException malformed PDU - stream cannot be synchronized again
+     */
+    public static HubPDU decode(ByteBuffer buffer) throws IOException, ASAPException {
+        if(!buffer.hasRemaining()) return null;
+
+        try {
+            return HubPDUDecoder.decodeLegacy(buffer);
+        }
+        catch(IncompletePDUException e) {
+            // wait for more bytes
+            return null;
+        }
+    }
+
+    /**
+     * Decode next PDU in legacy format. Buffer remains unchanged if PDU is incomplete.
+     * @throws IncompletePDUException tells how many bytes PDU takes at least - no need to try again before
+     */
+    static HubPDU decodeLegacy(ByteBuffer buffer) throws IOException, ASAPException {
+        int startPosition = buffer.position();
+        try {
+            return HubPDU.readPDU(new BufferInputStream(buffer));
+        }
+        catch(IncompletePDUException e) {
+            buffer.position(startPosition);
+            throw e;
+        }
+    }
+
+    /**
+     * Decode next PDU from buffer in legacy or enveloped format.
+     * @see #decode(ByteBuffer)
+     */
+    public static HubPDU decode(ByteBuffer buffer, boolean enveloped) throws IOException, ASAPException {
+        if(!enveloped) return HubPDUDecoder.decode(buffer);
+
+        for(;;) {
+            int skipped = HubPDUEnvelope.skipToHeader(buffer);
+            if(skipped > 0) HubLog.error(HubPDUDecoder.class, null, "stream out of sync - skipped bytes: ", skipped);
+
+            int frameSize = HubPDUDecoder.frameSize(buffer, true);
+            if(frameSize < 0 || buffer.remaining() < frameSize) return null; // wait for more bytes
+
+            int pduStart = buffer.position() + HubPDUEnvelope.HEADER_SIZE;
+            ByteBuffer pdu = buffer.duplicate();
+            pdu.position(pduStart);
+            pdu.limit(buffer.position() + frameSize);
+            buffer.position(buffer.position() + frameSize);
+
+            HubPDU hubPDU = HubPDUEnvelope.decodePDU(pdu);
+            if(hubPDU != null) return hubPDU;
+            HubLog.debug(HubPDUDecoder.class, null, "skipped pdu of unknown type: ", buffer.get(pduStart));
+        }
+    }
+
+    /**
+     * @return number of bytes the next PDU takes in buffer (including header) or -1 if not known yet -
+     * which is always the case in legacy format.
+     * @throws IOException buffer does not start with an envelope header
+     */
+    public static int frameSize(ByteBuffer buffer, boolean enveloped) throws IOException {
+        if(!enveloped || buffer.remaining() < HubPDUEnvelope.HEADER_SIZE) return -1;
+        return HubPDUEnvelope.HEADER_SIZE + HubPDUEnvelope.readHeader(buffer, buffer.position());
+    }
+
+    static class IncompletePDUException extends IOException {
+        private static final long serialVersionUID = 1L;
+        final int bytesNeeded; // from pdu start
+
+        IncompletePDUException(int bytesNeeded) {
+            super("incomplete pdu");
+            this.bytesNeeded = bytesNeeded;
+        }
+    }
+
+    /**
+     * Input stream on a buffer that refuses to deliver less bytes than asked for. ASAPSerialization would take
+     * a short read as complete otherwise.
+     */
+    static class BufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+        private final int startPosition;
+
+        BufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+            this.startPosition = buffer.position();
+        }
+
+        @Override
+        public int read() throws IOException {
+            if(!this.buffer.hasRemaining()) throw this.incomplete(1);
+            return this.buffer.get() & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if(len == 0) return 0;
+            if(this.buffer.remaining() < len) throw this.incomplete(len);
+            this.buffer.get(b, off, len);
+            return len;
+        }
+
+        @Override
+        public int available() {
+            return this.buffer.remaining();
+        }
+
+        private IncompletePDUException incomplete(int len) {
+            return new IncompletePDUException(this.buffer.position() - this.startPosition + len);
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package net.sharksystem.hub.protocol;
+
+import net.sharksystem.asap.ASAPException;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Framed wire format of PDUs. Each PDU is preceded by a header: magic byte, format version and length of the
+ * PDU (int, big endian). PDU follows in legacy format - type and fields.
+ * <br/><br/>
+ * A reader knows the size of a PDU before decoding it. It can read a PDU completely before decoding it, size its
+ * buffer once and skip PDUs of unknown type. Bytes that are not part of a PDU (e.g. left over from a data session
+ * on a shared channel) are detected and skipped - instead of being read as garbage fields. Fields a later version
+ * appends to a PDU are ignored.
+ * <br/><br/>
+ * Envelope is negotiated, see {@link HubPDUWireFormat}.
+ */
+class HubPDUEnvelope {
+    static final byte MAGIC = (byte) 0xA5;
+    static final byte VERSION = 1;
+    static final int HEADER_SIZE = 6;
+    static final int MAX_PDU_SIZE = 1024 * 1024;
+
+    static final byte[] HEADER_PLACEHOLDER = new byte[HEADER_SIZE];
+
+    static void writeHeader(byte[] buffer, int offset, int pduLength) {
+        buffer[offset] = MAGIC;
+        buffer[offset + 1] = VERSION;
+        buffer[offset + 2] = (byte) (pduLength >>> 24);
+        buffer[offset + 3] = (byte) (pduLength >>> 16);
+        buffer[offset + 4] = (byte) (pduLength >>> 8);
+        buffer[offset + 5] = (byte) pduLength;
+    }
+
+    /**
+     * @param buffer contains at least {@link #HEADER_SIZE} bytes from index
+     * @return true if bytes at index are a valid header
+     */
+    static boolean isHeader(ByteBuffer buffer, int index) {
+        if(buffer.get(index) != MAGIC || buffer.get(index + 1) != VERSION) return false;
+        int pduLength = buffer.getInt(index + 2);
+        return pduLength > 0 && pduLength <= MAX_PDU_SIZE;
+    }
+
+    /**
+     * @param buffer contains header at index
+     * @param index
+     * @return length of pdu following the header
+     * @throws IOException not a valid header
+     */
+    static int readHeader(ByteBuffer buffer, int index) throws IOException {
+        if(!isHeader(buffer, index)) throw new IOException("not an envelope header");
+        return buffer.getInt(index + 2);
+    }
+
+    /**
+     * Stream lost sync, e.g. bytes of a data session are left in it. Skip bytes until what could be a header.
+     * @param buffer in read mode
+     * @return number of skipped bytes
+     */
+    static int skipToHeader(ByteBuffer buffer) {
+        int skipped = 0;
+        while(buffer.hasRemaining()) {
+            int position = buffer.position();
+            boolean header;
+            if(buffer.remaining() >= HEADER_SIZE) header = isHeader(buffer, position);
+            else header = buffer.get(position) == MAGIC
+                    && (buffer.remaining() < 2 || buffer.get(position + 1) == VERSION);
+            if(header) break; // or beginning of a header
+
+            buffer.position(position + 1);
+            skipped++;
+        }
+        return skipped;
+    }
+
+    /**
+     * @param pdu buffer containing exactly one pdu between position and limit
+     * @return pdu or null if pdu type is unknown
+     * @throws IOException fields exceed pdu length
+     */
+    static HubPDU decodePDU(ByteBuffer pdu) throws IOException, ASAPException {
+        byte type = pdu.get();
+        try {
+            return HubPDU.readPDU(type, new HubPDUDecoder.BufferInputStream(pdu));
+        }
+        catch(HubPDUDecoder.IncompletePDUException e) {
+            throw new IOException("malformed pdu - fields exceed pdu length, type: " + type);
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package net.sharksystem.hub.protocol;
+
+import net.sharksystem.asap.ASAPException;
+import net.sharksystem.asap.utils.ASAPSerialization;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Peer side tells hub that data sessions on the shared channel are to be framed. Each side sends data in
+ * length-prefixed chunks and ends its data with an empty chunk. Channel can go back to connector protocol as soon as
+ * both ends are seen - no need to wait for a time out and re-synchronize.
+ */
+public class HubPDUFramedDataSessions extends HubPDU {
+    public final boolean framed;
+
+    public HubPDUFramedDataSessions(boolean framed) {
+        super(FRAMED_DATA_SESSIONS);
+        this.framed = framed;
+    }
+
+    public HubPDUFramedDataSessions(InputStream is) throws IOException, ASAPException {
+        super(FRAMED_DATA_SESSIONS);
+        this.framed = ASAPSerialization.readBooleanParameter(is);
+    }
+
+    @Override
+    public void sendPDU(OutputStream os) throws IOException {
+        super.sendPDUNumber(os);
+        ASAPSerialization.writeBooleanParameter(this.framed, os);
+    }
+
+    public String toString() {
+        return super.toString() + " | framed: " + this.framed;
+    }
+}
@@ -0,0 +1,66 @@
+package net.sharksystem.hub.protocol;
+
+import net.sharksystem.asap.ASAPException;
+import net.sharksystem.asap.utils.ASAPSerialization;
+import net.sharksystem.hub.PeerIdSet;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Set;
+
+/**
+ * Registered peers at a registry version. Either a complete list (added contains all peers) or changes since the
+ * version the peer has asked for. Unlike a hub status reply, the asking peer is not removed from the lists.
+ * A hub can serialize a complete reply once and send it to any peer until its registry changes.
+ */
+public class HubPDUHubStatusDeltaRPLY extends HubPDU {
+    public final long version;
+    public final boolean complete;
+    public final Set<CharSequence> addedPeers;
+    public final Set<CharSequence> removedPeers;
+
+    public HubPDUHubStatusDeltaRPLY(long version, boolean complete,
+                                    Set<CharSequence> addedPeers, Set<CharSequence> removedPeers) {
+        super(HUB_STATUS_DELTA_REPLY);
+        this.version = version;
+        this.complete = complete;
+        this.addedPeers = addedPeers != null ? addedPeers : new PeerIdSet();
+        this.removedPeers = removedPeers != null ? removedPeers : new PeerIdSet();
+    }
+
+    public HubPDUHubStatusDeltaRPLY(InputStream is) throws IOException, ASAPException {
+        super(HUB_STATUS_DELTA_REPLY);
+        this.version = ASAPSerialization.readLongParameter(is);
+        this.complete = ASAPSerialization.readBooleanParameter(is);
+        this.addedPeers = readPeerIDSetParameter(is);
+        this.removedPeers = readPeerIDSetParameter(is);
+    }
+
+    @Override
+    public void sendPDU(OutputStream os) throws IOException {
+        super.sendPDUNumber(os);
+        ASAPSerialization.writeLongParameter(this.version, os);
+        ASAPSerialization.writeBooleanParameter(this.complete, os);
+        ASAPSerialization.writeCharSequenceSetParameter(this.addedPeers, os);
+        ASAPSerialization.writeCharSequenceSetParameter(this.removedPeers, os);
+    }
+
+    /**
+     * Apply this reply to the set of peers known at the version that was asked for.
+     * @param knownPeers peers known so far - not changed
+     * @return peers at version of this reply
+     */
+    public Set<CharSequence> applyTo(Set<CharSequence> knownPeers) {
+        Set<CharSequence> peers = new PeerIdSet();
+        if(!this.complete && knownPeers != null) peers.addAll(knownPeers);
+        peers.removeAll(this.removedPeers);
+        peers.addAll(this.addedPeers);
+        return peers;
+    }
+
+    public String toString() {
+        return super.toString() + " | version: " + this.version + " | complete: " + this.complete
+                + " | added: " + this.addedPeers + " | removed: " + this.removedPeers;
+    }
+}
@@ -0,0 +1,41 @@
+package net.sharksystem.hub.protocol;
+
+import net.sharksystem.asap.ASAPException;
+import net.sharksystem.asap.utils.ASAPSerialization;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Asks hub for changes of registered peers since a registry version. Hubs which do not know this PDU close
+ * the connection - peers send it only if they are told to do so.
+ */
+public class HubPDUHubStatusDeltaRQ extends HubPDU {
+    public static final long UNKNOWN_VERSION = -1;
+
+    public final long knownVersion;
+
+    /**
+     * @param knownVersion registry version of last reply - UNKNOWN_VERSION asks for complete list
+     */
+    public HubPDUHubStatusDeltaRQ(long knownVersion) {
+        super(HUB_STATUS_DELTA_REQUEST);
+        this.knownVersion = knownVersion;
+    }
+
+    public HubPDUHubStatusDeltaRQ(InputStream is) throws IOException, ASAPException {
+        super(HUB_STATUS_DELTA_REQUEST);
+        this.knownVersion = ASAPSerialization.readLongParameter(is);
+    }
+
+    @Override
+    public void sendPDU(OutputStream os) throws IOException {
+        super.sendPDUNumber(os);
+        ASAPSerialization.writeLongParameter(this.knownVersion, os);
+    }
+
+    public String toString() {
+        return super.toString() + " | known version: " + this.knownVersion;
+    }
+}
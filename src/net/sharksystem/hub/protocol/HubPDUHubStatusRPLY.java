@@ -18,7 +18,7 @@ public class HubPDUHubStatusRPLY extends HubPDU {
 
     public HubPDUHubStatusRPLY(InputStream is) throws IOException, ASAPException {
         super(HUB_STATUS_REPLY);
-        this.connectedPeers = ASAPSerialization.readCharSequenceSetParameter(is);
+        this.connectedPeers = readPeerIDSetParameter(is);
     }
 
     @Override
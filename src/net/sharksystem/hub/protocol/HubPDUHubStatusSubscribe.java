@@ -0,0 +1,41 @@
+package net.sharksystem.hub.protocol;
+
+import net.sharksystem.asap.ASAPException;
+import net.sharksystem.asap.utils.ASAPSerialization;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Peer (un-)subscribes for changes of registered peers. A subscribed peer gets a hub status delta reply whenever
+ * peers join or leave - without asking. Changes during silence and data sessions are sent when the connector
+ * protocol runs again. First reply contains changes since known version.
+ */
+public class HubPDUHubStatusSubscribe extends HubPDU {
+    public final boolean subscribe;
+    public final long knownVersion;
+
+    public HubPDUHubStatusSubscribe(boolean subscribe, long knownVersion) {
+        super(HUB_STATUS_SUBSCRIBE);
+        this.subscribe = subscribe;
+        this.knownVersion = knownVersion;
+    }
+
+    public HubPDUHubStatusSubscribe(InputStream is) throws IOException, ASAPException {
+        super(HUB_STATUS_SUBSCRIBE);
+        this.subscribe = ASAPSerialization.readBooleanParameter(is);
+        this.knownVersion = ASAPSerialization.readLongParameter(is);
+    }
+
+    @Override
+    public void sendPDU(OutputStream os) throws IOException {
+        super.sendPDUNumber(os);
+        ASAPSerialization.writeBooleanParameter(this.subscribe, os);
+        ASAPSerialization.writeLongParameter(this.knownVersion, os);
+    }
+
+    public String toString() {
+        return super.toString() + " | subscribe: " + this.subscribe + " | known version: " + this.knownVersion;
+    }
+}
@@ -0,0 +1,115 @@
+package net.sharksystem.hub.protocol;
+
+import net.sharksystem.asap.ASAPException;
+import net.sharksystem.hub.utils.HubLog;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Reads PDUs from a connector stream - counterpart of {@link HubPDUWriter}. Each connector has its own reader. It
+ * knows the wire format that was negotiated on this connection (see {@link HubPDUWireFormat}) and keeps it when
+ * connector sessions are re-created after data sessions.
+ * <br/><br/>
+ * Enveloped PDUs are read completely into a buffer before decoding. The buffer is reused - unless a PDU made it
+ * grow very large. Bytes that are not part of a PDU are skipped.
+ */
+public class HubPDUReader {
+    static final int INITIAL_BUFFER_SIZE = 512;
+    static final int MAX_RETAINED_BUFFER_SIZE = 64 * 1024;
+
+    private final InputStream is;
+    private final byte[] header = new byte[HubPDUEnvelope.HEADER_SIZE];
+    private byte[] buffer = new byte[INITIAL_BUFFER_SIZE];
+    private volatile boolean enveloped = false;
+    private int incompletePDUSize = -1; // legacy format: size of incomplete pdu as far as last decode got
+
+    public HubPDUReader(InputStream is) {
+        this.is = new ReadFullyInputStream(is); // PDUs only - no data session is read through this stream
+    }
+
+    public boolean isEnveloped() {
+        return this.enveloped;
+    }
+
+    /**
+     * Switch wire format. Call it from the thread that reads PDUs - right after the PDU that negotiated it.
+     */
+    public void setEnveloped(boolean enveloped) {
+        this.enveloped = enveloped;
+    }
+
+    /**
+     * Read next PDU - blocks until it is complete.
+     */
+    public HubPDU read() throws IOException, ASAPException {
+        if(!this.enveloped) return HubPDU.readPDU(this.is);
+
+        for(;;) {
+            int pduLength = this.readHeader();
+
+            if(this.buffer.length < pduLength) this.buffer = new byte[pduLength];
+            try {
+                this.readFully(this.buffer, pduLength);
+                HubPDU hubPDU = HubPDUEnvelope.decodePDU(ByteBuffer.wrap(this.buffer, 0, pduLength));
+                if(hubPDU != null) return hubPDU;
+                HubLog.debug(this, null, "skipped pdu of unknown type: ", this.buffer[0]);
+            } finally {
+                if(this.buffer.length > MAX_RETAINED_BUFFER_SIZE) this.buffer = new byte[INITIAL_BUFFER_SIZE];
+            }
+        }
+    }
+
+    /**
+     * Decode next PDU from a buffer without blocking.
+     * @see HubPDUDecoder#decode(ByteBuffer, boolean)
+     */
+    public HubPDU decode(ByteBuffer buffer) throws IOException, ASAPException {
+        this.incompletePDUSize = -1;
+        if(this.enveloped || !buffer.hasRemaining()) return HubPDUDecoder.decode(buffer, this.enveloped);
+
+        try {
+            return HubPDUDecoder.decodeLegacy(buffer);
+        }
+        catch(HubPDUDecoder.IncompletePDUException e) {
+            this.incompletePDUSize = e.bytesNeeded;
+            return null;
+        }
+    }
+
+    /**
+     * Size of next PDU in buffer. Legacy PDUs have no header: Returns how many bytes the PDU takes at least - as
+     * far as last {@link #decode(ByteBuffer)} of this buffer got. A decode with less bytes would fail again.
+     * @see HubPDUDecoder#frameSize(ByteBuffer, boolean)
+     */
+    public int frameSize(ByteBuffer buffer) throws IOException {
+        if(!this.enveloped) return this.incompletePDUSize;
+        return HubPDUDecoder.frameSize(buffer, true);
+    }
+
+    private int readHeader() throws IOException {
+        this.readFully(this.header, HubPDUEnvelope.HEADER_SIZE);
+        ByteBuffer headerBuffer = ByteBuffer.wrap(this.header);
+        int skipped = 0;
+        while(!HubPDUEnvelope.isHeader(headerBuffer, 0)) {
+            // out of sync - move on byte by byte
+            System.arraycopy(this.header, 1, this.header, 0, HubPDUEnvelope.HEADER_SIZE - 1);
+            int b = this.is.read();
+            if(b < 0) throw new EOFException("connection closed");
+            this.header[HubPDUEnvelope.HEADER_SIZE - 1] = (byte) b;
+            skipped++;
+        }
+        if(skipped > 0) HubLog.error(this, null, "stream out of sync - skipped bytes: ", skipped);
+        return headerBuffer.getInt(2);
+    }
+
+    private void readFully(byte[] b, int len) throws IOException {
+        if(this.is.read(b, 0, len) < len) throw new EOFException("connection closed within a pdu");
+    }
+
+    int getBufferCapacity() {
+        return this.buffer.length;
+    }
+}
@@ -2,24 +2,25 @@ package net.sharksystem.hub.protocol;
 
 import net.sharksystem.asap.ASAPException;
 import net.sharksystem.asap.utils.ASAPSerialization;
+import net.sharksystem.hub.PeerId;
 
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 
 public class HubPDURegister extends HubPDU {
-    public final CharSequence peerID;
+    public final PeerId peerID;
     public final boolean canCreateTCPConnections;
 
     public HubPDURegister(CharSequence peerID, boolean canCreateTCPConnections) {
         super(HUB_REGISTER);
-        this.peerID = peerID;
+        this.peerID = PeerId.of(peerID);
         this.canCreateTCPConnections = canCreateTCPConnections;
     }
 
     public HubPDURegister(InputStream is) throws IOException, ASAPException {
         super(HUB_REGISTER);
-        this.peerID = ASAPSerialization.readCharSequenceParameter(is);
+        this.peerID = readPeerIDParameter(is);
         this.canCreateTCPConnections = ASAPSerialization.readBooleanParameter(is);
     }
 
@@ -0,0 +1,145 @@
+package net.sharksystem.hub.protocol;
+
+import net.sharksystem.asap.ASAPException;
+import net.sharksystem.asap.utils.ASAPSerialization;
+import net.sharksystem.hub.PeerId;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Frame of a multiplexed data session. Several data sessions (streams) can run over a shared channel at the same
+ * time - next to connector PDUs. Each stream has an id. Each side grants the other a window of bytes it is
+ * willing to buffer. Sender must not send more data than granted. Granted window is increased with window frames
+ * whenever application consumed received data.
+ * <br/><br/>
+ * Peer side announces that it can handle multiplexed streams with an enable frame. Only hubs of this version or
+ * later understand such a frame.
+ */
+public class HubPDUStreamFrame extends HubPDU {
+    public static final byte ENABLE = 0;
+    public static final byte OPEN = 1;
+    public static final byte DATA = 2;
+    public static final byte WINDOW = 3;
+    public static final byte CLOSE = 4;
+
+    /** window each side grants for a new stream */
+    public static final int INITIAL_WINDOW = 64 * 1024;
+    /** max number of bytes in a single data frame */
+    public static final int MAX_DATA_LENGTH = 16 * 1024;
+
+    public final byte kind;
+    public final int streamID;
+
+    // OPEN only
+    public final PeerId sourcePeerID;
+    public final PeerId targetPeerID;
+
+    // DATA only
+    public final byte[] data;
+
+    // WINDOW only
+    public final int windowIncrement;
+
+    private HubPDUStreamFrame(byte kind, int streamID, CharSequence sourcePeerID, CharSequence targetPeerID,
+                              byte[] data, int windowIncrement) {
+        super(STREAM_FRAME);
+        this.kind = kind;
+        this.streamID = streamID;
+        this.sourcePeerID = PeerId.of(sourcePeerID);
+        this.targetPeerID = PeerId.of(targetPeerID);
+        this.data = data;
+        this.windowIncrement = windowIncrement;
+    }
+
+    public static HubPDUStreamFrame enable() {
+        return new HubPDUStreamFrame(ENABLE, 0, null, null, null, 0);
+    }
+
+    public static HubPDUStreamFrame open(int streamID, CharSequence sourcePeerID, CharSequence targetPeerID) {
+        return new HubPDUStreamFrame(OPEN, streamID, sourcePeerID, targetPeerID, null, 0);
+    }
+
+    public static HubPDUStreamFrame data(int streamID, byte[] data) {
+        return new HubPDUStreamFrame(DATA, streamID, null, null, data, 0);
+    }
+
+    public static HubPDUStreamFrame window(int streamID, int windowIncrement) {
+        return new HubPDUStreamFrame(WINDOW, streamID, null, null, null, windowIncrement);
+    }
+
+    public static HubPDUStreamFrame close(int streamID) {
+        return new HubPDUStreamFrame(CLOSE, streamID, null, null, null, 0);
+    }
+
+    public HubPDUStreamFrame(InputStream is) throws IOException, ASAPException {
+        super(STREAM_FRAME);
+        this.kind = ASAPSerialization.readByteParameter(is);
+        this.streamID = ASAPSerialization.readIntegerParameter(is);
+
+        PeerId sourcePeerID = null, targetPeerID = null;
+        byte[] data = null;
+        int windowIncrement = 0;
+        switch (this.kind) {
+            case ENABLE:
+            case CLOSE:
+                break;
+            case OPEN:
+                sourcePeerID = readPeerIDParameter(is);
+                targetPeerID = readPeerIDParameter(is);
+                break;
+            case DATA:
+                data = readData(is);
+                break;
+            case WINDOW:
+                windowIncrement = ASAPSerialization.readIntegerParameter(is);
+                break;
+            default: throw new IOException("unknown stream frame: " + this.kind);
+        }
+        this.sourcePeerID = PeerId.of(sourcePeerID);
+        this.targetPeerID = PeerId.of(targetPeerID);
+        this.data = data;
+        this.windowIncrement = windowIncrement;
+    }
+
+    /**
+     * A single read on a socket stream can return less bytes than available - read until all arrived.
+     */
+    private static byte[] readData(InputStream is) throws IOException, ASAPException {
+        int length = ASAPSerialization.readIntegerParameter(is);
+        if(length < 0 || length > MAX_DATA_LENGTH) throw new IOException("malformed data frame: " + length);
+        byte[] data = new byte[length];
+        int offset = 0;
+        while(offset < length) {
+            int read = is.read(data, offset, length - offset);
+            if(read < 0) throw new IOException("stream closed inside data frame");
+            offset += read;
+        }
+        return data;
+    }
+
+    @Override
+    public void sendPDU(OutputStream os) throws IOException {
+        super.sendPDUNumber(os);
+        ASAPSerialization.writeByteParameter(this.kind, os);
+        ASAPSerialization.writeIntegerParameter(this.streamID, os);
+        switch (this.kind) {
+            case OPEN:
+                ASAPSerialization.writeCharSequenceParameter(this.sourcePeerID, os);
+                ASAPSerialization.writeCharSequenceParameter(this.targetPeerID, os);
+                break;
+            case DATA:
+                ASAPSerialization.writeIntegerParameter(this.data.length, os);
+                os.write(this.data);
+                break;
+            case WINDOW:
+                ASAPSerialization.writeIntegerParameter(this.windowIncrement, os);
+                break;
+        }
+    }
+
+    public String toString() {
+        return super.toString() + " | kind: " + this.kind + " | stream: " + this.streamID;
+    }
+}
@@ -2,22 +2,23 @@ package net.sharksystem.hub.protocol;
 
 import net.sharksystem.asap.ASAPException;
 import net.sharksystem.asap.utils.ASAPSerialization;
+import net.sharksystem.hub.PeerId;
 
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 
 public class HubPDUUnregister extends HubPDU {
-    public final CharSequence peerID;
+    public final PeerId peerID;
 
     public HubPDUUnregister(CharSequence peerID) {
         super(HUB_UNREGISTER);
-        this.peerID = peerID;
+        this.peerID = PeerId.of(peerID);
     }
 
     HubPDUUnregister(InputStream is) throws IOException, ASAPException {
         super(HUB_UNREGISTER);
-        this.peerID = ASAPSerialization.readCharSequenceParameter(is);
+        this.peerID = readPeerIDParameter(is);
     }
 
     @Override
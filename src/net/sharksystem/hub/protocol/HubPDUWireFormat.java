@@ -0,0 +1,44 @@
+package net.sharksystem.hub.protocol;
+
+import net.sharksystem.asap.ASAPException;
+import net.sharksystem.asap.utils.ASAPSerialization;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Negotiates how PDUs are written on the wire. Legacy format is default: type followed by fields.
+ * <br/><br/>
+ * Peer side asks for the envelope (see {@link HubPDUEnvelope}) with this pdu - in the batch with its register pdu -
+ * and keeps writing legacy format. Hub answers with the version it accepted and sends enveloped PDUs right after that
+ * answer. Peer side reads them after that answer. If hub accepted the envelope, peer side confirms with this pdu
+ * - its last one in legacy format - and hub reads enveloped PDUs after that confirmation. Version {@link #LEGACY}
+ * means: stay with legacy format, nothing to confirm. A hub that does not answer keeps both sides in legacy format.
+ */
+public class HubPDUWireFormat extends HubPDU {
+    public static final byte LEGACY = 0;
+    public static final byte ENVELOPE = HubPDUEnvelope.VERSION;
+
+    public final byte version;
+
+    public HubPDUWireFormat(byte version) {
+        super(WIRE_FORMAT);
+        this.version = version;
+    }
+
+    public HubPDUWireFormat(InputStream is) throws IOException, ASAPException {
+        super(WIRE_FORMAT);
+        this.version = ASAPSerialization.readByte(is);
+    }
+
+    @Override
+    public void sendPDU(OutputStream os) throws IOException {
+        super.sendPDUNumber(os);
+        ASAPSerialization.writeByteParameter(this.version, os);
+    }
+
+    public String toString() {
+        return super.toString() + " | version: " + this.version;
+    }
+}
@@ -0,0 +1,139 @@
+package net.sharksystem.hub.protocol;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Collection;
+
+/**
+ * Writes PDUs to a connector stream. A PDU is serialized into a buffer first and written with a single write - not
+ * field by field - and flushed once. Several PDUs can be sent as a batch with a single write as well.
+ * <br/><br/>
+ * Each connector has its own writer. Writes are synchronized on the stream - like any other write on a shared
+ * channel. The buffer is reused - unless a PDU made it grow very large.
+ * <br/><br/>
+ * PDUs are written in legacy format or in an envelope - whatever was negotiated on this connection,
+ * see {@link HubPDUWireFormat}.
+ */
+public class HubPDUWriter {
+    static final int INITIAL_BUFFER_SIZE = 512;
+    static final int MAX_RETAINED_BUFFER_SIZE = 64 * 1024;
+
+    private final OutputStream os;
+    private PDUBuffer buffer = new PDUBuffer();
+    private boolean enveloped = false; // guarded by os
+
+    public HubPDUWriter(OutputStream os) {
+        this.os = os;
+    }
+
+    public boolean isEnveloped() {
+        synchronized (this.os) {
+            return this.enveloped;
+        }
+    }
+
+    /**
+     * Switch wire format. PDUs written before this call (by any thread) are in the old format, all PDUs written
+     * after it in the new one. Hold the lock on the stream to send a last PDU in old format before switching.
+     */
+    public void setEnveloped(boolean enveloped) {
+        synchronized (this.os) {
+            this.enveloped = enveloped;
+        }
+    }
+
+    public void write(HubPDU pdu) throws IOException {
+        synchronized (this.os) {
+            try {
+                this.serialize(pdu);
+                this.writeBuffer();
+            } finally {
+                this.resetBuffer();
+            }
+        }
+    }
+
+    /**
+     * Send PDUs in this order with a single write.
+     */
+    public void write(Collection<? extends HubPDU> pdus) throws IOException {
+        if(pdus.isEmpty()) return;
+        synchronized (this.os) {
+            try {
+                for(HubPDU pdu : pdus) this.serialize(pdu);
+                this.writeBuffer();
+            } finally {
+                this.resetBuffer();
+            }
+        }
+    }
+
+    /**
+     * Send a PDU that was serialized (in legacy format) before, e.g. a PDU that is sent to a lot of peers.
+     */
+    public void writeSerialized(byte[] serializedPDU) throws IOException {
+        synchronized (this.os) {
+            if(!this.enveloped) {
+                this.os.write(serializedPDU);
+                this.os.flush();
+                return;
+            }
+            try {
+                int headerStart = this.reserveHeader();
+                this.buffer.write(serializedPDU);
+                HubPDUEnvelope.writeHeader(this.buffer.bytes(), headerStart, serializedPDU.length);
+                this.writeBuffer();
+            } finally {
+                this.resetBuffer();
+            }
+        }
+    }
+
+    private void serialize(HubPDU pdu) throws IOException {
+        if(!this.enveloped) {
+            pdu.sendPDU(this.buffer);
+            return;
+        }
+
+        int headerStart = this.reserveHeader();
+        pdu.sendPDU(this.buffer);
+        HubPDUEnvelope.writeHeader(this.buffer.bytes(), headerStart,
+                this.buffer.size() - headerStart - HubPDUEnvelope.HEADER_SIZE);
+    }
+
+    // header is written when pdu length is known - returns its position in buffer
+    private int reserveHeader() {
+        int headerStart = this.buffer.size();
+        this.buffer.write(HubPDUEnvelope.HEADER_PLACEHOLDER, 0, HubPDUEnvelope.HEADER_SIZE);
+        return headerStart;
+    }
+
+    private void writeBuffer() throws IOException {
+        this.os.write(this.buffer.bytes(), 0, this.buffer.size());
+        this.os.flush();
+    }
+
+    private void resetBuffer() {
+        if(this.buffer.capacity() > MAX_RETAINED_BUFFER_SIZE) this.buffer = new PDUBuffer();
+        else this.buffer.reset();
+    }
+
+    int getBufferCapacity() {
+        return this.buffer.capacity();
+    }
+
+    private static class PDUBuffer extends ByteArrayOutputStream {
+        PDUBuffer() {
+            super(INITIAL_BUFFER_SIZE);
+        }
+
+        byte[] bytes() {
+            return this.buf;
+        }
+
+        int capacity() {
+            return this.buf.length;
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package net.sharksystem.hub.protocol;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * ASAPSerialization reads byte arrays and strings with a single read call and takes for granted that it
+ * got all bytes. That does not hold on a TCP stream - a PDU can arrive in several segments. This stream blocks
+ * until a read got all bytes asked for (or end of stream is reached). It does not read ahead - data following a PDU
+ * stays in the underlying stream.
+ */
+class ReadFullyInputStream extends FilterInputStream {
+    ReadFullyInputStream(InputStream in) {
+        super(in);
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        int total = 0;
+        while(total < len) {
+            int read = super.read(b, off + total, len - total);
+            if(read < 0) return total == 0 ? -1 : total;
+            total += read;
+        }
+        return total;
+    }
+}
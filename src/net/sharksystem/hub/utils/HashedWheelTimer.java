@@ -0,0 +1,308 @@
+package net.sharksystem.hub.utils;
+
+import net.sharksystem.utils.AlarmClockListener;
+import net.sharksystem.utils.Log;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hashed timer wheel. Connectors change their status very often and each status has a time out. An alarm clock
+ * thread per time out is far too expensive under churn. This timer serves any number of time outs with a single
+ * thread. Schedule and cancel are O(1).
+ * <br/><br/>
+ * The wheel has a fixed number of buckets. A time out is put into the bucket of its deadline tick and remembers how
+ * many rounds the wheel has to turn before it expires. The worker thread advances one bucket each tick. Time outs
+ * expire up to one tick late - never early.
+ * <br/><br/>
+ * Expired tasks run on an executor - not on the wheel thread. Connectors handle time outs and can block
+ * while doing so.
+ */
+public class HashedWheelTimer {
+    public static final long DEFAULT_TICK_DURATION_IN_MILLIS = 10;
+    public static final int DEFAULT_TICKS_PER_WHEEL = 512;
+
+    private static HashedWheelTimer hubTimer = null;
+
+    /**
+     * @return timer shared by all connectors and hub managers of this process
+     */
+    public static synchronized HashedWheelTimer getHubTimer() {
+        if(hubTimer == null) {
+            hubTimer = new HashedWheelTimer(DEFAULT_TICK_DURATION_IN_MILLIS, DEFAULT_TICKS_PER_WHEEL,
+                    runnable -> {
+                        Thread thread = new Thread(runnable);
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+        }
+        return hubTimer;
+    }
+
+    /**
+     * Handle of a scheduled task.
+     */
+    public interface Timeout {
+        /**
+         * @return false if task already expired (it runs or has run) or was cancelled before.
+         */
+        boolean cancel();
+        boolean isExpired();
+        boolean isCancelled();
+    }
+
+    private static final int STATE_PENDING = 0;
+    private static final int STATE_CANCELLED = 1;
+    private static final int STATE_EXPIRED = 2;
+
+    private final long tickDurationInNanos;
+    private final Bucket[] wheel;
+    private final int mask;
+    private final ThreadFactory threadFactory;
+    private final ExecutorService executor;
+    private final Queue<TimeoutImpl> scheduledTimeouts = new ConcurrentLinkedQueue<>();
+    private final Queue<TimeoutImpl> cancelledTimeouts = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pendingTimeouts = new AtomicInteger(0);
+
+    private volatile Thread worker = null;
+    private volatile long startTime;
+    private volatile boolean stopped = false;
+
+    /**
+     * @param tickDurationInMillis precision of this timer
+     * @param ticksPerWheel number of buckets - rounded up to a power of two
+     * @param threadFactory creates wheel thread and threads which run expired tasks
+     */
+    public HashedWheelTimer(long tickDurationInMillis, int ticksPerWheel, ThreadFactory threadFactory) {
+        if(tickDurationInMillis <= 0) throw new IllegalArgumentException("tick duration must be positive");
+        if(ticksPerWheel <= 0) throw new IllegalArgumentException("ticks per wheel must be positive");
+
+        this.tickDurationInNanos = TimeUnit.MILLISECONDS.toNanos(tickDurationInMillis);
+
+        int size = 1;
+        while(size < ticksPerWheel) size <<= 1;
+        this.wheel = new Bucket[size];
+        for(int i = 0; i < size; i++) this.wheel[i] = new Bucket();
+        this.mask = size - 1;
+
+        this.threadFactory = threadFactory;
+        this.executor = Executors.newCachedThreadPool(threadFactory);
+    }
+
+    /**
+     * Run task after a delay
+     * @param delayInMillis
+     * @param task runs on a thread of this timer's executor
+     * @return handle to cancel the task
+     */
+    public Timeout schedule(long delayInMillis, Runnable task) {
+        if(task == null) throw new IllegalArgumentException("task must not be null");
+        if(this.worker == null || this.stopped) this.startWorker();
+
+        long deadline = System.nanoTime() - this.startTime + TimeUnit.MILLISECONDS.toNanos(Math.max(0, delayInMillis));
+        TimeoutImpl timeout = new TimeoutImpl(task, deadline);
+        this.pendingTimeouts.incrementAndGet();
+        // wheel thread puts it into its bucket with next tick - no locking here
+        this.scheduledTimeouts.add(timeout);
+        return timeout;
+    }
+
+    /**
+     * Drop-in replacement for an alarm clock: listener is called with key when delay is over.
+     */
+    public Timeout schedule(long delayInMillis, int key, AlarmClockListener listener) {
+        return this.schedule(delayInMillis, () -> listener.alarmClockRinging(key));
+    }
+
+    /**
+     * @return number of scheduled tasks that neither expired nor were cancelled
+     */
+    public int pendingTimeouts() {
+        return this.pendingTimeouts.get();
+    }
+
+    /**
+     * Stop wheel thread. Pending time outs will not expire.
+     */
+    public synchronized void stop() {
+        this.stopped = true;
+        if(this.worker != null) this.worker.interrupt();
+        this.executor.shutdown();
+    }
+
+    private synchronized void startWorker() {
+        if(this.stopped) throw new IllegalStateException("timer already stopped");
+        if(this.worker != null) return;
+
+        this.startTime = System.nanoTime();
+        Thread worker = this.threadFactory.newThread(new Worker());
+        worker.start();
+        this.worker = worker;
+    }
+
+    /////////////////////////////////////////////////////////////////////////////////////////////////////////
+    //                                           wheel thread                                              //
+    /////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    private class Worker implements Runnable {
+        private long tick = 0;
+
+        @Override
+        public void run() {
+            Log.writeLog(HashedWheelTimer.this, "timer wheel started with "
+                    + HashedWheelTimer.this.wheel.length + " buckets");
+
+            while(!HashedWheelTimer.this.stopped) {
+                long deadline = this.waitForNextTick();
+                if(deadline < 0) break; // stopped
+
+                this.removeCancelledTimeouts();
+                this.transferScheduledTimeouts();
+                HashedWheelTimer.this.wheel[(int) (this.tick & HashedWheelTimer.this.mask)].expireTimeouts(deadline);
+                this.tick++;
+            }
+
+            Log.writeLog(HashedWheelTimer.this, "timer wheel stopped");
+        }
+
+        private long waitForNextTick() {
+            long deadline = HashedWheelTimer.this.tickDurationInNanos * (this.tick + 1);
+            for(;;) {
+                long currentTime = System.nanoTime() - HashedWheelTimer.this.startTime;
+                long sleepTimeInMillis = TimeUnit.NANOSECONDS.toMillis(deadline - currentTime + 999999);
+                if(sleepTimeInMillis <= 0) return currentTime;
+
+                try {
+                    Thread.sleep(sleepTimeInMillis);
+                } catch (InterruptedException e) {
+                    if(HashedWheelTimer.this.stopped) return -1;
+                }
+            }
+        }
+
+        private void transferScheduledTimeouts() {
+            TimeoutImpl timeout;
+            while((timeout = HashedWheelTimer.this.scheduledTimeouts.poll()) != null) {
+                if(timeout.state.get() == STATE_CANCELLED) continue;
+
+                long calculatedTick = timeout.deadline / HashedWheelTimer.this.tickDurationInNanos;
+                timeout.remainingRounds = (calculatedTick - this.tick) / HashedWheelTimer.this.wheel.length;
+                // deadline can already be in the past - take current tick then
+                long bucketTick = Math.max(calculatedTick, this.tick);
+                HashedWheelTimer.this.wheel[(int) (bucketTick & HashedWheelTimer.this.mask)].add(timeout);
+            }
+        }
+
+        private void removeCancelledTimeouts() {
+            TimeoutImpl timeout;
+            while((timeout = HashedWheelTimer.this.cancelledTimeouts.poll()) != null) {
+                if(timeout.bucket != null) timeout.bucket.remove(timeout);
+            }
+        }
+    }
+
+    /**
+     * Double linked list of time outs - removal is O(1). Only touched by wheel thread.
+     */
+    private class Bucket {
+        private TimeoutImpl head = null;
+        private TimeoutImpl tail = null;
+
+        void add(TimeoutImpl timeout) {
+            timeout.bucket = this;
+            if(this.head == null) {
+                this.head = this.tail = timeout;
+            } else {
+                this.tail.next = timeout;
+                timeout.prev = this.tail;
+                this.tail = timeout;
+            }
+        }
+
+        TimeoutImpl remove(TimeoutImpl timeout) {
+            TimeoutImpl next = timeout.next;
+            if(timeout.prev != null) timeout.prev.next = next;
+            if(timeout.next != null) timeout.next.prev = timeout.prev;
+            if(timeout == this.head) this.head = next;
+            if(timeout == this.tail) this.tail = timeout.prev;
+
+            timeout.prev = null;
+            timeout.next = null;
+            timeout.bucket = null;
+            return next;
+        }
+
+        void expireTimeouts(long deadline) {
+            TimeoutImpl timeout = this.head;
+            while(timeout != null) {
+                if(timeout.remainingRounds <= 0) {
+                    TimeoutImpl next = this.remove(timeout);
+                    if(timeout.deadline <= deadline) {
+                        timeout.expire();
+                    } else {
+                        // cannot happen - but never fire early
+                        Log.writeLogErr(HashedWheelTimer.this, "time out in wrong bucket - re-schedule");
+                        HashedWheelTimer.this.scheduledTimeouts.add(timeout);
+                    }
+                    timeout = next;
+                } else if(timeout.state.get() == STATE_CANCELLED) {
+                    timeout = this.remove(timeout);
+                } else {
+                    timeout.remainingRounds--;
+                    timeout = timeout.next;
+                }
+            }
+        }
+    }
+
+    private class TimeoutImpl implements Timeout {
+        private final Runnable task;
+        private final long deadline;
+        private final AtomicInteger state = new AtomicInteger(STATE_PENDING);
+
+        // wheel thread only
+        private long remainingRounds;
+        private Bucket bucket = null;
+        private TimeoutImpl prev = null;
+        private TimeoutImpl next = null;
+
+        TimeoutImpl(Runnable task, long deadline) {
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        @Override
+        public boolean cancel() {
+            if(!this.state.compareAndSet(STATE_PENDING, STATE_CANCELLED)) return false;
+            HashedWheelTimer.this.pendingTimeouts.decrementAndGet();
+            // wheel thread removes it from its bucket
+            HashedWheelTimer.this.cancelledTimeouts.add(this);
+            return true;
+        }
+
+        @Override
+        public boolean isExpired() {
+            return this.state.get() == STATE_EXPIRED;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return this.state.get() == STATE_CANCELLED;
+        }
+
+        void expire() {
+            if(!this.state.compareAndSet(STATE_PENDING, STATE_EXPIRED)) return;
+            HashedWheelTimer.this.pendingTimeouts.decrementAndGet();
+            try {
+                HashedWheelTimer.this.executor.execute(this.task);
+            } catch (RuntimeException e) {
+                Log.writeLogErr(HashedWheelTimer.this, "cannot run expired task: " + e.getLocalizedMessage());
+            }
+        }
+    }
+}
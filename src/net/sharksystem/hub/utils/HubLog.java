@@ -0,0 +1,214 @@
+package net.sharksystem.hub.utils;
+
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Logging on hub and connector hot paths. Same output as {@link net.sharksystem.utils.Log} but
+ * <ul>
+ *     <li>level gated - a disabled call returns after a single volatile read, allocates nothing.
+ *     Messages are constants, a variable part is passed as argument and not concatenated by the caller.</li>
+ *     <li>asynchronous - records are put into a ring buffer and written by a single daemon thread in batches.
+ *     Logging threads never wait for the console. Records are dropped (and counted) if the buffer is full.</li>
+ * </ul>
+ * Context (usually the connector) is turned into a string by the calling thread - it tells a connector status.
+ * Arguments are turned into strings by the writer thread - pass ids, PDUs and the like, nothing that changes
+ * after the call.
+ * <br/><br/>
+ * Level is taken from system property asaphub.log.level (DEBUG, INFO, ERROR, OFF) - default is INFO.
+ */
+public class HubLog {
+    public enum Level { DEBUG, INFO, ERROR, OFF }
+
+    public static final String LOG_LEVEL_PROPERTY = "asaphub.log.level";
+    public static final Level DEFAULT_LEVEL = Level.INFO;
+    static final int RING_BUFFER_SIZE = 8192; // power of two
+    private static final int MASK = RING_BUFFER_SIZE - 1;
+    private static final long WRITER_IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final long FLUSH_TIMEOUT_IN_MILLIS = 1000;
+
+    private static volatile int level = initialLevel().ordinal();
+
+    // ring buffer - multiple producers, a single consumer
+    private static final AtomicLong claimed = new AtomicLong();
+    private static final AtomicLong consumed = new AtomicLong();
+    private static final AtomicLongArray published = new AtomicLongArray(RING_BUFFER_SIZE);
+    private static final int[] levels = new int[RING_BUFFER_SIZE];
+    private static final Object[] sources = new Object[RING_BUFFER_SIZE];
+    private static final String[] contexts = new String[RING_BUFFER_SIZE];
+    private static final String[] messages = new String[RING_BUFFER_SIZE];
+    private static final Object[] arguments = new Object[RING_BUFFER_SIZE];
+    private static final AtomicLong dropped = new AtomicLong();
+    private static final Object NO_ARGUMENT = new Object();
+
+    private static volatile Thread writerThread = null;
+
+    static {
+        for(int i = 0; i < RING_BUFFER_SIZE; i++) published.set(i, -1);
+    }
+
+    private static Level initialLevel() {
+        String value = System.getProperty(LOG_LEVEL_PROPERTY);
+        if(value != null) {
+            try {
+                return Level.valueOf(value.trim().toUpperCase());
+            } catch (IllegalArgumentException e) {
+                System.err.println("HubLog: unknown log level " + value + " - use " + DEFAULT_LEVEL);
+            }
+        }
+        return DEFAULT_LEVEL;
+    }
+
+    public static void setLevel(Level newLevel) {
+        level = newLevel.ordinal();
+    }
+
+    public static Level getLevel() {
+        return Level.values()[level];
+    }
+
+    public static boolean isDebugEnabled() {
+        return level <= Level.DEBUG.ordinal();
+    }
+
+    public static boolean isInfoEnabled() {
+        return level <= Level.INFO.ordinal();
+    }
+
+    /////////////////////////////////////////////////////////////////////////////////////////////////////////
+    //                                                 log                                                 //
+    /////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    public static void debug(Object source, Object context, String message) {
+        if(level <= Level.DEBUG.ordinal()) log(Level.DEBUG, source, context, message, NO_ARGUMENT);
+    }
+
+    public static void debug(Object source, Object context, String message, Object argument) {
+        if(level <= Level.DEBUG.ordinal()) log(Level.DEBUG, source, context, message, argument);
+    }
+
+    public static void info(Object source, Object context, String message) {
+        if(level <= Level.INFO.ordinal()) log(Level.INFO, source, context, message, NO_ARGUMENT);
+    }
+
+    public static void info(Object source, Object context, String message, Object argument) {
+        if(level <= Level.INFO.ordinal()) log(Level.INFO, source, context, message, argument);
+    }
+
+    /**
+     * Written to System.err - like {@link net.sharksystem.utils.Log#writeLogErr(Object, String, String)}
+     */
+    public static void error(Object source, Object context, String message) {
+        if(level <= Level.ERROR.ordinal()) log(Level.ERROR, source, context, message, NO_ARGUMENT);
+    }
+
+    public static void error(Object source, Object context, String message, Object argument) {
+        if(level <= Level.ERROR.ordinal()) log(Level.ERROR, source, context, message, argument);
+    }
+
+    private static void log(Level recordLevel, Object source, Object context, String message, Object argument) {
+        long sequence;
+        do {
+            sequence = claimed.get();
+            if(sequence - consumed.get() >= RING_BUFFER_SIZE) {
+                dropped.incrementAndGet();
+                return;
+            }
+        } while(!claimed.compareAndSet(sequence, sequence + 1));
+
+        int index = (int) (sequence & MASK);
+        levels[index] = recordLevel.ordinal();
+        sources[index] = source;
+        contexts[index] = context == null ? null : context.toString();
+        messages[index] = message;
+        arguments[index] = argument;
+        published.lazySet(index, sequence);
+
+        if(writerThread == null) startWriter();
+    }
+
+    /**
+     * Wait (a moment at most) until all records logged so far are written.
+     */
+    public static void flush() {
+        long target = claimed.get();
+        long until = System.currentTimeMillis() + FLUSH_TIMEOUT_IN_MILLIS;
+        while(consumed.get() < target && System.currentTimeMillis() < until) {
+            LockSupport.parkNanos(WRITER_IDLE_PARK_NANOS);
+        }
+    }
+
+    /**
+     * @return number of records dropped because ring buffer was full
+     */
+    public static long getDropped() {
+        return dropped.get();
+    }
+
+    /////////////////////////////////////////////////////////////////////////////////////////////////////////
+    //                                               writer                                                //
+    /////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    private static synchronized void startWriter() {
+        if(writerThread != null) return;
+        writerThread = new Thread(HubLog::write, "HubLog writer");
+        writerThread.setDaemon(true);
+        writerThread.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(HubLog::flush));
+    }
+
+    private static void write() {
+        StringBuilder out = new StringBuilder();
+        StringBuilder err = new StringBuilder();
+        long reportedDropped = 0;
+
+        for(;;) {
+            long next = consumed.get();
+            // write all published records in one go - a single console access for a whole batch
+            while(published.get((int) (next & MASK)) == next) {
+                int index = (int) (next & MASK);
+                StringBuilder sb = levels[index] == Level.ERROR.ordinal() ? err : out;
+                append(sb, sources[index], contexts[index], messages[index], arguments[index]);
+                sources[index] = null;
+                contexts[index] = null;
+                messages[index] = null;
+                arguments[index] = null;
+                next++;
+            }
+
+            long droppedNow = dropped.get();
+            if(droppedNow != reportedDropped) {
+                err.append("HubLog: ").append(droppedNow - reportedDropped)
+                        .append(" log records dropped - ring buffer full\n");
+                reportedDropped = droppedNow;
+            }
+
+            if(out.length() == 0 && err.length() == 0) {
+                LockSupport.parkNanos(WRITER_IDLE_PARK_NANOS);
+                continue;
+            }
+            flushTo(System.out, out);
+            flushTo(System.err, err);
+            consumed.set(next); // slots can be reused - records are written
+        }
+    }
+
+    private static void flushTo(PrintStream ps, StringBuilder sb) {
+        if(sb.length() == 0) return;
+        ps.print(sb);
+        ps.flush();
+        sb.setLength(0);
+    }
+
+    static void append(StringBuilder sb, Object source, String context, String message, Object argument) {
+        if(source instanceof Class) sb.append(((Class<?>) source).getSimpleName());
+        else if(source != null) sb.append(source.getClass().getSimpleName());
+        if(context != null && context.length() > 0) sb.append('(').append(context).append(')');
+        sb.append(": ").append(message);
+        if(argument != NO_ARGUMENT) sb.append(argument);
+        sb.append('\n');
+    }
+}
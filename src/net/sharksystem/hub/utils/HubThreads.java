@@ -0,0 +1,48 @@
+package net.sharksystem.hub.utils;
+
+import net.sharksystem.utils.Log;
+
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Thread factories used by hubs and connectors. Connector sessions, alarm clocks, connection creators and the like
+ * are started with a thread factory. Platform threads are default. Virtual threads (JDK 21+) are far cheaper if
+ * a hub has to hold a lot of mostly idle blocking sessions. Platform threads are used as fallback on older JDKs.
+ */
+public class HubThreads {
+    private static final ThreadFactory PLATFORM_THREAD_FACTORY = Thread::new;
+    private static ThreadFactory virtualThreadFactory = null;
+    private static boolean virtualThreadsChecked = false;
+
+    public static ThreadFactory platformThreadFactory() {
+        return PLATFORM_THREAD_FACTORY;
+    }
+
+    /**
+     * @return factory producing virtual threads - or platform threads if this JVM does not support them.
+     */
+    public static ThreadFactory virtualThreadFactory() {
+        ThreadFactory factory = HubThreads.createVirtualThreadFactory();
+        return factory != null ? factory : PLATFORM_THREAD_FACTORY;
+    }
+
+    public static boolean virtualThreadsSupported() {
+        return HubThreads.createVirtualThreadFactory() != null;
+    }
+
+    private static synchronized ThreadFactory createVirtualThreadFactory() {
+        if(!virtualThreadsChecked) {
+            virtualThreadsChecked = true;
+            try {
+                // Thread.ofVirtual().factory() - by reflection, we still compile on older JDKs
+                Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+                virtualThreadFactory = (ThreadFactory) Class.forName("java.lang.Thread$Builder")
+                        .getMethod("factory").invoke(builder);
+            } catch (ReflectiveOperationException | RuntimeException e) {
+                Log.writeLog(HubThreads.class, "no virtual threads on this JVM - use platform threads");
+                virtualThreadFactory = null;
+            }
+        }
+        return virtualThreadFactory;
+    }
+}
@@ -0,0 +1,306 @@
+package net.sharksystem.hub;
+
+import net.sharksystem.TestHelper;
+import net.sharksystem.asap.ASAPException;
+import net.sharksystem.hub.hubside.ASAPTCPHub;
+import net.sharksystem.hub.peerside.NewConnectionListener;
+import net.sharksystem.hub.peerside.SharedChannelConnectorPeerSide;
+import net.sharksystem.hub.peerside.SharedTCPChannelConnectorPeerSide;
+import net.sharksystem.streams.StreamPair;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static net.sharksystem.hub.TestConstants.*;
+
+/**
+ * Data sessions over the shared channel - multiplexed and framed.
+ */
+public class DataSessionUsageTests {
+    private static final int BYTES_PER_SESSION = 4 * 64 * 1024; // several flow control windows
+    private static final int WAIT_IN_MILLIS = 30000;
+
+    /**
+     * Writes a pseudo random sequence to other side and reads the one of the other side - both at the same time.
+     * Remembers when a session was done and whether it received what was expected.
+     */
+    private static class Exchange implements NewConnectionListener {
+        final String peerID;
+        final int readDelayInMillis; // > 0: slow reader
+        final Map<String, Long> doneAt = new ConcurrentHashMap<>();
+        final Map<String, Boolean> correct = new ConcurrentHashMap<>();
+        volatile boolean stringIDs = true;
+
+        Exchange(String peerID, int readDelayInMillis) {
+            this.peerID = peerID;
+            this.readDelayInMillis = readDelayInMillis;
+        }
+
+        @Override
+        public void notifyPeerConnected(CharSequence targetPeerID, StreamPair streamPair) {
+            if(!(targetPeerID instanceof String)) this.stringIDs = false;
+            String otherPeer = targetPeerID.toString();
+            new Thread(() -> {
+                try {
+                    Thread writer = new Thread(() -> {
+                        try {
+                            OutputStream os = streamPair.getOutputStream();
+                            os.write(bytes(this.peerID, otherPeer));
+                            os.close();
+                        } catch (IOException e) {
+                            // reader fails
+                        }
+                    });
+                    writer.start();
+
+                    boolean ok = received(streamPair.getInputStream(), bytes(otherPeer, this.peerID),
+                            this.readDelayInMillis);
+                    writer.join();
+                    streamPair.close();
+                    this.correct.put(otherPeer, ok);
+                    this.doneAt.put(otherPeer, System.currentTimeMillis());
+                } catch (IOException | InterruptedException e) {
+                    this.correct.put(otherPeer, false);
+                    this.doneAt.put(otherPeer, System.currentTimeMillis());
+                }
+            }).start();
+        }
+
+        boolean waitFor(int numberOfSessions) throws InterruptedException {
+            long until = System.currentTimeMillis() + WAIT_IN_MILLIS;
+            while(this.doneAt.size() < numberOfSessions && System.currentTimeMillis() < until) Thread.sleep(50);
+            return this.doneAt.size() == numberOfSessions;
+        }
+    }
+
+    /**
+     * Framed sessions end for both sides when one side closes. Closing side writes its bytes and closes right away -
+     * what other side sent is dropped. Other side reads until end of data and closes after that.
+     */
+    private static class FramedExchange implements NewConnectionListener {
+        final String peerID;
+        volatile boolean closeFirst = false;
+        final AtomicInteger sessions = new AtomicInteger(0);
+        volatile boolean correct = true;
+
+        FramedExchange(String peerID) {
+            this.peerID = peerID;
+        }
+
+        @Override
+        public void notifyPeerConnected(CharSequence targetPeerID, StreamPair streamPair) {
+            String otherPeer = targetPeerID.toString();
+            boolean closeFirst = this.closeFirst;
+            new Thread(() -> {
+                boolean ok;
+                try {
+                    Thread writer = new Thread(() -> {
+                        try {
+                            streamPair.getOutputStream().write(bytes(this.peerID, otherPeer));
+                        } catch (IOException e) {
+                            // session closed by other side before all was written - fine
+                        }
+                    });
+                    writer.start();
+
+                    if(closeFirst) {
+                        writer.join();
+                        ok = true;
+                    } else {
+                        ok = received(streamPair.getInputStream(), bytes(otherPeer, this.peerID), 0);
+                        writer.join();
+                    }
+                    streamPair.close();
+                } catch (IOException | InterruptedException e) {
+                    ok = false;
+                }
+                if(!ok) this.correct = false;
+                this.sessions.incrementAndGet();
+            }).start();
+        }
+
+        boolean waitFor(int numberOfSessions) throws InterruptedException {
+            long until = System.currentTimeMillis() + WAIT_IN_MILLIS;
+            while(this.sessions.get() < numberOfSessions && System.currentTimeMillis() < until) Thread.sleep(50);
+            return this.sessions.get() == numberOfSessions;
+        }
+    }
+
+    private static byte[] bytes(String from, String to) {
+        byte[] bytes = new byte[BYTES_PER_SESSION];
+        new Random((from + "->" + to).hashCode()).nextBytes(bytes);
+        return bytes;
+    }
+
+    private static boolean received(InputStream is, byte[] expected, int readDelayInMillis)
+            throws IOException, InterruptedException {
+        byte[] buffer = new byte[8 * 1024];
+        int position = 0;
+        int read;
+        while((read = is.read(buffer)) >= 0) {
+            if(position + read > expected.length) return false;
+            for(int i = 0; i < read; i++) {
+                if(buffer[i] != expected[position + i]) return false;
+            }
+            position += read;
+            if(readDelayInMillis > 0) Thread.sleep(readDelayInMillis);
+        }
+        return position == expected.length;
+    }
+
+    private static SharedChannelConnectorPeerSide connect(int port, String peerID, NewConnectionListener listener,
+                                                          boolean multiplexed, boolean framed)
+            throws IOException, ASAPException {
+        SharedChannelConnectorPeerSide connector = (SharedChannelConnectorPeerSide)
+                SharedTCPChannelConnectorPeerSide.createTCPHubConnector("localhost", port);
+        connector.setMultiplexedDataSessions(multiplexed);
+        connector.setFramedDataSessions(framed);
+        connector.addListener(listener);
+        connector.connectHub(peerID, false);
+        return connector;
+    }
+
+    @Test
+    public void multiplexedSessionsRunConcurrentlyDespiteSlowReader()
+            throws IOException, ASAPException, InterruptedException {
+        int port = TestHelper.getPortNumber();
+        ASAPTCPHub hub = ASAPTCPHub.startTCPHubThread(port, false, MAX_IDLE_IN_SECONDS);
+        Thread.sleep(500);
+
+        Exchange alice = new Exchange(ALICE_ID, 0);
+        Exchange bob = new Exchange(BOB_ID, 0);
+        Exchange clara = new Exchange(CLARA_ID, 0);
+        Exchange david = new Exchange(DAVID_ID, 20); // reads 8 KB every 20 ms at most
+        SharedChannelConnectorPeerSide aliceConnector = connect(port, ALICE_ID, alice, true, false);
+        SharedChannelConnectorPeerSide bobConnector = connect(port, BOB_ID, bob, true, false);
+        SharedChannelConnectorPeerSide claraConnector = connect(port, CLARA_ID, clara, true, false);
+        SharedChannelConnectorPeerSide davidConnector = connect(port, DAVID_ID, david, true, false);
+        Thread.sleep(500);
+
+        // three sessions on Alice's channel at the same time
+        aliceConnector.connectPeer(DAVID_ID);
+        aliceConnector.connectPeer(BOB_ID);
+        aliceConnector.connectPeer(CLARA_ID);
+
+        Assert.assertTrue(alice.waitFor(3));
+        Assert.assertTrue(bob.waitFor(1) && clara.waitFor(1) && david.waitFor(1));
+
+        Assert.assertTrue(alice.correct.get(BOB_ID));
+        Assert.assertTrue(alice.stringIDs && bob.stringIDs);
+        Assert.assertTrue(alice.correct.get(CLARA_ID));
+        Assert.assertTrue(alice.correct.get(DAVID_ID));
+        Assert.assertTrue(bob.correct.get(ALICE_ID));
+        Assert.assertTrue(clara.correct.get(ALICE_ID));
+        Assert.assertTrue(david.correct.get(ALICE_ID));
+
+        // slow reader stalls its own session only
+        long davidDone = david.doneAt.get(ALICE_ID);
+        Assert.assertTrue(bob.doneAt.get(ALICE_ID) < davidDone);
+        Assert.assertTrue(clara.doneAt.get(ALICE_ID) < davidDone);
+        Assert.assertTrue(alice.doneAt.get(BOB_ID) < davidDone);
+        Assert.assertTrue(alice.doneAt.get(CLARA_ID) < davidDone);
+
+        // channels are kept - streams are gone
+        aliceConnector.syncHubInformation();
+        Thread.sleep(500);
+        Assert.assertEquals(0, aliceConnector.getNumberOfMultiplexedStreams());
+        Assert.assertEquals(3, aliceConnector.getPeerIDs().size());
+        Assert.assertTrue(aliceConnector.getPeerIDs().contains(BOB_ID));
+
+        aliceConnector.disconnectHub();
+        bobConnector.disconnectHub();
+        claraConnector.disconnectHub();
+        davidConnector.disconnectHub();
+        hub.kill();
+    }
+
+    @Test
+    public void framedSessionsCanBeClosedByEitherSideAndChannelIsReused()
+            throws IOException, ASAPException, InterruptedException {
+        int port = TestHelper.getPortNumber();
+        ASAPTCPHub hub = ASAPTCPHub.startTCPHubThread(port, false, MAX_IDLE_IN_SECONDS);
+        Thread.sleep(500);
+
+        FramedExchange alice = new FramedExchange(ALICE_ID);
+        FramedExchange bob = new FramedExchange(BOB_ID);
+        SharedChannelConnectorPeerSide aliceConnector = connect(port, ALICE_ID, alice, false, true);
+        SharedChannelConnectorPeerSide bobConnector = connect(port, BOB_ID, bob, false, true);
+        Thread.sleep(500);
+
+        // Alice closes, Bob closes, Alice closes again - each session on the very same channels
+        boolean[] aliceClosesFirst = {true, false, true};
+        for(int session = 1; session <= aliceClosesFirst.length; session++) {
+            alice.closeFirst = aliceClosesFirst[session - 1];
+            bob.closeFirst = !alice.closeFirst;
+            aliceConnector.connectPeer(BOB_ID);
+
+            Assert.assertTrue(alice.waitFor(session));
+            Assert.assertTrue(bob.waitFor(session));
+            Assert.assertTrue(alice.correct);
+            Assert.assertTrue(bob.correct);
+        }
+
+        // both channels are in sync - connector protocol works
+        aliceConnector.syncHubInformation();
+        bobConnector.syncHubInformation();
+        Thread.sleep(500);
+        Assert.assertEquals(1, aliceConnector.getPeerIDs().size());
+        Assert.assertEquals(1, bobConnector.getPeerIDs().size());
+
+        aliceConnector.disconnectHub();
+        bobConnector.disconnectHub();
+        hub.kill();
+    }
+
+    @Test
+    public void framedSessionsOnDataPortConnectionsCanBeClosedByEitherSide()
+            throws IOException, ASAPException, InterruptedException {
+        int port = TestHelper.getPortNumber();
+        ASAPTCPHub hub = new ASAPTCPHub(port, true);
+        hub.setMaxIdleConnectionInSeconds(MAX_IDLE_IN_SECONDS);
+        hub.setDataPort(0);
+        new Thread(hub).start();
+        Thread.sleep(500);
+
+        FramedExchange alice = new FramedExchange(ALICE_ID);
+        FramedExchange bob = new FramedExchange(BOB_ID);
+        SharedChannelConnectorPeerSide aliceConnector = connectWithDataPortTokens(port, ALICE_ID, alice);
+        SharedChannelConnectorPeerSide bobConnector = connectWithDataPortTokens(port, BOB_ID, bob);
+        Thread.sleep(500);
+
+        // encounters in short order - data connections of earlier ones are leased again
+        boolean[] aliceClosesFirst = {true, false, true};
+        for(int session = 1; session <= aliceClosesFirst.length; session++) {
+            alice.closeFirst = aliceClosesFirst[session - 1];
+            bob.closeFirst = !alice.closeFirst;
+            aliceConnector.connectPeer(BOB_ID);
+
+            Assert.assertTrue(alice.waitFor(session));
+            Assert.assertTrue(bob.waitFor(session));
+            Assert.assertTrue(alice.correct);
+            Assert.assertTrue(bob.correct);
+        }
+
+        aliceConnector.disconnectHub();
+        bobConnector.disconnectHub();
+        hub.kill();
+    }
+
+    private static SharedChannelConnectorPeerSide connectWithDataPortTokens(int port, String peerID,
+                                                                            NewConnectionListener listener)
+            throws IOException, ASAPException {
+        SharedTCPChannelConnectorPeerSide connector = (SharedTCPChannelConnectorPeerSide)
+                SharedTCPChannelConnectorPeerSide.createTCPHubConnector("localhost", port);
+        connector.setDataPortTokens(true);
+        connector.addListener(listener);
+        connector.connectHub(peerID, true);
+        return connector;
+    }
+}
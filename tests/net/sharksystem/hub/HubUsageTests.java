@@ -100,12 +100,72 @@ public class HubUsageTests {
                 false);
     }
 
+    @Test
+    public void usageSharedConnection_NonBlockingHub() throws IOException, InterruptedException, ASAPException {
+        this.runUsageTest(
+                false,
+                false,
+                "NON_CAN_TCP",
+                "YZ",
+                false,
+                2);
+    }
+
+    @Test
+    public void usageNewConnection_NonBlockingHub() throws IOException, InterruptedException, ASAPException {
+        this.runUsageTest(
+                true,
+                true,
+                "BOTH_CAN_TCP",
+                "YZ",
+                false,
+                2);
+    }
+
     public void runUsageTest(
             boolean aliceCanCreateTCPConnections,
             boolean bobCanCreateTCPConnections,
             String messageA, String messageB,
             boolean pureBytes)  throws IOException, InterruptedException, ASAPException {
 
+        this.runUsageTest(aliceCanCreateTCPConnections, bobCanCreateTCPConnections, messageA, messageB, pureBytes, 0);
+    }
+
+    /**
+     * @param numberOfEventLoops > 0: hub serves connectors with non-blocking I/O
+     */
+    public void runUsageTest(
+            boolean aliceCanCreateTCPConnections,
+            boolean bobCanCreateTCPConnections,
+            String messageA, String messageB,
+            boolean pureBytes, int numberOfEventLoops)  throws IOException, InterruptedException, ASAPException {
+
+        this.runUsageTest(aliceCanCreateTCPConnections, bobCanCreateTCPConnections, messageA, messageB, pureBytes,
+                numberOfEventLoops, false);
+    }
+
+    @Test
+    public void usageNewConnection_DataPort() throws IOException, InterruptedException, ASAPException {
+        this.runUsageTest(
+                true,
+                true,
+                "BOTH_CAN_TCP",
+                "YZ",
+                false,
+                0,
+                true);
+    }
+
+    /**
+     * @param dataPort hub has a single data port - Alice presents tokens on it, Bob gets a port per encounter
+     */
+    public void runUsageTest(
+            boolean aliceCanCreateTCPConnections,
+            boolean bobCanCreateTCPConnections,
+            String messageA, String messageB,
+            boolean pureBytes, int numberOfEventLoops, boolean dataPort)
+            throws IOException, InterruptedException, ASAPException {
+
         int maxTimeInSeconds = Connector.DEFAULT_TIMEOUT_IN_MILLIS / 1000;
         maxTimeInSeconds = maxTimeInSeconds > 0 ? maxTimeInSeconds : 1;
         int specificPort = getPort();
@@ -113,9 +173,12 @@ public class HubUsageTests {
         ASAPTCPHub hub = new ASAPTCPHub(specificPort, true);
         hub.setPortRange(7000, 9000); // optional - required to configure a firewall
         hub.setMaxIdleConnectionInSeconds(maxTimeInSeconds);
+        hub.setNumberOfEventLoops(numberOfEventLoops);
+        if(dataPort) hub.setDataPort(0);
         new Thread(hub).start();
 
         HubConnector aliceHubConnector = SharedTCPChannelConnectorPeerSide.createTCPHubConnector(host, specificPort);
+        if(dataPort) ((SharedTCPChannelConnectorPeerSide) aliceHubConnector).setDataPortTokens(true);
         HubConnectorTester aliceListener = new HubConnectorTester(ALICE_ID, messageA, messageB, pureBytes);
         aliceHubConnector.addListener(aliceListener);
 
@@ -0,0 +1,60 @@
+package net.sharksystem.hub;
+
+import net.sharksystem.hub.protocol.HubPDU;
+import net.sharksystem.hub.protocol.HubPDUChannelClear;
+import net.sharksystem.hub.protocol.HubPDUHubStatusDeltaRPLY;
+import net.sharksystem.hub.protocol.HubPDUHubStatusRPLY;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+public class PDUWaitersTests {
+    @Test
+    public void pduCompletesWaitersOfItsTypeOnly() {
+        PDUWaiters waiters = new PDUWaiters();
+        CompletableFuture<HubPDU> status1 = waiters.expect(HubPDU.HUB_STATUS_REPLY, 10000);
+        CompletableFuture<HubPDU> status2 = waiters.expect(HubPDU.HUB_STATUS_REPLY, 10000);
+        CompletableFuture<HubPDU> clear = waiters.expect(HubPDU.CHANNEL_CLEAR, 10000);
+        Assert.assertEquals(3, waiters.size());
+
+        HubPDU reply = new HubPDUHubStatusRPLY(new HashSet<>());
+        waiters.received(reply);
+        Assert.assertSame(reply, status1.getNow(null));
+        Assert.assertSame(reply, status2.getNow(null));
+        Assert.assertFalse(clear.isDone());
+        Assert.assertEquals(1, waiters.size());
+
+        // a delta reply answers a status request as well
+        CompletableFuture<HubPDU> status3 = waiters.expect(HubPDU.HUB_STATUS_REPLY, 10000);
+        waiters.received(new HubPDUHubStatusDeltaRPLY(1, true, null, null));
+        Assert.assertTrue(status3.isDone());
+
+        waiters.received(new HubPDUChannelClear("Alice", "Bob", 1000, new byte[] {1, 2, 3}));
+        Assert.assertTrue(clear.isDone());
+        Assert.assertEquals(0, waiters.size());
+    }
+
+    @Test
+    public void waiterTimesOutAndIsRemoved() throws InterruptedException, ExecutionException {
+        PDUWaiters waiters = new PDUWaiters();
+        CompletableFuture<HubPDU> status = waiters.expect(HubPDU.HUB_STATUS_REPLY, 20);
+        try {
+            status.get(5, TimeUnit.SECONDS);
+            Assert.fail("time out expected");
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof TimeoutException);
+        } catch (TimeoutException e) {
+            Assert.fail("waiter did not time out");
+        }
+        Assert.assertEquals(0, waiters.size());
+
+        CompletableFuture<HubPDU> cancelled = waiters.expect(HubPDU.HUB_STATUS_REPLY, 10000);
+        cancelled.cancel(false);
+        Assert.assertEquals(0, waiters.size());
+    }
+}
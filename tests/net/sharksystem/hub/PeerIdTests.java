@@ -0,0 +1,42 @@
+package net.sharksystem.hub;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+public class PeerIdTests {
+    @Test
+    public void internedAndEqualForAnyCharSequence() {
+        PeerId alice = PeerId.of("Alice");
+        Assert.assertSame(alice, PeerId.of(new StringBuilder("Alice")));
+        Assert.assertSame(alice, PeerId.of(alice));
+        Assert.assertNotEquals(alice, PeerId.of("alice")); // same characters - like PeerIDHelper.sameID
+        Assert.assertEquals("Alice", alice.toString());
+        Assert.assertEquals("Alice".hashCode(), alice.hashCode());
+        Assert.assertNull(PeerId.of(null));
+
+        Map<PeerId, String> registry = new HashMap<>();
+        registry.put(PeerId.of(new StringBuilder("Bob")), "connector");
+        Assert.assertEquals("connector", registry.get(PeerId.of("Bob")));
+    }
+
+    @Test
+    public void peerIdSetLooksUpAnyCharSequence() {
+        Set<CharSequence> peers = new PeerIdSet();
+        peers.add("Alice");
+        peers.add(new StringBuilder("Alice"));
+        peers.add(PeerId.of("Bob"));
+        Assert.assertEquals(2, peers.size());
+
+        Assert.assertTrue(peers.contains(new StringBuilder("Alice")));
+        Assert.assertTrue(peers.contains("Bob"));
+        Assert.assertFalse(peers.contains("Clara"));
+        Assert.assertFalse(peers.contains(42));
+
+        Assert.assertTrue(peers.remove(new StringBuilder("Bob")));
+        for(CharSequence peer : peers) Assert.assertSame(PeerId.of("Alice"), peer);
+    }
+}
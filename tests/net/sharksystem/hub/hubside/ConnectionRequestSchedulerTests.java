@@ -0,0 +1,97 @@
+package net.sharksystem.hub.hubside;
+
+import net.sharksystem.hub.protocol.ConnectionRequest;
+import net.sharksystem.hub.PeerId;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ConnectionRequestSchedulerTests {
+    private static ConnectionRequest request(String source, long until) {
+        return new ConnectionRequest(source, "Target", until, false);
+    }
+
+    @Test
+    public void earliestDeadlineFirst() {
+        long now = System.currentTimeMillis();
+        ConnectionRequestScheduler scheduler = new ConnectionRequestScheduler();
+        scheduler.add(request("Alice", now + 3000));
+        scheduler.add(request("Bob", now + 1000));
+        scheduler.add(request("Clara", now + 2000));
+        scheduler.add(request("David", now + 2000));
+
+        Assert.assertSame(PeerId.of("Bob"), scheduler.poll().sourcePeerID);
+        Assert.assertSame(PeerId.of("Clara"), scheduler.poll().sourcePeerID); // same deadline - arrival order
+        Assert.assertSame(PeerId.of("David"), scheduler.poll().sourcePeerID);
+        Assert.assertSame(PeerId.of("Alice"), scheduler.poll().sourcePeerID);
+        Assert.assertNull(scheduler.poll());
+        Assert.assertTrue(scheduler.isEmpty());
+    }
+
+    @Test
+    public void requeuedRequestKeepsItsPlace() {
+        long now = System.currentTimeMillis();
+        ConnectionRequestScheduler scheduler = new ConnectionRequestScheduler();
+        scheduler.add(request("Alice", now + 2000));
+        scheduler.add(request("Bob", now + 2000));
+
+        // Alice cannot be served yet - put back several times, still ahead of Bob
+        for(int i = 0; i < 3; i++) {
+            ConnectionRequest alice = scheduler.poll();
+            Assert.assertSame(PeerId.of("Alice"), alice.sourcePeerID);
+            scheduler.requeue(alice);
+            Assert.assertEquals(2, scheduler.size());
+        }
+
+        // Alice asks again while her request is out - one request with later deadline, same place
+        ConnectionRequest alice = scheduler.poll();
+        scheduler.add(request("Alice", now + 2500));
+        scheduler.requeue(alice);
+        Assert.assertEquals(2, scheduler.size());
+        scheduler.add(request("Clara", now + 2500));
+        Assert.assertSame(PeerId.of("Bob"), scheduler.poll().sourcePeerID);
+        alice = scheduler.poll();
+        Assert.assertSame(PeerId.of("Alice"), alice.sourcePeerID);
+        Assert.assertEquals(now + 2500, alice.until);
+        Assert.assertSame(PeerId.of("Clara"), scheduler.poll().sourcePeerID);
+        Assert.assertNull(scheduler.poll());
+    }
+
+    @Test
+    public void repeatedRequestExtendsDeadlineOnly() {
+        long now = System.currentTimeMillis();
+        ConnectionRequestScheduler scheduler = new ConnectionRequestScheduler();
+        Assert.assertTrue(scheduler.add(request("Alice", now + 1000)));
+        Assert.assertTrue(scheduler.add(request("Bob", now + 2000)));
+        for(int i = 0; i < 100; i++) {
+            Assert.assertFalse(scheduler.add(request("Alice", now + 3000 + i)));
+        }
+        Assert.assertEquals(2, scheduler.size());
+
+        // chatty Alice does not get ahead of Bob
+        Assert.assertSame(PeerId.of("Bob"), scheduler.poll().sourcePeerID);
+        ConnectionRequest alice = scheduler.poll();
+        Assert.assertSame(PeerId.of("Alice"), alice.sourcePeerID);
+        Assert.assertEquals(now + 3099, alice.until);
+        Assert.assertNull(scheduler.poll());
+    }
+
+    @Test
+    public void expiredAndWithdrawnRequestsAreDropped() {
+        long now = System.currentTimeMillis();
+        ConnectionRequestScheduler scheduler = new ConnectionRequestScheduler();
+        scheduler.add(request("Alice", now - 1));
+        scheduler.add(request("Bob", now + 5000));
+        scheduler.add(request("Clara", now + 6000));
+
+        Assert.assertTrue(scheduler.remove("Bob", "Target"));
+        Assert.assertFalse(scheduler.remove("Bob", "Target"));
+        Assert.assertFalse(scheduler.remove("Clara", "Other"));
+
+        Assert.assertSame(PeerId.of("Clara"), scheduler.poll().sourcePeerID);
+        Assert.assertNull(scheduler.poll());
+
+        // withdrawn request can be asked for again
+        Assert.assertTrue(scheduler.add(request("Bob", now + 5000)));
+        Assert.assertSame(PeerId.of("Bob"), scheduler.poll().sourcePeerID);
+    }
+}
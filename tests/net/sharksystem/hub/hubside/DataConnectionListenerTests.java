@@ -0,0 +1,181 @@
+package net.sharksystem.hub.hubside;
+
+import net.sharksystem.asap.ASAPException;
+import net.sharksystem.asap.utils.ASAPSerialization;
+import net.sharksystem.hub.utils.HubThreads;
+import net.sharksystem.streams.StreamPair;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+public class DataConnectionListenerTests {
+    private static Socket connect(int port, long token) throws IOException {
+        Socket socket = new Socket("localhost", port);
+        DataOutputStream dos = new DataOutputStream(socket.getOutputStream());
+        dos.writeLong(token);
+        dos.flush();
+        return socket;
+    }
+
+    @Test
+    public void connectionsArePairedByToken() throws IOException, InterruptedException {
+        DataConnectionListener dataListener = new DataConnectionListener(0, HubThreads.platformThreadFactory());
+        dataListener.start();
+        BlockingQueue<String> created = new LinkedBlockingQueue<>();
+        NewConnectionCreatorListener listener = (source, target, streamPair, timeOut) -> {
+            created.add(source + " --> " + target);
+            streamPair.close();
+        };
+
+        long aliceToken = dataListener.expect(listener, "Alice", "Bob", 10000, 1000);
+        long claraToken = dataListener.expect(listener, "Clara", "Bob", 10000, 1000);
+        Assert.assertNotEquals(aliceToken, claraToken);
+        Assert.assertEquals(2, dataListener.waitingEncounters());
+
+        Socket clara = connect(dataListener.getPort(), claraToken);
+        Socket alice = connect(dataListener.getPort(), aliceToken);
+        try {
+            String first = created.poll(5, TimeUnit.SECONDS);
+            String second = created.poll(5, TimeUnit.SECONDS);
+            Assert.assertNotNull(second);
+            Assert.assertNotEquals(first, second);
+            Assert.assertTrue(first.endsWith(" --> Bob") && second.endsWith(" --> Bob"));
+        } finally {
+            clara.close();
+            alice.close();
+        }
+        Assert.assertEquals(0, dataListener.waitingEncounters());
+
+        // unknown token - connection is closed
+        try(Socket unknown = connect(dataListener.getPort(), 42)) {
+            unknown.setSoTimeout(5000);
+            Assert.assertEquals(-1, unknown.getInputStream().read());
+        }
+        Assert.assertNull(created.poll(100, TimeUnit.MILLISECONDS));
+        dataListener.kill();
+    }
+
+    @Test
+    public void encounterWithoutConnectionIsDropped() throws IOException, InterruptedException {
+        DataConnectionListener dataListener = new DataConnectionListener(0, HubThreads.platformThreadFactory());
+        dataListener.start();
+        BlockingQueue<StreamPair> created = new LinkedBlockingQueue<>();
+        NewConnectionCreatorListener listener = (source, target, streamPair, timeOut) -> created.add(streamPair);
+
+        long token = dataListener.expect(listener, "Alice", "Bob", 20, 1000);
+        for(int i = 0; i < 100 && dataListener.waitingEncounters() > 0; i++) Thread.sleep(10);
+        Assert.assertEquals(0, dataListener.waitingEncounters());
+
+        // late connection is closed
+        try(Socket late = connect(dataListener.getPort(), token)) {
+            late.setSoTimeout(5000);
+            Assert.assertEquals(-1, late.getInputStream().read());
+        }
+        Assert.assertTrue(created.isEmpty());
+        dataListener.kill();
+    }
+
+    @Test
+    public void tokenInPiecesAndOldestUnpairedConnectionIsClosed() throws IOException, InterruptedException {
+        DataConnectionListener dataListener =
+                new DataConnectionListener(0, HubThreads.platformThreadFactory(), 2,
+                        DataConnectionListener.DEFAULT_MAX_UNPAIRED_PER_ADDRESS);
+        dataListener.start();
+        BlockingQueue<String> created = new LinkedBlockingQueue<>();
+        NewConnectionCreatorListener listener = (source, target, streamPair, timeOut) -> {
+            created.add(source + " --> " + target);
+            streamPair.close();
+        };
+        long token = dataListener.expect(listener, "Alice", "Bob", 10000, 1000);
+
+        try(Socket oldest = new Socket("localhost", dataListener.getPort());
+            Socket silent = new Socket("localhost", dataListener.getPort());
+            Socket alice = new Socket("localhost", dataListener.getPort())) {
+
+            // limit reached - oldest connection without token is closed
+            oldest.setSoTimeout(5000);
+            Assert.assertEquals(-1, oldest.getInputStream().read());
+
+            // token arrives in pieces
+            DataOutputStream dos = new DataOutputStream(alice.getOutputStream());
+            dos.writeInt((int) (token >>> 32));
+            dos.flush();
+            Thread.sleep(100);
+            Assert.assertNull(created.poll());
+            dos.writeInt((int) token);
+            dos.flush();
+            Assert.assertEquals("Alice --> Bob", created.poll(5, TimeUnit.SECONDS));
+
+            // others wait for their token
+            silent.setSoTimeout(100);
+            try {
+                silent.getInputStream().read();
+                Assert.fail("connection without token is still open");
+            } catch (SocketTimeoutException e) {
+                // expected
+            }
+        }
+        dataListener.kill();
+    }
+
+    @Test
+    public void oldestConnectionFromSameAddressIsClosed() throws IOException {
+        DataConnectionListener dataListener = new DataConnectionListener(0, HubThreads.platformThreadFactory(),
+                DataConnectionListener.DEFAULT_MAX_UNPAIRED_CONNECTIONS, 2);
+        dataListener.start();
+
+        try(Socket oldest = new Socket("localhost", dataListener.getPort());
+            Socket second = new Socket("localhost", dataListener.getPort());
+            Socket third = new Socket("localhost", dataListener.getPort())) {
+
+            oldest.setSoTimeout(5000);
+            Assert.assertEquals(-1, oldest.getInputStream().read());
+            Assert.assertTrue(second.isConnected() && third.isConnected());
+        }
+        dataListener.kill();
+    }
+
+    @Test
+    public void connectionWaitsForNextTokenAfterCleanEnd() throws IOException, InterruptedException, ASAPException {
+        DataConnectionListener dataListener = new DataConnectionListener(0, HubThreads.platformThreadFactory());
+        dataListener.start();
+        BlockingQueue<StreamPair> created = new LinkedBlockingQueue<>();
+        NewConnectionCreatorListener listener = (source, target, streamPair, timeOut) -> created.add(streamPair);
+
+        long firstToken = dataListener.expect(listener, "Alice", "Bob", 10000, 5000);
+        try(Socket peer = connect(dataListener.getPort(), firstToken)) {
+            StreamPair first = created.poll(5, TimeUnit.SECONDS);
+            Assert.assertNotNull(first);
+
+            // hub side sends data and ends session
+            first.getOutputStream().write(42);
+            first.close();
+
+            // framed: chunk and end mark - peer side ends as well
+            InputStream is = peer.getInputStream();
+            Assert.assertEquals(1, ASAPSerialization.readIntegerParameter(is));
+            Assert.assertEquals(42, is.read());
+            Assert.assertEquals(0, ASAPSerialization.readIntegerParameter(is));
+            ASAPSerialization.writeIntegerParameter(0, peer.getOutputStream());
+
+            // same connection - next encounter
+            long secondToken = dataListener.expect(listener, "Alice", "Clara", 10000, 5000);
+            DataOutputStream dos = new DataOutputStream(peer.getOutputStream());
+            dos.writeLong(secondToken);
+            dos.flush();
+            StreamPair second = created.poll(5, TimeUnit.SECONDS);
+            Assert.assertNotNull(second);
+            Assert.assertNotSame(first, second);
+            Assert.assertEquals(0, dataListener.waitingEncounters());
+        }
+        dataListener.kill();
+    }
+}
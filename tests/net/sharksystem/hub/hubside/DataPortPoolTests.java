@@ -0,0 +1,108 @@
+package net.sharksystem.hub.hubside;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+
+public class DataPortPoolTests {
+    private static int freePortRange(int size) throws IOException {
+        for(int attempt = 0; attempt < 20; attempt++) {
+            int minPort;
+            try(ServerSocket probe = new ServerSocket(0)) {
+                minPort = probe.getLocalPort();
+            }
+            if(minPort + size > 65535) continue;
+            boolean free = true;
+            for(int port = minPort; free && port < minPort + size; port++) {
+                try {
+                    new ServerSocket(port).close();
+                } catch (IOException e) {
+                    free = false;
+                }
+            }
+            if(free) return minPort;
+        }
+        throw new IOException("no free port range found");
+    }
+
+    @Test
+    public void releasedSocketIsLeasedAgainWithoutBind() throws IOException {
+        DataPortPool pool = new DataPortPool();
+        ServerSocket srv = pool.lease();
+        int port = srv.getLocalPort();
+
+        // expected data connection - and a late one nobody waits for
+        try(Socket peer = new Socket("localhost", port); Socket accepted = srv.accept()) {
+            Assert.assertEquals(peer.getLocalPort(), accepted.getPort());
+            Socket late = new Socket();
+            late.connect(new InetSocketAddress("localhost", port));
+            pool.release(srv);
+            Assert.assertEquals(1, pool.idleSockets());
+            late.close();
+        }
+
+        ServerSocket again = pool.lease();
+        Assert.assertSame(srv, again);
+        Assert.assertFalse(again.isClosed());
+        Assert.assertEquals(port, again.getLocalPort());
+        Assert.assertEquals(0, pool.idleSockets());
+
+        pool.discard(again);
+        Assert.assertTrue(again.isClosed());
+        pool.close();
+    }
+
+    @Test
+    public void strayConnectionToIdleSocketIsDroppedOnLease() throws IOException {
+        DataPortPool pool = new DataPortPool();
+        ServerSocket srv = pool.lease();
+        pool.release(srv);
+
+        // idle socket still listens
+        Socket stray = new Socket("localhost", srv.getLocalPort());
+
+        ServerSocket again = pool.lease();
+        Assert.assertSame(srv, again);
+        try(Socket peer = new Socket("localhost", again.getLocalPort()); Socket accepted = again.accept()) {
+            Assert.assertEquals(peer.getLocalPort(), accepted.getPort());
+        }
+        stray.close();
+        pool.discard(again);
+        pool.close();
+    }
+
+    @Test
+    public void portRangeIsSharedByBitmap() throws IOException {
+        int minPort = freePortRange(3);
+        DataPortPool pool = new DataPortPool(minPort, minPort + 2, 2);
+
+        ServerSocket foreign = new ServerSocket(minPort + 1);
+        try {
+            ServerSocket first = pool.lease();
+            ServerSocket second = pool.lease();
+            Assert.assertEquals(minPort, first.getLocalPort());
+            Assert.assertEquals(minPort + 2, second.getLocalPort()); // foreign port skipped
+            try {
+                pool.lease();
+                Assert.fail("all ports are in use");
+            } catch (IOException e) {
+                // expected
+            }
+
+            // discarded port can be bound again
+            pool.discard(first);
+            ServerSocket third = pool.lease();
+            Assert.assertEquals(minPort, third.getLocalPort());
+            pool.discard(second);
+            pool.discard(third);
+        } finally {
+            foreign.close();
+        }
+        pool.close();
+        Assert.assertEquals(0, pool.idleSockets());
+    }
+}
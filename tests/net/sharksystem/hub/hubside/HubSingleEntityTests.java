@@ -0,0 +1,143 @@
+package net.sharksystem.hub.hubside;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+public class HubSingleEntityTests {
+    private static ConnectorInternal dummyConnector() {
+        return (ConnectorInternal) Proxy.newProxyInstance(ConnectorInternal.class.getClassLoader(),
+                new Class<?>[] {ConnectorInternal.class}, (proxy, method, args) -> {
+                    if(method.getName().equals("equals")) return proxy == args[0];
+                    if(method.getName().equals("hashCode")) return System.identityHashCode(proxy);
+                    return null;
+                });
+    }
+
+    @Test
+    public void snapshotIsNotChangedByRegistration() {
+        HubSingleEntitySharedChannel hub = new HubSingleEntitySharedChannel();
+        long version = hub.getRegistryVersion();
+
+        hub.register("Alice", dummyConnector());
+        Set<CharSequence> peers = hub.getRegisteredPeers();
+        Assert.assertEquals(1, peers.size());
+        Assert.assertTrue(hub.getRegistryVersion() > version);
+
+        // same version - same snapshot
+        Assert.assertSame(peers, hub.getRegisteredPeers());
+
+        hub.register("Bob", dummyConnector());
+        Assert.assertEquals(1, peers.size());
+        Assert.assertEquals(2, hub.getRegisteredPeers().size());
+        Assert.assertTrue(hub.isRegistered(new StringBuilder("Bob")));
+    }
+
+    @Test
+    public void lateUnregisterKeepsNewConnector() {
+        HubSingleEntitySharedChannel hub = new HubSingleEntitySharedChannel();
+        ConnectorInternal oldConnector = dummyConnector();
+        ConnectorInternal newConnector = dummyConnector();
+
+        hub.register("Alice", oldConnector);
+        hub.register("Alice", newConnector); // re-connected
+        long version = hub.getRegistryVersion();
+
+        hub.unregister("Alice", oldConnector); // old connector noticed connection loss
+        Assert.assertTrue(hub.isRegistered("Alice"));
+        Assert.assertEquals(version, hub.getRegistryVersion());
+
+        hub.unregister("Alice", newConnector);
+        Assert.assertFalse(hub.isRegistered("Alice"));
+        Assert.assertTrue(hub.getRegisteredPeers().isEmpty());
+    }
+
+    @Test
+    public void concurrentChurn() throws InterruptedException {
+        HubSingleEntitySharedChannel hub = new HubSingleEntitySharedChannel();
+        int numberThreads = 8;
+        int peersPerThread = 500;
+
+        List<Thread> threads = new ArrayList<>();
+        for(int t = 0; t < numberThreads; t++) {
+            int threadNumber = t;
+            threads.add(new Thread(() -> {
+                for(int i = 0; i < peersPerThread; i++) {
+                    ConnectorInternal connector = dummyConnector();
+                    String peerID = "peer_" + threadNumber + "_" + i;
+                    hub.register(peerID, connector);
+                    hub.getRegisteredPeers().size();
+                    // every other peer leaves again
+                    if(i % 2 == 0) hub.unregister(peerID, connector);
+                }
+            }));
+        }
+        for(Thread thread : threads) thread.start();
+        for(Thread thread : threads) thread.join();
+
+        Assert.assertEquals(numberThreads * peersPerThread / 2, hub.getRegisteredPeers().size());
+        Assert.assertTrue(hub.isRegistered("peer_0_1"));
+        Assert.assertFalse(hub.isRegistered("peer_0_0"));
+    }
+
+    @Test
+    public void deltaSinceKnownVersion() {
+        HubSingleEntitySharedChannel hub = new HubSingleEntitySharedChannel();
+        hub.register("Alice", dummyConnector());
+        hub.register("Bob", dummyConnector());
+
+        RegisteredPeersDelta complete = hub.getRegisteredPeersDelta(-1);
+        Assert.assertTrue(complete.complete);
+        Assert.assertEquals(2, complete.addedPeers.size());
+        // no change - same cached reply
+        Assert.assertSame(complete, hub.getRegisteredPeersDelta(-1));
+
+        ConnectorInternal clara = dummyConnector();
+        hub.register("Clara", clara);
+        hub.unregister("Bob");
+        hub.register("David", dummyConnector());
+        hub.unregister("David");
+
+        RegisteredPeersDelta delta = hub.getRegisteredPeersDelta(complete.version);
+        Assert.assertFalse(delta.complete);
+        Assert.assertEquals(hub.getRegistryVersion(), delta.version);
+        Assert.assertEquals(1, delta.addedPeers.size());
+        Assert.assertTrue(delta.addedPeers.contains("Clara"));
+        Assert.assertTrue(delta.removedPeers.contains("Bob"));
+        Assert.assertTrue(delta.removedPeers.contains("David"));
+
+        // up to date
+        RegisteredPeersDelta noChange = hub.getRegisteredPeersDelta(delta.version);
+        Assert.assertTrue(noChange.addedPeers.isEmpty());
+        Assert.assertTrue(noChange.removedPeers.isEmpty());
+
+        // version from another hub incarnation
+        Assert.assertTrue(hub.getRegisteredPeersDelta(delta.version + 100).complete);
+    }
+
+    @Test
+    public void listenersSeeMembershipChangesOnly() {
+        HubSingleEntitySharedChannel hub = new HubSingleEntitySharedChannel();
+        List<Long> versions = new ArrayList<>();
+        RegistryListener listener = versions::add;
+        hub.addRegistryListener(listener);
+
+        ConnectorInternal alice = dummyConnector();
+        hub.register("Alice", alice);
+        hub.register("Alice", dummyConnector()); // re-connected - no change of membership
+        hub.unregister("Alice", alice); // late unregister of old connector
+        Assert.assertEquals(1, versions.size());
+        Assert.assertEquals(Long.valueOf(hub.getRegistryVersion()), versions.get(0));
+
+        hub.unregister("Alice");
+        Assert.assertEquals(2, versions.size());
+
+        hub.removeRegistryListener(listener);
+        hub.register("Bob", dummyConnector());
+        Assert.assertEquals(2, versions.size());
+    }
+}
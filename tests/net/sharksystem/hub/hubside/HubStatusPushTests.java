@@ -0,0 +1,56 @@
+package net.sharksystem.hub.hubside;
+
+import net.sharksystem.asap.ASAPException;
+import net.sharksystem.hub.protocol.HubPDU;
+import net.sharksystem.hub.protocol.HubPDUHubStatusDeltaRPLY;
+import net.sharksystem.hub.protocol.HubPDUHubStatusDeltaRQ;
+import net.sharksystem.hub.protocol.HubPDUHubStatusSubscribe;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.util.HashSet;
+import java.util.Set;
+
+public class HubStatusPushTests {
+    private static ConnectorInternal dummyConnector() {
+        return (ConnectorInternal) Proxy.newProxyInstance(ConnectorInternal.class.getClassLoader(),
+                new Class<?>[] {ConnectorInternal.class}, (proxy, method, args) -> {
+                    if(method.getName().equals("equals")) return proxy == args[0];
+                    if(method.getName().equals("hashCode")) return System.identityHashCode(proxy);
+                    return null;
+                });
+    }
+
+    @Test
+    public void joinStormIsPushedInFewPDUs() throws IOException, ASAPException, InterruptedException {
+        HubSingleEntitySharedChannel hub = new HubSingleEntitySharedChannel();
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        SharedChannelConnectorHubSideImpl connector =
+                new SharedChannelConnectorHubSideImpl(new ByteArrayInputStream(new byte[0]), os, hub);
+
+        connector.hubStatusSubscribe(new HubPDUHubStatusSubscribe(true, HubPDUHubStatusDeltaRQ.UNKNOWN_VERSION));
+        for(int i = 0; i < 200; i++) hub.register("peer_" + i, dummyConnector());
+        Thread.sleep(SharedChannelConnectorHubSideImpl.HUB_STATUS_PUSH_DELAY_IN_MILLIS * 10);
+
+        int pushes = 0;
+        Set<CharSequence> knownPeers = new HashSet<>();
+        ByteArrayInputStream is;
+        synchronized (connector.getOutputStream()) {
+            is = new ByteArrayInputStream(os.toByteArray());
+        }
+        while(is.available() > 0) {
+            HubPDU hubPDU = HubPDU.readPDU(is);
+            Assert.assertTrue(hubPDU instanceof HubPDUHubStatusDeltaRPLY);
+            knownPeers = ((HubPDUHubStatusDeltaRPLY) hubPDU).applyTo(knownPeers);
+            pushes++;
+        }
+
+        Assert.assertEquals(200, knownPeers.size());
+        // first push brings peer up to date, changes within push delay are sent together
+        Assert.assertTrue("pushes: " + pushes, pushes < 20);
+    }
+}
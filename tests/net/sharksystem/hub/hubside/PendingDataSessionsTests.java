@@ -0,0 +1,52 @@
+package net.sharksystem.hub.hubside;
+
+import net.sharksystem.hub.utils.HashedWheelTimer;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class PendingDataSessionsTests {
+    private static HashedWheelTimer timer() {
+        return new HashedWheelTimer(1, 64, runnable -> {
+            Thread thread = new Thread(runnable);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    private static PendingDataSessions.DataSessionRequest request(String source, String target, int timeout) {
+        return new PendingDataSessions.DataSessionRequest(source, target, null, timeout);
+    }
+
+    @Test
+    public void matchedByPairOldestFirst() {
+        PendingDataSessions pending = new PendingDataSessions(timer());
+        PendingDataSessions.DataSessionRequest first = request("Alice", "Bob", 10000);
+        PendingDataSessions.DataSessionRequest second = request("Alice", "Bob", 10000);
+        pending.add(first);
+        pending.add(request("Alice", "Clara", 10000));
+        pending.add(second);
+
+        Assert.assertNull(pending.take("Bob", "Alice"));
+        Assert.assertNull(pending.take("alice", "Bob")); // same characters - like PeerIDHelper.sameID
+        Assert.assertSame(first, pending.take("Alice", "Bob"));
+        Assert.assertSame(second, pending.take(new StringBuilder("Alice"), "Bob"));
+        Assert.assertNull(pending.take("Alice", "Bob"));
+        Assert.assertEquals(1, pending.size());
+    }
+
+    @Test
+    public void timedOutRequestsAreReaped() throws InterruptedException {
+        PendingDataSessions pending = new PendingDataSessions(timer());
+        pending.add(request("Alice", "Bob", 20));
+        PendingDataSessions.DataSessionRequest bob = request("Bob", "Alice", 10000);
+        pending.add(bob);
+
+        for(int i = 0; i < 100 && pending.size() > 1; i++) Thread.sleep(10);
+        Assert.assertEquals(1, pending.size()); // nobody asked for it
+        Assert.assertNull(pending.take("Alice", "Bob"));
+
+        // matched request is not reaped
+        Assert.assertSame(bob, pending.take("Bob", "Alice"));
+        Assert.assertEquals(0, pending.size());
+    }
+}
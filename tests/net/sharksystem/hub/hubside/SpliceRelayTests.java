@@ -0,0 +1,143 @@
+package net.sharksystem.hub.hubside;
+
+import net.sharksystem.hub.metrics.HubMetrics;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Random;
+
+public class SpliceRelayTests {
+    private ServerSocketChannel serverChannel;
+    private Socket peerA, peerB;
+    private SocketChannelStreamPair hubSideA, hubSideB;
+
+    @Before
+    public void setUp() throws IOException {
+        this.serverChannel = ServerSocketChannel.open();
+        this.serverChannel.bind(new InetSocketAddress("localhost", 0));
+        int port = this.serverChannel.socket().getLocalPort();
+
+        this.peerA = new Socket("localhost", port);
+        this.hubSideA = this.accept();
+        this.peerB = new Socket("localhost", port);
+        this.hubSideB = this.accept();
+    }
+
+    private SocketChannelStreamPair accept() throws IOException {
+        SocketChannel channel = this.serverChannel.accept();
+        return (SocketChannelStreamPair) SocketChannelStreamPair.getStreamPair(channel.socket(), "test");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        this.peerA.close();
+        this.peerB.close();
+        this.serverChannel.close();
+    }
+
+    @Test
+    public void relayBothDirectionsAndPassHalfClose() throws IOException, InterruptedException {
+        SpliceRelay relay = SpliceRelay.getSpliceRelay();
+        HubMetrics metrics = HubMetrics.getHubMetrics();
+        long bytesBefore = metrics.getBytesRelayed();
+        long sessionsBefore = metrics.getDataSessions();
+        int pooledBefore = relay.pooledBuffers();
+
+        relay.link(this.hubSideA, "A", this.hubSideB, "B", new RelayMetering());
+
+        // more than a relay buffer in both directions at the same time
+        byte[] a2b = randomBytes(300 * 1024, 1);
+        byte[] b2a = randomBytes(200 * 1024, 2);
+        Thread writerA = write(this.peerA, a2b);
+        Thread writerB = write(this.peerB, b2a);
+
+        Assert.assertArrayEquals(a2b, readFully(this.peerB.getInputStream(), a2b.length));
+        Assert.assertArrayEquals(b2a, readFully(this.peerA.getInputStream(), b2a.length));
+        writerA.join();
+        writerB.join();
+
+        // A is done sending - B sees end of stream but can still answer
+        this.peerA.shutdownOutput();
+        Assert.assertEquals(-1, this.peerB.getInputStream().read());
+        this.peerB.getOutputStream().write(42);
+        Assert.assertEquals(42, this.peerA.getInputStream().read());
+
+        // B is done too - link is closed
+        this.peerB.shutdownOutput();
+        Assert.assertEquals(-1, this.peerA.getInputStream().read());
+
+        waitUntilEnded(metrics, sessionsBefore);
+        Assert.assertEquals(sessionsBefore + 1, metrics.getDataSessions());
+        Assert.assertEquals(bytesBefore + a2b.length + b2a.length + 1, metrics.getBytesRelayed());
+        // both direction buffers are back in pool - taken from it or new ones
+        Assert.assertEquals(Math.max(pooledBefore, 2), relay.pooledBuffers());
+        Assert.assertFalse(this.hubSideA.getSocketChannel().isOpen());
+        Assert.assertFalse(this.hubSideB.getSocketChannel().isOpen());
+    }
+
+    @Test
+    public void closeOfOneSideEndsLink() throws IOException, InterruptedException {
+        SpliceRelay relay = SpliceRelay.getSpliceRelay();
+        HubMetrics metrics = HubMetrics.getHubMetrics();
+        long sessionsBefore = metrics.getDataSessions();
+        int pooledBefore = relay.pooledBuffers();
+
+        relay.link(this.hubSideA, "A", this.hubSideB, "B", new RelayMetering());
+        this.peerA.getOutputStream().write(new byte[] {1, 2, 3});
+        Assert.assertArrayEquals(new byte[] {1, 2, 3}, readFully(this.peerB.getInputStream(), 3));
+
+        // reset instead of end of stream
+        this.peerA.setSoLinger(true, 0);
+        this.peerA.close();
+
+        waitUntilEnded(metrics, sessionsBefore);
+        this.peerB.setSoTimeout(5000);
+        try {
+            Assert.assertEquals(-1, this.peerB.getInputStream().read());
+        } catch (IOException e) {
+            // connection reset - fine as well
+        }
+        Assert.assertEquals(Math.max(pooledBefore, 2), relay.pooledBuffers());
+    }
+
+    private void waitUntilEnded(HubMetrics metrics, long sessionsBefore) throws InterruptedException {
+        // buffers are returned before metering ends, channels are closed afterwards
+        for(int i = 0; i < 100 && (metrics.getDataSessions() == sessionsBefore
+                || this.hubSideA.getSocketChannel().isOpen() || this.hubSideB.getSocketChannel().isOpen()); i++) {
+            Thread.sleep(50);
+        }
+    }
+
+    private static byte[] randomBytes(int length, long seed) {
+        byte[] bytes = new byte[length];
+        new Random(seed).nextBytes(bytes);
+        return bytes;
+    }
+
+    private static Thread write(Socket socket, byte[] bytes) {
+        Thread writer = new Thread(() -> {
+            try {
+                socket.getOutputStream().write(bytes);
+            } catch (IOException e) {
+                // reader fails
+            }
+        });
+        writer.start();
+        return writer;
+    }
+
+    private static byte[] readFully(InputStream is, int length) throws IOException {
+        byte[] bytes = new byte[length];
+        new DataInputStream(is).readFully(bytes);
+        return bytes;
+    }
+}
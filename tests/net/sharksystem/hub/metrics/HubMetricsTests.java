@@ -0,0 +1,90 @@
+package net.sharksystem.hub.metrics;
+
+import net.sharksystem.hub.SharedChannelConnectorImpl;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+public class HubMetricsTests {
+    @Test
+    public void histogramPercentilesAreUpperBounds() {
+        Histogram histogram = new Histogram("test", "ms", 1);
+        for(int i = 1; i <= 100; i++) histogram.record(i);
+
+        Assert.assertEquals(100, histogram.getCount());
+        Assert.assertEquals(50.5, histogram.getMean(), 0.001);
+        Assert.assertEquals(100, histogram.getMax(), 0.001);
+
+        // estimate is upper bound of bucket - never less, at most twice the real value
+        Assert.assertTrue(histogram.getP50() >= 50 && histogram.getP50() <= 100);
+        Assert.assertTrue(histogram.getP90() >= 90 && histogram.getP90() <= 100);
+        Assert.assertEquals(100, histogram.getP99(), 0.001); // capped by max
+    }
+
+    @Test
+    public void emptyHistogram() {
+        Histogram histogram = new Histogram("test", "ms", 1000000.0);
+        Assert.assertEquals(0, histogram.getCount());
+        Assert.assertEquals(0, histogram.getMean(), 0.001);
+        Assert.assertEquals(0, histogram.getP99(), 0.001);
+    }
+
+    @Test
+    public void dataSessionsAndTimeouts() {
+        HubMetrics metrics = new HubMetrics();
+        metrics.dataSessionStarted();
+        metrics.dataSessionStarted();
+        Assert.assertEquals(2, metrics.getActiveDataSessions());
+
+        metrics.dataSessionEnded(5000000, 1024);
+        Assert.assertEquals(1, metrics.getActiveDataSessions());
+        Assert.assertEquals(2, metrics.getDataSessions());
+        Assert.assertEquals(1024, metrics.getBytesRelayed());
+        Assert.assertEquals(5, metrics.getDataSessionDuration().getMax(), 0.001);
+
+        metrics.timeout(SharedChannelConnectorImpl.ALARM_CLOCK_DATA_SESSION);
+        metrics.timeout(42); // unknown key - ignored
+        Assert.assertEquals(1, metrics.getTimeoutsDataSession());
+        Assert.assertEquals(0, metrics.getTimeoutsAskSilence());
+
+        String text = metrics.getText();
+        Assert.assertTrue(text.contains("asaphub_active_data_sessions 1\n"));
+        Assert.assertTrue(text.contains("asaphub_timeouts_data_session_total 1\n"));
+        Assert.assertTrue(text.contains("asaphub_dataSessionDuration_ms_max 5.000\n"));
+    }
+
+    @Test
+    public void textEndpointAnswersRequest() throws IOException {
+        HubMetrics metrics = new HubMetrics();
+        metrics.peerRegistered();
+
+        HubMetricsTextEndpoint endpoint = new HubMetricsTextEndpoint(InetAddress.getLoopbackAddress(), 0, metrics);
+        Thread thread = new Thread(endpoint);
+        thread.start();
+
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), endpoint.getPort())) {
+            OutputStream os = socket.getOutputStream();
+            os.write("GET /metrics HTTP/1.0\r\n\r\n".getBytes(StandardCharsets.US_ASCII));
+            os.flush();
+
+            InputStream is = socket.getInputStream();
+            ByteArrayOutputStream response = new ByteArrayOutputStream();
+            byte[] buffer = new byte[1024];
+            int read;
+            while((read = is.read(buffer)) > 0) response.write(buffer, 0, read);
+
+            String answer = new String(response.toByteArray(), StandardCharsets.UTF_8);
+            Assert.assertTrue(answer.startsWith("HTTP/1.0 200 OK"));
+            Assert.assertTrue(answer.contains("asaphub_registered_peers 1\n"));
+        } finally {
+            endpoint.kill();
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package net.sharksystem.hub.peerside;
+
+import net.sharksystem.asap.ASAPEncounterManagerImpl;
+import net.sharksystem.asap.ASAPException;
+import net.sharksystem.asap.apps.testsupport.ASAPTestPeerFS;
+import net.sharksystem.asap.engine.ASAPEngineFS;
+import net.sharksystem.hub.hubside.ASAPTCPHub;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static net.sharksystem.hub.TestConstants.*;
+
+public class ASAPHubManagerImplTests {
+    private static int freePort() throws IOException {
+        try(ServerSocket probe = new ServerSocket(0)) {
+            return probe.getLocalPort();
+        }
+    }
+
+    @Test
+    public void hubsAreConnectedInBackgroundOncePerDescription() throws IOException, ASAPException,
+            InterruptedException, ExecutionException, TimeoutException {
+
+        int hubPort = freePort();
+        ASAPTCPHub hub = ASAPTCPHub.startTCPHubThread(hubPort, false, 60);
+        int unreachablePort = freePort();
+
+        ASAPEngineFS.removeFolder(ALICE_ROOTFOLDER);
+        ASAPTestPeerFS alicePeer = new ASAPTestPeerFS(ALICE_ID, new ArrayList<>());
+        ASAPHubManager hubManager = ASAPHubManagerImpl.createASAPHubManager(new ASAPEncounterManagerImpl(alicePeer));
+
+        HubConnectorDescription reachable = new TCPHubConnectorDescriptionImpl("localhost", hubPort, false);
+        HubConnectorDescription unreachable = new TCPHubConnectorDescriptionImpl("localhost", unreachablePort, false);
+        CompletableFuture<HubConnector> connected = hubManager.connectASAPHub(reachable, alicePeer);
+        CompletableFuture<HubConnector> pending = hubManager.connectASAPHub(unreachable, alicePeer);
+
+        HubConnector hubConnector = connected.get(10, TimeUnit.SECONDS);
+        Assert.assertTrue(hubConnector.isSame(reachable));
+        Assert.assertFalse(pending.isDone()); // retries after a pause
+
+        // same hub again - no second connector
+        Assert.assertSame(hubConnector,
+                hubManager.connectASAPHub(new TCPHubConnectorDescriptionImpl("LOCALHOST", hubPort, false), alicePeer)
+                        .get(1, TimeUnit.SECONDS));
+
+        // bulk import without the unreachable hub stops trying to reach it
+        Collection<HubConnectorDescription> descriptions = new ArrayList<>();
+        descriptions.add(reachable);
+        hubManager.connectASAPHubs(descriptions, alicePeer, true);
+        Assert.assertTrue(pending.isCancelled());
+        Assert.assertSame(hubConnector, hubManager.connectASAPHub(reachable, alicePeer).get(1, TimeUnit.SECONDS));
+
+        hubManager.disconnectASAPHubs();
+        hubManager.kill();
+        hub.kill();
+    }
+}
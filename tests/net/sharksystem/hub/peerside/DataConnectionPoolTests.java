@@ -0,0 +1,123 @@
+package net.sharksystem.hub.peerside;
+
+import net.sharksystem.asap.ASAPException;
+import net.sharksystem.asap.utils.ASAPSerialization;
+import net.sharksystem.hub.utils.HubThreads;
+import net.sharksystem.streams.StreamPair;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+public class DataConnectionPoolTests {
+    /**
+     * Stands in for the hub data port - keeps accepted connections.
+     */
+    private static BlockingQueue<Socket> accepting(ServerSocket dataPort) {
+        BlockingQueue<Socket> accepted = new LinkedBlockingQueue<>();
+        new Thread(() -> {
+            try {
+                while(true) accepted.add(dataPort.accept());
+            } catch (IOException e) {
+                // closed
+            }
+        }).start();
+        return accepted;
+    }
+
+    private static void waitForWarmConnections(DataConnectionPool pool, int number) throws InterruptedException {
+        for(int i = 0; i < 500 && pool.warmConnections() != number; i++) Thread.sleep(10);
+        Assert.assertEquals(number, pool.warmConnections());
+    }
+
+    @Test
+    public void warmConnectionsOnlyForEncountersInShortOrder() throws IOException, InterruptedException {
+        try(ServerSocket dataPort = new ServerSocket(0)) {
+            BlockingQueue<Socket> accepted = accepting(dataPort);
+            DataConnectionPool pool = new DataConnectionPool("localhost", 2, 10000,
+                    HubThreads.platformThreadFactory());
+
+            // single encounter - nothing kept in advance
+            Socket first = pool.lease(dataPort.getLocalPort());
+            Assert.assertTrue(first.isConnected());
+            Assert.assertNotNull(accepted.poll(5, TimeUnit.SECONDS));
+            Assert.assertNull(accepted.poll(100, TimeUnit.MILLISECONDS));
+            Assert.assertEquals(0, pool.warmConnections());
+
+            // second encounter within idle time - one warm connection for the next one
+            Socket second = pool.lease(dataPort.getLocalPort());
+            waitForWarmConnections(pool, 1);
+            for(int i = 0; i < 2; i++) Assert.assertNotNull(accepted.poll(5, TimeUnit.SECONDS));
+
+            // next encounter needs no connection setup - leased one is replaced
+            Socket third = pool.lease(dataPort.getLocalPort());
+            Assert.assertTrue(third.isConnected());
+            Assert.assertNotSame(second, third);
+            waitForWarmConnections(pool, 1);
+            Assert.assertNotNull(accepted.poll(5, TimeUnit.SECONDS));
+            Assert.assertNull(accepted.poll(100, TimeUnit.MILLISECONDS));
+
+            pool.close();
+            Assert.assertEquals(0, pool.warmConnections());
+            first.close();
+            second.close();
+            third.close();
+        }
+    }
+
+    @Test
+    public void connectionIsLeasedAgainAfterCleanEndOfSession()
+            throws IOException, InterruptedException, ASAPException {
+
+        try(ServerSocket dataPort = new ServerSocket(0)) {
+            BlockingQueue<Socket> accepted = accepting(dataPort);
+            DataConnectionPool pool = new DataConnectionPool("localhost", 2, 10000,
+                    HubThreads.platformThreadFactory());
+
+            Socket socket = pool.lease(dataPort.getLocalPort());
+            Socket hubSide = accepted.poll(5, TimeUnit.SECONDS);
+            Assert.assertNotNull(hubSide);
+            StreamPair session = pool.framedDataSession(socket, dataPort.getLocalPort(), "session", 5000);
+
+            // both sides end their data
+            ASAPSerialization.writeIntegerParameter(0, hubSide.getOutputStream());
+            Assert.assertEquals(-1, session.getInputStream().read());
+            session.close();
+            Assert.assertEquals(0, ASAPSerialization.readIntegerParameter(hubSide.getInputStream()));
+
+            waitForWarmConnections(pool, 1);
+            Assert.assertSame(socket, pool.lease(dataPort.getLocalPort()));
+
+            pool.close();
+            socket.close();
+            hubSide.close();
+        }
+    }
+
+    @Test
+    public void idleWarmConnectionsAreReaped() throws IOException, InterruptedException {
+        try(ServerSocket dataPort = new ServerSocket(0)) {
+            BlockingQueue<Socket> accepted = accepting(dataPort);
+            DataConnectionPool pool = new DataConnectionPool("localhost", 1, 500,
+                    HubThreads.platformThreadFactory());
+
+            // encounters in short order - a warm connection is opened
+            pool.lease(dataPort.getLocalPort()).close();
+            pool.lease(dataPort.getLocalPort()).close();
+            for(int i = 0; i < 2; i++) Assert.assertNotNull(accepted.poll(5, TimeUnit.SECONDS));
+            Socket warm = accepted.poll(5, TimeUnit.SECONDS);
+            Assert.assertNotNull(warm);
+
+            // closed by pool - not replaced
+            waitForWarmConnections(pool, 0);
+            warm.setSoTimeout(5000);
+            Assert.assertEquals(-1, warm.getInputStream().read());
+            Assert.assertNull(accepted.poll(100, TimeUnit.MILLISECONDS));
+        }
+    }
+}
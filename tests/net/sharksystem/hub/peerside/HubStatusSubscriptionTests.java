@@ -0,0 +1,113 @@
+package net.sharksystem.hub.peerside;
+
+import net.sharksystem.TestHelper;
+import net.sharksystem.asap.ASAPException;
+import net.sharksystem.hub.Connector;
+import net.sharksystem.hub.PeerIdSet;
+import net.sharksystem.hub.protocol.*;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static net.sharksystem.hub.TestConstants.*;
+
+/**
+ * Subscribed peer side tells answers to its status requests from pushes - a hub plays its part over a plain socket.
+ */
+public class HubStatusSubscriptionTests {
+    private static class SyncRecorder implements HubConnectorStatusListener {
+        final BlockingQueue<boolean[]> synced = new LinkedBlockingQueue<>();
+
+        @Override
+        public void notifyConnectedAndOpen() {
+        }
+
+        @Override
+        public void notifySynced(Connector connector, boolean changed) {
+            Assert.fail("peer side tells whether it was polled");
+        }
+
+        @Override
+        public void notifySynced(Connector connector, boolean changed, boolean polled) {
+            this.synced.add(new boolean[] {changed, polled});
+        }
+
+        boolean[] next() throws InterruptedException {
+            boolean[] synced = this.synced.poll(5, TimeUnit.SECONDS);
+            Assert.assertNotNull(synced);
+            return synced;
+        }
+    }
+
+    @Test
+    public void pushesAreNotPollResults() throws IOException, ASAPException, InterruptedException {
+        int port = TestHelper.getPortNumber();
+        try(ServerSocket serverSocket = new ServerSocket(port)) {
+            SharedChannelConnectorPeerSide peer = (SharedChannelConnectorPeerSide)
+                    SharedTCPChannelConnectorPeerSide.createTCPHubConnector("localhost", port, false);
+            peer.setHubStatusDelta(true);
+            peer.setHubStatusSubscription(true);
+            SyncRecorder recorder = new SyncRecorder();
+            peer.addStatusListener(recorder);
+            peer.connectHub(ALICE_ID);
+
+            try(Socket socket = serverSocket.accept()) {
+                HubPDUReader reader = new HubPDUReader(socket.getInputStream());
+                HubPDUWriter writer = new HubPDUWriter(socket.getOutputStream());
+                Assert.assertTrue(readNext(reader, HubPDUHubStatusSubscribe.class).subscribe);
+
+                // peer side asks when connector protocol starts - twice, by connector and by its thread
+                boolean[] synced = null;
+                for(int i = 0; i < 2; i++) {
+                    Assert.assertEquals(HubPDUHubStatusDeltaRQ.UNKNOWN_VERSION,
+                            readNext(reader, HubPDUHubStatusDeltaRQ.class).knownVersion);
+                    writer.write(new HubPDUHubStatusDeltaRPLY(1, true,
+                            new PeerIdSet(Arrays.asList(ALICE_ID, BOB_ID)), null));
+                    synced = recorder.next();
+                    Assert.assertTrue(synced[1]);
+                }
+
+                // hub pushes
+                writer.write(new HubPDUHubStatusDeltaRPLY(2, false,
+                        new PeerIdSet(Arrays.asList(CLARA_ID)), null));
+                synced = recorder.next();
+                Assert.assertTrue(synced[0]);
+                Assert.assertFalse(synced[1]);
+
+                // peer asks - answer is a poll result
+                peer.syncHubInformation();
+                Assert.assertEquals(2, readNext(reader, HubPDUHubStatusDeltaRQ.class).knownVersion);
+                writer.write(new HubPDUHubStatusDeltaRPLY(2, false, null, null));
+                synced = recorder.next();
+                Assert.assertFalse(synced[0]);
+                Assert.assertTrue(synced[1]);
+
+                // next push
+                writer.write(new HubPDUHubStatusDeltaRPLY(3, false, null,
+                        new PeerIdSet(Arrays.asList(CLARA_ID))));
+                synced = recorder.next();
+                Assert.assertTrue(synced[0]);
+                Assert.assertFalse(synced[1]);
+            }
+            peer.disconnectHub();
+        }
+    }
+
+    /**
+     * @return next pdu of this type - others are skipped
+     */
+    private static <T extends HubPDU> T readNext(HubPDUReader reader, Class<T> type)
+            throws IOException, ASAPException {
+        for(;;) {
+            HubPDU hubPDU = reader.read();
+            if(type.isInstance(hubPDU)) return type.cast(hubPDU);
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package net.sharksystem.hub.peerside;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Random;
+
+public class SyncScheduleTests {
+    @Test
+    public void changesShortenIntervalQuietHubBacksOff() {
+        SyncSchedule schedule = new SyncSchedule(1000, 8000, new Random(42));
+        Assert.assertTrue(schedule.isDue(0)); // first sync right away
+        Assert.assertEquals(1000, schedule.getIntervalInMillis());
+
+        // nothing changes - back off up to max
+        long expected = 1000;
+        for(int i = 0; i < 5; i++) {
+            schedule.synced(false, 0);
+            expected = Math.min(8000, expected * 2);
+            Assert.assertEquals(expected, schedule.getIntervalInMillis());
+        }
+
+        // busy hub - down to min
+        schedule.synced(true, 0);
+        Assert.assertEquals(4000, schedule.getIntervalInMillis());
+        for(int i = 0; i < 5; i++) schedule.synced(true, 0);
+        Assert.assertEquals(1000, schedule.getIntervalInMillis());
+    }
+
+    @Test
+    public void syncsAreJitteredAroundInterval() {
+        SyncSchedule schedule = new SyncSchedule(10000, 10000, new Random(7));
+        long earliest = Long.MAX_VALUE, latest = Long.MIN_VALUE;
+        for(int i = 0; i < 1000; i++) {
+            schedule.synced(false, 0);
+            earliest = Math.min(earliest, schedule.getNextSync());
+            latest = Math.max(latest, schedule.getNextSync());
+        }
+        Assert.assertTrue(earliest >= 8000 && latest <= 12000);
+        Assert.assertTrue(latest - earliest > 2000); // spread - not all at same time
+
+        // sync started - next one is scheduled in case no answer comes
+        schedule.syncStarted(100000);
+        Assert.assertFalse(schedule.isDue(100000));
+        Assert.assertTrue(schedule.isDue(112000));
+    }
+
+    @Test
+    public void pushesBackOffToMaxInterval() {
+        SyncSchedule schedule = new SyncSchedule(1000, 8000, new Random(3));
+        schedule.synced(true, 0);
+        Assert.assertEquals(1000, schedule.getIntervalInMillis());
+
+        // subscribed - hub pushes, no need to ask it
+        schedule.pushed(0);
+        Assert.assertEquals(8000, schedule.getIntervalInMillis());
+        Assert.assertFalse(schedule.isDue(6000));
+
+        // each push postpones next sync
+        schedule.pushed(5000);
+        Assert.assertFalse(schedule.isDue(11000));
+        Assert.assertTrue(schedule.isDue(5000 + 8000 * 6 / 5));
+    }
+}
@@ -0,0 +1,83 @@
+package net.sharksystem.hub.peerside;
+
+import net.sharksystem.TestHelper;
+import net.sharksystem.asap.ASAPException;
+import net.sharksystem.hub.protocol.*;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+
+import static net.sharksystem.hub.TestConstants.*;
+
+/**
+ * Peer side asks for enveloped PDUs - a hub plays its part over a plain socket.
+ */
+public class WireFormatNegotiationTests {
+    @Test
+    public void legacyFormatUntilHubAccepted() throws IOException, ASAPException {
+        int port = TestHelper.getPortNumber();
+        try(ServerSocket serverSocket = new ServerSocket(port)) {
+            SharedChannelConnectorPeerSide peer = (SharedChannelConnectorPeerSide)
+                    SharedTCPChannelConnectorPeerSide.createTCPHubConnector("localhost", port, false);
+            peer.setEnvelopedPDUs(true);
+            peer.connectHub(ALICE_ID);
+
+            try(Socket socket = serverSocket.accept()) {
+                HubPDUReader reader = new HubPDUReader(socket.getInputStream());
+                HubPDUWriter writer = new HubPDUWriter(socket.getOutputStream());
+                Assert.assertEquals(HubPDUWireFormat.ENVELOPE, readNext(reader, HubPDUWireFormat.class).version);
+
+                // hub has not answered yet - peer side must stay with legacy format
+                peer.connectPeer(BOB_ID);
+                Assert.assertEquals(BOB_ID, readNext(reader, HubPDUConnectPeerRQ.class).peerID.toString());
+
+                // accept - peer side confirms in legacy format and sends envelopes after that
+                writer.write(new HubPDUWireFormat(HubPDUWireFormat.ENVELOPE));
+                writer.setEnveloped(true);
+                Assert.assertEquals(HubPDUWireFormat.ENVELOPE, readNext(reader, HubPDUWireFormat.class).version);
+                reader.setEnveloped(true);
+
+                peer.connectPeer(CLARA_ID);
+                Assert.assertEquals(CLARA_ID, readNext(reader, HubPDUConnectPeerRQ.class).peerID.toString());
+            }
+            peer.disconnectHub();
+        }
+    }
+
+    @Test
+    public void legacyFormatIfHubRefused() throws IOException, ASAPException {
+        int port = TestHelper.getPortNumber();
+        try(ServerSocket serverSocket = new ServerSocket(port)) {
+            SharedChannelConnectorPeerSide peer = (SharedChannelConnectorPeerSide)
+                    SharedTCPChannelConnectorPeerSide.createTCPHubConnector("localhost", port, false);
+            peer.setEnvelopedPDUs(true);
+            peer.connectHub(ALICE_ID);
+
+            try(Socket socket = serverSocket.accept()) {
+                HubPDUReader reader = new HubPDUReader(socket.getInputStream());
+                HubPDUWriter writer = new HubPDUWriter(socket.getOutputStream());
+                readNext(reader, HubPDUWireFormat.class);
+
+                // no confirmation - next pdu is in legacy format
+                writer.write(new HubPDUWireFormat(HubPDUWireFormat.LEGACY));
+                peer.connectPeer(BOB_ID);
+                Assert.assertEquals(BOB_ID, readNext(reader, HubPDUConnectPeerRQ.class).peerID.toString());
+            }
+            peer.disconnectHub();
+        }
+    }
+
+    /**
+     * @return next pdu of this type - peer side sends status requests as it likes, they are skipped
+     */
+    private static <T extends HubPDU> T readNext(HubPDUReader reader, Class<T> type)
+            throws IOException, ASAPException {
+        for(;;) {
+            HubPDU hubPDU = reader.read();
+            if(type.isInstance(hubPDU)) return type.cast(hubPDU);
+        }
+    }
+}
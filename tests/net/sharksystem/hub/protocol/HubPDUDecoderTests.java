@@ -0,0 +1,228 @@
+package net.sharksystem.hub.protocol;
+
+import net.sharksystem.asap.ASAPException;
+import net.sharksystem.hub.PeerId;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.HashSet;
+import java.util.Set;
+
+public class HubPDUDecoderTests {
+    @Test
+    public void decodeByteByByte() throws IOException, ASAPException {
+        Set<CharSequence> peers = new HashSet<>();
+        peers.add("Bob");
+        peers.add("Clara");
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        new HubPDURegister("Alice", true).sendPDU(baos);
+        new HubPDUHubStatusRQ().sendPDU(baos);
+        new HubPDUHubStatusRPLY(peers).sendPDU(baos);
+        new HubPDUConnectPeerRQ("Bob").sendPDU(baos);
+        byte[] bytes = baos.toByteArray();
+
+        // bytes arrive one by one
+        ByteBuffer buffer = ByteBuffer.allocate(bytes.length);
+        buffer.flip();
+        int numberPDUs = 0;
+        HubPDU lastPDU = null;
+        for(byte b : bytes) {
+            buffer.compact();
+            buffer.put(b);
+            buffer.flip();
+
+            HubPDU hubPDU = HubPDUDecoder.decode(buffer);
+            if(hubPDU != null) {
+                numberPDUs++;
+                lastPDU = hubPDU;
+                if(numberPDUs == 1) {
+                    Assert.assertSame(PeerId.of("Alice"), ((HubPDURegister) hubPDU).peerID);
+                    Assert.assertTrue(((HubPDURegister) hubPDU).canCreateTCPConnections);
+                }
+                if(numberPDUs == 3) {
+                    Assert.assertEquals(2, ((HubPDUHubStatusRPLY) hubPDU).connectedPeers.size());
+                }
+            }
+        }
+
+        Assert.assertEquals(4, numberPDUs);
+        Assert.assertSame(PeerId.of("Bob"), ((HubPDUConnectPeerRQ) lastPDU).peerID);
+        Assert.assertFalse(buffer.hasRemaining());
+    }
+
+    @Test
+    public void incompletePDULeavesBufferUntouched() throws IOException, ASAPException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        new HubPDUConnectPeerRQ("Bob").sendPDU(baos);
+        byte[] bytes = baos.toByteArray();
+
+        ByteBuffer buffer = ByteBuffer.wrap(bytes, 0, bytes.length - 1);
+        Assert.assertNull(HubPDUDecoder.decode(buffer));
+        Assert.assertEquals(0, buffer.position());
+        Assert.assertEquals(bytes.length - 1, buffer.remaining());
+    }
+
+    @Test
+    public void largeLegacyPDUIsNotParsedWithEachChunk() throws IOException, ASAPException {
+        Set<CharSequence> peers = new HashSet<>();
+        for(int i = 0; i < 200; i++) peers.add("peer_with_a_rather_long_name_" + i);
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        new HubPDUHubStatusRPLY(peers).sendPDU(baos);
+        byte[] bytes = baos.toByteArray();
+
+        HubPDUReader pduReader = new HubPDUReader(new ByteArrayInputStream(new byte[0]));
+        ByteBuffer buffer = ByteBuffer.allocate(bytes.length);
+        buffer.flip();
+        int attempts = 0;
+        int chunks = 0;
+        HubPDU hubPDU = null;
+        int requiredSize = 0;
+        for(int i = 0; i < bytes.length && hubPDU == null; i += 4, chunks++) {
+            buffer.compact();
+            buffer.put(bytes, i, Math.min(4, bytes.length - i));
+            buffer.flip();
+
+            // like a non-blocking session: no attempt before pdu can be complete
+            if(buffer.remaining() < requiredSize) continue;
+            attempts++;
+            hubPDU = pduReader.decode(buffer);
+            if(hubPDU == null) {
+                // each attempt gets further than the one before
+                Assert.assertTrue(pduReader.frameSize(buffer) > requiredSize);
+                requiredSize = pduReader.frameSize(buffer);
+                Assert.assertTrue(requiredSize > buffer.remaining());
+                Assert.assertEquals(0, buffer.position());
+            }
+        }
+
+        Assert.assertNotNull(hubPDU);
+        Assert.assertEquals(200, ((HubPDUHubStatusRPLY) hubPDU).connectedPeers.size());
+        // at most one attempt per field - not one per chunk
+        Assert.assertTrue("attempts: " + attempts + " | chunks: " + chunks, attempts * 4 < chunks);
+    }
+
+    @Test
+    public void hubStatusDeltaRoundTrip() throws IOException, ASAPException {
+        Set<CharSequence> added = new HashSet<>();
+        added.add("Clara");
+        Set<CharSequence> known = new HashSet<>();
+        known.add("Alice");
+        known.add("Bob");
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        new HubPDUHubStatusDeltaRQ(42).sendPDU(baos);
+        new HubPDUHubStatusDeltaRPLY(43, false, added, new HashSet<>()).sendPDU(baos);
+        ByteBuffer buffer = ByteBuffer.wrap(baos.toByteArray());
+
+        Assert.assertEquals(42, ((HubPDUHubStatusDeltaRQ) HubPDUDecoder.decode(buffer)).knownVersion);
+        HubPDUHubStatusDeltaRPLY reply = (HubPDUHubStatusDeltaRPLY) HubPDUDecoder.decode(buffer);
+        Assert.assertEquals(43, reply.version);
+        Assert.assertFalse(reply.complete);
+        Assert.assertEquals(3, reply.applyTo(known).size());
+        Assert.assertFalse(buffer.hasRemaining());
+    }
+
+    @Test
+    public void newTCPSocketRequestWithAndWithoutToken() throws IOException, ASAPException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        new HubPDUConnectPeerNewTCPSocketRQ("Bob", 7001).sendPDU(baos);
+        new HubPDUConnectPeerNewTCPSocketRQ("Clara", 6999, 0x1234567890L).sendPDU(baos);
+        ByteBuffer buffer = ByteBuffer.wrap(baos.toByteArray());
+
+        HubPDUConnectPeerNewTCPSocketRQ perEncounter = (HubPDUConnectPeerNewTCPSocketRQ) HubPDUDecoder.decode(buffer);
+        Assert.assertEquals(HubPDU.OPEN_NEW_TCP_SOCKET_RQ, perEncounter.getCommand());
+        Assert.assertEquals(7001, perEncounter.getPort());
+        Assert.assertFalse(perEncounter.hasToken());
+
+        HubPDUConnectPeerNewTCPSocketRQ dataPort = (HubPDUConnectPeerNewTCPSocketRQ) HubPDUDecoder.decode(buffer);
+        Assert.assertSame(PeerId.of("Clara"), dataPort.peerID);
+        Assert.assertEquals(6999, dataPort.getPort());
+        Assert.assertEquals(0x1234567890L, dataPort.getToken());
+        Assert.assertFalse(buffer.hasRemaining());
+    }
+
+    @Test
+    public void streamFramesRoundTrip() throws IOException, ASAPException {
+        byte[] data = new byte[HubPDUStreamFrame.MAX_DATA_LENGTH];
+        for(int i = 0; i < data.length; i++) data[i] = (byte) i;
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        HubPDUStreamFrame.open(2, "Alice", "Bob").sendPDU(baos);
+        HubPDUStreamFrame.data(2, data).sendPDU(baos);
+        HubPDUStreamFrame.window(2, 4711).sendPDU(baos);
+        HubPDUStreamFrame.close(2).sendPDU(baos);
+        byte[] bytes = baos.toByteArray();
+
+        // data frame is incomplete until last byte arrived
+        ByteBuffer buffer = ByteBuffer.wrap(bytes, 0, bytes.length - 1);
+        HubPDUStreamFrame open = (HubPDUStreamFrame) HubPDUDecoder.decode(buffer);
+        Assert.assertEquals(HubPDUStreamFrame.OPEN, open.kind);
+        Assert.assertEquals("Bob", open.targetPeerID.toString());
+        int dataPosition = buffer.position();
+
+        HubPDUStreamFrame dataFrame = (HubPDUStreamFrame) HubPDUDecoder.decode(buffer);
+        Assert.assertArrayEquals(data, dataFrame.data);
+        Assert.assertEquals(4711, ((HubPDUStreamFrame) HubPDUDecoder.decode(buffer)).windowIncrement);
+        Assert.assertNull(HubPDUDecoder.decode(buffer));
+
+        buffer = ByteBuffer.wrap(bytes, dataPosition, bytes.length - dataPosition);
+        HubPDUDecoder.decode(buffer);
+        HubPDUDecoder.decode(buffer);
+        HubPDUStreamFrame close = (HubPDUStreamFrame) HubPDUDecoder.decode(buffer);
+        Assert.assertEquals(HubPDUStreamFrame.CLOSE, close.kind);
+        Assert.assertEquals(2, close.streamID);
+    }
+
+    @Test
+    public void envelopedPDUsAreDecodedWhenComplete() throws IOException, ASAPException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        HubPDUWriter writer = new HubPDUWriter(baos);
+        writer.setEnveloped(true);
+        writer.write(new HubPDUConnectPeerRQ("Bob"));
+        byte[] unknown = new byte[HubPDUEnvelope.HEADER_SIZE + 1];
+        HubPDUEnvelope.writeHeader(unknown, 0, 1);
+        unknown[HubPDUEnvelope.HEADER_SIZE] = 99; // unknown type without fields
+        baos.write(unknown);
+        writer.write(new HubPDUHubStatusRQ());
+        byte[] bytes = baos.toByteArray();
+
+        ByteBuffer buffer = ByteBuffer.wrap(bytes, 0, HubPDUEnvelope.HEADER_SIZE);
+        int frameSize = HubPDUDecoder.frameSize(buffer, true);
+        Assert.assertTrue(frameSize > HubPDUEnvelope.HEADER_SIZE);
+        Assert.assertNull(HubPDUDecoder.decode(buffer, true));
+        Assert.assertEquals(0, buffer.position());
+
+        buffer = ByteBuffer.wrap(bytes);
+        Assert.assertSame(PeerId.of("Bob"), ((HubPDUConnectPeerRQ) HubPDUDecoder.decode(buffer, true)).peerID);
+        Assert.assertEquals(frameSize, buffer.position());
+        // unknown pdu skipped
+        Assert.assertTrue(HubPDUDecoder.decode(buffer, true) instanceof HubPDUHubStatusRQ);
+        Assert.assertFalse(buffer.hasRemaining());
+    }
+
+    @Test
+    public void bytesOutsideEnvelopesAreSkipped() throws IOException, ASAPException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        for(int i = 0; i < 20; i++) baos.write(i); // like a sync sequence after a data session
+        HubPDUWriter writer = new HubPDUWriter(baos);
+        writer.setEnveloped(true);
+        writer.write(new HubPDUConnectPeerRQ("Bob"));
+        byte[] bytes = baos.toByteArray();
+
+        ByteBuffer buffer = ByteBuffer.wrap(bytes, 0, 22);
+        Assert.assertNull(HubPDUDecoder.decode(buffer, true));
+        Assert.assertEquals(20, buffer.position()); // waits for rest of header
+
+        buffer = ByteBuffer.wrap(bytes);
+        Assert.assertSame(PeerId.of("Bob"), ((HubPDUConnectPeerRQ) HubPDUDecoder.decode(buffer, true)).peerID);
+
+        HubPDUReader reader = new HubPDUReader(new ByteArrayInputStream(bytes));
+        reader.setEnveloped(true);
+        Assert.assertEquals("Bob", ((HubPDUConnectPeerRQ) reader.read()).peerID.toString());
+    }
+}
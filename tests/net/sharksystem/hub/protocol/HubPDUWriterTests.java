@@ -0,0 +1,154 @@
+package net.sharksystem.hub.protocol;
+
+import net.sharksystem.asap.ASAPException;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+public class HubPDUWriterTests {
+    /**
+     * Counts write calls - one per PDU or batch expected.
+     */
+    private static class CountingOutputStream extends ByteArrayOutputStream {
+        int writes = 0;
+        int flushes = 0;
+
+        @Override
+        public synchronized void write(int b) {
+            this.writes++;
+            super.write(b);
+        }
+
+        @Override
+        public synchronized void write(byte[] b, int off, int len) {
+            this.writes++;
+            super.write(b, off, len);
+        }
+
+        @Override
+        public void flush() {
+            this.flushes++;
+        }
+    }
+
+    @Test
+    public void singleWritePerPDU() throws IOException, ASAPException {
+        CountingOutputStream os = new CountingOutputStream();
+        HubPDUWriter writer = new HubPDUWriter(os);
+
+        writer.write(new HubPDUChannelClear("alice", "bob", 1000, new byte[] {1, 2, 3}));
+        Assert.assertEquals(1, os.writes);
+        Assert.assertEquals(1, os.flushes);
+
+        HubPDUChannelClear read = (HubPDUChannelClear) HubPDU.readPDU(new ByteArrayInputStream(os.toByteArray()));
+        Assert.assertEquals("alice", read.sourcePeerID.toString());
+        Assert.assertEquals("bob", read.targetPeerID.toString());
+    }
+
+    @Test
+    public void batchIsSingleWriteInOrder() throws IOException, ASAPException {
+        CountingOutputStream os = new CountingOutputStream();
+        HubPDUWriter writer = new HubPDUWriter(os);
+
+        writer.write(Arrays.asList(
+                new HubPDURegister("alice", false),
+                new HubPDUConnectPeerRQ("bob"),
+                new HubPDUConnectPeerRQ("clara")));
+        Assert.assertEquals(1, os.writes);
+
+        InputStream is = new ByteArrayInputStream(os.toByteArray());
+        Assert.assertEquals("alice", ((HubPDURegister) HubPDU.readPDU(is)).peerID.toString());
+        Assert.assertEquals("bob", ((HubPDUConnectPeerRQ) HubPDU.readPDU(is)).peerID.toString());
+        Assert.assertEquals("clara", ((HubPDUConnectPeerRQ) HubPDU.readPDU(is)).peerID.toString());
+        Assert.assertEquals(0, is.available());
+    }
+
+    @Test
+    public void pduArrivingInPiecesIsReadCompletely() throws IOException, ASAPException {
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        new HubPDUWriter(os).write(new HubPDUConnectPeerRQ("a_rather_long_peer_id"));
+
+        // like a TCP stream delivering a PDU in several segments - never more than two bytes per read
+        InputStream segmented = new ByteArrayInputStream(os.toByteArray()) {
+            @Override
+            public synchronized int read(byte[] b, int off, int len) {
+                return super.read(b, off, Math.min(len, 2));
+            }
+        };
+
+        HubPDUConnectPeerRQ read = (HubPDUConnectPeerRQ) HubPDU.readPDU(segmented);
+        Assert.assertEquals("a_rather_long_peer_id", read.peerID.toString());
+    }
+
+    @Test
+    public void largeBufferIsNotRetained() throws IOException {
+        HubPDUWriter writer = new HubPDUWriter(new ByteArrayOutputStream());
+        Set<CharSequence> peers = new HashSet<>();
+        for(int i = 0; i < 10000; i++) peers.add("peer_" + i);
+
+        writer.write(new HubPDUHubStatusRPLY(peers));
+        Assert.assertTrue(writer.getBufferCapacity() <= HubPDUWriter.MAX_RETAINED_BUFFER_SIZE);
+
+        List<HubPDU> empty = new ArrayList<>();
+        writer.write(empty); // nothing to do
+    }
+
+    @Test
+    public void switchToEnvelopeAndSkipUnknownType() throws IOException, ASAPException {
+        CountingOutputStream os = new CountingOutputStream();
+        HubPDUWriter writer = new HubPDUWriter(os);
+
+        writer.write(Arrays.asList(
+                new HubPDURegister("alice", false),
+                new HubPDUWireFormat(HubPDUWireFormat.ENVELOPE)));
+        writer.setEnveloped(true);
+        writer.write(new HubPDUConnectPeerRQ("bob"));
+        // pdu of a type this version does not know
+        byte[] unknown = new byte[HubPDUEnvelope.HEADER_SIZE + 3];
+        HubPDUEnvelope.writeHeader(unknown, 0, 3);
+        unknown[HubPDUEnvelope.HEADER_SIZE] = 99;
+        os.write(unknown, 0, unknown.length);
+        writer.writeSerialized(serialize(new HubPDUConnectPeerRQ("clara")));
+        Assert.assertEquals(4, os.writes);
+
+        // never more than three bytes per read
+        HubPDUReader reader = new HubPDUReader(new ByteArrayInputStream(os.toByteArray()) {
+            @Override
+            public synchronized int read(byte[] b, int off, int len) {
+                return super.read(b, off, Math.min(len, 3));
+            }
+        });
+        Assert.assertEquals("alice", ((HubPDURegister) reader.read()).peerID.toString());
+        Assert.assertEquals(HubPDUWireFormat.ENVELOPE, ((HubPDUWireFormat) reader.read()).version);
+        reader.setEnveloped(true);
+        Assert.assertEquals("bob", ((HubPDUConnectPeerRQ) reader.read()).peerID.toString());
+        Assert.assertEquals("clara", ((HubPDUConnectPeerRQ) reader.read()).peerID.toString());
+    }
+
+    @Test(expected = IOException.class)
+    public void fieldsExceedingEnvelopeAreMalformed() throws IOException, ASAPException {
+        byte[] pdu = serialize(new HubPDUConnectPeerRQ("bob"));
+        byte[] frame = new byte[HubPDUEnvelope.HEADER_SIZE + pdu.length];
+        HubPDUEnvelope.writeHeader(frame, 0, pdu.length - 1); // last byte of peer id outside
+        System.arraycopy(pdu, 0, frame, HubPDUEnvelope.HEADER_SIZE, pdu.length);
+
+        HubPDUReader reader = new HubPDUReader(new ByteArrayInputStream(frame));
+        reader.setEnveloped(true);
+        reader.read();
+    }
+
+    private static byte[] serialize(HubPDU pdu) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        pdu.sendPDU(baos);
+        return baos.toByteArray();
+    }
+}
@@ -0,0 +1,65 @@
+package net.sharksystem.hub.utils;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class HashedWheelTimerTests {
+    @Test
+    public void expireInOrderNeverEarly() throws InterruptedException {
+        // small wheel - some time outs need more than one round
+        HashedWheelTimer timer = new HashedWheelTimer(5, 8, HubThreads.platformThreadFactory());
+        List<Integer> expired = new ArrayList<>();
+        CountDownLatch latch = new CountDownLatch(3);
+        long start = System.currentTimeMillis();
+        long[] expiredAfter = new long[3];
+
+        int[] delays = {150, 20, 80};
+        for(int i = 0; i < delays.length; i++) {
+            int index = i;
+            timer.schedule(delays[i], () -> {
+                synchronized (expired) {
+                    expired.add(delays[index]);
+                }
+                expiredAfter[index] = System.currentTimeMillis() - start;
+                latch.countDown();
+            });
+        }
+
+        Assert.assertTrue(latch.await(2, TimeUnit.SECONDS));
+        Assert.assertEquals(Integer.valueOf(20), expired.get(0));
+        Assert.assertEquals(Integer.valueOf(80), expired.get(1));
+        Assert.assertEquals(Integer.valueOf(150), expired.get(2));
+        for(int i = 0; i < delays.length; i++) {
+            Assert.assertTrue(expiredAfter[i] >= delays[i]);
+        }
+        Assert.assertEquals(0, timer.pendingTimeouts());
+        timer.stop();
+    }
+
+    @Test
+    public void cancelledTimeoutDoesNotExpire() throws InterruptedException {
+        HashedWheelTimer timer = new HashedWheelTimer(5, 64, HubThreads.platformThreadFactory());
+        AtomicInteger ringing = new AtomicInteger(0);
+
+        HashedWheelTimer.Timeout cancelled = timer.schedule(50, 1, key -> ringing.addAndGet(key));
+        HashedWheelTimer.Timeout notCancelled = timer.schedule(50, 10, key -> ringing.addAndGet(key));
+        Assert.assertEquals(2, timer.pendingTimeouts());
+
+        Assert.assertTrue(cancelled.cancel());
+        Assert.assertFalse(cancelled.cancel());
+        Assert.assertEquals(1, timer.pendingTimeouts());
+
+        Thread.sleep(300);
+        Assert.assertEquals(10, ringing.get());
+        Assert.assertTrue(cancelled.isCancelled());
+        Assert.assertTrue(notCancelled.isExpired());
+        Assert.assertFalse(notCancelled.cancel());
+        timer.stop();
+    }
+}
@@ -0,0 +1,54 @@
+package net.sharksystem.hub.utils;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+
+public class HubLogTests {
+    @Test
+    public void sameFormatAsLog() {
+        StringBuilder sb = new StringBuilder();
+        HubLog.append(sb, this, "peerA", "start data session: ", 42);
+        HubLog.append(sb, HubLogTests.class, null, "peer: ", null); // like concatenation
+        Assert.assertEquals("HubLogTests(peerA): start data session: 42\nHubLogTests: peer: null\n",
+                sb.toString());
+    }
+
+    @Test
+    public void levelGatedAndWrittenAsynchronously() {
+        PrintStream systemOut = System.out;
+        HubLog.Level level = HubLog.getLevel();
+        ByteArrayOutputStream captured = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(captured, true));
+        try {
+            HubLog.setLevel(HubLog.Level.INFO);
+            HubLog.debug(this, "ctx", "not written");
+            HubLog.info(this, "ctx", "written: ", "peerA");
+            HubLog.flush();
+        } finally {
+            System.setOut(systemOut);
+            HubLog.setLevel(level);
+        }
+
+        String written = captured.toString();
+        Assert.assertFalse(written.contains("not written"));
+        Assert.assertTrue(written.contains("HubLogTests(ctx): written: peerA"));
+    }
+
+    @Test
+    public void disabledLevelLeavesBufferUntouched() {
+        HubLog.Level level = HubLog.getLevel();
+        try {
+            HubLog.setLevel(HubLog.Level.OFF);
+            long dropped = HubLog.getDropped();
+            for(int i = 0; i < 2 * HubLog.RING_BUFFER_SIZE; i++) {
+                HubLog.error(this, null, "never written");
+            }
+            Assert.assertEquals(dropped, HubLog.getDropped());
+        } finally {
+            HubLog.setLevel(level);
+        }
+    }
+}